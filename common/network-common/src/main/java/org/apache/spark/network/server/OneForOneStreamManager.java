@@ -40,6 +40,7 @@ public class OneForOneStreamManager extends StreamManager {
 
   private final AtomicLong nextStreamId;
   private final ConcurrentHashMap<Long, StreamState> streams;
+  private final AtomicLong servedBytes = new AtomicLong();
 
   /** State of a single stream. */
   private static class StreamState {
@@ -85,6 +86,9 @@ public class OneForOneStreamManager extends StreamManager {
     }
     state.curChunk += 1;
     ManagedBuffer nextChunk = state.buffers.next();
+    if (nextChunk != null) {
+      servedBytes.addAndGet(nextChunk.size());
+    }
 
     if (!state.buffers.hasNext()) {
       logger.trace("Removing stream id {}", streamId);
@@ -94,6 +98,16 @@ public class OneForOneStreamManager extends StreamManager {
     return nextChunk;
   }
 
+  /** Number of streams registered and not fully fetched yet. */
+  public int numStreams() {
+    return streams.size();
+  }
+
+  /** Total size of the chunks handed out to be sent to clients. */
+  public long servedBytes() {
+    return servedBytes.get();
+  }
+
   @Override
   public void connectionTerminated(Channel channel) {
     // Close all streams which have been associated with the channel.
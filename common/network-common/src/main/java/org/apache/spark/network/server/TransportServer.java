@@ -22,6 +22,7 @@ import java.net.InetSocketAddress;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
 
+import com.codahale.metrics.MetricSet;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.Lists;
 import io.netty.bootstrap.ServerBootstrap;
@@ -37,6 +38,7 @@ import org.slf4j.LoggerFactory;
 
 import org.apache.spark.network.TransportContext;
 import org.apache.spark.network.util.IOMode;
+import org.apache.spark.network.util.NettyMemoryMetrics;
 import org.apache.spark.network.util.NettyUtils;
 import org.apache.spark.network.util.TransportConf;
 
@@ -54,6 +56,7 @@ public class TransportServer implements Closeable {
   private ServerBootstrap bootstrap;
   private ChannelFuture channelFuture;
   private int port = -1;
+  private NettyMemoryMetrics metrics;
 
   /**
    * Creates a TransportServer that binds to the given host and the given port, or to any available
@@ -85,6 +88,11 @@ public class TransportServer implements Closeable {
     return port;
   }
 
+  /** Memory usage of the buffer allocator of this server. */
+  public MetricSet getAllMetrics() {
+    return metrics;
+  }
+
   private void init(String hostToBind, int portToBind) {
 
     IOMode ioMode = IOMode.valueOf(conf.ioMode());
@@ -94,6 +102,7 @@ public class TransportServer implements Closeable {
 
     PooledByteBufAllocator allocator = NettyUtils.createPooledByteBufAllocator(
       conf.preferDirectBufs(), true /* allowCache */, conf.serverThreads());
+    this.metrics = new NettyMemoryMetrics(allocator);
 
     bootstrap = new ServerBootstrap()
       .group(bossGroup, workerGroup)
@@ -21,6 +21,7 @@ import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.util.concurrent.TimeUnit;
 import java.util.regex.Matcher;
@@ -32,6 +33,7 @@ import io.netty.buffer.Unpooled;
 import org.apache.commons.lang3.SystemUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import sun.nio.ch.DirectBuffer;
 
 /**
  * General utilities available in the network package. Many of these are sourced from Spark's
@@ -344,4 +346,16 @@ public class JavaUtils {
     }
   }
 
+  /**
+   * Unmaps a memory-mapped buffer rather than waiting for the GC to find it, as Spark's
+   * StorageUtils.dispose() does. This uses an unsafe Sun API: the buffer must not be read once
+   * this returns.
+   */
+  public static void dispose(ByteBuffer buffer) {
+    if (buffer instanceof MappedByteBuffer && ((DirectBuffer) buffer).cleaner() != null) {
+      logger.trace("Unmapping {}", buffer);
+      ((DirectBuffer) buffer).cleaner().clean();
+    }
+  }
+
 }
@@ -0,0 +1,93 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.spark.network.util;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Metric;
+import com.codahale.metrics.MetricSet;
+import io.netty.buffer.PoolArenaMetric;
+import io.netty.buffer.PoolChunkListMetric;
+import io.netty.buffer.PoolChunkMetric;
+import io.netty.buffer.PooledByteBufAllocator;
+
+/**
+ * Memory usage of a {@link PooledByteBufAllocator} created by
+ * {@link NettyUtils#createPooledByteBufAllocator}: the bytes of the chunks its arenas hold,
+ * which is the memory taken from the heap or outside of it, and the bytes of the buffers
+ * allocated from them and not yet released.
+ */
+public class NettyMemoryMetrics implements MetricSet {
+
+  private final Map<String, Metric> allMetrics = new HashMap<>();
+
+  public NettyMemoryMetrics(final PooledByteBufAllocator allocator) {
+    allMetrics.put("usedHeapMemory", new Gauge<Long>() {
+      @Override
+      public Long getValue() {
+        return chunkBytes(allocator.heapArenas());
+      }
+    });
+    allMetrics.put("usedDirectMemory", new Gauge<Long>() {
+      @Override
+      public Long getValue() {
+        return chunkBytes(allocator.directArenas());
+      }
+    });
+    allMetrics.put("activeHeapBytes", new Gauge<Long>() {
+      @Override
+      public Long getValue() {
+        return activeBytes(allocator.heapArenas());
+      }
+    });
+    allMetrics.put("activeDirectBytes", new Gauge<Long>() {
+      @Override
+      public Long getValue() {
+        return activeBytes(allocator.directArenas());
+      }
+    });
+  }
+
+  @Override
+  public Map<String, Metric> getMetrics() {
+    return allMetrics;
+  }
+
+  private static long chunkBytes(List<PoolArenaMetric> arenas) {
+    long bytes = 0;
+    for (PoolArenaMetric arena : arenas) {
+      for (PoolChunkListMetric chunks : arena.chunkLists()) {
+        for (PoolChunkMetric chunk : chunks) {
+          bytes += chunk.chunkSize();
+        }
+      }
+    }
+    return bytes;
+  }
+
+  private static long activeBytes(List<PoolArenaMetric> arenas) {
+    long bytes = 0;
+    for (PoolArenaMetric arena : arenas) {
+      bytes += arena.numActiveBytes();
+    }
+    return bytes;
+  }
+}
@@ -69,6 +69,14 @@ public class TransportConf {
     return conf.getInt(name, defaultValue);
   }
 
+  public boolean getBoolean(String name, boolean defaultValue) {
+    return conf.getBoolean(name, defaultValue);
+  }
+
+  public String get(String name, String defaultValue) {
+    return conf.get(name, defaultValue);
+  }
+
   private String getConfKey(String suffix) {
     return "spark." + module + "." + suffix;
   }
@@ -175,4 +183,13 @@ public class TransportConf {
     return conf.getBoolean("spark.network.sasl.serverAlwaysEncrypt", false);
   }
 
+  /**
+   * Target size of the chunks a shuffle service serves a merged shuffle partition in. A chunk
+   * holds the blocks of consecutive map outputs, and only exceeds this size when its only block
+   * does.
+   */
+  public long mergedShuffleChunkSize() {
+    return JavaUtils.byteStringAsBytes(conf.get("spark.shuffle.push.mergedChunkSize", "4m"));
+  }
+
 }
@@ -23,6 +23,7 @@ import java.nio.ByteBuffer;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 import com.codahale.metrics.Gauge;
 import com.codahale.metrics.Meter;
@@ -51,13 +52,16 @@ import org.apache.spark.network.util.TransportConf;
  *
  * Handles registering executors and opening shuffle blocks from them. Shuffle blocks are registered
  * with the "one-for-one" strategy, meaning each Transport-layer Chunk is equivalent to one Spark-
- * level shuffle block.
+ * level shuffle block. Also merges the blocks pushed by map tasks per reduce partition, see
+ * {@link MergedShuffleFileManager}.
  */
 public class ExternalShuffleBlockHandler extends RpcHandler {
   private static final Logger logger = LoggerFactory.getLogger(ExternalShuffleBlockHandler.class);
 
   @VisibleForTesting
   final ExternalShuffleBlockResolver blockManager;
+  @VisibleForTesting
+  final MergedShuffleFileManager mergeManager;
   private final OneForOneStreamManager streamManager;
   private final ShuffleMetrics metrics;
 
@@ -72,9 +76,19 @@ public class ExternalShuffleBlockHandler extends RpcHandler {
   public ExternalShuffleBlockHandler(
       OneForOneStreamManager streamManager,
       ExternalShuffleBlockResolver blockManager) {
+    this(streamManager, blockManager, new MergedShuffleFileManager(blockManager));
+  }
+
+  /** Enables mocking out the StreamManager, BlockManager and MergedShuffleFileManager. */
+  @VisibleForTesting
+  public ExternalShuffleBlockHandler(
+      OneForOneStreamManager streamManager,
+      ExternalShuffleBlockResolver blockManager,
+      MergedShuffleFileManager mergeManager) {
     this.metrics = new ShuffleMetrics();
     this.streamManager = streamManager;
     this.blockManager = blockManager;
+    this.mergeManager = mergeManager;
   }
 
   @Override
@@ -96,7 +110,9 @@ public class ExternalShuffleBlockHandler extends RpcHandler {
         List<ManagedBuffer> blocks = Lists.newArrayList();
         long totalBlockSize = 0;
         for (String blockId : msg.blockIds) {
-          final ManagedBuffer block = blockManager.getBlockData(msg.appId, msg.execId, blockId);
+          final ManagedBuffer block = blockId.startsWith("shuffleMerged_")
+            ? mergeManager.getMergedBlockData(msg.appId, blockId)
+            : blockManager.getBlockData(msg.appId, msg.execId, blockId);
           totalBlockSize += block != null ? block.size() : 0;
           blocks.add(block);
         }
@@ -126,6 +142,36 @@ public class ExternalShuffleBlockHandler extends RpcHandler {
         responseDelayContext.stop();
       }
 
+    } else if (msgObj instanceof PushBlocks) {
+      final Timer.Context responseDelayContext = metrics.pushBlocksRequestLatencyMillis.time();
+      try {
+        PushBlocks msg = (PushBlocks) msgObj;
+        checkAuth(client, msg.appId);
+        long mergedBytes = mergeManager.pushBlocks(msg);
+        callback.onSuccess(ByteBuffer.wrap(new byte[0]));
+        metrics.blockMergeRateBytes.mark(mergedBytes);
+      } finally {
+        responseDelayContext.stop();
+      }
+
+    } else if (msgObj instanceof FetchMergedBlockMeta) {
+      FetchMergedBlockMeta msg = (FetchMergedBlockMeta) msgObj;
+      checkAuth(client, msg.appId);
+      try {
+        MergedBlockMeta[] metas = new MergedBlockMeta[msg.reduceIds.length];
+        for (int i = 0; i < metas.length; i++) {
+          metas[i] = mergeManager.getMergedBlockMeta(msg.appId, msg.shuffleId, msg.reduceIds[i]);
+        }
+        callback.onSuccess(new MergedBlockMetas(metas).toByteBuffer());
+      } catch (IOException e) {
+        callback.onFailure(e);
+      }
+
+    } else if (msgObj instanceof RemoveMergedShuffle) {
+      RemoveMergedShuffle msg = (RemoveMergedShuffle) msgObj;
+      checkAuth(client, msg.appId);
+      mergeManager.removeShuffle(msg.appId, msg.shuffleId);
+
     } else {
       throw new UnsupportedOperationException("Unexpected message: " + msgObj);
     }
@@ -146,6 +192,7 @@ public class ExternalShuffleBlockHandler extends RpcHandler {
    */
   public void applicationRemoved(String appId, boolean cleanupLocalDirs) {
     blockManager.applicationRemoved(appId, cleanupLocalDirs);
+    mergeManager.applicationRemoved(appId);
   }
 
   /**
@@ -184,18 +231,73 @@ public class ExternalShuffleBlockHandler extends RpcHandler {
     private final Timer registerExecutorRequestLatencyMillis = new Timer();
     // Block transfer rate in byte per second
     private final Meter blockTransferRateBytes = new Meter();
+    // Time latency for merging pushed blocks in ms
+    private final Timer pushBlocksRequestLatencyMillis = new Timer();
+    // Rate of pushed blocks merged in byte per second
+    private final Meter blockMergeRateBytes = new Meter();
 
     private ShuffleMetrics() {
       allMetrics = new HashMap<>();
       allMetrics.put("openBlockRequestLatencyMillis", openBlockRequestLatencyMillis);
       allMetrics.put("registerExecutorRequestLatencyMillis", registerExecutorRequestLatencyMillis);
       allMetrics.put("blockTransferRateBytes", blockTransferRateBytes);
+      allMetrics.put("pushBlocksRequestLatencyMillis", pushBlocksRequestLatencyMillis);
+      allMetrics.put("blockMergeRateBytes", blockMergeRateBytes);
+      allMetrics.put("mergedPartitionsSize", new Gauge<Integer>() {
+        @Override
+        public Integer getValue() {
+          return mergeManager.getMergedPartitionsSize();
+        }
+      });
       allMetrics.put("registeredExecutorsSize", new Gauge<Integer>() {
         @Override
         public Integer getValue() {
           return blockManager.getRegisteredExecutorsSize();
         }
       });
+      allMetrics.put("openStreams", new Gauge<Integer>() {
+        @Override
+        public Integer getValue() {
+          return streamManager.numStreams();
+        }
+      });
+      allMetrics.put("servedBytes", new Gauge<Long>() {
+        @Override
+        public Long getValue() {
+          return streamManager.servedBytes();
+        }
+      });
+      allMetrics.put("indexCacheHits", new Gauge<Long>() {
+        @Override
+        public Long getValue() {
+          return blockManager.getIndexCacheStats().hitCount();
+        }
+      });
+      allMetrics.put("indexCacheMisses", new Gauge<Long>() {
+        @Override
+        public Long getValue() {
+          return blockManager.getIndexCacheStats().missCount();
+        }
+      });
+      allMetrics.put("indexCacheEvictions", new Gauge<Long>() {
+        @Override
+        public Long getValue() {
+          return blockManager.getIndexCacheStats().evictionCount();
+        }
+      });
+      // Total time spent reading or mapping index files into the cache, in ms
+      allMetrics.put("indexCacheLoadTimeMillis", new Gauge<Long>() {
+        @Override
+        public Long getValue() {
+          return TimeUnit.NANOSECONDS.toMillis(blockManager.getIndexCacheStats().totalLoadTime());
+        }
+      });
+      allMetrics.put("indexCacheBytes", new Gauge<Long>() {
+        @Override
+        public Long getValue() {
+          return blockManager.getIndexCacheBytes();
+        }
+      });
     }
 
     @Override
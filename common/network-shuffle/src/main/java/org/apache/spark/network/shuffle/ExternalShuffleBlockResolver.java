@@ -24,6 +24,7 @@ import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
 
 import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonProperty;
@@ -32,7 +33,11 @@ import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Objects;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
+import com.google.common.cache.CacheStats;
 import com.google.common.cache.LoadingCache;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.cache.Weigher;
 import com.google.common.collect.Maps;
 import org.iq80.leveldb.DB;
 import org.iq80.leveldb.DBIterator;
@@ -75,10 +80,13 @@ public class ExternalShuffleBlockResolver {
    */
   private final LoadingCache<File, ShuffleIndexInformation> shuffleIndexCache;
 
+  /** Total size of the index files in the cache. */
+  private final AtomicLong shuffleIndexCacheBytes = new AtomicLong();
+
   // Single-threaded Java executor used to perform expensive recursive directory deletion.
   private final Executor directoryCleaner;
 
-  private final TransportConf conf;
+  final TransportConf conf;
 
   @VisibleForTesting
   final File registeredExecutorFile;
@@ -104,15 +112,40 @@ public class ExternalShuffleBlockResolver {
       Executor directoryCleaner) throws IOException {
     this.conf = conf;
     this.registeredExecutorFile = registeredExecutorFile;
-    int indexCacheEntries = conf.getInt("spark.shuffle.service.index.cache.entries", 1024);
+    final boolean memoryMapIndex = conf.getBoolean("spark.shuffle.service.index.mmap", false);
     CacheLoader<File, ShuffleIndexInformation> indexCacheLoader =
         new CacheLoader<File, ShuffleIndexInformation>() {
           public ShuffleIndexInformation load(File file) throws IOException {
-            return new ShuffleIndexInformation(file);
+            ShuffleIndexInformation info = new ShuffleIndexInformation(file, memoryMapIndex);
+            shuffleIndexCacheBytes.addAndGet(info.getSize());
+            return info;
           }
         };
-    shuffleIndexCache = CacheBuilder.newBuilder()
-                                    .maximumSize(indexCacheEntries).build(indexCacheLoader);
+    CacheBuilder<Object, Object> indexCacheBuilder = CacheBuilder.newBuilder().recordStats();
+    String indexCacheSize = conf.get("spark.shuffle.service.index.cache.size", null);
+    int indexCacheEntries = conf.getInt("spark.shuffle.service.index.cache.entries", -1);
+    if (indexCacheSize == null && indexCacheEntries > 0) {
+      // Only the deprecated bound by number of entries was set
+      indexCacheBuilder.maximumSize(indexCacheEntries);
+    } else {
+      long maxIndexCacheBytes =
+        JavaUtils.byteStringAsBytes(indexCacheSize == null ? "100m" : indexCacheSize);
+      indexCacheBuilder
+        .maximumWeight(maxIndexCacheBytes)
+        .weigher(new Weigher<File, ShuffleIndexInformation>() {
+          public int weigh(File file, ShuffleIndexInformation indexInfo) {
+            return indexInfo.getSize();
+          }
+        });
+    }
+    shuffleIndexCache = indexCacheBuilder
+      .removalListener(new RemovalListener<File, ShuffleIndexInformation>() {
+        public void onRemoval(RemovalNotification<File, ShuffleIndexInformation> notification) {
+          shuffleIndexCacheBytes.addAndGet(-notification.getValue().getSize());
+          notification.getValue().dispose();
+        }
+      })
+      .build(indexCacheLoader);
     db = LevelDBProvider.initLevelDB(this.registeredExecutorFile, CURRENT_VERSION, mapper);
     if (db != null) {
       executors = reloadRegisteredExecutors(db);
@@ -126,6 +159,16 @@ public class ExternalShuffleBlockResolver {
     return executors.size();
   }
 
+  /** Hits, misses, evictions and load times of the cache of index files. */
+  public CacheStats getIndexCacheStats() {
+    return shuffleIndexCache.stats();
+  }
+
+  /** Total size in bytes of the index files in the cache, on the heap or mapped. */
+  public long getIndexCacheBytes() {
+    return shuffleIndexCacheBytes.get();
+  }
+
   /** Registers a new Executor with all the configuration we need to find its shuffle files. */
   public void registerExecutor(
       String appId,
@@ -149,21 +192,41 @@ public class ExternalShuffleBlockResolver {
     executors.put(fullId, executorInfo);
   }
 
+  /**
+   * Returns the shuffle info of one of the executors registered for the given application, or
+   * null if none is. Files written by this service for the application go to its local dirs.
+   */
+  ExecutorShuffleInfo getAnyExecutor(String appId) {
+    for (Map.Entry<AppExecId, ExecutorShuffleInfo> entry : executors.entrySet()) {
+      if (appId.equals(entry.getKey().appId)) {
+        return entry.getValue();
+      }
+    }
+    return null;
+  }
+
   /**
    * Obtains a FileSegmentManagedBuffer from a shuffle block id. We expect the blockId has the
-   * format "shuffle_ShuffleId_MapId_ReduceId" (from ShuffleBlockId), and additionally make
-   * assumptions about how the hash and sort based shuffles store their data.
+   * format "shuffle_ShuffleId_MapId_ReduceId" (from ShuffleBlockId), or
+   * "shuffle_ShuffleId_MapId_StartReduceId_EndReduceId" (from ShuffleBlockBatchId) for the
+   * contiguous reduce partitions [StartReduceId, EndReduceId) served as one segment, and
+   * additionally make assumptions about how the hash and sort based shuffles store their data.
    */
   public ManagedBuffer getBlockData(String appId, String execId, String blockId) {
     String[] blockIdParts = blockId.split("_");
-    if (blockIdParts.length < 4) {
+    if (blockIdParts.length < 4 || blockIdParts.length > 5) {
       throw new IllegalArgumentException("Unexpected block id format: " + blockId);
     } else if (!blockIdParts[0].equals("shuffle")) {
       throw new IllegalArgumentException("Expected shuffle block id, got: " + blockId);
     }
     int shuffleId = Integer.parseInt(blockIdParts[1]);
     int mapId = Integer.parseInt(blockIdParts[2]);
-    int reduceId = Integer.parseInt(blockIdParts[3]);
+    int startReduceId = Integer.parseInt(blockIdParts[3]);
+    int endReduceId =
+      blockIdParts.length == 5 ? Integer.parseInt(blockIdParts[4]) : startReduceId + 1;
+    if (endReduceId <= startReduceId) {
+      throw new IllegalArgumentException("Empty range of reduce partitions: " + blockId);
+    }
 
     ExecutorShuffleInfo executor = executors.get(new AppExecId(appId, execId));
     if (executor == null) {
@@ -171,7 +234,7 @@ public class ExternalShuffleBlockResolver {
         String.format("Executor is not registered (appId=%s, execId=%s)", appId, execId));
     }
 
-    return getSortBasedShuffleBlockData(executor, shuffleId, mapId, reduceId);
+    return getSortBasedShuffleBlockData(executor, shuffleId, mapId, startReduceId, endReduceId);
   }
 
   /**
@@ -234,23 +297,26 @@ public class ExternalShuffleBlockResolver {
   /**
    * Sort-based shuffle data uses an index called "shuffle_ShuffleId_MapId_0.index" into a data file
    * called "shuffle_ShuffleId_MapId_0.data". This logic is from IndexShuffleBlockResolver,
-   * and the block id format is from ShuffleDataBlockId and ShuffleIndexBlockId.
+   * and the block id format is from ShuffleDataBlockId and ShuffleIndexBlockId. The reduce
+   * partitions [startReduceId, endReduceId) sit next to each other in the data file, so they are
+   * served as a single segment of it.
    */
   private ManagedBuffer getSortBasedShuffleBlockData(
-    ExecutorShuffleInfo executor, int shuffleId, int mapId, int reduceId) {
+    ExecutorShuffleInfo executor, int shuffleId, int mapId, int startReduceId, int endReduceId) {
     File indexFile = getFile(executor.localDirs, executor.subDirsPerLocalDir,
       "shuffle_" + shuffleId + "_" + mapId + "_0.index");
 
     try {
       ShuffleIndexInformation shuffleIndexInformation = shuffleIndexCache.get(indexFile);
-      ShuffleIndexRecord shuffleIndexRecord = shuffleIndexInformation.getIndex(reduceId);
+      ShuffleIndexRecord shuffleIndexRecord =
+        shuffleIndexInformation.getIndex(startReduceId, endReduceId);
       return new FileSegmentManagedBuffer(
         conf,
         getFile(executor.localDirs, executor.subDirsPerLocalDir,
           "shuffle_" + shuffleId + "_" + mapId + "_0.data"),
         shuffleIndexRecord.getOffset(),
         shuffleIndexRecord.getLength());
-    } catch (ExecutionException e) {
+    } catch (ExecutionException | IOException e) {
       throw new RuntimeException("Failed to open file: " + indexFile, e);
     }
   }
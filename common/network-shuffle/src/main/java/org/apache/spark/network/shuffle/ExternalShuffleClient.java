@@ -21,6 +21,7 @@ import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.List;
 
+import com.codahale.metrics.MetricSet;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.Lists;
 import org.slf4j.Logger;
@@ -33,8 +34,14 @@ import org.apache.spark.network.client.TransportClientFactory;
 import org.apache.spark.network.sasl.SaslClientBootstrap;
 import org.apache.spark.network.sasl.SecretKeyHolder;
 import org.apache.spark.network.server.NoOpRpcHandler;
+import org.apache.spark.network.shuffle.protocol.BlockTransferMessage;
 import org.apache.spark.network.shuffle.protocol.ExecutorShuffleInfo;
+import org.apache.spark.network.shuffle.protocol.FetchMergedBlockMeta;
+import org.apache.spark.network.shuffle.protocol.MergedBlockMeta;
+import org.apache.spark.network.shuffle.protocol.MergedBlockMetas;
+import org.apache.spark.network.shuffle.protocol.PushBlocks;
 import org.apache.spark.network.shuffle.protocol.RegisterExecutor;
+import org.apache.spark.network.shuffle.protocol.RemoveMergedShuffle;
 import org.apache.spark.network.util.TransportConf;
 
 /**
@@ -147,6 +154,74 @@ public class ExternalShuffleClient extends ShuffleClient {
     }
   }
 
+  /**
+   * Pushes blocks of a map output to the external shuffle server that merges their reduce
+   * partitions, and waits for it to merge them. See {@link PushBlocks}.
+   *
+   * @param host Host of shuffle server.
+   * @param port Port of shuffle server.
+   * @param shuffleId Shuffle of the map output.
+   * @param mapId Map of the map output.
+   * @param reduceIds Reduce partition of each block.
+   * @param blocks Bytes of each block, as written in the data file of the map output.
+   */
+  public void pushBlocks(
+      String host,
+      int port,
+      int shuffleId,
+      int mapId,
+      int[] reduceIds,
+      byte[][] blocks) throws IOException {
+    checkInit();
+    TransportClient client = clientFactory.createClient(host, port);
+    ByteBuffer pushMessage =
+      new PushBlocks(appId, shuffleId, mapId, reduceIds, blocks).toByteBuffer();
+    client.sendRpcSync(pushMessage, conf.connectionTimeoutMs());
+  }
+
+  /**
+   * Returns the blocks merged into reduce partitions by an external shuffle server, in the order
+   * of the partitions, with a single request. The server merges no more blocks into the
+   * partitions afterwards.
+   *
+   * @param host Host of shuffle server.
+   * @param port Port of shuffle server.
+   * @param shuffleId Shuffle of the reduce partitions.
+   * @param reduceIds The reduce partitions, all merged by this server.
+   */
+  public MergedBlockMeta[] getMergedBlockMetas(
+      String host,
+      int port,
+      int shuffleId,
+      int[] reduceIds) throws IOException {
+    checkInit();
+    TransportClient client = clientFactory.createClient(host, port);
+    ByteBuffer response = client.sendRpcSync(
+      new FetchMergedBlockMeta(appId, shuffleId, reduceIds).toByteBuffer(),
+      conf.connectionTimeoutMs());
+    return ((MergedBlockMetas) BlockTransferMessage.Decoder.fromByteBuffer(response)).metas;
+  }
+
+  /**
+   * Asks an external shuffle server to delete the partitions of a shuffle it merged, without
+   * waiting for it to.
+   *
+   * @param host Host of shuffle server.
+   * @param port Port of shuffle server.
+   * @param shuffleId Shuffle no longer used by the application.
+   */
+  public void removeMergedShuffle(String host, int port, int shuffleId) throws IOException {
+    checkInit();
+    TransportClient client = clientFactory.createClient(host, port);
+    client.send(new RemoveMergedShuffle(appId, shuffleId).toByteBuffer());
+  }
+
+  @Override
+  public MetricSet shuffleMetrics() {
+    checkInit();
+    return clientFactory.getAllMetrics();
+  }
+
   @Override
   public void close() {
     clientFactory.close();
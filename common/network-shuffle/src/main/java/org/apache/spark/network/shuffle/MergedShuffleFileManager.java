@@ -0,0 +1,365 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.spark.network.shuffle;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+
+import com.google.common.base.Objects;
+import com.google.common.collect.Maps;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.apache.spark.network.buffer.FileSegmentManagedBuffer;
+import org.apache.spark.network.buffer.ManagedBuffer;
+import org.apache.spark.network.shuffle.protocol.ExecutorShuffleInfo;
+import org.apache.spark.network.shuffle.protocol.MergedBlockMeta;
+import org.apache.spark.network.shuffle.protocol.PushBlocks;
+import org.apache.spark.network.util.JavaUtils;
+import org.apache.spark.network.util.TransportConf;
+
+/**
+ * Merges the blocks that map tasks push to this service into one file per reduce partition, so
+ * that reducers read a partition with a few large sequential reads instead of one small read
+ * from every map output.
+ *
+ * A merged partition "shuffleMerged_ShuffleId_ReduceId" is a data file holding the pushed blocks
+ * one after the other, and an index file with a (map id, end offset) entry per block. Both go to
+ * the local dirs of an executor of the application registered with this service, so they are
+ * cleaned up with them. A partition is finalized by the first request for its blocks, after
+ * which it takes no more pushed blocks: reducers only start once all map tasks have pushed their
+ * blocks, and read whatever was not merged from the map outputs. Once finalized, a partition is
+ * served in chunks, block ids "shuffleMerged_ShuffleId_ReduceId_Chunk", each holding consecutive
+ * blocks up to {@link TransportConf#mergedShuffleChunkSize()} bytes; reducers split them into the
+ * blocks of their maps with the sizes of {@link MergedBlockMeta}.
+ */
+public class MergedShuffleFileManager {
+  private static final Logger logger = LoggerFactory.getLogger(MergedShuffleFileManager.class);
+
+  // Map id and end offset of each merged block
+  private static final int INDEX_ENTRY_SIZE = 4 + 8;
+
+  private final TransportConf conf;
+  private final ExternalShuffleBlockResolver blockResolver;
+  private final ConcurrentMap<AppShufflePartition, MergedPartition> partitions =
+    Maps.newConcurrentMap();
+
+  public MergedShuffleFileManager(ExternalShuffleBlockResolver blockResolver) {
+    this.conf = blockResolver.conf;
+    this.blockResolver = blockResolver;
+  }
+
+  /**
+   * Appends the pushed blocks to the merged files of their partitions. Blocks of partitions that
+   * are finalized, or that already hold a block of the map, are skipped.
+   *
+   * @return the number of bytes merged
+   */
+  public long pushBlocks(PushBlocks msg) {
+    long mergedBytes = 0;
+    for (int i = 0; i < msg.blocks.length; i++) {
+      AppShufflePartition id = new AppShufflePartition(msg.appId, msg.shuffleId, msg.reduceIds[i]);
+      MergedPartition partition = getOrCreatePartition(id);
+      if (partition == null) {
+        logger.warn("No executor of application {} is registered, not merging blocks of {}",
+          msg.appId, id);
+        return mergedBytes;
+      }
+      try {
+        if (partition.append(msg.mapId, msg.blocks[i])) {
+          mergedBytes += msg.blocks[i].length;
+        }
+      } catch (IOException e) {
+        logger.warn("Failed to merge the block of map " + msg.mapId + " into " + id, e);
+      }
+    }
+    return mergedBytes;
+  }
+
+  /**
+   * Finalizes a merged partition and returns its blocks. A partition nothing was pushed to is
+   * finalized empty.
+   */
+  public MergedBlockMeta getMergedBlockMeta(String appId, int shuffleId, int reduceId)
+      throws IOException {
+    AppShufflePartition id = new AppShufflePartition(appId, shuffleId, reduceId);
+    MergedPartition partition = partitions.get(id);
+    if (partition == null) {
+      MergedPartition empty = new MergedPartition(null, null);
+      partition = partitions.putIfAbsent(id, empty);
+      if (partition == null) {
+        partition = empty;
+      }
+    }
+    return partition.finalizeMerge();
+  }
+
+  /**
+   * Obtains a chunk of a finalized merged partition from its block id,
+   * "shuffleMerged_ShuffleId_ReduceId_Chunk".
+   */
+  public ManagedBuffer getMergedBlockData(String appId, String blockId) {
+    String[] blockIdParts = blockId.split("_");
+    if (blockIdParts.length != 4 || !blockIdParts[0].equals("shuffleMerged")) {
+      throw new IllegalArgumentException("Unexpected merged block id format: " + blockId);
+    }
+    AppShufflePartition id = new AppShufflePartition(appId,
+      Integer.parseInt(blockIdParts[1]), Integer.parseInt(blockIdParts[2]));
+    MergedPartition partition = partitions.get(id);
+    if (partition == null) {
+      throw new IllegalArgumentException("Unknown merged partition: " + id);
+    }
+    return partition.getChunk(Integer.parseInt(blockIdParts[3]));
+  }
+
+  /** Forgets the merged partitions of an application and deletes their files. */
+  public void applicationRemoved(String appId) {
+    Iterator<Map.Entry<AppShufflePartition, MergedPartition>> it =
+      partitions.entrySet().iterator();
+    while (it.hasNext()) {
+      Map.Entry<AppShufflePartition, MergedPartition> entry = it.next();
+      if (appId.equals(entry.getKey().appId)) {
+        it.remove();
+        entry.getValue().deleteFiles();
+      }
+    }
+  }
+
+  /** Forgets the merged partitions of a shuffle of an application and deletes their files. */
+  public void removeShuffle(String appId, int shuffleId) {
+    Iterator<Map.Entry<AppShufflePartition, MergedPartition>> it =
+      partitions.entrySet().iterator();
+    while (it.hasNext()) {
+      Map.Entry<AppShufflePartition, MergedPartition> entry = it.next();
+      if (appId.equals(entry.getKey().appId) && entry.getKey().shuffleId == shuffleId) {
+        it.remove();
+        entry.getValue().deleteFiles();
+      }
+    }
+  }
+
+  /** Number of merged partitions known to this service, finalized or not. */
+  public int getMergedPartitionsSize() {
+    return partitions.size();
+  }
+
+  private MergedPartition getOrCreatePartition(AppShufflePartition id) {
+    MergedPartition partition = partitions.get(id);
+    if (partition == null) {
+      ExecutorShuffleInfo executor = blockResolver.getAnyExecutor(id.appId);
+      if (executor == null) {
+        return null;
+      }
+      String name = "shuffleMerged_" + id.shuffleId + "_" + id.reduceId;
+      MergedPartition created = new MergedPartition(
+        ExternalShuffleBlockResolver.getFile(
+          executor.localDirs, executor.subDirsPerLocalDir, name + ".data"),
+        ExternalShuffleBlockResolver.getFile(
+          executor.localDirs, executor.subDirsPerLocalDir, name + ".index"));
+      partition = partitions.putIfAbsent(id, created);
+      if (partition == null) {
+        partition = created;
+      }
+    }
+    return partition;
+  }
+
+  /** Identifies a reduce partition of a shuffle of an application. */
+  private static class AppShufflePartition {
+    final String appId;
+    final int shuffleId;
+    final int reduceId;
+
+    AppShufflePartition(String appId, int shuffleId, int reduceId) {
+      this.appId = appId;
+      this.shuffleId = shuffleId;
+      this.reduceId = reduceId;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) return true;
+      if (o == null || getClass() != o.getClass()) return false;
+      AppShufflePartition other = (AppShufflePartition) o;
+      return shuffleId == other.shuffleId && reduceId == other.reduceId
+        && Objects.equal(appId, other.appId);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hashCode(appId, shuffleId, reduceId);
+    }
+
+    @Override
+    public String toString() {
+      return Objects.toStringHelper(this)
+        .add("appId", appId)
+        .add("shuffleId", shuffleId)
+        .add("reduceId", reduceId)
+        .toString();
+    }
+  }
+
+  /**
+   * The merged files of a partition. Only the blocks counted in memory are part of it: a failed
+   * append leaves bytes past them, which the next append overwrites. The files stay open from the
+   * first append until the partition is finalized, after which its chunks are served from offsets
+   * kept in memory.
+   */
+  private class MergedPartition {
+    private final File dataFile;
+    private final File indexFile;
+    private final BitSet mapIds = new BitSet();
+    private final ByteBuffer indexEntry = ByteBuffer.allocate(INDEX_ENTRY_SIZE);
+    private FileChannel dataChannel;
+    private FileChannel indexChannel;
+    private long dataLength = 0;
+    private int numBlocks = 0;
+    private boolean finalized = false;
+    // Set once finalized: the merged blocks, and the start offset of each chunk then the end of
+    // the last one
+    private MergedBlockMeta meta;
+    private long[] chunkOffsets;
+
+    MergedPartition(File dataFile, File indexFile) {
+      this.dataFile = dataFile;
+      this.indexFile = indexFile;
+    }
+
+    synchronized boolean append(int mapId, byte[] block) throws IOException {
+      if (finalized || mapIds.get(mapId)) {
+        return false;
+      }
+      if (dataChannel == null) {
+        openFiles();
+      }
+      ByteBuffer data = ByteBuffer.wrap(block);
+      while (data.hasRemaining()) {
+        dataChannel.write(data, dataLength + data.position());
+      }
+      indexEntry.clear();
+      indexEntry.putInt(mapId).putLong(dataLength + block.length).flip();
+      long indexOffset = (long) numBlocks * INDEX_ENTRY_SIZE;
+      while (indexEntry.hasRemaining()) {
+        indexChannel.write(indexEntry, indexOffset + indexEntry.position());
+      }
+      mapIds.set(mapId);
+      dataLength += block.length;
+      numBlocks++;
+      return true;
+    }
+
+    private void openFiles() throws IOException {
+      File parent = dataFile.getParentFile();
+      if (!parent.isDirectory() && !parent.mkdirs() && !parent.isDirectory()) {
+        throw new IOException("Failed to create directory " + parent);
+      }
+      dataChannel = new RandomAccessFile(dataFile, "rw").getChannel();
+      try {
+        indexChannel = new RandomAccessFile(indexFile, "rw").getChannel();
+      } catch (IOException e) {
+        closeFiles();
+        throw e;
+      }
+    }
+
+    private void closeFiles() {
+      JavaUtils.closeQuietly(dataChannel);
+      JavaUtils.closeQuietly(indexChannel);
+      dataChannel = null;
+      indexChannel = null;
+    }
+
+    synchronized MergedBlockMeta finalizeMerge() throws IOException {
+      finalized = true;
+      if (meta != null) {
+        return meta;
+      }
+      closeFiles();
+      int[] blockMapIds = new int[numBlocks];
+      long[] blockEnds = new long[numBlocks];
+      if (numBlocks > 0) {
+        byte[] entries = new byte[numBlocks * INDEX_ENTRY_SIZE];
+        RandomAccessFile index = new RandomAccessFile(indexFile, "r");
+        try {
+          index.readFully(entries);
+        } finally {
+          index.close();
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(entries);
+        for (int i = 0; i < numBlocks; i++) {
+          blockMapIds[i] = buffer.getInt();
+          blockEnds[i] = buffer.getLong();
+        }
+      }
+
+      long chunkSize = conf.mergedShuffleChunkSize();
+      long[] sizes = new long[numBlocks];
+      int[] chunkEnds = new int[numBlocks];
+      int numChunks = 0;
+      long chunkStart = 0;
+      for (int i = 0; i < numBlocks; i++) {
+        long start = i > 0 ? blockEnds[i - 1] : 0;
+        sizes[i] = blockEnds[i] - start;
+        if (start > chunkStart && blockEnds[i] - chunkStart > chunkSize) {
+          chunkEnds[numChunks++] = i;
+          chunkStart = start;
+        }
+      }
+      if (numBlocks > 0) {
+        chunkEnds[numChunks++] = numBlocks;
+      }
+      chunkEnds = Arrays.copyOf(chunkEnds, numChunks);
+      chunkOffsets = new long[numChunks + 1];
+      for (int i = 0; i < numChunks; i++) {
+        chunkOffsets[i + 1] = blockEnds[chunkEnds[i] - 1];
+      }
+      meta = new MergedBlockMeta(blockMapIds, sizes, chunkEnds);
+      return meta;
+    }
+
+    synchronized ManagedBuffer getChunk(int chunk) {
+      int numChunks = meta != null ? meta.chunkEnds.length : 0;
+      if (chunk < 0 || chunk >= numChunks) {
+        throw new IllegalArgumentException(
+          "Chunk " + chunk + " of a partition of " + numChunks + " merged chunks, finalized = "
+            + (meta != null));
+      }
+      return new FileSegmentManagedBuffer(conf, dataFile, chunkOffsets[chunk],
+        chunkOffsets[chunk + 1] - chunkOffsets[chunk]);
+    }
+
+    synchronized void deleteFiles() {
+      closeFiles();
+      if (dataFile != null && dataFile.exists() && !dataFile.delete()) {
+        logger.warn("Failed to delete merged shuffle file {}", dataFile);
+      }
+      if (indexFile != null && indexFile.exists() && !indexFile.delete()) {
+        logger.warn("Failed to delete merged shuffle file {}", indexFile);
+      }
+    }
+  }
+}
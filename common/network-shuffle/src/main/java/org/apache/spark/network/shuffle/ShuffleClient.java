@@ -18,6 +18,11 @@
 package org.apache.spark.network.shuffle;
 
 import java.io.Closeable;
+import java.util.Collections;
+import java.util.Map;
+
+import com.codahale.metrics.Metric;
+import com.codahale.metrics.MetricSet;
 
 /** Provides an interface for reading shuffle files, either from an Executor or external service. */
 public abstract class ShuffleClient implements Closeable {
@@ -41,4 +46,17 @@ public abstract class ShuffleClient implements Closeable {
       String execId,
       String[] blockIds,
       BlockFetchingListener listener);
+
+  /**
+   * Metrics of the transfers of this client, such as the memory used by its buffers. Only valid
+   * once the client is initialized; empty for clients that have none.
+   */
+  public MetricSet shuffleMetrics() {
+    return new MetricSet() {
+      @Override
+      public Map<String, Metric> getMetrics() {
+        return Collections.emptyMap();
+      }
+    };
+  }
 }
@@ -21,38 +21,117 @@ import java.io.DataInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
 import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import org.apache.spark.network.util.JavaUtils;
 
 /**
- * Keeps the index information for a particular map output
- * as an in-memory LongBuffer.
+ * Keeps the index information for a particular map output as a LongBuffer, either copied to the
+ * heap or memory-mapped from the index file.
+ *
+ * A mapping is released by {@link #dispose()} when the index leaves the cache; lookups that
+ * still hold the index then read the offsets from the file.
  */
 public class ShuffleIndexInformation {
   /** offsets as long buffer */
   private final LongBuffer offsets;
+  private final int size;
+  private final File indexFile;
+  /** The mapping behind `offsets`, null if they are on the heap */
+  private final MappedByteBuffer mapped;
+  /** Guarded by `this` */
+  private boolean disposed = false;
 
   public ShuffleIndexInformation(File indexFile) throws IOException {
-    int size = (int)indexFile.length();
-    ByteBuffer buffer = ByteBuffer.allocate(size);
-    offsets = buffer.asLongBuffer();
-    DataInputStream dis = null;
-    try {
-      dis = new DataInputStream(new FileInputStream(indexFile));
-      dis.readFully(buffer.array());
-    } finally {
-      if (dis != null) {
-        dis.close();
+    this(indexFile, false);
+  }
+
+  /**
+   * @param memoryMap whether to map the index file rather than read it into the heap; the
+   *                  offsets then live in the page cache and cost the heap nothing
+   */
+  public ShuffleIndexInformation(File indexFile, boolean memoryMap) throws IOException {
+    size = (int)indexFile.length();
+    this.indexFile = indexFile;
+    if (memoryMap) {
+      RandomAccessFile file = new RandomAccessFile(indexFile, "r");
+      try {
+        // The mapping stays valid once the file is closed
+        mapped = file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, size);
+        offsets = mapped.asLongBuffer();
+      } finally {
+        file.close();
+      }
+    } else {
+      mapped = null;
+      ByteBuffer buffer = ByteBuffer.allocate(size);
+      offsets = buffer.asLongBuffer();
+      DataInputStream dis = null;
+      try {
+        dis = new DataInputStream(new FileInputStream(indexFile));
+        dis.readFully(buffer.array());
+      } finally {
+        if (dis != null) {
+          dis.close();
+        }
       }
     }
   }
 
+  /**
+   * Size of the index file in bytes.
+   */
+  public int getSize() {
+    return size;
+  }
+
   /**
    * Get index offset for a particular reducer.
    */
-  public ShuffleIndexRecord getIndex(int reduceId) {
-    long offset = offsets.get(reduceId);
-    long nextOffset = offsets.get(reduceId + 1);
+  public ShuffleIndexRecord getIndex(int reduceId) throws IOException {
+    return getIndex(reduceId, reduceId + 1);
+  }
+
+  /**
+   * Get the segment of the contiguous reducers [startReduceId, endReduceId).
+   */
+  public ShuffleIndexRecord getIndex(int startReduceId, int endReduceId) throws IOException {
+    if (mapped == null) {
+      return record(offsets.get(startReduceId), offsets.get(endReduceId));
+    }
+    synchronized (this) {
+      if (!disposed) {
+        return record(offsets.get(startReduceId), offsets.get(endReduceId));
+      }
+    }
+    RandomAccessFile file = new RandomAccessFile(indexFile, "r");
+    try {
+      file.seek(startReduceId * 8L);
+      long offset = file.readLong();
+      file.seek(endReduceId * 8L);
+      return record(offset, file.readLong());
+    } finally {
+      file.close();
+    }
+  }
+
+  /** Unmaps the index file, if it is mapped. */
+  public void dispose() {
+    if (mapped != null) {
+      synchronized (this) {
+        if (!disposed) {
+          disposed = true;
+          JavaUtils.dispose(mapped);
+        }
+      }
+    }
+  }
+
+  private static ShuffleIndexRecord record(long offset, long nextOffset) {
     return new ShuffleIndexRecord(offset, nextOffset - offset);
   }
 }
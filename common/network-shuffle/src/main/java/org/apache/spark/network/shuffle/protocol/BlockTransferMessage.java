@@ -35,6 +35,9 @@ import org.apache.spark.network.shuffle.protocol.mesos.ShuffleServiceHeartbeat;
  *     shuffle service. It returns a StreamHandle.
  *   - UploadBlock is only handled by the NettyBlockTransferService.
  *   - RegisterExecutor is only handled by the external shuffle service.
+ *   - PushBlocks, FetchMergedBlockMeta and RemoveMergedShuffle are only handled by the external
+ *     shuffle service, which merges pushed blocks per reduce partition. FetchMergedBlockMeta
+ *     returns a MergedBlockMetas.
  */
 public abstract class BlockTransferMessage implements Encodable {
   protected abstract Type type();
@@ -42,7 +45,8 @@ public abstract class BlockTransferMessage implements Encodable {
   /** Preceding every serialized message is its type, which allows us to deserialize it. */
   public enum Type {
     OPEN_BLOCKS(0), UPLOAD_BLOCK(1), REGISTER_EXECUTOR(2), STREAM_HANDLE(3), REGISTER_DRIVER(4),
-    HEARTBEAT(5);
+    HEARTBEAT(5), PUSH_BLOCKS(6), FETCH_MERGED_BLOCK_META(7), MERGED_BLOCK_METAS(8),
+    REMOVE_MERGED_SHUFFLE(9);
 
     private final byte id;
 
@@ -67,6 +71,10 @@ public abstract class BlockTransferMessage implements Encodable {
         case 3: return StreamHandle.decode(buf);
         case 4: return RegisterDriver.decode(buf);
         case 5: return ShuffleServiceHeartbeat.decode(buf);
+        case 6: return PushBlocks.decode(buf);
+        case 7: return FetchMergedBlockMeta.decode(buf);
+        case 8: return MergedBlockMetas.decode(buf);
+        case 9: return RemoveMergedShuffle.decode(buf);
         default: throw new IllegalArgumentException("Unknown message type: " + type);
       }
     }
@@ -0,0 +1,99 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.spark.network.shuffle.protocol;
+
+import java.util.Arrays;
+
+import com.google.common.base.Objects;
+import io.netty.buffer.ByteBuf;
+
+import org.apache.spark.network.protocol.Encoders;
+
+// Needed by ScalaDoc. See SPARK-7726
+import static org.apache.spark.network.shuffle.protocol.BlockTransferMessage.Type;
+
+/**
+ * Request for the blocks merged into reduce partitions of a shuffle, all of them merged by the
+ * service the request is sent to. Once answered, the partitions take no more pushed blocks.
+ * Returns {@link MergedBlockMetas}, with the blocks of each partition in the order of
+ * {@code reduceIds}.
+ */
+public class FetchMergedBlockMeta extends BlockTransferMessage {
+  public final String appId;
+  public final int shuffleId;
+  public final int[] reduceIds;
+
+  public FetchMergedBlockMeta(String appId, int shuffleId, int[] reduceIds) {
+    this.appId = appId;
+    this.shuffleId = shuffleId;
+    this.reduceIds = reduceIds;
+  }
+
+  @Override
+  protected Type type() { return Type.FETCH_MERGED_BLOCK_META; }
+
+  @Override
+  public int hashCode() {
+    return Objects.hashCode(appId, shuffleId) * 41 + Arrays.hashCode(reduceIds);
+  }
+
+  @Override
+  public String toString() {
+    return Objects.toStringHelper(this)
+      .add("appId", appId)
+      .add("shuffleId", shuffleId)
+      .add("reduceIds", Arrays.toString(reduceIds))
+      .toString();
+  }
+
+  @Override
+  public boolean equals(Object other) {
+    if (other != null && other instanceof FetchMergedBlockMeta) {
+      FetchMergedBlockMeta o = (FetchMergedBlockMeta) other;
+      return Objects.equal(appId, o.appId)
+        && shuffleId == o.shuffleId
+        && Arrays.equals(reduceIds, o.reduceIds);
+    }
+    return false;
+  }
+
+  @Override
+  public int encodedLength() {
+    return Encoders.Strings.encodedLength(appId) + 4 + 4 + reduceIds.length * 4;
+  }
+
+  @Override
+  public void encode(ByteBuf buf) {
+    Encoders.Strings.encode(buf, appId);
+    buf.writeInt(shuffleId);
+    buf.writeInt(reduceIds.length);
+    for (int reduceId : reduceIds) {
+      buf.writeInt(reduceId);
+    }
+  }
+
+  public static FetchMergedBlockMeta decode(ByteBuf buf) {
+    String appId = Encoders.Strings.decode(buf);
+    int shuffleId = buf.readInt();
+    int[] reduceIds = new int[buf.readInt()];
+    for (int i = 0; i < reduceIds.length; i++) {
+      reduceIds[i] = buf.readInt();
+    }
+    return new FetchMergedBlockMeta(appId, shuffleId, reduceIds);
+  }
+}
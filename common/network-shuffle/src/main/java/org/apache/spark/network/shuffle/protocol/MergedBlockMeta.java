@@ -0,0 +1,101 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.spark.network.shuffle.protocol;
+
+import java.util.Arrays;
+
+import com.google.common.base.Objects;
+import io.netty.buffer.ByteBuf;
+
+import org.apache.spark.network.protocol.Encodable;
+
+/**
+ * The blocks merged into a reduce partition, in the order of the merged file: block {@code i} is
+ * the block of map {@code mapIds[i]} and holds {@code sizes[i]} bytes. The partition is served in
+ * chunks of consecutive blocks: chunk {@code i} holds the blocks from {@code chunkEnds[i - 1]}
+ * (0 for the first chunk) until {@code chunkEnds[i]}. Part of {@link MergedBlockMetas}.
+ */
+public class MergedBlockMeta implements Encodable {
+  public final int[] mapIds;
+  public final long[] sizes;
+  public final int[] chunkEnds;
+
+  public MergedBlockMeta(int[] mapIds, long[] sizes, int[] chunkEnds) {
+    this.mapIds = mapIds;
+    this.sizes = sizes;
+    this.chunkEnds = chunkEnds;
+  }
+
+  @Override
+  public int hashCode() {
+    return (Arrays.hashCode(mapIds) * 41 + Arrays.hashCode(sizes)) * 41
+      + Arrays.hashCode(chunkEnds);
+  }
+
+  @Override
+  public String toString() {
+    return Objects.toStringHelper(this)
+      .add("mapIds", Arrays.toString(mapIds))
+      .add("sizes", Arrays.toString(sizes))
+      .add("chunkEnds", Arrays.toString(chunkEnds))
+      .toString();
+  }
+
+  @Override
+  public boolean equals(Object other) {
+    if (other != null && other instanceof MergedBlockMeta) {
+      MergedBlockMeta o = (MergedBlockMeta) other;
+      return Arrays.equals(mapIds, o.mapIds) && Arrays.equals(sizes, o.sizes)
+        && Arrays.equals(chunkEnds, o.chunkEnds);
+    }
+    return false;
+  }
+
+  @Override
+  public int encodedLength() {
+    return 4 + mapIds.length * (4 + 8) + 4 + chunkEnds.length * 4;
+  }
+
+  @Override
+  public void encode(ByteBuf buf) {
+    buf.writeInt(mapIds.length);
+    for (int i = 0; i < mapIds.length; i++) {
+      buf.writeInt(mapIds[i]);
+      buf.writeLong(sizes[i]);
+    }
+    buf.writeInt(chunkEnds.length);
+    for (int chunkEnd : chunkEnds) {
+      buf.writeInt(chunkEnd);
+    }
+  }
+
+  public static MergedBlockMeta decode(ByteBuf buf) {
+    int numBlocks = buf.readInt();
+    int[] mapIds = new int[numBlocks];
+    long[] sizes = new long[numBlocks];
+    for (int i = 0; i < numBlocks; i++) {
+      mapIds[i] = buf.readInt();
+      sizes[i] = buf.readLong();
+    }
+    int[] chunkEnds = new int[buf.readInt()];
+    for (int i = 0; i < chunkEnds.length; i++) {
+      chunkEnds[i] = buf.readInt();
+    }
+    return new MergedBlockMeta(mapIds, sizes, chunkEnds);
+  }
+}
@@ -0,0 +1,87 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.spark.network.shuffle.protocol;
+
+import java.util.Arrays;
+
+import com.google.common.base.Objects;
+import io.netty.buffer.ByteBuf;
+
+// Needed by ScalaDoc. See SPARK-7726
+import static org.apache.spark.network.shuffle.protocol.BlockTransferMessage.Type;
+
+/**
+ * The blocks merged into the reduce partitions requested by a {@link FetchMergedBlockMeta}, one
+ * {@link MergedBlockMeta} per partition in the order of the request.
+ */
+public class MergedBlockMetas extends BlockTransferMessage {
+  public final MergedBlockMeta[] metas;
+
+  public MergedBlockMetas(MergedBlockMeta[] metas) {
+    this.metas = metas;
+  }
+
+  @Override
+  protected Type type() { return Type.MERGED_BLOCK_METAS; }
+
+  @Override
+  public int hashCode() {
+    return Arrays.hashCode(metas);
+  }
+
+  @Override
+  public String toString() {
+    return Objects.toStringHelper(this)
+      .add("metas", Arrays.toString(metas))
+      .toString();
+  }
+
+  @Override
+  public boolean equals(Object other) {
+    if (other != null && other instanceof MergedBlockMetas) {
+      MergedBlockMetas o = (MergedBlockMetas) other;
+      return Arrays.equals(metas, o.metas);
+    }
+    return false;
+  }
+
+  @Override
+  public int encodedLength() {
+    int length = 4;
+    for (MergedBlockMeta meta : metas) {
+      length += meta.encodedLength();
+    }
+    return length;
+  }
+
+  @Override
+  public void encode(ByteBuf buf) {
+    buf.writeInt(metas.length);
+    for (MergedBlockMeta meta : metas) {
+      meta.encode(buf);
+    }
+  }
+
+  public static MergedBlockMetas decode(ByteBuf buf) {
+    MergedBlockMeta[] metas = new MergedBlockMeta[buf.readInt()];
+    for (int i = 0; i < metas.length; i++) {
+      metas[i] = MergedBlockMeta.decode(buf);
+    }
+    return new MergedBlockMetas(metas);
+  }
+}
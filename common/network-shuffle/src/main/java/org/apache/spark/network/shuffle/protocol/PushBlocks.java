@@ -0,0 +1,117 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.spark.network.shuffle.protocol;
+
+import java.util.Arrays;
+
+import com.google.common.base.Objects;
+import io.netty.buffer.ByteBuf;
+
+import org.apache.spark.network.protocol.Encoders;
+
+// Needed by ScalaDoc. See SPARK-7726
+import static org.apache.spark.network.shuffle.protocol.BlockTransferMessage.Type;
+
+/**
+ * Request to merge blocks of a map output into the merged files of their reduce partitions, sent
+ * by the map task to the shuffle service chosen for these partitions. Block {@code i} holds the
+ * bytes of reduce partition {@code reduceIds[i]}, as written in the data file of the map output.
+ * Returns nothing (empty byte array); blocks that could not be merged are read from the map output.
+ */
+public class PushBlocks extends BlockTransferMessage {
+  public final String appId;
+  public final int shuffleId;
+  public final int mapId;
+  public final int[] reduceIds;
+  public final byte[][] blocks;
+
+  public PushBlocks(String appId, int shuffleId, int mapId, int[] reduceIds, byte[][] blocks) {
+    this.appId = appId;
+    this.shuffleId = shuffleId;
+    this.mapId = mapId;
+    this.reduceIds = reduceIds;
+    this.blocks = blocks;
+  }
+
+  @Override
+  protected Type type() { return Type.PUSH_BLOCKS; }
+
+  @Override
+  public int hashCode() {
+    int objectsHashCode = Objects.hashCode(appId, shuffleId, mapId);
+    return (objectsHashCode * 41 + Arrays.hashCode(reduceIds)) * 41 + Arrays.deepHashCode(blocks);
+  }
+
+  @Override
+  public String toString() {
+    return Objects.toStringHelper(this)
+      .add("appId", appId)
+      .add("shuffleId", shuffleId)
+      .add("mapId", mapId)
+      .add("reduceIds", Arrays.toString(reduceIds))
+      .toString();
+  }
+
+  @Override
+  public boolean equals(Object other) {
+    if (other != null && other instanceof PushBlocks) {
+      PushBlocks o = (PushBlocks) other;
+      return Objects.equal(appId, o.appId)
+        && shuffleId == o.shuffleId
+        && mapId == o.mapId
+        && Arrays.equals(reduceIds, o.reduceIds)
+        && Arrays.deepEquals(blocks, o.blocks);
+    }
+    return false;
+  }
+
+  @Override
+  public int encodedLength() {
+    int length = Encoders.Strings.encodedLength(appId) + 4 + 4 + 4;
+    for (byte[] block : blocks) {
+      length += 4 + Encoders.ByteArrays.encodedLength(block);
+    }
+    return length;
+  }
+
+  @Override
+  public void encode(ByteBuf buf) {
+    Encoders.Strings.encode(buf, appId);
+    buf.writeInt(shuffleId);
+    buf.writeInt(mapId);
+    buf.writeInt(blocks.length);
+    for (int i = 0; i < blocks.length; i++) {
+      buf.writeInt(reduceIds[i]);
+      Encoders.ByteArrays.encode(buf, blocks[i]);
+    }
+  }
+
+  public static PushBlocks decode(ByteBuf buf) {
+    String appId = Encoders.Strings.decode(buf);
+    int shuffleId = buf.readInt();
+    int mapId = buf.readInt();
+    int numBlocks = buf.readInt();
+    int[] reduceIds = new int[numBlocks];
+    byte[][] blocks = new byte[numBlocks][];
+    for (int i = 0; i < numBlocks; i++) {
+      reduceIds[i] = buf.readInt();
+      blocks[i] = Encoders.ByteArrays.decode(buf);
+    }
+    return new PushBlocks(appId, shuffleId, mapId, reduceIds, blocks);
+  }
+}
@@ -33,6 +33,13 @@ public class BlockTransferMessagesSuite {
     checkSerializeDeserialize(new UploadBlock("app-1", "exec-2", "block-3", new byte[] { 1, 2 },
       new byte[] { 4, 5, 6, 7} ));
     checkSerializeDeserialize(new StreamHandle(12345, 16));
+    checkSerializeDeserialize(new PushBlocks("app-1", 3, 4, new int[] { 0, 5 },
+      new byte[][] { new byte[] { 1, 2 }, new byte[] { 3 } }));
+    checkSerializeDeserialize(new FetchMergedBlockMeta("app-1", 3, new int[] { 5, 9 }));
+    checkSerializeDeserialize(new MergedBlockMetas(new MergedBlockMeta[] {
+      new MergedBlockMeta(new int[] { 4, 1, 6 }, new long[] { 2, 7, 3 }, new int[] { 1, 3 }),
+      new MergedBlockMeta(new int[0], new long[0], new int[0]) }));
+    checkSerializeDeserialize(new RemoveMergedShuffle("app-1", 3));
   }
 
   private void checkSerializeDeserialize(BlockTransferMessage msg) {
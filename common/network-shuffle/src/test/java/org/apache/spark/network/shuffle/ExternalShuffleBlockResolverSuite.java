@@ -17,14 +17,19 @@
 
 package org.apache.spark.network.shuffle;
 
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.nio.charset.StandardCharsets;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.io.CharStreams;
 import org.apache.spark.network.shuffle.protocol.ExecutorShuffleInfo;
+import org.apache.spark.network.util.MapConfigProvider;
 import org.apache.spark.network.util.SystemPropertyConfigProvider;
 import org.apache.spark.network.util.TransportConf;
 import org.apache.spark.network.shuffle.ExternalShuffleBlockResolver.AppExecId;
@@ -112,6 +117,80 @@ public class ExternalShuffleBlockResolverSuite {
     assertEquals(sortBlock1, block1);
   }
 
+  @Test
+  public void testSortShuffleBlockBatch() throws IOException {
+    ExternalShuffleBlockResolver resolver = new ExternalShuffleBlockResolver(conf, null);
+    resolver.registerExecutor("app0", "exec0",
+      dataContext.createExecutorInfo(SORT_MANAGER));
+
+    InputStream batchStream =
+      resolver.getBlockData("app0", "exec0", "shuffle_0_0_0_2").createInputStream();
+    String batch = CharStreams.toString(
+        new InputStreamReader(batchStream, StandardCharsets.UTF_8));
+    batchStream.close();
+    assertEquals(sortBlock0 + sortBlock1, batch);
+
+    try {
+      resolver.getBlockData("app0", "exec0", "shuffle_0_0_1_1");
+      fail("Should have failed");
+    } catch (IllegalArgumentException e) {
+      // pass
+    }
+  }
+
+  @Test
+  public void testSortShuffleBlocksWithMappedIndex() throws IOException {
+    TransportConf mmapConf = new TransportConf("shuffle", new MapConfigProvider(
+      ImmutableMap.of("spark.shuffle.service.index.mmap", "true")));
+    ExternalShuffleBlockResolver resolver = new ExternalShuffleBlockResolver(mmapConf, null);
+    resolver.registerExecutor("app0", "exec0",
+      dataContext.createExecutorInfo(SORT_MANAGER));
+
+    InputStream block1Stream =
+      resolver.getBlockData("app0", "exec0", "shuffle_0_0_1").createInputStream();
+    String block1 = CharStreams.toString(
+        new InputStreamReader(block1Stream, StandardCharsets.UTF_8));
+    block1Stream.close();
+    assertEquals(sortBlock1, block1);
+
+    InputStream block0Stream =
+      resolver.getBlockData("app0", "exec0", "shuffle_0_0_0").createInputStream();
+    String block0 = CharStreams.toString(
+        new InputStreamReader(block0Stream, StandardCharsets.UTF_8));
+    block0Stream.close();
+    assertEquals(sortBlock0, block0);
+
+    // The index was loaded once, and weighs its 3 offsets
+    assertEquals(1, resolver.getIndexCacheStats().missCount());
+    assertEquals(1, resolver.getIndexCacheStats().hitCount());
+    assertEquals(3 * 8, resolver.getIndexCacheBytes());
+  }
+
+  @Test
+  public void disposedMappedIndexReadsTheIndexFile() throws IOException {
+    File indexFile = File.createTempFile("shuffle", ".index");
+    try {
+      DataOutputStream out = new DataOutputStream(new FileOutputStream(indexFile));
+      try {
+        out.writeLong(0);
+        out.writeLong(6);
+        out.writeLong(13);
+      } finally {
+        out.close();
+      }
+      ShuffleIndexInformation index = new ShuffleIndexInformation(indexFile, true);
+      assertEquals(7, index.getIndex(1).getLength());
+
+      index.dispose();
+      index.dispose();
+      assertEquals(6, index.getIndex(1).getOffset());
+      assertEquals(7, index.getIndex(1).getLength());
+      assertEquals(13, index.getIndex(0, 2).getLength());
+    } finally {
+      indexFile.delete();
+    }
+  }
+
   @Test
   public void jsonSerializationOfExecutorRegistration() throws IOException {
     ObjectMapper mapper = new ObjectMapper();
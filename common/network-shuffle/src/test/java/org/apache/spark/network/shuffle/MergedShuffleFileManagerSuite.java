@@ -0,0 +1,156 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.spark.network.shuffle;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+
+import com.google.common.io.CharStreams;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+import org.apache.spark.network.shuffle.protocol.MergedBlockMeta;
+import org.apache.spark.network.shuffle.protocol.PushBlocks;
+import org.apache.spark.network.util.SystemPropertyConfigProvider;
+import org.apache.spark.network.util.TransportConf;
+
+public class MergedShuffleFileManagerSuite {
+  private static final String SORT_MANAGER = "org.apache.spark.shuffle.sort.SortShuffleManager";
+
+  private static TestShuffleDataContext dataContext;
+
+  private static final TransportConf conf =
+      new TransportConf("shuffle", new SystemPropertyConfigProvider());
+
+  @BeforeClass
+  public static void beforeAll() throws IOException {
+    dataContext = new TestShuffleDataContext(2, 5);
+    dataContext.create();
+  }
+
+  @AfterClass
+  public static void afterAll() {
+    dataContext.cleanup();
+  }
+
+  private static byte[] bytes(String s) {
+    return s.getBytes(StandardCharsets.UTF_8);
+  }
+
+  private static String read(MergedShuffleFileManager manager, String blockId)
+      throws IOException {
+    InputStream stream = manager.getMergedBlockData("app0", blockId).createInputStream();
+    try {
+      return CharStreams.toString(new InputStreamReader(stream, StandardCharsets.UTF_8));
+    } finally {
+      stream.close();
+    }
+  }
+
+  @Test
+  public void testMergePushedBlocks() throws IOException {
+    ExternalShuffleBlockResolver resolver = new ExternalShuffleBlockResolver(conf, null);
+    MergedShuffleFileManager manager = new MergedShuffleFileManager(resolver);
+
+    // Nothing is merged before an executor of the application is registered
+    manager.pushBlocks(new PushBlocks("app0", 0, 0, new int[] { 0 },
+      new byte[][] { bytes("lost") }));
+    resolver.registerExecutor("app0", "exec0", dataContext.createExecutorInfo(SORT_MANAGER));
+
+    assertEquals(11, manager.pushBlocks(new PushBlocks("app0", 0, 2, new int[] { 0, 1 },
+      new byte[][] { bytes("Hello"), bytes("World!") })));
+    assertEquals(6, manager.pushBlocks(new PushBlocks("app0", 0, 0, new int[] { 0 },
+      new byte[][] { bytes("Hello!") })));
+    // A block of a map already merged into the partition is skipped
+    assertEquals(0, manager.pushBlocks(new PushBlocks("app0", 0, 2, new int[] { 0 },
+      new byte[][] { bytes("again") })));
+
+    MergedBlockMeta meta = manager.getMergedBlockMeta("app0", 0, 0);
+    assertArrayEquals(new int[] { 2, 0 }, meta.mapIds);
+    assertArrayEquals(new long[] { 5, 6 }, meta.sizes);
+    // Both blocks fit in one chunk
+    assertArrayEquals(new int[] { 2 }, meta.chunkEnds);
+    assertEquals("HelloHello!", read(manager, "shuffleMerged_0_0_0"));
+
+    // The partition is finalized, while the other one still takes blocks
+    assertEquals(3, manager.pushBlocks(new PushBlocks("app0", 0, 1, new int[] { 0, 1 },
+      new byte[][] { bytes("ignored"), bytes("Bye") })));
+    assertEquals(meta, manager.getMergedBlockMeta("app0", 0, 0));
+    MergedBlockMeta meta1 = manager.getMergedBlockMeta("app0", 0, 1);
+    assertArrayEquals(new int[] { 2, 1 }, meta1.mapIds);
+    assertEquals("World!Bye", read(manager, "shuffleMerged_0_1_0"));
+
+    // A partition nothing was pushed to is finalized empty
+    MergedBlockMeta empty = manager.getMergedBlockMeta("app0", 1, 0);
+    assertEquals(0, empty.mapIds.length);
+    assertEquals(0, empty.chunkEnds.length);
+
+    try {
+      manager.getMergedBlockData("app0", "shuffleMerged_0_0_1");
+      fail("Should have failed");
+    } catch (IllegalArgumentException e) {
+      // pass
+    }
+
+    // Removing a shuffle leaves the partitions of the others
+    manager.removeShuffle("app0", 0);
+    assertEquals(1, manager.getMergedPartitionsSize());
+    try {
+      manager.getMergedBlockData("app0", "shuffleMerged_0_1_0");
+      fail("Should have failed");
+    } catch (IllegalArgumentException e) {
+      // pass
+    }
+
+    manager.applicationRemoved("app0");
+    assertEquals(0, manager.getMergedPartitionsSize());
+  }
+
+  @Test
+  public void testChunksOfConsecutiveBlocks() throws IOException {
+    System.setProperty("spark.shuffle.push.mergedChunkSize", "8");
+    try {
+      ExternalShuffleBlockResolver resolver = new ExternalShuffleBlockResolver(conf, null);
+      MergedShuffleFileManager manager = new MergedShuffleFileManager(resolver);
+      resolver.registerExecutor("app0", "exec0", dataContext.createExecutorInfo(SORT_MANAGER));
+      String[] blocks = { "a", "bc", "defgh", "ijklmnopq", "r" };
+      for (int mapId = 0; mapId < blocks.length; mapId++) {
+        manager.pushBlocks(new PushBlocks("app0", 0, mapId, new int[] { 0 },
+          new byte[][] { bytes(blocks[mapId]) }));
+      }
+
+      // Blocks are added to a chunk while it stays within 8 bytes, a larger block is a chunk of
+      // its own
+      MergedBlockMeta meta = manager.getMergedBlockMeta("app0", 0, 0);
+      assertArrayEquals(new long[] { 1, 2, 5, 9, 1 }, meta.sizes);
+      assertArrayEquals(new int[] { 3, 4, 5 }, meta.chunkEnds);
+      assertEquals("abcdefgh", read(manager, "shuffleMerged_0_0_0"));
+      assertEquals("ijklmnopq", read(manager, "shuffleMerged_0_0_1"));
+      assertEquals("r", read(manager, "shuffleMerged_0_0_2"));
+
+      manager.applicationRemoved("app0");
+    } finally {
+      System.clearProperty("spark.shuffle.push.mergedChunkSize");
+    }
+  }
+}
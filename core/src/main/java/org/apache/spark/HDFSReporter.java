@@ -23,15 +23,21 @@ import org.apache.hadoop.fs.FSDataOutputStream;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
 import org.apache.spark.deploy.SparkHadoopUtil;
+import org.apache.spark.metrics.hdfs.ExecutorMetricsFormat;
+import org.apache.spark.metrics.hdfs.ExecutorMetricsIndex;
+import org.apache.spark.metrics.hdfs.ExecutorMetricsPipeline;
+import org.apache.spark.metrics.hdfs.ExecutorMetricsWriter;
+import org.apache.spark.metrics.sink.MetricPath;
+import org.apache.spark.metrics.sink.MetricValues;
 import org.apache.spark.util.Utils;
-import org.json.JSONObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileWriter;
-import java.io.OutputStreamWriter;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.nio.file.Paths;
@@ -52,6 +58,13 @@ public class HDFSReporter extends ScheduledReporter {
         private TimeUnit durationUnit;
         private Clock clock;
         private MetricFilter filter;
+        private ExecutorMetricsFormat format;
+        private int pointsPerBlock;
+        private ExecutorMetricsPipeline.Durability durability;
+        private int queueSize;
+        private int batchTicks;
+        private long batchMillis;
+        private long indexInterval;
 
         private Builder(MetricRegistry registry) {
             this.registry = registry;
@@ -59,6 +72,13 @@ public class HDFSReporter extends ScheduledReporter {
             this.durationUnit = TimeUnit.MILLISECONDS;
             this.clock = Clock.defaultClock();
             this.filter = MetricFilter.ALL;
+            this.format = ExecutorMetricsFormat.JSON;
+            this.pointsPerBlock = 60;
+            this.durability = ExecutorMetricsPipeline.Durability.HSYNC;
+            this.queueSize = 1024;
+            this.batchTicks = 1;
+            this.batchMillis = 0;
+            this.indexInterval = 60;
         }
 
         /**
@@ -106,11 +126,82 @@ public class HDFSReporter extends ScheduledReporter {
         }
 
         /**
-         * Builds a {@link CsvReporter} with the given properties, writing {@code .csv} files to the
-         * given directory.
+         * Write the metrics files in the given format.
          *
-         * @param directory the directory in which the {@code .csv} files will be created
-         * @return a {@link CsvReporter}
+         * @param format an {@link ExecutorMetricsFormat}
+         * @return {@code this}
+         */
+        public Builder withFormat(ExecutorMetricsFormat format) {
+            this.format = format;
+            return this;
+        }
+
+        /**
+         * Number of ticks buffered per block by block oriented formats. The file is synced
+         * once per block.
+         *
+         * @param pointsPerBlock ticks per block
+         * @return {@code this}
+         */
+        public Builder pointsPerBlock(int pointsPerBlock) {
+            this.pointsPerBlock = pointsPerBlock;
+            return this;
+        }
+
+        /**
+         * What to do with the file after every batch of ticks is written.
+         *
+         * @param durability an {@link ExecutorMetricsPipeline.Durability}
+         * @return {@code this}
+         */
+        public Builder withDurability(ExecutorMetricsPipeline.Durability durability) {
+            this.durability = durability;
+            return this;
+        }
+
+        /**
+         * Number of ticks that can wait to be written before new ticks are dropped.
+         *
+         * @param queueSize capacity of the ring buffer between sampling and writing
+         * @return {@code this}
+         */
+        public Builder queueSize(int queueSize) {
+            this.queueSize = queueSize;
+            return this;
+        }
+
+        /**
+         * Write queued ticks once {@code batchTicks} ticks are queued or the oldest one has
+         * waited {@code batchMillis} milliseconds, whichever comes first.
+         *
+         * @param batchTicks ticks per batch
+         * @param batchMillis maximum time a tick waits to be written
+         * @return {@code this}
+         */
+        public Builder batch(int batchTicks, long batchMillis) {
+            this.batchTicks = batchTicks;
+            this.batchMillis = batchMillis;
+            return this;
+        }
+
+        /**
+         * Width of the time buckets of the sidecar index written next to every metrics file
+         * when the reporter stops.
+         *
+         * @param indexInterval bucket width in seconds, the unit of the reported timestamps
+         * @return {@code this}
+         */
+        public Builder indexInterval(long indexInterval) {
+            this.indexInterval = indexInterval;
+            return this;
+        }
+
+        /**
+         * Builds a {@link HDFSReporter} with the given properties, writing one file per executor
+         * under {@code <directory>/<app id>}.
+         *
+         * @param directory the directory in which the per application folders will be created
+         * @return a {@link HDFSReporter}
          */
         public HDFSReporter build(String directory) {
             return new HDFSReporter(registry,
@@ -118,7 +209,14 @@ public class HDFSReporter extends ScheduledReporter {
                     rateUnit,
                     durationUnit,
                     clock,
-                    filter);
+                    filter,
+                    format,
+                    pointsPerBlock,
+                    durability,
+                    queueSize,
+                    batchTicks,
+                    batchMillis,
+                    indexInterval);
         }
     }
 
@@ -129,20 +227,44 @@ public class HDFSReporter extends ScheduledReporter {
     private Configuration configuration;
     private FileSystem fileSystem;
     private FSDataOutputStream hadoopDataStream;
-    private BufferedWriter writer;
+    private ExecutorMetricsPipeline pipeline;
+    private final MetricRegistry registry;
     private final Clock clock;
-    private long previousTimestamp = 0;
-    private HashMap bufferEntries = new HashMap();
+    private final ExecutorMetricsFormat format;
+    private final int pointsPerBlock;
+    private final ExecutorMetricsPipeline.Durability durability;
+    private final int queueSize;
+    private final int batchTicks;
+    private final long batchMillis;
+    private final long indexInterval;
+    private final MetricValues tickValues = new MetricValues();
+    private String metricsFile;
+    private ExecutorMetricsIndex.Recorder indexRecorder;
 
     private HDFSReporter(MetricRegistry registry,
                          String directory,
                          TimeUnit rateUnit,
                          TimeUnit durationUnit,
                          Clock clock,
-                         MetricFilter filter) {
+                         MetricFilter filter,
+                         ExecutorMetricsFormat format,
+                         int pointsPerBlock,
+                         ExecutorMetricsPipeline.Durability durability,
+                         int queueSize,
+                         int batchTicks,
+                         long batchMillis,
+                         long indexInterval) {
         super(registry, "hdfs-reporter", filter, rateUnit, durationUnit);
+        this.registry = registry;
         this.directory = directory;
         this.clock = clock;
+        this.format = format;
+        this.pointsPerBlock = pointsPerBlock;
+        this.durability = durability;
+        this.queueSize = queueSize;
+        this.batchTicks = batchTicks;
+        this.batchMillis = batchMillis;
+        this.indexInterval = indexInterval;
     }
 
     @Override
@@ -172,97 +294,49 @@ public class HDFSReporter extends ScheduledReporter {
         for (Map.Entry<String, Timer> entry : timers.entrySet()) {
             reportTimer(timestamp, entry.getKey(), entry.getValue());
         }
+
+        // Hand the tick over to the flusher, the reporter thread never waits for HDFS
+        if (pipeline != null && !tickValues.isEmpty()) {
+            pipeline.offer(timestamp, tickValues);
+        }
+        tickValues.clear();
     }
 
+    // Only the count of timers, meters and histograms is stored, so their snapshots (a copy of
+    // the whole reservoir) are not taken.
     private void reportTimer(long timestamp, String name, Timer timer) {
-        final Snapshot snapshot = timer.getSnapshot();
-
-        report(timestamp,
-                name,
-                "count,max,mean,min,stddev,p50,p75,p95,p98,p99,p999,mean_rate,m1_rate,m5_rate,m15_rate,rate_unit,duration_unit",
-                "%d,%f,%f,%f,%f,%f,%f,%f,%f,%f,%f,%f,%f,%f,%f,calls/%s,%s",
-                timer.getCount(),
-                convertDuration(snapshot.getMax()),
-                convertDuration(snapshot.getMean()),
-                convertDuration(snapshot.getMin()),
-                convertDuration(snapshot.getStdDev()),
-                convertDuration(snapshot.getMedian()),
-                convertDuration(snapshot.get75thPercentile()),
-                convertDuration(snapshot.get95thPercentile()),
-                convertDuration(snapshot.get98thPercentile()),
-                convertDuration(snapshot.get99thPercentile()),
-                convertDuration(snapshot.get999thPercentile()),
-                convertRate(timer.getMeanRate()),
-                convertRate(timer.getOneMinuteRate()),
-                convertRate(timer.getFiveMinuteRate()),
-                convertRate(timer.getFifteenMinuteRate()),
-                getRateUnit(),
-                getDurationUnit());
+        report(name, timer.getCount());
     }
 
     private void reportMeter(long timestamp, String name, Meter meter) {
-        report(timestamp,
-                name,
-                "count,mean_rate,m1_rate,m5_rate,m15_rate,rate_unit",
-                "%d,%f,%f,%f,%f,events/%s",
-                meter.getCount(),
-                convertRate(meter.getMeanRate()),
-                convertRate(meter.getOneMinuteRate()),
-                convertRate(meter.getFiveMinuteRate()),
-                convertRate(meter.getFifteenMinuteRate()),
-                getRateUnit());
+        report(name, meter.getCount());
     }
 
     private void reportHistogram(long timestamp, String name, Histogram histogram) {
-        final Snapshot snapshot = histogram.getSnapshot();
-
-        report(timestamp,
-                name,
-                "count,max,mean,min,stddev,p50,p75,p95,p98,p99,p999",
-                "%d,%d,%f,%d,%f,%f,%f,%f,%f,%f,%f",
-                histogram.getCount(),
-                snapshot.getMax(),
-                snapshot.getMean(),
-                snapshot.getMin(),
-                snapshot.getStdDev(),
-                snapshot.getMedian(),
-                snapshot.get75thPercentile(),
-                snapshot.get95thPercentile(),
-                snapshot.get98thPercentile(),
-                snapshot.get99thPercentile(),
-                snapshot.get999thPercentile());
+        report(name, histogram.getCount());
     }
 
     private void reportCounter(long timestamp, String name, Counter counter) {
-        report(timestamp, name, "count", "%d", counter.getCount());
+        report(name, counter.getCount());
     }
 
     private void reportGauge(long timestamp, String name, Gauge gauge) {
-        report(timestamp, name, "value", "%s", gauge.getValue());
+        report(name, gauge.getValue());
     }
 
-    private void report(long timestamp, String name, String header, String line, Object... values) {
+    private void report(String name, Object value) {
         try {
-            String[] stringArr = name.split("\\.");
-            String firstEntry = stringArr[0];
-            String appId = "";
-            if(!firstEntry.startsWith("app")) return;
-            else appId = firstEntry;
-
-            executorId = stringArr[1];
-
-            try{
-                Integer.parseInt(executorId);
-            } catch (Exception e)
-            {
-                return;
-            }
+            // Names are parsed once and cached, nothing is split or copied per tick
+            MetricPath path = MetricPath.of(name);
+            if (!path.isExecutorMetric()) return;
+
+            executorId = path.executorId();
 
-            if (previousTimestamp==0) {
+            if (pipeline == null) {
                 boolean directoryCreated = false;
                 if(setHadoopConf())
                 {
-                    if(createWriter(appId,executorId))
+                    if(createWriter(path.appId(),executorId))
                     {
                         directoryCreated = true;
                     }
@@ -270,37 +344,7 @@ public class HDFSReporter extends ScheduledReporter {
                 if(!directoryCreated) return;
             }
 
-            if (previousTimestamp == 0 || previousTimestamp == timestamp) {
-                String[] keyArr = Arrays.copyOfRange(stringArr, 3, stringArr.length);
-                List<String> entries = new ArrayList<String>();
-                for (int i = 0; i < keyArr.length ; i++) {
-                    entries.add(keyArr[i]);
-                }
-                putLeaf(entries,0,bufferEntries,values[0]);
-            } else {
-
-                HashMap finalMapToWrite = new HashMap();
-                finalMapToWrite.put("timestamp",previousTimestamp);
-                finalMapToWrite.put("values", bufferEntries);
-                finalMapToWrite.put("host", localhost+"_"+executorId);
-                String entryString = new JSONObject(finalMapToWrite).toString();
-                writer.write(entryString);
-                writer.newLine();
-                writer.flush();
-                if (hadoopDataStream != null) {
-                    hadoopDataStream.flush();
-                    hadoopDataStream.hsync();
-                }
-                bufferEntries.clear();
-
-                String[] keyArr = Arrays.copyOfRange(stringArr, 3, stringArr.length);
-                List<String> entries = new ArrayList<String>();
-                for (int i = 0; i < keyArr.length ; i++) {
-                    entries.add(keyArr[i]);
-                }
-                putLeaf(entries, 0, bufferEntries, values[0]);
-            }
-            previousTimestamp = timestamp;
+            tickValues.add(path, value);
         } catch (Exception e) {
             LOGGER.warn("Error writing to {}", name, e);
         }
@@ -320,7 +364,7 @@ public class HDFSReporter extends ScheduledReporter {
             if (!fileSystem.exists(appFolder)) {
                 fileSystem.mkdirs(appFolder);
             }
-            String pathString = directory + File.separator + appId + File.separator + localhost +"_"+executorId+".json";
+            String pathString = directory + File.separator + appId + File.separator + localhost +"_"+executorId+format.fileSuffix();
             Path finalPath = new Path(pathString);
             if (!fileSystem.exists(finalPath)) {
                 fileSystem.createNewFile(finalPath);
@@ -333,11 +377,16 @@ public class HDFSReporter extends ScheduledReporter {
                     outputFile.getParentFile().mkdirs();
                     outputFile.createNewFile();
                 }
-                writer = new BufferedWriter(new FileWriter(Paths.get(new URI(pathString)).toFile()));
+                OutputStream localStream = new FileOutputStream(Paths.get(new URI(pathString)).toFile());
+                indexRecorder = new ExecutorMetricsIndex.Recorder(0, indexInterval);
+                createPipeline(format.newWriter(localStream, localhost + "_" + executorId, pointsPerBlock, indexRecorder));
             } else {
                 hadoopDataStream = fileSystem.append(finalPath);
-                writer = new BufferedWriter(new OutputStreamWriter(hadoopDataStream));
+                // Appending after what earlier sessions wrote, offsets are relative to the file
+                indexRecorder = new ExecutorMetricsIndex.Recorder(hadoopDataStream.getPos(), indexInterval);
+                createPipeline(format.newWriter(hadoopDataStream, localhost + "_" + executorId, pointsPerBlock, indexRecorder));
             }
+            metricsFile = pathString;
         } catch (Exception e) {
             e.printStackTrace();
             LOGGER.error("Exception when trying to create writer", e);
@@ -346,6 +395,11 @@ public class HDFSReporter extends ScheduledReporter {
         return true;
     }
 
+    private void createPipeline(ExecutorMetricsWriter writer) {
+        pipeline = new ExecutorMetricsPipeline(writer, hadoopDataStream, durability, queueSize,
+                batchTicks, batchMillis, registry, MetricRegistry.name("HDFSSink", "pipeline"));
+    }
+
     private boolean setHadoopConf() {
         configuration = SparkHadoopUtil.get().newConfiguration(null);
         try {
@@ -362,44 +416,56 @@ public class HDFSReporter extends ScheduledReporter {
         return name;
     }
 
-    public void putLeaf(List<String> entries, int index, HashMap originalMap, Object value)
-    {
-        String entry = entries.get(index);
-        Object originalObj = originalMap.get(entry);
-        if(originalObj instanceof HashMap || originalObj == null) {
-            HashMap existing = (HashMap) originalObj;
-            if (existing == null) existing = new HashMap();
-            if (index == entries.size() - 1) {
-                originalMap.put(entry, value);
-            } else {
-                originalMap.put(entry, existing);
-                putLeaf(entries, index + 1, existing, value);
+    public void stop(){
+        super.stop();
+        try {
+            if (pipeline != null) {
+                pipeline.stop(TimeUnit.SECONDS.toMillis(30));
+                writeIndex();
             }
+        } catch (Exception e) {
+            e.printStackTrace();
+            LOGGER.error("Exception when flush writes to HDFS", e);
         }
     }
 
-    public void stop(){
-        super.stop();
+    /**
+     * Adds the segment written by this reporter to the sidecar index of the metrics file. The
+     * index is only written once the file is complete, readers scan whatever it does not cover.
+     */
+    private void writeIndex() {
+        if (indexRecorder == null || !indexRecorder.isFinished()) {
+            return;
+        }
+        String indexString = metricsFile + ExecutorMetricsIndex.SUFFIX;
         try {
-            if(writer!=null) {
-                HashMap finalMapToWrite = new HashMap();
-                finalMapToWrite.put("timestamp",previousTimestamp);
-                finalMapToWrite.put("values", bufferEntries);
-                finalMapToWrite.put("host", localhost+"_"+executorId);
-                String entryString = new JSONObject(finalMapToWrite).toString();
-                writer.write(entryString);
-                writer.newLine();
-                writer.flush();
-                if (hadoopDataStream != null) {
-                    hadoopDataStream.flush();
-                    hadoopDataStream.hsync();
+            ExecutorMetricsIndex.Segment segment = indexRecorder.toSegment();
+            List<ExecutorMetricsIndex.Segment> segments = Collections.emptyList();
+            // Support local cluster mode
+            if (fileSystem.getScheme() == "file") {
+                File indexFile = Paths.get(new URI(indexString)).toFile();
+                if (segment.startOffset() > 0 && indexFile.exists()) {
+                    try (InputStream in = new FileInputStream(indexFile)) {
+                        segments = ExecutorMetricsIndex.read(in);
+                    }
+                }
+                try (OutputStream out = new FileOutputStream(indexFile)) {
+                    ExecutorMetricsIndex.write(ExecutorMetricsIndex.append(segments, segment), out);
+                }
+            } else {
+                Path indexPath = new Path(indexString);
+                if (segment.startOffset() > 0 && fileSystem.exists(indexPath)) {
+                    try (InputStream in = fileSystem.open(indexPath)) {
+                        segments = ExecutorMetricsIndex.read(in);
+                    }
+                }
+                try (OutputStream out = fileSystem.create(indexPath, true)) {
+                    ExecutorMetricsIndex.write(ExecutorMetricsIndex.append(segments, segment), out);
                 }
-                writer.close();
             }
         } catch (Exception e) {
-            e.printStackTrace();
-            LOGGER.error("Exception when flush writes to HDFS", e);
+            LOGGER.warn("Could not write the index of {}", metricsFile, e);
         }
     }
 
-}
\ No newline at end of file
+}
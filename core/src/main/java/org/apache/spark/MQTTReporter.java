@@ -2,12 +2,15 @@ package org.apache.spark;
 
 import com.codahale.metrics.*;
 import com.codahale.metrics.Timer;
+import org.apache.spark.metrics.sink.MetricPath;
+import org.apache.spark.metrics.sink.MetricValues;
+import org.apache.spark.metrics.sink.MetricsJsonSerializer;
+import org.apache.spark.metrics.sink.MqttMetricMessages;
 import org.apache.spark.util.Utils;
 import org.eclipse.paho.client.mqttv3.MqttClient;
 import org.eclipse.paho.client.mqttv3.MqttConnectOptions;
 import org.eclipse.paho.client.mqttv3.MqttMessage;
 import org.eclipse.paho.client.mqttv3.persist.MemoryPersistence;
-import org.json.JSONObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -19,8 +22,21 @@ import java.util.concurrent.TimeUnit;
  */
 public class MQTTReporter extends ScheduledReporter {
 
+    /** How the metrics of a tick are split into messages. */
+    public enum Layout {
+        /** One topic per metric, see {@link MqttMetricMessages}. */
+        METRIC,
+        /** All the metrics of a tick in one JSON message on {@code metrics-<app id>}. */
+        EXECUTOR;
+
+        public static Layout fromString(String name) {
+            return valueOf(name.toUpperCase(Locale.ROOT));
+        }
+    }
+
     private String executorId;
     private String appId;
+    private String hostKey;
 
     public static Builder forRegistry(MetricRegistry registry) {
         return new Builder(registry);
@@ -32,6 +48,10 @@ public class MQTTReporter extends ScheduledReporter {
         private TimeUnit durationUnit;
         private Clock clock;
         private MetricFilter filter;
+        private int qos;
+        private Layout layout;
+        private MqttMetricMessages.Payload payload;
+        private int batchTicks;
 
         private Builder(MetricRegistry registry) {
             this.registry = registry;
@@ -39,6 +59,10 @@ public class MQTTReporter extends ScheduledReporter {
             this.durationUnit = TimeUnit.MILLISECONDS;
             this.clock = Clock.defaultClock();
             this.filter = MetricFilter.ALL;
+            this.qos = 0;
+            this.layout = Layout.METRIC;
+            this.payload = MqttMetricMessages.Payload.JSON;
+            this.batchTicks = 1;
         }
 
         /**
@@ -85,6 +109,58 @@ public class MQTTReporter extends ScheduledReporter {
             return this;
         }
 
+        /**
+         * MQTT quality of service of the metrics messages: 0 (at most once, the default, enough
+         * for live plots), 1 (at least once) or 2 (exactly once).
+         *
+         * @param qos the quality of service
+         * @return {@code this}
+         */
+        public Builder qos(int qos) {
+            if (qos < 0 || qos > 2) {
+                throw new IllegalArgumentException("MQTT QoS must be 0, 1 or 2: " + qos);
+            }
+            this.qos = qos;
+            return this;
+        }
+
+        /**
+         * Split the metrics of a tick into messages according to the given layout.
+         *
+         * @param layout a {@link Layout}
+         * @return {@code this}
+         */
+        public Builder withLayout(Layout layout) {
+            this.layout = layout;
+            return this;
+        }
+
+        /**
+         * Encode the messages of the {@link Layout#METRIC} layout with the given payload.
+         *
+         * @param payload a {@link MqttMetricMessages.Payload}
+         * @return {@code this}
+         */
+        public Builder withPayload(MqttMetricMessages.Payload payload) {
+            this.payload = payload;
+            return this;
+        }
+
+        /**
+         * Publish the messages of the {@link Layout#METRIC} layout once every {@code batchTicks}
+         * ticks, each message holding the points of all these ticks.
+         *
+         * @param batchTicks ticks per message
+         * @return {@code this}
+         */
+        public Builder batchTicks(int batchTicks) {
+            if (batchTicks < 1) {
+                throw new IllegalArgumentException("batchTicks must be positive: " + batchTicks);
+            }
+            this.batchTicks = batchTicks;
+            return this;
+        }
+
         /**
          * Builds a {@link CsvReporter} with the given properties, writing {@code .csv} files to the
          * given directory.
@@ -100,7 +176,11 @@ public class MQTTReporter extends ScheduledReporter {
                     rateUnit,
                     durationUnit,
                     clock,
-                    filter);
+                    filter,
+                    qos,
+                    layout,
+                    payload,
+                    batchTicks);
         }
     }
 
@@ -112,8 +192,24 @@ public class MQTTReporter extends ScheduledReporter {
     private MqttClient mqttClient;
 
     private final Clock clock;
-    private long previousTimestamp = 0;
-    private HashMap bufferEntries = new HashMap();
+    private final MetricValues tickValues = new MetricValues();
+    private final MetricsJsonSerializer serializer = new MetricsJsonSerializer();
+    private final int qos;
+    private final Layout layout;
+    private final MqttMetricMessages.Payload payload;
+    private final int batchTicks;
+    private MqttMetricMessages metricMessages;
+
+    private final MqttMetricMessages.Publisher publisher = new MqttMetricMessages.Publisher() {
+        @Override
+        public void publish(String topic, byte[] payload, boolean retained) throws Exception {
+            MqttMessage message = new MqttMessage(payload);
+            // The catalog is published rarely and must not be lost, values may be
+            message.setQos(retained ? Math.max(qos, 1) : qos);
+            message.setRetained(retained);
+            mqttClient.publish(topic, message);
+        }
+    };
 
     private MQTTReporter(MetricRegistry registry,
                          String masterHost,
@@ -121,11 +217,19 @@ public class MQTTReporter extends ScheduledReporter {
                          TimeUnit rateUnit,
                          TimeUnit durationUnit,
                          Clock clock,
-                         MetricFilter filter) {
+                         MetricFilter filter,
+                         int qos,
+                         Layout layout,
+                         MqttMetricMessages.Payload payload,
+                         int batchTicks) {
         super(registry, "mqtt-reporter", filter, rateUnit, durationUnit);
         this.masterHost = masterHost;
         this.masterMqttPort = masterMqttPort;
         this.clock = clock;
+        this.qos = qos;
+        this.layout = layout;
+        this.payload = payload;
+        this.batchTicks = batchTicks;
     }
 
     @Override
@@ -155,123 +259,70 @@ public class MQTTReporter extends ScheduledReporter {
         for (Map.Entry<String, Timer> entry : timers.entrySet()) {
             reportTimer(timestamp, entry.getKey(), entry.getValue());
         }
+
+        if (!tickValues.isEmpty()) {
+            publish(timestamp);
+        }
     }
 
+    // Only the count of timers, meters and histograms is published, so their snapshots (a copy
+    // of the whole reservoir) are not taken.
     private void reportTimer(long timestamp, String name, Timer timer) {
-        final Snapshot snapshot = timer.getSnapshot();
-
-        report(timestamp,
-                name,
-                "count,max,mean,min,stddev,p50,p75,p95,p98,p99,p999,mean_rate,m1_rate,m5_rate,m15_rate,rate_unit,duration_unit",
-                "%d,%f,%f,%f,%f,%f,%f,%f,%f,%f,%f,%f,%f,%f,%f,calls/%s,%s",
-                timer.getCount(),
-                convertDuration(snapshot.getMax()),
-                convertDuration(snapshot.getMean()),
-                convertDuration(snapshot.getMin()),
-                convertDuration(snapshot.getStdDev()),
-                convertDuration(snapshot.getMedian()),
-                convertDuration(snapshot.get75thPercentile()),
-                convertDuration(snapshot.get95thPercentile()),
-                convertDuration(snapshot.get98thPercentile()),
-                convertDuration(snapshot.get99thPercentile()),
-                convertDuration(snapshot.get999thPercentile()),
-                convertRate(timer.getMeanRate()),
-                convertRate(timer.getOneMinuteRate()),
-                convertRate(timer.getFiveMinuteRate()),
-                convertRate(timer.getFifteenMinuteRate()),
-                getRateUnit(),
-                getDurationUnit());
+        report(name, timer.getCount());
     }
 
     private void reportMeter(long timestamp, String name, Meter meter) {
-        report(timestamp,
-                name,
-                "count,mean_rate,m1_rate,m5_rate,m15_rate,rate_unit",
-                "%d,%f,%f,%f,%f,events/%s",
-                meter.getCount(),
-                convertRate(meter.getMeanRate()),
-                convertRate(meter.getOneMinuteRate()),
-                convertRate(meter.getFiveMinuteRate()),
-                convertRate(meter.getFifteenMinuteRate()),
-                getRateUnit());
+        report(name, meter.getCount());
     }
 
     private void reportHistogram(long timestamp, String name, Histogram histogram) {
-        final Snapshot snapshot = histogram.getSnapshot();
-
-        report(timestamp,
-                name,
-                "count,max,mean,min,stddev,p50,p75,p95,p98,p99,p999",
-                "%d,%d,%f,%d,%f,%f,%f,%f,%f,%f,%f",
-                histogram.getCount(),
-                snapshot.getMax(),
-                snapshot.getMean(),
-                snapshot.getMin(),
-                snapshot.getStdDev(),
-                snapshot.getMedian(),
-                snapshot.get75thPercentile(),
-                snapshot.get95thPercentile(),
-                snapshot.get98thPercentile(),
-                snapshot.get99thPercentile(),
-                snapshot.get999thPercentile());
+        report(name, histogram.getCount());
     }
 
     private void reportCounter(long timestamp, String name, Counter counter) {
-        report(timestamp, name, "count", "%d", counter.getCount());
+        report(name, counter.getCount());
     }
 
     private void reportGauge(long timestamp, String name, Gauge gauge) {
-        report(timestamp, name, "value", "%s", gauge.getValue());
+        report(name, gauge.getValue());
     }
 
-    private void report(long timestamp, String name, String header, String line, Object... values) {
-        try {
-            String[] stringArr = name.split("\\.");
-            String firstEntry = stringArr[0];
-            appId = "";
-            if (!firstEntry.startsWith("app")) return;
-            else appId = firstEntry;
-
-            executorId = stringArr[1];
+    private void report(String name, Object value) {
+        // Names are parsed once and cached, nothing is split or copied per tick
+        MetricPath path = MetricPath.of(name);
+        if (!path.isExecutorMetric()) return;
+        appId = path.appId();
+        executorId = path.executorId();
+        if (mqttClient == null) {
+            createMqttClient(appId, executorId);
+        }
+        tickValues.add(path, value);
+    }
 
-            try {
-                Integer.parseInt(executorId);
-            } catch (Exception e) {
-                return;
-            }
-            if (previousTimestamp==0) {
-                createMqttClient(appId,executorId);
+    private void publish(long timestamp) {
+        try {
+            if (hostKey == null) {
+                hostKey = localhost + "_" + executorId;
             }
-
-            if (previousTimestamp == 0 || previousTimestamp == timestamp) {
-                String[] keyArr = Arrays.copyOfRange(stringArr, 3, stringArr.length);
-                List<String> entries = new ArrayList<String>();
-                for (int i = 0; i < keyArr.length; i++) {
-                    entries.add(keyArr[i]);
+            if (layout == Layout.METRIC) {
+                if (metricMessages == null) {
+                    metricMessages = new MqttMetricMessages(appId, hostKey, payload, batchTicks);
                 }
-                putLeaf(entries, 0, bufferEntries, values[0]);
-            } else {
-
-                HashMap finalMapToWrite = new HashMap();
-                finalMapToWrite.put("timestamp", previousTimestamp);
-                finalMapToWrite.put("values", bufferEntries);
-                finalMapToWrite.put("host", localhost + "_" + executorId);
-                String entryString = new JSONObject(finalMapToWrite).toString();
-                MqttMessage message = new MqttMessage(entryString.getBytes());
-                message.setQos(2);
-                mqttClient.publish("metrics-"+appId, message);
-                bufferEntries.clear();
-
-                String[] keyArr = Arrays.copyOfRange(stringArr, 3, stringArr.length);
-                List<String> entries = new ArrayList<String>();
-                for (int i = 0; i < keyArr.length; i++) {
-                    entries.add(keyArr[i]);
+                metricMessages.add(timestamp, tickValues);
+                if (metricMessages.isBatchComplete()) {
+                    metricMessages.flush(publisher);
                 }
-                putLeaf(entries, 0, bufferEntries, values[0]);
+                return;
             }
-            previousTimestamp = timestamp;
+            serializer.serialize(timestamp, hostKey, tickValues);
+            // The client keeps the payload until the message is delivered, so it gets its own copy
+            MqttMessage message = new MqttMessage(serializer.toByteArray());
+            message.setQos(qos);
+            mqttClient.publish("metrics-"+appId, message);
         } catch (Exception e) {
-            LOGGER.warn("Error writing to {}", name, e);
+            LOGGER.warn("Error publishing metrics of {}", appId, e);
+        } finally {
+            tickValues.clear();
         }
     }
 
@@ -299,35 +350,17 @@ public class MQTTReporter extends ScheduledReporter {
         return name;
     }
 
-    public void putLeaf(List<String> entries, int index, HashMap originalMap, Object value) {
-        String entry = entries.get(index);
-        Object originalObj = originalMap.get(entry);
-        if (originalObj instanceof HashMap || originalObj == null) {
-            HashMap existing = (HashMap) originalObj;
-            if (existing == null) existing = new HashMap();
-            if (index == entries.size() - 1) {
-                originalMap.put(entry, value);
-            } else {
-                originalMap.put(entry, existing);
-                putLeaf(entries, index + 1, existing, value);
-            }
-        }
-    }
-
     public void stop() {
         super.stop();
         try {
-                HashMap finalMapToWrite = new HashMap();
-                finalMapToWrite.put("timestamp", previousTimestamp);
-                finalMapToWrite.put("values", bufferEntries);
-                finalMapToWrite.put("host", localhost + "_" + executorId);
-                String entryString = new JSONObject(finalMapToWrite).toString();
-                MqttMessage message = new MqttMessage(entryString.getBytes());
-                message.setQos(2);
-                mqttClient.publish("metrics-"+appId, message);
+            if (mqttClient != null) {
+                // Publish the points of an incomplete batch
+                if (metricMessages != null) {
+                    metricMessages.flush(publisher);
+                }
                 mqttClient.disconnect();
             }
-            catch (Exception e) {
+        } catch (Exception e) {
             e.printStackTrace();
             LOGGER.error("Exception when flushing", e);
         }
@@ -103,6 +103,12 @@ public class SparkFirehoseListener implements SparkListenerInterface {
         onEvent(executorMetricsUpdate);
     }
 
+    @Override
+    public final void onExecutorMetricsSample(
+            SparkListenerExecutorMetricsSample executorMetricsSample) {
+        onEvent(executorMetricsSample);
+    }
+
     @Override
     public final void onExecutorAdded(SparkListenerExecutorAdded executorAdded) {
         onEvent(executorAdded);
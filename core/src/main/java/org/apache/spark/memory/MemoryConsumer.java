@@ -64,7 +64,10 @@ public abstract class MemoryConsumer {
    * For testing.
    */
   public void spill() throws IOException {
-    spill(Long.MAX_VALUE, this);
+    long released = spill(Long.MAX_VALUE, this);
+    if (released > 0) {
+      taskMemoryManager.recordSpill(released);
+    }
   }
 
   /**
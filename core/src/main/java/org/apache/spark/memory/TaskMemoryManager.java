@@ -151,6 +151,7 @@ public class TaskMemoryManager {
               if (released > 0) {
                 logger.debug("Task {} released {} from {} for {}", taskAttemptId,
                   Utils.bytesToString(released), c, consumer);
+                memoryManager.recordSpill(released);
                 got += memoryManager.acquireExecutionMemory(required - got, taskAttemptId, mode);
                 if (got >= required) {
                   break;
@@ -172,6 +173,7 @@ public class TaskMemoryManager {
           if (released > 0) {
             logger.debug("Task {} released {} from itself ({})", taskAttemptId,
               Utils.bytesToString(released), consumer);
+            memoryManager.recordSpill(released);
             got += memoryManager.acquireExecutionMemory(required - got, taskAttemptId, mode);
           }
         } catch (IOException e) {
@@ -195,6 +197,23 @@ public class TaskMemoryManager {
     memoryManager.releaseExecutionMemory(size, taskAttemptId, consumer.getMode());
   }
 
+  /**
+   * Counts a spill that a MemoryConsumer made on its own rather than when asked to by this
+   * manager, in the metrics of the MemoryManager.
+   */
+  public void recordSpill(long released) {
+    memoryManager.recordSpill(released);
+  }
+
+  /**
+   * Counts a spill that a MemoryConsumer wrote on a background thread for {@code writeNanos},
+   * after which the task waited {@code waitNanos} for it to finish, in the metrics of the
+   * MemoryManager.
+   */
+  public void recordAsyncSpill(long writeNanos, long waitNanos) {
+    memoryManager.recordAsyncSpill(writeNanos, waitNanos);
+  }
+
   /**
    * Dump the memory usage of all consumers.
    */
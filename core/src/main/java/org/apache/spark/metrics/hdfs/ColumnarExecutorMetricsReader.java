@@ -0,0 +1,266 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.spark.metrics.hdfs;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.google.common.io.CountingInputStream;
+
+/**
+ * Sequential reader for files written by {@link ColumnarExecutorMetricsWriter}.
+ *
+ * Blocks are read one at a time and their columns are only decoded when asked for, so a scan
+ * holds at most one block in memory. Blocks outside of a requested time range are skipped
+ * without decoding. A block cut short by a crashed writer ends the scan quietly, and
+ * {@link #completeBytes()} tells where a later scan of the same file, once the writer has
+ * finished the block, resumes.
+ */
+public final class ColumnarExecutorMetricsReader implements Closeable {
+
+  private final CountingInputStream counting;
+  private final DataInputStream in;
+  private final List<String> names = new ArrayList<>();
+  private String host;
+  private boolean headerRead = false;
+  private boolean finished = false;
+  private long completeBytes = 0;
+
+  public ColumnarExecutorMetricsReader(InputStream in) {
+    this.counting = new CountingInputStream(
+      in instanceof BufferedInputStream ? in : new BufferedInputStream(in, 64 * 1024));
+    this.in = new DataInputStream(counting);
+  }
+
+  /**
+   * Reader for a stream positioned at a block boundary after the header, e.g. at an offset
+   * taken from an {@link ExecutorMetricsIndex}.
+   *
+   * @param metricNames the dictionary of the writer session, see
+   *                    {@link ExecutorMetricsIndex.Segment#metricNames()}
+   */
+  public ColumnarExecutorMetricsReader(InputStream in, String host, List<String> metricNames) {
+    this(in);
+    this.host = host;
+    // Blocks list the names they add again, past the end of the complete dictionary, which
+    // leaves the columns they refer to unchanged.
+    this.names.addAll(metricNames);
+    this.headerRead = true;
+  }
+
+  /** The {@code <host>_<executor id>} the file was written for, null before the first block. */
+  public String host() {
+    return host;
+  }
+
+  /** Metric names read so far; column {@code i} of a block refers to entry {@code i}. */
+  public List<String> metricNames() {
+    return Collections.unmodifiableList(names);
+  }
+
+  /**
+   * Bytes from the start of the stream to the end of the last complete header or block read,
+   * skipped ones included.
+   */
+  public long completeBytes() {
+    return completeBytes;
+  }
+
+  /** Returns the next block, or null at the end of the file. */
+  public Block nextBlock() throws IOException {
+    return nextBlock(Long.MIN_VALUE, Long.MAX_VALUE);
+  }
+
+  /**
+   * Returns the next block that has points in {@code [minTimestamp, maxTimestamp]}, or null at
+   * the end of the file. Blocks entirely outside of the range are skipped.
+   */
+  public Block nextBlock(long minTimestamp, long maxTimestamp) throws IOException {
+    while (!finished) {
+      int magic;
+      try {
+        magic = in.readInt();
+      } catch (EOFException e) {
+        finished = true;
+        return null;
+      }
+      try {
+        if (magic == ColumnarExecutorMetricsWriter.FILE_MAGIC) {
+          // A reporter that re-opened the file in append mode starts over with a new header
+          readHeader();
+          completeBytes = counting.getCount();
+          continue;
+        }
+        if (magic != ColumnarExecutorMetricsWriter.BLOCK_MAGIC || !headerRead) {
+          throw new IOException("Corrupt executor metrics file, unexpected magic " +
+            Integer.toHexString(magic));
+        }
+        long firstTimestamp = in.readLong();
+        long lastTimestamp = in.readLong();
+        int pointCount = in.readInt();
+        int newNames = in.readInt();
+        for (int i = 0; i < newNames; i++) {
+          names.add(in.readUTF());
+        }
+        int columnCount = in.readInt();
+        int payloadLength = in.readInt();
+        if (lastTimestamp < minTimestamp || firstTimestamp > maxTimestamp) {
+          skipFully(payloadLength + 8);
+          completeBytes = counting.getCount();
+          continue;
+        }
+        byte[] payload = new byte[payloadLength];
+        in.readFully(payload);
+        skipFully(8);
+        completeBytes = counting.getCount();
+        return new Block(firstTimestamp, lastTimestamp, pointCount,
+          names.subList(0, columnCount).toArray(new String[columnCount]), payload);
+      } catch (EOFException e) {
+        // Truncated trailing block, the writer did not get to finish it
+        finished = true;
+        return null;
+      }
+    }
+    return null;
+  }
+
+  private void readHeader() throws IOException {
+    byte version = in.readByte();
+    if (version != ColumnarExecutorMetricsWriter.VERSION) {
+      throw new IOException("Unsupported executor metrics file version " + version);
+    }
+    host = in.readUTF();
+    names.clear();
+    int count = in.readInt();
+    for (int i = 0; i < count; i++) {
+      names.add(in.readUTF());
+    }
+    headerRead = true;
+  }
+
+  private void skipFully(long bytes) throws IOException {
+    long remaining = bytes;
+    while (remaining > 0) {
+      long skipped = in.skip(remaining);
+      if (skipped <= 0) {
+        if (in.read() < 0) {
+          throw new EOFException();
+        }
+        skipped = 1;
+      }
+      remaining -= skipped;
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    in.close();
+  }
+
+  /**
+   * One decoded block. Timestamps are decoded eagerly, value columns on first access.
+   */
+  public static final class Block {
+    private final long firstTimestamp;
+    private final long lastTimestamp;
+    private final int size;
+    private final String[] metricNames;
+    private final byte[] payload;
+    private final int[] columnOffsets;
+    private final long[] timestamps;
+    private final double[][] decoded;
+
+    Block(long firstTimestamp, long lastTimestamp, int size, String[] metricNames,
+        byte[] payload) {
+      this.firstTimestamp = firstTimestamp;
+      this.lastTimestamp = lastTimestamp;
+      this.size = size;
+      this.metricNames = metricNames;
+      this.payload = payload;
+      this.columnOffsets = new int[metricNames.length];
+      this.decoded = new double[metricNames.length][];
+
+      int position = 0;
+      int timestampsLength = readInt(payload, position);
+      MetricsBitReader timestampReader = new MetricsBitReader(payload, position + 4,
+        timestampsLength);
+      this.timestamps = new long[size];
+      for (int i = 0; i < size; i++) {
+        timestamps[i] = timestampReader.readTimestamp();
+      }
+      position += 4 + timestampsLength;
+      for (int column = 0; column < metricNames.length; column++) {
+        columnOffsets[column] = position;
+        position += 4 + readInt(payload, position);
+      }
+    }
+
+    public long firstTimestamp() {
+      return firstTimestamp;
+    }
+
+    public long lastTimestamp() {
+      return lastTimestamp;
+    }
+
+    /** Number of ticks in the block. */
+    public int size() {
+      return size;
+    }
+
+    public long timestamp(int point) {
+      return timestamps[point];
+    }
+
+    public int columnCount() {
+      return metricNames.length;
+    }
+
+    public String metricName(int column) {
+      return metricNames[column];
+    }
+
+    /** Values of a column, NaN where the metric was not reported. */
+    public double[] column(int column) {
+      double[] values = decoded[column];
+      if (values == null) {
+        int offset = columnOffsets[column];
+        MetricsBitReader reader = new MetricsBitReader(payload, offset + 4,
+          readInt(payload, offset));
+        values = new double[size];
+        for (int i = 0; i < size; i++) {
+          values[i] = reader.readValue();
+        }
+        decoded[column] = values;
+      }
+      return values;
+    }
+
+    private static int readInt(byte[] bytes, int offset) {
+      return ((bytes[offset] & 0xFF) << 24) | ((bytes[offset + 1] & 0xFF) << 16) |
+        ((bytes[offset + 2] & 0xFF) << 8) | (bytes[offset + 3] & 0xFF);
+    }
+  }
+}
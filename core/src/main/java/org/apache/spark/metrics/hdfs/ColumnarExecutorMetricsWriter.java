@@ -0,0 +1,244 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.spark.metrics.hdfs;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.spark.metrics.sink.MetricValues;
+
+/**
+ * Block oriented binary writer for executor metrics. Ticks are buffered in memory and written
+ * as one block every {@code pointsPerBlock} ticks, so the caller only has to sync the stream
+ * once per block instead of once per tick.
+ *
+ * File layout:
+ * <pre>
+ *   header: int FILE_MAGIC, byte VERSION, UTF host, int n, n x UTF metric name
+ *   block*: int BLOCK_MAGIC
+ *           long first timestamp, long last timestamp, int point count
+ *           int n, n x UTF metric name appended to the dictionary
+ *           int column count, int payload length
+ *           payload: int length + delta-of-delta encoded timestamps,
+ *                    column count x (int length + XOR encoded values)
+ *           footer: int block length (BLOCK_MAGIC to end of payload), int FOOTER_MAGIC
+ * </pre>
+ *
+ * Metric names are kept in a dictionary: the header holds the names known when the first block
+ * is written and every block lists only the names it adds. Column {@code i} of a block holds the
+ * values of dictionary entry {@code i}; a metric missing from a tick is stored as NaN. Only
+ * numeric (and boolean) values are kept, other gauge values are dropped.
+ *
+ * The time range in the block header lets a reader skip blocks while scanning forward and the
+ * footer lets it walk blocks backwards from the end of the file.
+ */
+public final class ColumnarExecutorMetricsWriter implements ExecutorMetricsWriter {
+
+  static final int FILE_MAGIC = 0x53504B4D;   // "SPKM"
+  static final int BLOCK_MAGIC = 0x53424C4B;  // "SBLK"
+  static final int FOOTER_MAGIC = 0x53454E44; // "SEND"
+  static final byte VERSION = 1;
+
+  private final DataOutputStream out;
+  private final String host;
+  private final int pointsPerBlock;
+  private final ExecutorMetricsIndex.Recorder index;
+  private long bytesWritten = 0;
+
+  private final Map<String, Integer> dictionary = new HashMap<>();
+  private final List<String> names = new ArrayList<>();
+  private int namesWritten = 0;
+  private boolean headerWritten = false;
+
+  private final long[] timestamps;
+  private final List<double[]> columns = new ArrayList<>();
+  private int pointCount = 0;
+
+  private final MetricsBitWriter bitWriter;
+  private final ByteArrayOutputStream blockBuffer = new ByteArrayOutputStream(4096);
+  private final DataOutputStream blockOut = new DataOutputStream(blockBuffer);
+
+  public ColumnarExecutorMetricsWriter(OutputStream out, String host, int pointsPerBlock) {
+    this(out, host, pointsPerBlock, null);
+  }
+
+  /**
+   * @param index if not null, records the offset of every block for the sidecar index
+   */
+  public ColumnarExecutorMetricsWriter(
+      OutputStream out,
+      String host,
+      int pointsPerBlock,
+      ExecutorMetricsIndex.Recorder index) {
+    if (pointsPerBlock <= 0) {
+      throw new IllegalArgumentException("pointsPerBlock must be positive: " + pointsPerBlock);
+    }
+    this.out = new DataOutputStream(out);
+    this.host = host;
+    this.pointsPerBlock = pointsPerBlock;
+    this.index = index;
+    this.timestamps = new long[pointsPerBlock];
+    this.bitWriter = new MetricsBitWriter(pointsPerBlock * 2);
+  }
+
+  @Override
+  public boolean write(long timestamp, MetricValues values) throws IOException {
+    int point = pointCount;
+    timestamps[point] = timestamp;
+    for (int i = 0; i < columns.size(); i++) {
+      columns.get(i)[point] = Double.NaN;
+    }
+    for (int i = 0; i < values.size(); i++) {
+      double value = toDouble(values.value(i));
+      if (!Double.isNaN(value)) {
+        columnFor(values.path(i).path())[point] = value;
+      }
+    }
+    pointCount++;
+    if (pointCount == pointsPerBlock) {
+      writeBlock();
+      return true;
+    }
+    return false;
+  }
+
+  private double[] columnFor(String name) {
+    Integer position = dictionary.get(name);
+    if (position == null) {
+      position = names.size();
+      dictionary.put(name, position);
+      names.add(name);
+      double[] column = new double[pointsPerBlock];
+      Arrays.fill(column, Double.NaN);
+      columns.add(column);
+    }
+    return columns.get(position);
+  }
+
+  private static double toDouble(Object value) {
+    if (value instanceof Number) {
+      return ((Number) value).doubleValue();
+    } else if (value instanceof Boolean) {
+      return ((Boolean) value) ? 1.0 : 0.0;
+    } else {
+      return Double.NaN;
+    }
+  }
+
+  private void writeHeader() throws IOException {
+    int start = out.size();
+    out.writeInt(FILE_MAGIC);
+    out.writeByte(VERSION);
+    out.writeUTF(host);
+    out.writeInt(names.size());
+    for (String name : names) {
+      out.writeUTF(name);
+    }
+    namesWritten = names.size();
+    headerWritten = true;
+    bytesWritten += out.size() - start;
+  }
+
+  private void writeBlock() throws IOException {
+    if (pointCount == 0) {
+      return;
+    }
+    if (!headerWritten) {
+      writeHeader();
+    }
+    blockBuffer.reset();
+    blockOut.writeInt(BLOCK_MAGIC);
+    blockOut.writeLong(timestamps[0]);
+    blockOut.writeLong(timestamps[pointCount - 1]);
+    blockOut.writeInt(pointCount);
+    blockOut.writeInt(names.size() - namesWritten);
+    for (int i = namesWritten; i < names.size(); i++) {
+      blockOut.writeUTF(names.get(i));
+    }
+    namesWritten = names.size();
+    blockOut.writeInt(columns.size());
+
+    int payloadStart = blockBuffer.size() + 4;
+    blockOut.writeInt(0); // payload length, patched below
+
+    bitWriter.reset();
+    for (int i = 0; i < pointCount; i++) {
+      bitWriter.writeTimestamp(timestamps[i]);
+    }
+    writeBits();
+    for (double[] column : columns) {
+      bitWriter.reset();
+      for (int i = 0; i < pointCount; i++) {
+        bitWriter.writeValue(column[i]);
+      }
+      writeBits();
+    }
+    blockOut.flush();
+
+    byte[] block = blockBuffer.toByteArray();
+    int payloadLength = block.length - payloadStart;
+    block[payloadStart - 4] = (byte) (payloadLength >>> 24);
+    block[payloadStart - 3] = (byte) (payloadLength >>> 16);
+    block[payloadStart - 2] = (byte) (payloadLength >>> 8);
+    block[payloadStart - 1] = (byte) payloadLength;
+
+    if (index != null) {
+      index.record(timestamps[0], timestamps[pointCount - 1], bytesWritten);
+    }
+    out.write(block);
+    out.writeInt(block.length);
+    out.writeInt(FOOTER_MAGIC);
+    bytesWritten += block.length + 8;
+    pointCount = 0;
+  }
+
+  private void writeBits() throws IOException {
+    int length = bitWriter.byteLength();
+    blockOut.writeInt(length);
+    blockOut.write(bitWriter.buffer(), 0, length);
+  }
+
+  /** Writes any buffered ticks as a (possibly short) block without closing the stream. */
+  public void flushBlock() throws IOException {
+    writeBlock();
+  }
+
+  @Override
+  public void flush() throws IOException {
+    out.flush();
+  }
+
+  @Override
+  public void close() throws IOException {
+    try {
+      writeBlock();
+      if (index != null) {
+        index.finish(host, names, bytesWritten);
+      }
+    } finally {
+      out.close();
+    }
+  }
+}
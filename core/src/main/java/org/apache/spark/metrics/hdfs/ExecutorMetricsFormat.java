@@ -0,0 +1,100 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.spark.metrics.hdfs;
+
+import java.io.OutputStream;
+import java.util.Locale;
+
+/**
+ * On-disk formats for the executor metrics files written by the HDFS sink. The format of a file
+ * is identified by its suffix, so the history server can read directories that mix formats.
+ */
+public enum ExecutorMetricsFormat {
+
+  /** One JSON object per tick and line, the original Sparkoscope layout. */
+  JSON("json", ".json"),
+
+  /** Block oriented binary layout, see {@link ColumnarExecutorMetricsWriter}. */
+  COLUMNAR("columnar", ".tsm");
+
+  private final String configName;
+  private final String fileSuffix;
+
+  ExecutorMetricsFormat(String configName, String fileSuffix) {
+    this.configName = configName;
+    this.fileSuffix = fileSuffix;
+  }
+
+  public String configName() {
+    return configName;
+  }
+
+  public String fileSuffix() {
+    return fileSuffix;
+  }
+
+  public ExecutorMetricsWriter newWriter(OutputStream out, String host, int pointsPerBlock) {
+    return newWriter(out, host, pointsPerBlock, null);
+  }
+
+  /**
+   * @param index if not null, collects the sidecar index of what the writer writes
+   */
+  public ExecutorMetricsWriter newWriter(
+      OutputStream out,
+      String host,
+      int pointsPerBlock,
+      ExecutorMetricsIndex.Recorder index) {
+    switch (this) {
+      case COLUMNAR:
+        return new ColumnarExecutorMetricsWriter(out, host, pointsPerBlock, index);
+      default:
+        return new JsonExecutorMetricsWriter(out, host, index);
+    }
+  }
+
+  /** Looks up a format by the name used in metrics.properties. */
+  public static ExecutorMetricsFormat fromConfigName(String name) {
+    String lower = name.toLowerCase(Locale.ROOT);
+    for (ExecutorMetricsFormat format : values()) {
+      if (format.configName.equals(lower)) {
+        return format;
+      }
+    }
+    throw new IllegalArgumentException("Unknown executor metrics format: " + name);
+  }
+
+  /** Returns the format of a metrics file based on its name, or null if it is not one. */
+  public static ExecutorMetricsFormat forFileName(String fileName) {
+    for (ExecutorMetricsFormat format : values()) {
+      if (fileName.endsWith(format.fileSuffix)) {
+        return format;
+      }
+    }
+    return null;
+  }
+
+  /** Strips the format suffix from a metrics file name, leaving {@code <host>_<executor id>}. */
+  public static String stripSuffix(String fileName) {
+    ExecutorMetricsFormat format = forFileName(fileName);
+    if (format == null) {
+      return fileName;
+    }
+    return fileName.substring(0, fileName.length() - format.fileSuffix.length());
+  }
+}
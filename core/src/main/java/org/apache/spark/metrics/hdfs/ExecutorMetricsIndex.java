@@ -0,0 +1,279 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.spark.metrics.hdfs;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Sidecar index of an executor metrics file, stored next to it as
+ * {@code <host>_<executor id><suffix>.idx}. It maps time buckets to the file offset of the
+ * first record (JSON line or columnar block) holding points of that bucket, so a reader can
+ * seek straight to the start of a time window instead of scanning the whole file.
+ *
+ * Every reporter session that wrote to the file adds one {@link Segment}, written when the
+ * session is stopped. Bytes after the end of the last segment (a session still running, or one
+ * that did not stop cleanly) are not indexed and have to be scanned.
+ *
+ * Layout: int MAGIC, byte VERSION, int segment count, then per segment: long start offset,
+ * long end offset, long first and last timestamp, long bucket width, UTF host, int n,
+ * n x UTF metric name, int m, m x (long bucket start, long offset).
+ */
+public final class ExecutorMetricsIndex {
+
+  public static final String SUFFIX = ".idx";
+
+  static final int MAGIC = 0x53494458; // "SIDX"
+  static final byte VERSION = 1;
+
+  private ExecutorMetricsIndex() {
+  }
+
+  /** The index of the bytes written by one reporter session. */
+  public static final class Segment {
+    private final long startOffset;
+    private final long endOffset;
+    private final long firstTimestamp;
+    private final long lastTimestamp;
+    private final long bucketWidth;
+    private final String host;
+    private final List<String> metricNames;
+    private final long[] bucketStarts;
+    private final long[] offsets;
+
+    Segment(long startOffset, long endOffset, long firstTimestamp, long lastTimestamp,
+        long bucketWidth, String host, List<String> metricNames, long[] bucketStarts,
+        long[] offsets) {
+      this.startOffset = startOffset;
+      this.endOffset = endOffset;
+      this.firstTimestamp = firstTimestamp;
+      this.lastTimestamp = lastTimestamp;
+      this.bucketWidth = bucketWidth;
+      this.host = host;
+      this.metricNames = Collections.unmodifiableList(metricNames);
+      this.bucketStarts = bucketStarts;
+      this.offsets = offsets;
+    }
+
+    /** Offset of the first byte written by the session. */
+    public long startOffset() {
+      return startOffset;
+    }
+
+    /** Offset after the last byte written by the session. */
+    public long endOffset() {
+      return endOffset;
+    }
+
+    public long firstTimestamp() {
+      return firstTimestamp;
+    }
+
+    public long lastTimestamp() {
+      return lastTimestamp;
+    }
+
+    /** Whether the session wrote points in {@code [fromTimestamp, toTimestamp]}. */
+    public boolean overlaps(long fromTimestamp, long toTimestamp) {
+      return bucketStarts.length > 0 && firstTimestamp <= toTimestamp &&
+        lastTimestamp >= fromTimestamp;
+    }
+
+    /** {@code <host>_<executor id>} of the session. */
+    public String host() {
+      return host;
+    }
+
+    /**
+     * Complete metric name dictionary of a columnar session, needed to decode blocks when
+     * reading does not start at the session's header. Empty for JSON files.
+     */
+    public List<String> metricNames() {
+      return metricNames;
+    }
+
+    /**
+     * Offset of the record to start reading at to see every point at or after
+     * {@code fromTimestamp}: the first record of the last bucket starting at or before it.
+     */
+    public long offsetFor(long fromTimestamp) {
+      if (bucketStarts.length == 0) {
+        return startOffset;
+      }
+      int index = Arrays.binarySearch(bucketStarts, bucketStart(fromTimestamp, bucketWidth));
+      if (index < 0) {
+        index = -index - 2;
+      }
+      return index < 0 ? offsets[0] : offsets[index];
+    }
+  }
+
+  /**
+   * Collects index entries while a writer emits records. Writers call {@link #record} with the
+   * offset of every record, relative to the first byte they wrote, and {@link #finish} when
+   * closed.
+   */
+  public static final class Recorder {
+    private final long baseOffset;
+    private final long bucketWidth;
+    private long[] bucketStarts = new long[16];
+    private long[] offsets = new long[16];
+    private int size = 0;
+    private long firstTimestamp = Long.MAX_VALUE;
+    private long lastTimestamp = Long.MIN_VALUE;
+    private String host = "";
+    private List<String> metricNames = Collections.emptyList();
+    private long endOffset = -1;
+
+    /**
+     * @param baseOffset offset in the file of the first byte the writer writes, non zero when
+     *                   appending to an existing file
+     * @param bucketWidth width of the time buckets, in the unit of the timestamps
+     */
+    public Recorder(long baseOffset, long bucketWidth) {
+      if (bucketWidth <= 0) {
+        throw new IllegalArgumentException("bucketWidth must be positive: " + bucketWidth);
+      }
+      this.baseOffset = baseOffset;
+      this.bucketWidth = bucketWidth;
+    }
+
+    /** Records a record holding points from {@code firstTs} to {@code lastTs}. */
+    void record(long firstTs, long lastTs, long relativeOffset) {
+      long bucket = bucketStart(firstTs, bucketWidth);
+      if (size == 0 || bucket > bucketStarts[size - 1]) {
+        if (size == bucketStarts.length) {
+          bucketStarts = Arrays.copyOf(bucketStarts, size * 2);
+          offsets = Arrays.copyOf(offsets, size * 2);
+        }
+        bucketStarts[size] = bucket;
+        offsets[size] = baseOffset + relativeOffset;
+        size++;
+      }
+      firstTimestamp = Math.min(firstTimestamp, firstTs);
+      lastTimestamp = Math.max(lastTimestamp, lastTs);
+    }
+
+    void finish(String host, List<String> metricNames, long relativeEndOffset) {
+      this.host = host;
+      this.metricNames = new ArrayList<>(metricNames);
+      this.endOffset = baseOffset + relativeEndOffset;
+    }
+
+    /** Whether the writer was closed, so that the index covers everything it wrote. */
+    public boolean isFinished() {
+      return endOffset >= 0;
+    }
+
+    public Segment toSegment() {
+      if (!isFinished()) {
+        throw new IllegalStateException("The writer has not been closed yet");
+      }
+      return new Segment(baseOffset, endOffset, firstTimestamp, lastTimestamp, bucketWidth,
+        host, metricNames, Arrays.copyOf(bucketStarts, size), Arrays.copyOf(offsets, size));
+    }
+  }
+
+  private static long bucketStart(long timestamp, long bucketWidth) {
+    long remainder = timestamp % bucketWidth;
+    return timestamp - (remainder < 0 ? remainder + bucketWidth : remainder);
+  }
+
+  /**
+   * Adds a segment to the existing ones, dropping those that do not end before it starts:
+   * they describe bytes that were overwritten.
+   */
+  public static List<Segment> append(List<Segment> existing, Segment segment) {
+    List<Segment> segments = new ArrayList<>();
+    for (Segment s : existing) {
+      if (s.endOffset <= segment.startOffset) {
+        segments.add(s);
+      }
+    }
+    segments.add(segment);
+    return segments;
+  }
+
+  public static void write(List<Segment> segments, OutputStream stream) throws IOException {
+    DataOutputStream out = new DataOutputStream(stream);
+    out.writeInt(MAGIC);
+    out.writeByte(VERSION);
+    out.writeInt(segments.size());
+    for (Segment segment : segments) {
+      out.writeLong(segment.startOffset);
+      out.writeLong(segment.endOffset);
+      out.writeLong(segment.firstTimestamp);
+      out.writeLong(segment.lastTimestamp);
+      out.writeLong(segment.bucketWidth);
+      out.writeUTF(segment.host);
+      out.writeInt(segment.metricNames.size());
+      for (String name : segment.metricNames) {
+        out.writeUTF(name);
+      }
+      out.writeInt(segment.bucketStarts.length);
+      for (int i = 0; i < segment.bucketStarts.length; i++) {
+        out.writeLong(segment.bucketStarts[i]);
+        out.writeLong(segment.offsets[i]);
+      }
+    }
+    out.flush();
+  }
+
+  public static List<Segment> read(InputStream stream) throws IOException {
+    DataInputStream in = new DataInputStream(stream);
+    if (in.readInt() != MAGIC) {
+      throw new IOException("Not an executor metrics index");
+    }
+    byte version = in.readByte();
+    if (version != VERSION) {
+      throw new IOException("Unsupported executor metrics index version " + version);
+    }
+    int count = in.readInt();
+    List<Segment> segments = new ArrayList<>(count);
+    for (int s = 0; s < count; s++) {
+      long startOffset = in.readLong();
+      long endOffset = in.readLong();
+      long firstTimestamp = in.readLong();
+      long lastTimestamp = in.readLong();
+      long bucketWidth = in.readLong();
+      String host = in.readUTF();
+      int nameCount = in.readInt();
+      List<String> names = new ArrayList<>(nameCount);
+      for (int i = 0; i < nameCount; i++) {
+        names.add(in.readUTF());
+      }
+      int size = in.readInt();
+      long[] bucketStarts = new long[size];
+      long[] offsets = new long[size];
+      for (int i = 0; i < size; i++) {
+        bucketStarts[i] = in.readLong();
+        offsets[i] = in.readLong();
+      }
+      segments.add(new Segment(startOffset, endOffset, firstTimestamp, lastTimestamp,
+        bucketWidth, host, names, bucketStarts, offsets));
+    }
+    return segments;
+  }
+}
@@ -0,0 +1,280 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.spark.metrics.hdfs;
+
+import java.io.IOException;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.MetricRegistry;
+import org.apache.hadoop.fs.Syncable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.apache.spark.metrics.sink.MetricValues;
+
+/**
+ * Decouples metric sampling from writing to HDFS. The reporter thread copies every tick into a
+ * bounded ring buffer and returns immediately; a background flusher writes the queued ticks in
+ * batches of {@code batchTicks} ticks, or whatever is queued once the oldest tick has waited
+ * {@code batchMillis}, and makes each batch durable once.
+ *
+ * When the ring is full (HDFS is stalled for longer than the ring can absorb) new ticks are
+ * dropped and counted instead of blocking the reporter.
+ *
+ * The pipeline publishes its own state in the given registry under {@code <prefix>.*}:
+ * {@code queueDepth}, {@code droppedSamples}, {@code writtenSamples} and
+ * {@code flushLatencyMs}.
+ */
+public final class ExecutorMetricsPipeline {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(ExecutorMetricsPipeline.class);
+
+  /** How long to wait for the flusher to exit once interrupted, before giving up on it. */
+  private static final long INTERRUPT_JOIN_TIMEOUT_MS = 1000L;
+
+  /** What to do with the stream after every batch. */
+  public enum Durability {
+    /** Only flush client side buffers. */
+    NONE,
+    /** Make the batch visible to new readers ({@link Syncable#hflush()}). */
+    HFLUSH,
+    /** Make the batch durable on the DataNodes' disks ({@link Syncable#hsync()}). */
+    HSYNC;
+
+    public static Durability fromString(String name) {
+      return valueOf(name.toUpperCase(Locale.ROOT));
+    }
+  }
+
+  private static final class Tick {
+    long timestamp;
+    long queuedAt;
+    final MetricValues values = new MetricValues();
+  }
+
+  private final ExecutorMetricsWriter writer;
+  private final Syncable syncable;
+  private final Durability durability;
+  private final int batchTicks;
+  private final long batchMillis;
+
+  private final Tick[] ring;
+  private final Object lock = new Object();
+  // Ticks [head, tail) are queued; only the flusher advances head, only offer() advances tail
+  private long head = 0;
+  private long tail = 0;
+  private boolean stopped = false;
+
+  private final Counter droppedSamples;
+  private final Counter writtenSamples;
+  private final Histogram flushLatency;
+
+  private final Thread flusher;
+
+  /**
+   * @param writer writer of the executor's metrics file
+   * @param syncable the stream under the writer if it supports hflush/hsync, null otherwise
+   */
+  public ExecutorMetricsPipeline(
+      ExecutorMetricsWriter writer,
+      Syncable syncable,
+      Durability durability,
+      int capacity,
+      int batchTicks,
+      long batchMillis,
+      MetricRegistry registry,
+      String metricsPrefix) {
+    if (capacity <= 0 || batchTicks <= 0) {
+      throw new IllegalArgumentException("capacity and batchTicks must be positive");
+    }
+    this.writer = writer;
+    this.syncable = syncable;
+    this.durability = durability;
+    this.batchTicks = Math.min(batchTicks, capacity);
+    this.batchMillis = batchMillis;
+    this.ring = new Tick[capacity];
+    for (int i = 0; i < capacity; i++) {
+      ring[i] = new Tick();
+    }
+
+    this.droppedSamples = registry.counter(MetricRegistry.name(metricsPrefix, "droppedSamples"));
+    this.writtenSamples = registry.counter(MetricRegistry.name(metricsPrefix, "writtenSamples"));
+    this.flushLatency = registry.histogram(MetricRegistry.name(metricsPrefix, "flushLatencyMs"));
+    String queueDepthName = MetricRegistry.name(metricsPrefix, "queueDepth");
+    registry.remove(queueDepthName);
+    registry.register(queueDepthName, new Gauge<Long>() {
+      @Override
+      public Long getValue() {
+        return queueDepth();
+      }
+    });
+
+    this.flusher = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        flushLoop();
+      }
+    }, "hdfs-metrics-flusher");
+    flusher.setDaemon(true);
+    flusher.start();
+  }
+
+  public long queueDepth() {
+    synchronized (lock) {
+      return tail - head;
+    }
+  }
+
+  /**
+   * Queues the values of one tick. The values are copied into a preallocated slot, so the
+   * caller can reuse its instance and queueing does not allocate in the steady state.
+   *
+   * @return false if the tick was dropped because the ring buffer is full or the pipeline
+   *         was stopped
+   */
+  public boolean offer(long timestamp, MetricValues values) {
+    synchronized (lock) {
+      if (stopped || tail - head == ring.length) {
+        droppedSamples.inc();
+        return false;
+      }
+      Tick tick = ring[(int) (tail % ring.length)];
+      tick.timestamp = timestamp;
+      tick.values.copyFrom(values);
+      tick.queuedAt = System.currentTimeMillis();
+      tail++;
+      // An idle flusher waits without a deadline until the first tick is queued
+      if (tail - head == 1 || tail - head >= batchTicks) {
+        lock.notifyAll();
+      }
+      return true;
+    }
+  }
+
+  private void flushLoop() {
+    try {
+      while (true) {
+        long batchStart;
+        int count;
+        synchronized (lock) {
+          while (!stopped && !batchReady()) {
+            if (tail == head) {
+              lock.wait();
+            } else {
+              lock.wait(Math.max(1, oldestQueuedAt() + batchMillis - System.currentTimeMillis()));
+            }
+          }
+          if (tail == head && stopped) {
+            return;
+          }
+          batchStart = head;
+          count = (int) (tail - head);
+        }
+        writeBatch(batchStart, count);
+        synchronized (lock) {
+          head += count;
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private boolean batchReady() {
+    long queued = tail - head;
+    return queued >= batchTicks ||
+      (queued > 0 && System.currentTimeMillis() - oldestQueuedAt() >= batchMillis);
+  }
+
+  private long oldestQueuedAt() {
+    return ring[(int) (head % ring.length)].queuedAt;
+  }
+
+  private void writeBatch(long start, int count) {
+    long startNanos = System.nanoTime();
+    try {
+      boolean written = false;
+      for (long i = start; i < start + count; i++) {
+        Tick tick = ring[(int) (i % ring.length)];
+        written |= writer.write(tick.timestamp, tick.values);
+      }
+      if (written) {
+        writer.flush();
+        sync();
+      }
+      writtenSamples.inc(count);
+    } catch (IOException e) {
+      LOGGER.warn("Error writing " + count + " metric samples", e);
+      droppedSamples.inc(count);
+    }
+    flushLatency.update(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+  }
+
+  private void sync() throws IOException {
+    if (syncable == null) {
+      return;
+    }
+    switch (durability) {
+      case HSYNC:
+        syncable.hsync();
+        break;
+      case HFLUSH:
+        syncable.hflush();
+        break;
+      default:
+        break;
+    }
+  }
+
+  /**
+   * Stops accepting ticks, writes everything still queued and closes the writer. The writer is
+   * left open if the flusher does not exit, even once interrupted.
+   */
+  public void stop(long timeoutMs) throws IOException {
+    synchronized (lock) {
+      stopped = true;
+      lock.notifyAll();
+    }
+    try {
+      flusher.join(timeoutMs);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    if (flusher.isAlive()) {
+      LOGGER.warn("Metrics flusher did not finish within " + timeoutMs + " ms, " +
+        queueDepth() + " samples are lost");
+      flusher.interrupt();
+      try {
+        flusher.join(INTERRUPT_JOIN_TIMEOUT_MS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+    if (flusher.isAlive()) {
+      // Closing the writer under a write in progress could corrupt its last block
+      LOGGER.warn("Metrics flusher is still writing after being interrupted, " +
+        "leaving the writer open");
+      return;
+    }
+    writer.close();
+  }
+}
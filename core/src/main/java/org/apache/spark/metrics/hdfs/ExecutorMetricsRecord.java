@@ -0,0 +1,84 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.spark.metrics.hdfs;
+
+/**
+ * One tick of the metrics of an executor, as read back from its metrics file: the value of
+ * metric {@code i} of the {@link MetricDictionary} of the application is {@code value(i)}, NaN
+ * when the tick does not have it. Values that are not numbers in the file are left out, and
+ * booleans are read as 1 and 0.
+ */
+public final class ExecutorMetricsRecord {
+
+  private final MetricDictionary dictionary;
+  private final int hostId;
+  private final long timestamp;
+  private final double[] values;
+
+  /**
+   * @param values indexed by metric, shorter than the dictionary when the last metrics are not
+   *               in the tick; the record takes ownership of the array
+   */
+  public ExecutorMetricsRecord(
+      MetricDictionary dictionary,
+      int hostId,
+      long timestamp,
+      double[] values) {
+    this.dictionary = dictionary;
+    this.hostId = hostId;
+    this.timestamp = timestamp;
+    this.values = values;
+  }
+
+  public MetricDictionary dictionary() {
+    return dictionary;
+  }
+
+  public int hostId() {
+    return hostId;
+  }
+
+  /** The {@code <host>_<executor id>} the metrics were written for. */
+  public String host() {
+    return dictionary.host(hostId);
+  }
+
+  /** In seconds, as written by the HDFS sink. */
+  public long timestamp() {
+    return timestamp;
+  }
+
+  /** Indices at and past this one have no value. */
+  public int size() {
+    return values.length;
+  }
+
+  public double value(int index) {
+    return index < values.length ? values[index] : Double.NaN;
+  }
+
+  /** The value of a dotted metric name, NaN when the tick does not have it. */
+  public double value(String name) {
+    int index = dictionary.find(name);
+    return index < 0 ? Double.NaN : value(index);
+  }
+
+  public String name(int index) {
+    return dictionary.name(index);
+  }
+}
@@ -0,0 +1,47 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.spark.metrics.hdfs;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+import org.apache.spark.metrics.sink.MetricValues;
+
+/**
+ * Writes the metrics of one executor, one reporting tick at a time, to the file kept for that
+ * executor under {@code <metrics dir>/<app id>/<host>_<executor id><suffix>}.
+ *
+ * Implementations may buffer ticks internally. {@link #write} returns true when it produced data
+ * for the underlying stream, which the caller hands to the stream with {@link #flush()} and makes
+ * durable (hflush/hsync) once per batch of ticks. {@link #close()} writes anything still
+ * buffered.
+ */
+public interface ExecutorMetricsWriter extends Closeable {
+
+  /**
+   * Writes the values of one reporting tick.
+   *
+   * @param timestamp tick timestamp, as reported by the reporter's clock
+   * @param values metric values of the tick; implementations may reorder them
+   * @return whether data was written to the underlying stream by this call
+   */
+  boolean write(long timestamp, MetricValues values) throws IOException;
+
+  /** Writes the data produced by the ticks written so far to the underlying stream. */
+  void flush() throws IOException;
+}
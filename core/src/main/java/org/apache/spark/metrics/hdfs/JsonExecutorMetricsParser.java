@@ -0,0 +1,142 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.spark.metrics.hdfs;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+/**
+ * Reads the lines written by {@link JsonExecutorMetricsWriter} into
+ * {@link ExecutorMetricsRecord}s with a streaming Jackson parser, without building a tree of
+ * the line: the nested objects of {@code values} are walked along the nodes of the
+ * {@link MetricDictionary}, so a leaf is found from the field names that Jackson canonicalizes
+ * rather than from a dotted name built for it.
+ *
+ * Safe for use by several threads.
+ */
+public final class JsonExecutorMetricsParser {
+
+  private static final JsonFactory FACTORY = new JsonFactory();
+
+  private final MetricDictionary dictionary;
+
+  public JsonExecutorMetricsParser(MetricDictionary dictionary) {
+    this.dictionary = dictionary;
+  }
+
+  /**
+   * Parses one line, which must hold a {@code timestamp}, a {@code host} and {@code values}.
+   *
+   * @throws IOException if the line is not valid JSON or misses one of these fields
+   */
+  public ExecutorMetricsRecord parse(String line) throws IOException {
+    JsonParser parser = FACTORY.createParser(line);
+    try {
+      if (parser.nextToken() != JsonToken.START_OBJECT) {
+        throw malformed(line);
+      }
+      boolean hasTimestamp = false;
+      long timestamp = 0;
+      String host = null;
+      Values values = null;
+      while (parser.nextToken() == JsonToken.FIELD_NAME) {
+        String field = parser.getCurrentName();
+        JsonToken token = parser.nextToken();
+        if (field.equals("timestamp") && token.isNumeric()) {
+          timestamp = parser.getValueAsLong();
+          hasTimestamp = true;
+        } else if (field.equals("host") && token == JsonToken.VALUE_STRING) {
+          host = parser.getText();
+        } else if (field.equals("values") && token == JsonToken.START_OBJECT) {
+          values = new Values(dictionary.size());
+          readObject(parser, dictionary.root(), values);
+        } else {
+          parser.skipChildren();
+        }
+      }
+      if (!hasTimestamp || host == null || values == null) {
+        throw malformed(line);
+      }
+      return new ExecutorMetricsRecord(dictionary, dictionary.hostId(host), timestamp,
+        values.toArray());
+    } finally {
+      parser.close();
+    }
+  }
+
+  private void readObject(
+      JsonParser parser,
+      MetricDictionary.Node node,
+      Values values) throws IOException {
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+      MetricDictionary.Node child = node.child(parser.getCurrentName());
+      switch (parser.nextToken()) {
+        case START_OBJECT:
+          readObject(parser, child, values);
+          break;
+        case VALUE_NUMBER_INT:
+        case VALUE_NUMBER_FLOAT:
+          values.put(child.index(), parser.getDoubleValue());
+          break;
+        case VALUE_TRUE:
+          values.put(child.index(), 1.0);
+          break;
+        case VALUE_FALSE:
+          values.put(child.index(), 0.0);
+          break;
+        default:
+          // Strings, nulls written for NaN, and arrays
+          parser.skipChildren();
+      }
+    }
+  }
+
+  private static IOException malformed(String line) {
+    String start = line.length() > 200 ? line.substring(0, 200) + "..." : line;
+    return new IOException("Not an executor metrics record: " + start);
+  }
+
+  /** The values of a record, sized after the dictionary so that most records copy nothing. */
+  private static final class Values {
+    private double[] values;
+    private int length = 0;
+
+    Values(int capacity) {
+      values = new double[Math.max(capacity, 16)];
+      Arrays.fill(values, Double.NaN);
+    }
+
+    void put(int index, double value) {
+      if (index >= values.length) {
+        int oldLength = values.length;
+        values = Arrays.copyOf(values, Math.max(index + 1, oldLength * 2));
+        Arrays.fill(values, oldLength, values.length, Double.NaN);
+      }
+      values[index] = value;
+      length = Math.max(length, index + 1);
+    }
+
+    double[] toArray() {
+      return length == values.length ? values : Arrays.copyOf(values, length);
+    }
+  }
+}
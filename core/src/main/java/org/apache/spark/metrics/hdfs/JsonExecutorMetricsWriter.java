@@ -0,0 +1,83 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.spark.metrics.hdfs;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Collections;
+
+import org.apache.spark.metrics.sink.MetricValues;
+import org.apache.spark.metrics.sink.MetricsJsonSerializer;
+
+/**
+ * Writes one JSON object per tick and line:
+ * {@code {"timestamp": ..., "host": "<host>_<executor id>", "values": {nested metric paths}}}.
+ */
+public final class JsonExecutorMetricsWriter implements ExecutorMetricsWriter {
+
+  private final OutputStream out;
+  private final String host;
+  private final ExecutorMetricsIndex.Recorder index;
+  private final MetricsJsonSerializer serializer = new MetricsJsonSerializer();
+  private long bytesWritten = 0;
+
+  public JsonExecutorMetricsWriter(OutputStream out, String host) {
+    this(out, host, null);
+  }
+
+  /**
+   * @param index if not null, records the offset of every line for the sidecar index
+   */
+  public JsonExecutorMetricsWriter(
+      OutputStream out,
+      String host,
+      ExecutorMetricsIndex.Recorder index) {
+    this.out = new BufferedOutputStream(out, 64 * 1024);
+    this.host = host;
+    this.index = index;
+  }
+
+  @Override
+  public boolean write(long timestamp, MetricValues values) throws IOException {
+    serializer.serialize(timestamp, host, values);
+    if (index != null) {
+      index.record(timestamp, timestamp, bytesWritten);
+    }
+    serializer.writeTo(out);
+    out.write('\n');
+    bytesWritten += serializer.length() + 1;
+    return true;
+  }
+
+  @Override
+  public void flush() throws IOException {
+    out.flush();
+  }
+
+  @Override
+  public void close() throws IOException {
+    try {
+      if (index != null) {
+        index.finish(host, Collections.<String>emptyList(), bytesWritten);
+      }
+    } finally {
+      out.close();
+    }
+  }
+}
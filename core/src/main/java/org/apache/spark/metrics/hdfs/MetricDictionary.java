@@ -0,0 +1,155 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.spark.metrics.hdfs;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Numbers the metric names and the hosts of the executor metrics files of one application, so
+ * that an {@link ExecutorMetricsRecord} holds its values in an array indexed by metric and a
+ * host id rather than strings.
+ *
+ * Metric names are the dotted paths of the nested JSON objects of the files, kept as a tree of
+ * path segments so that a parser finds the index of a leaf without building its name. Ids are
+ * given in the order names and hosts are first seen and never change. Safe for use by several
+ * parsing threads.
+ */
+public final class MetricDictionary {
+
+  /** A path segment; its index is the one of the metric ending at it, -1 if there is none. */
+  public final class Node {
+    private final String name;
+    private final ConcurrentHashMap<String, Node> children =
+      new ConcurrentHashMap<String, Node>(4);
+    private volatile int index = -1;
+
+    private Node(String name) {
+      this.name = name;
+    }
+
+    /** The node of segment {@code segment} under this one, created when first asked for. */
+    public Node child(String segment) {
+      Node child = children.get(segment);
+      if (child == null) {
+        String childName = name == null ? segment : name + "." + segment;
+        Node created = new Node(childName);
+        child = children.putIfAbsent(segment, created);
+        if (child == null) {
+          child = created;
+        }
+      }
+      return child;
+    }
+
+    /** The index of the metric named by the path of this node, numbered when first asked for. */
+    public int index() {
+      int i = index;
+      if (i < 0) {
+        synchronized (MetricDictionary.this) {
+          i = index;
+          if (i < 0) {
+            i = addName(name);
+            index = i;
+          }
+        }
+      }
+      return i;
+    }
+  }
+
+  private final Node root = new Node(null);
+  private volatile String[] names = new String[64];
+  private volatile int size = 0;
+
+  private final ConcurrentHashMap<String, Integer> hostIds = new ConcurrentHashMap<>();
+  private volatile String[] hosts = new String[16];
+  private int hostCount = 0;
+
+  public Node root() {
+    return root;
+  }
+
+  /** The index of a dotted metric name, numbered when first asked for. */
+  public int indexOf(String name) {
+    Node node = root;
+    int start = 0;
+    int dot;
+    while ((dot = name.indexOf('.', start)) >= 0) {
+      node = node.child(name.substring(start, dot));
+      start = dot + 1;
+    }
+    return node.child(name.substring(start)).index();
+  }
+
+  /** The index of a dotted metric name, -1 if it was never numbered. */
+  public int find(String name) {
+    Node node = root;
+    int start = 0;
+    while (true) {
+      int dot = name.indexOf('.', start);
+      node = node.children.get(name.substring(start, dot < 0 ? name.length() : dot));
+      if (node == null) {
+        return -1;
+      } else if (dot < 0) {
+        return node.index;
+      }
+      start = dot + 1;
+    }
+  }
+
+  /** Number of metric names numbered so far. */
+  public int size() {
+    return size;
+  }
+
+  public String name(int index) {
+    return names[index];
+  }
+
+  /** The id of a {@code <host>_<executor id>}, numbered when first seen. */
+  public int hostId(String host) {
+    Integer id = hostIds.get(host);
+    if (id == null) {
+      synchronized (this) {
+        id = hostIds.get(host);
+        if (id == null) {
+          if (hostCount == hosts.length) {
+            hosts = Arrays.copyOf(hosts, hostCount * 2);
+          }
+          hosts[hostCount] = host;
+          id = hostCount++;
+          hostIds.put(host, id);
+        }
+      }
+    }
+    return id;
+  }
+
+  public String host(int hostId) {
+    return hosts[hostId];
+  }
+
+  private int addName(String name) {
+    if (size == names.length) {
+      names = Arrays.copyOf(names, size * 2);
+    }
+    names[size] = name;
+    return size++;
+  }
+}
@@ -0,0 +1,112 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.spark.metrics.hdfs;
+
+/**
+ * Decoder for the bit streams produced by {@link MetricsBitWriter}.
+ */
+final class MetricsBitReader {
+
+  private final byte[] buffer;
+  private final int limitBits;
+  private int bitPosition;
+
+  private long previousTimestamp;
+  private long previousDelta;
+  private boolean hasTimestamp = false;
+
+  private long previousValueBits;
+  private int previousLeadingZeros;
+  private int previousTrailingZeros;
+  private boolean hasValue = false;
+
+  MetricsBitReader(byte[] buffer, int offset, int length) {
+    this.buffer = buffer;
+    this.bitPosition = offset * 8;
+    this.limitBits = (offset + length) * 8;
+  }
+
+  boolean readBit() {
+    if (bitPosition >= limitBits) {
+      throw new IllegalStateException("Read past the end of a metrics column");
+    }
+    boolean bit = (buffer[bitPosition >>> 3] & (0x80 >>> (bitPosition & 7))) != 0;
+    bitPosition++;
+    return bit;
+  }
+
+  long readBits(int numBits) {
+    long value = 0;
+    for (int i = 0; i < numBits; i++) {
+      value = (value << 1) | (readBit() ? 1L : 0L);
+    }
+    return value;
+  }
+
+  private long readSigned(int numBits) {
+    long value = readBits(numBits);
+    int shift = 64 - numBits;
+    return (value << shift) >> shift;
+  }
+
+  long readTimestamp() {
+    if (!hasTimestamp) {
+      previousTimestamp = readBits(64);
+      previousDelta = 0;
+      hasTimestamp = true;
+      return previousTimestamp;
+    }
+    long deltaOfDelta;
+    if (!readBit()) {
+      deltaOfDelta = 0;
+    } else if (!readBit()) {
+      deltaOfDelta = readSigned(7);
+    } else if (!readBit()) {
+      deltaOfDelta = readSigned(9);
+    } else if (!readBit()) {
+      deltaOfDelta = readSigned(12);
+    } else {
+      deltaOfDelta = readBits(64);
+    }
+    previousDelta += deltaOfDelta;
+    previousTimestamp += previousDelta;
+    return previousTimestamp;
+  }
+
+  double readValue() {
+    if (!hasValue) {
+      previousValueBits = readBits(64);
+      hasValue = true;
+      return Double.longBitsToDouble(previousValueBits);
+    }
+    if (readBit()) {
+      if (readBit()) {
+        previousLeadingZeros = (int) readBits(5);
+        int meaningfulBits = (int) readBits(6);
+        if (meaningfulBits == 0) {
+          meaningfulBits = 64;
+        }
+        previousTrailingZeros = 64 - previousLeadingZeros - meaningfulBits;
+      }
+      int meaningfulBits = 64 - previousLeadingZeros - previousTrailingZeros;
+      long xor = readBits(meaningfulBits) << previousTrailingZeros;
+      previousValueBits ^= xor;
+    }
+    return Double.longBitsToDouble(previousValueBits);
+  }
+}
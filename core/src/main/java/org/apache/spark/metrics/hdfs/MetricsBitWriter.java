@@ -0,0 +1,166 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.spark.metrics.hdfs;
+
+import java.util.Arrays;
+
+/**
+ * Append-only bit stream used to encode one column of a columnar metrics block. Bits are packed
+ * most significant first; the last byte is zero padded.
+ *
+ * The writer also carries the Gorilla encoders for the two column kinds stored in a block:
+ * delta-of-delta for timestamps and XOR for double values. Instances can be reused through
+ * {@link #reset()} so that encoding a block does not allocate once the buffer has grown.
+ */
+final class MetricsBitWriter {
+
+  private byte[] buffer;
+  private int bitPosition = 0;
+
+  // Delta-of-delta state
+  private long previousTimestamp;
+  private long previousDelta;
+  private boolean hasTimestamp = false;
+
+  // XOR state
+  private long previousValueBits;
+  private int previousLeadingZeros = Integer.MAX_VALUE;
+  private int previousTrailingZeros = 0;
+  private boolean hasValue = false;
+
+  MetricsBitWriter(int initialCapacity) {
+    this.buffer = new byte[Math.max(initialCapacity, 16)];
+  }
+
+  void reset() {
+    Arrays.fill(buffer, 0, byteLength(), (byte) 0);
+    bitPosition = 0;
+    hasTimestamp = false;
+    previousDelta = 0;
+    hasValue = false;
+    previousLeadingZeros = Integer.MAX_VALUE;
+    previousTrailingZeros = 0;
+  }
+
+  /** Number of bytes needed to hold the bits written so far. */
+  int byteLength() {
+    return (bitPosition + 7) >>> 3;
+  }
+
+  byte[] buffer() {
+    return buffer;
+  }
+
+  void writeBit(boolean bit) {
+    ensureCapacity(1);
+    if (bit) {
+      buffer[bitPosition >>> 3] |= (byte) (0x80 >>> (bitPosition & 7));
+    }
+    bitPosition++;
+  }
+
+  /** Writes the {@code numBits} low order bits of {@code value}, most significant first. */
+  void writeBits(long value, int numBits) {
+    ensureCapacity(numBits);
+    for (int i = numBits - 1; i >= 0; i--) {
+      if (((value >>> i) & 1L) != 0) {
+        buffer[bitPosition >>> 3] |= (byte) (0x80 >>> (bitPosition & 7));
+      }
+      bitPosition++;
+    }
+  }
+
+  /**
+   * Encodes a timestamp as the difference between its delta and the previous delta. Regular
+   * reporting intervals make almost every entry a single zero bit.
+   */
+  void writeTimestamp(long timestamp) {
+    if (!hasTimestamp) {
+      writeBits(timestamp, 64);
+      previousTimestamp = timestamp;
+      previousDelta = 0;
+      hasTimestamp = true;
+      return;
+    }
+    long delta = timestamp - previousTimestamp;
+    long deltaOfDelta = delta - previousDelta;
+    if (deltaOfDelta == 0) {
+      writeBit(false);
+    } else if (deltaOfDelta >= -64 && deltaOfDelta <= 63) {
+      writeBits(0b10, 2);
+      writeBits(deltaOfDelta, 7);
+    } else if (deltaOfDelta >= -256 && deltaOfDelta <= 255) {
+      writeBits(0b110, 3);
+      writeBits(deltaOfDelta, 9);
+    } else if (deltaOfDelta >= -2048 && deltaOfDelta <= 2047) {
+      writeBits(0b1110, 4);
+      writeBits(deltaOfDelta, 12);
+    } else {
+      writeBits(0b1111, 4);
+      writeBits(deltaOfDelta, 64);
+    }
+    previousTimestamp = timestamp;
+    previousDelta = delta;
+  }
+
+  /**
+   * Encodes a value as the XOR against the previous value of the column, storing only the
+   * meaningful bits. Missing samples are written as NaN, which costs one bit while the column
+   * stays missing.
+   */
+  void writeValue(double value) {
+    long bits = Double.doubleToRawLongBits(value);
+    if (!hasValue) {
+      writeBits(bits, 64);
+      previousValueBits = bits;
+      hasValue = true;
+      return;
+    }
+    long xor = bits ^ previousValueBits;
+    if (xor == 0) {
+      writeBit(false);
+    } else {
+      writeBit(true);
+      int leadingZeros = Math.min(Long.numberOfLeadingZeros(xor), 31);
+      int trailingZeros = Long.numberOfTrailingZeros(xor);
+      if (previousLeadingZeros != Integer.MAX_VALUE &&
+          leadingZeros >= previousLeadingZeros && trailingZeros >= previousTrailingZeros) {
+        writeBit(false);
+        int meaningfulBits = 64 - previousLeadingZeros - previousTrailingZeros;
+        writeBits(xor >>> previousTrailingZeros, meaningfulBits);
+      } else {
+        writeBit(true);
+        int meaningfulBits = 64 - leadingZeros - trailingZeros;
+        writeBits(leadingZeros, 5);
+        // 64 meaningful bits do not fit in 6 bits, it is stored as 0
+        writeBits(meaningfulBits & 0x3F, 6);
+        writeBits(xor >>> trailingZeros, meaningfulBits);
+        previousLeadingZeros = leadingZeros;
+        previousTrailingZeros = trailingZeros;
+      }
+    }
+    previousValueBits = bits;
+  }
+
+  private void ensureCapacity(int numBits) {
+    int requiredBytes = (bitPosition + numBits + 7) >>> 3;
+    if (requiredBytes > buffer.length) {
+      buffer = Arrays.copyOf(buffer, Math.max(requiredBytes, buffer.length * 2));
+    }
+  }
+}
@@ -0,0 +1,144 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.spark.metrics.sink;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A registry metric name split into its parts, computed once per name and shared by the
+ * reporters through {@link #of(String)}.
+ *
+ * Executor metrics are registered as {@code <app id>.<executor id>.<source>.<path>}; the path
+ * (everything after the source name) is what the Sparkoscope sinks store, nested on its dots.
+ * Names that do not belong to an executor of an application are marked as such so that the
+ * reporters can skip them without parsing them again on every tick.
+ */
+public final class MetricPath implements Comparable<MetricPath> {
+
+  // Registry names are fixed for the lifetime of a source, so this stays small. The bound only
+  // protects against sources registering an unbounded number of names.
+  private static final int MAX_CACHED_PATHS = 100000;
+  private static final ConcurrentHashMap<String, MetricPath> CACHE =
+    new ConcurrentHashMap<String, MetricPath>();
+
+  private final String registryName;
+  private final String appId;
+  private final String executorId;
+  private final String path;
+  private final String[] segments;
+
+  private MetricPath(String registryName) {
+    this.registryName = registryName;
+    String[] parts = registryName.split("\\.");
+    if (parts.length > 3 && parts[0].startsWith("app") && isInteger(parts[1])) {
+      this.appId = parts[0];
+      this.executorId = parts[1];
+      this.segments = Arrays.copyOfRange(parts, 3, parts.length);
+      for (int i = 0; i < segments.length; i++) {
+        segments[i] = segments[i].intern();
+      }
+      StringBuilder builder = new StringBuilder();
+      for (int i = 0; i < segments.length; i++) {
+        if (i > 0) {
+          builder.append('.');
+        }
+        builder.append(segments[i]);
+      }
+      this.path = builder.toString();
+    } else {
+      this.appId = null;
+      this.executorId = null;
+      this.segments = null;
+      this.path = null;
+    }
+  }
+
+  private static boolean isInteger(String value) {
+    try {
+      Integer.parseInt(value);
+      return true;
+    } catch (NumberFormatException e) {
+      return false;
+    }
+  }
+
+  /** Returns the parsed form of a registry name, parsing it only the first time. */
+  public static MetricPath of(String registryName) {
+    MetricPath path = CACHE.get(registryName);
+    if (path == null) {
+      path = new MetricPath(registryName);
+      if (CACHE.size() >= MAX_CACHED_PATHS) {
+        CACHE.clear();
+      }
+      MetricPath existing = CACHE.putIfAbsent(registryName, path);
+      if (existing != null) {
+        path = existing;
+      }
+    }
+    return path;
+  }
+
+  /** Whether the name is an executor metric of an application, the only ones the sinks keep. */
+  public boolean isExecutorMetric() {
+    return segments != null;
+  }
+
+  public String registryName() {
+    return registryName;
+  }
+
+  public String appId() {
+    return appId;
+  }
+
+  public String executorId() {
+    return executorId;
+  }
+
+  /** The metric path within its source, e.g. {@code cpu.host.sys}. */
+  public String path() {
+    return path;
+  }
+
+  public int depth() {
+    return segments.length;
+  }
+
+  public String segment(int index) {
+    return segments[index];
+  }
+
+  /** Orders paths segment by segment, so that paths sharing a prefix are adjacent. */
+  @Override
+  public int compareTo(MetricPath other) {
+    int common = Math.min(segments.length, other.segments.length);
+    for (int i = 0; i < common; i++) {
+      int result = segments[i].compareTo(other.segments[i]);
+      if (result != 0) {
+        return result;
+      }
+    }
+    return segments.length - other.segments.length;
+  }
+
+  @Override
+  public String toString() {
+    return registryName;
+  }
+}
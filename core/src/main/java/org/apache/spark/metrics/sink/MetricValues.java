@@ -0,0 +1,116 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.spark.metrics.sink;
+
+import java.util.Arrays;
+
+/**
+ * The values of one reporting tick, kept in parallel arrays that are reused from tick to tick
+ * so that collecting a tick does not allocate once the arrays have grown to the number of
+ * metrics.
+ */
+public final class MetricValues {
+
+  private MetricPath[] paths;
+  private Object[] values;
+  private int size = 0;
+
+  public MetricValues() {
+    this(64);
+  }
+
+  public MetricValues(int initialCapacity) {
+    this.paths = new MetricPath[initialCapacity];
+    this.values = new Object[initialCapacity];
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  public MetricPath path(int index) {
+    return paths[index];
+  }
+
+  public Object value(int index) {
+    return values[index];
+  }
+
+  public void add(MetricPath path, Object value) {
+    if (size == paths.length) {
+      paths = Arrays.copyOf(paths, size * 2);
+      values = Arrays.copyOf(values, size * 2);
+    }
+    paths[size] = path;
+    values[size] = value;
+    size++;
+  }
+
+  public void clear() {
+    Arrays.fill(values, 0, size, null);
+    size = 0;
+  }
+
+  /** Replaces the content of this instance with the content of {@code other}. */
+  public void copyFrom(MetricValues other) {
+    clear();
+    if (paths.length < other.size) {
+      paths = new MetricPath[other.paths.length];
+      values = new Object[other.values.length];
+    }
+    System.arraycopy(other.paths, 0, paths, 0, other.size);
+    System.arraycopy(other.values, 0, values, 0, other.size);
+    size = other.size;
+  }
+
+  /**
+   * Sorts the entries by path (stable, so the last value reported for a path stays last) and
+   * keeps only the last value of every path. Ticks arrive almost sorted, which makes the
+   * insertion sort close to linear.
+   */
+  public void sortByPath() {
+    for (int i = 1; i < size; i++) {
+      MetricPath path = paths[i];
+      Object value = values[i];
+      int j = i - 1;
+      while (j >= 0 && paths[j].compareTo(path) > 0) {
+        paths[j + 1] = paths[j];
+        values[j + 1] = values[j];
+        j--;
+      }
+      paths[j + 1] = path;
+      values[j + 1] = value;
+    }
+    int kept = 0;
+    for (int i = 0; i < size; i++) {
+      if (kept > 0 && paths[kept - 1].compareTo(paths[i]) == 0) {
+        values[kept - 1] = values[i];
+      } else {
+        paths[kept] = paths[i];
+        values[kept] = values[i];
+        kept++;
+      }
+    }
+    Arrays.fill(values, kept, size, null);
+    size = kept;
+  }
+}
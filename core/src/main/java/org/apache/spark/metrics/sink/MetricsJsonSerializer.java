@@ -0,0 +1,201 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.spark.metrics.sink;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * Serializes a tick to the Sparkoscope JSON layout,
+ * {@code {"timestamp":...,"host":"...","values":{<metric paths nested on their dots>}}},
+ * straight from a {@link MetricValues} into a reusable UTF-8 buffer.
+ *
+ * The nesting is produced while streaming over the entries sorted by path, so no intermediate
+ * maps are built. As with the map based layout a path that continues below an existing leaf
+ * is dropped. Non-finite numbers are written as null since JSON can not represent them.
+ *
+ * Instances are not thread safe; each reporter keeps its own.
+ */
+public final class MetricsJsonSerializer {
+
+  private final StringBuilder chars = new StringBuilder(8192);
+  private byte[] bytes = new byte[8192];
+  private int length = 0;
+
+  /**
+   * Serializes a tick. {@code values} is sorted in place.
+   */
+  public void serialize(long timestamp, String host, MetricValues values) {
+    chars.setLength(0);
+    chars.append("{\"timestamp\":").append(timestamp).append(",\"host\":");
+    appendString(host);
+    chars.append(",\"values\":{");
+
+    values.sortByPath();
+    MetricPath previous = null;
+    for (int i = 0; i < values.size(); i++) {
+      MetricPath path = values.path(i);
+      int common = 0;
+      if (previous != null) {
+        int limit = Math.min(previous.depth(), path.depth());
+        while (common < limit && previous.segment(common).equals(path.segment(common))) {
+          common++;
+        }
+        if (common == previous.depth() || common == path.depth()) {
+          // One path is a prefix of the other, a leaf and an object can't share a key
+          continue;
+        }
+        for (int d = previous.depth() - 1; d > common; d--) {
+          chars.append('}');
+        }
+        chars.append(',');
+      }
+      for (int d = common; d < path.depth() - 1; d++) {
+        appendString(path.segment(d));
+        chars.append(":{");
+      }
+      appendString(path.segment(path.depth() - 1));
+      chars.append(':');
+      appendValue(values.value(i));
+      previous = path;
+    }
+    if (previous != null) {
+      for (int d = previous.depth() - 1; d > 0; d--) {
+        chars.append('}');
+      }
+    }
+    chars.append("}}");
+    encode();
+  }
+
+  /** Number of valid bytes in {@link #bytes()}. */
+  public int length() {
+    return length;
+  }
+
+  /** The serialized tick, valid up to {@link #length()} until the next call to serialize. */
+  public byte[] bytes() {
+    return bytes;
+  }
+
+  /** A copy of the serialized tick, for consumers that keep the array. */
+  public byte[] toByteArray() {
+    return Arrays.copyOf(bytes, length);
+  }
+
+  public void writeTo(OutputStream out) throws IOException {
+    out.write(bytes, 0, length);
+  }
+
+  private void appendValue(Object value) {
+    if (value == null) {
+      chars.append("null");
+    } else if (value instanceof Double) {
+      double d = (Double) value;
+      if (Double.isNaN(d) || Double.isInfinite(d)) {
+        chars.append("null");
+      } else {
+        chars.append(d);
+      }
+    } else if (value instanceof Float) {
+      float f = (Float) value;
+      if (Float.isNaN(f) || Float.isInfinite(f)) {
+        chars.append("null");
+      } else {
+        chars.append(f);
+      }
+    } else if (value instanceof Long || value instanceof Integer ||
+        value instanceof Short || value instanceof Byte) {
+      chars.append(((Number) value).longValue());
+    } else if (value instanceof Number) {
+      chars.append(value.toString());
+    } else if (value instanceof Boolean) {
+      chars.append(((Boolean) value).booleanValue());
+    } else {
+      appendString(value.toString());
+    }
+  }
+
+  private void appendString(String value) {
+    appendString(chars, value);
+  }
+
+  /** Appends {@code value} to {@code chars} as a quoted JSON string. */
+  static void appendString(StringBuilder chars, String value) {
+    chars.append('"');
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      switch (c) {
+        case '"':
+          chars.append("\\\"");
+          break;
+        case '\\':
+          chars.append("\\\\");
+          break;
+        case '\n':
+          chars.append("\\n");
+          break;
+        case '\r':
+          chars.append("\\r");
+          break;
+        case '\t':
+          chars.append("\\t");
+          break;
+        default:
+          if (c < 0x20) {
+            chars.append("\\u00");
+            chars.append(Character.forDigit(c >> 4, 16));
+            chars.append(Character.forDigit(c & 0xF, 16));
+          } else {
+            chars.append(c);
+          }
+      }
+    }
+    chars.append('"');
+  }
+
+  private void encode() {
+    int n = chars.length();
+    if (bytes.length < n * 3) {
+      bytes = new byte[Math.max(n * 3, bytes.length * 2)];
+    }
+    int pos = 0;
+    for (int i = 0; i < n; i++) {
+      char c = chars.charAt(i);
+      if (c < 0x80) {
+        bytes[pos++] = (byte) c;
+      } else if (c < 0x800) {
+        bytes[pos++] = (byte) (0xC0 | (c >> 6));
+        bytes[pos++] = (byte) (0x80 | (c & 0x3F));
+      } else if (Character.isHighSurrogate(c) && i + 1 < n &&
+          Character.isLowSurrogate(chars.charAt(i + 1))) {
+        int codePoint = Character.toCodePoint(c, chars.charAt(++i));
+        bytes[pos++] = (byte) (0xF0 | (codePoint >> 18));
+        bytes[pos++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+        bytes[pos++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+        bytes[pos++] = (byte) (0x80 | (codePoint & 0x3F));
+      } else {
+        bytes[pos++] = (byte) (0xE0 | (c >> 12));
+        bytes[pos++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+        bytes[pos++] = (byte) (0x80 | (c & 0x3F));
+      }
+    }
+    length = pos;
+  }
+}
@@ -0,0 +1,203 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.spark.metrics.sink;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * The MQTT messages of one executor, one topic per metric:
+ * {@code metrics/<app id>/<host>_<executor id>/<metric path>}, e.g.
+ * {@code metrics/app-20170101-0001/node1_3/cpu.host.sys}, so that a subscriber can pick a
+ * single metric of every executor with {@code metrics/<app id>/+/cpu.host.sys}.
+ *
+ * Every message holds the points of one metric over {@code batchTicks} ticks, either as a JSON
+ * array of {@code [timestamp, value]} pairs or, in binary, as 16 bytes per point: the timestamp
+ * in seconds as a big endian long followed by the value as a big endian double. Only numeric
+ * values are published.
+ *
+ * The metric paths of the executor are published, whenever new ones appear, as a retained
+ * {@code {"payload": "json"|"binary", "metrics": [...]}} message on
+ * {@code metrics-catalog/<app id>/<host>_<executor id>}, which lets subscribers list the
+ * metrics without receiving their values.
+ */
+public final class MqttMetricMessages {
+
+  public enum Payload {
+    JSON, BINARY;
+
+    public static Payload fromString(String name) {
+      return valueOf(name.toUpperCase(Locale.ROOT));
+    }
+  }
+
+  /** Sends one message. */
+  public interface Publisher {
+    void publish(String topic, byte[] payload, boolean retained) throws Exception;
+  }
+
+  /** The points of one metric since the last flush, in arrays reused from batch to batch. */
+  private static final class Series {
+    final String topic;
+    long[] timestamps;
+    double[] values;
+    int count = 0;
+
+    Series(String topic, int capacity) {
+      this.topic = topic;
+      this.timestamps = new long[capacity];
+      this.values = new double[capacity];
+    }
+
+    void add(long timestamp, double value) {
+      if (count == timestamps.length) {
+        timestamps = Arrays.copyOf(timestamps, count * 2);
+        values = Arrays.copyOf(values, count * 2);
+      }
+      timestamps[count] = timestamp;
+      values[count] = value;
+      count++;
+    }
+  }
+
+  private final Payload payload;
+  private final int batchTicks;
+  private final String topicPrefix;
+  private final String catalogTopic;
+  private final Map<MetricPath, Series> series = new LinkedHashMap<MetricPath, Series>();
+  private final StringBuilder json = new StringBuilder();
+  private int ticks = 0;
+  private boolean catalogChanged = false;
+
+  public MqttMetricMessages(String appId, String hostKey, Payload payload, int batchTicks) {
+    if (batchTicks < 1) {
+      throw new IllegalArgumentException("batchTicks must be positive: " + batchTicks);
+    }
+    this.payload = payload;
+    this.batchTicks = batchTicks;
+    this.topicPrefix = "metrics/" + topicLevel(appId) + "/" + topicLevel(hostKey) + "/";
+    this.catalogTopic = "metrics-catalog/" + topicLevel(appId) + "/" + topicLevel(hostKey);
+  }
+
+  // '/' separates topic levels, '+' and '#' are wildcards
+  static String topicLevel(String name) {
+    return name.replace('/', '_').replace('+', '_').replace('#', '_');
+  }
+
+  public String topic(MetricPath path) {
+    return topicPrefix + topicLevel(path.path());
+  }
+
+  public String catalogTopic() {
+    return catalogTopic;
+  }
+
+  /** Adds the numeric values of one tick. */
+  public void add(long timestamp, MetricValues tick) {
+    for (int i = 0; i < tick.size(); i++) {
+      Object value = tick.value(i);
+      if (value instanceof Number) {
+        MetricPath path = tick.path(i);
+        Series s = series.get(path);
+        if (s == null) {
+          s = new Series(topic(path), batchTicks);
+          series.put(path, s);
+          catalogChanged = true;
+        }
+        s.add(timestamp, ((Number) value).doubleValue());
+      }
+    }
+    ticks++;
+  }
+
+  /** Whether {@code batchTicks} ticks were added since the last flush. */
+  public boolean isBatchComplete() {
+    return ticks >= batchTicks;
+  }
+
+  /** Publishes the catalog if it changed, then one message per metric holding its points. */
+  public void flush(Publisher publisher) throws Exception {
+    try {
+      if (catalogChanged) {
+        publisher.publish(catalogTopic, catalog(), true);
+        catalogChanged = false;
+      }
+      for (Series s : series.values()) {
+        if (s.count > 0) {
+          publisher.publish(s.topic, encode(s), false);
+        }
+      }
+    } finally {
+      for (Series s : series.values()) {
+        s.count = 0;
+      }
+      ticks = 0;
+    }
+  }
+
+  // The client keeps the payload until the message is delivered, so every message gets its own
+  private byte[] encode(Series s) {
+    if (payload == Payload.BINARY) {
+      ByteBuffer buffer = ByteBuffer.allocate(16 * s.count);
+      for (int i = 0; i < s.count; i++) {
+        buffer.putLong(s.timestamps[i]);
+        buffer.putDouble(s.values[i]);
+      }
+      return buffer.array();
+    }
+    json.setLength(0);
+    json.append('[');
+    for (int i = 0; i < s.count; i++) {
+      if (i > 0) {
+        json.append(',');
+      }
+      json.append('[').append(s.timestamps[i]).append(',');
+      double value = s.values[i];
+      if (Double.isNaN(value) || Double.isInfinite(value)) {
+        json.append("null");
+      } else if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+        json.append((long) value);
+      } else {
+        json.append(value);
+      }
+      json.append(']');
+    }
+    json.append(']');
+    return json.toString().getBytes(StandardCharsets.UTF_8);
+  }
+
+  private byte[] catalog() {
+    json.setLength(0);
+    json.append("{\"payload\":\"").append(payload.name().toLowerCase(Locale.ROOT))
+      .append("\",\"metrics\":[");
+    boolean first = true;
+    for (MetricPath path : series.keySet()) {
+      if (!first) {
+        json.append(',');
+      }
+      first = false;
+      MetricsJsonSerializer.appendString(json, path.path());
+    }
+    json.append("]}");
+    return json.toString().getBytes(StandardCharsets.UTF_8);
+  }
+}
@@ -43,6 +43,7 @@ import org.apache.spark.unsafe.Platform;
 import org.apache.spark.unsafe.array.LongArray;
 import org.apache.spark.unsafe.memory.MemoryBlock;
 import org.apache.spark.util.Utils;
+import org.apache.spark.util.collection.unsafe.sort.AsyncSpill;
 
 /**
  * An external sorter that is specialized for sort-based shuffle.
@@ -59,6 +60,10 @@ import org.apache.spark.util.Utils;
  * Unlike {@link org.apache.spark.util.collection.ExternalSorter}, this sorter does not merge its
  * spill files. Instead, this merging is performed in {@link UnsafeShuffleWriter}, which uses a
  * specialized merge procedure that avoids extra serialization/deserialization.
+ * <p>
+ * With {@code spark.shuffle.spill.async.enabled}, once the sorter has spilled, it hands its
+ * in-memory records to an {@link AsyncSpill} whenever they reach a fraction of the memory
+ * released by that spill, and goes on inserting records into a new in-memory sorter.
  */
 final class ShuffleExternalSorter extends MemoryConsumer {
 
@@ -82,6 +87,17 @@ final class ShuffleExternalSorter extends MemoryConsumer {
   /** The buffer size to use when writing spills using DiskBlockObjectWriter */
   private final int fileBufferSizeBytes;
 
+  private final int initialSize;
+  private final boolean useRadixSort;
+
+  /**
+   * Fraction of the memory released by the last spill on the task thread at which the in-memory
+   * records are spilled on a background thread, 0 to always spill on the task thread.
+   */
+  private final double asyncSpillFraction;
+  private long asyncSpillThresholdBytes = 0L;
+  @Nullable private AsyncSpill asyncSpill = null;
+
   /**
    * Memory pages that hold the records being sorted. The pages in this list are freed when
    * spilling, although in principle we could recycle these pages across spills (on the other hand,
@@ -120,8 +136,10 @@ final class ShuffleExternalSorter extends MemoryConsumer {
     this.numElementsForSpillThreshold =
       conf.getLong("spark.shuffle.spill.numElementsForceSpillThreshold", 1024 * 1024 * 1024);
     this.writeMetrics = writeMetrics;
-    this.inMemSorter = new ShuffleInMemorySorter(
-      this, initialSize, conf.getBoolean("spark.shuffle.sort.useRadixSort", true));
+    this.initialSize = initialSize;
+    this.useRadixSort = conf.getBoolean("spark.shuffle.sort.useRadixSort", true);
+    this.asyncSpillFraction = AsyncSpill.bufferFraction(conf);
+    this.inMemSorter = new ShuffleInMemorySorter(this, initialSize, useRadixSort);
     this.peakMemoryUsedBytes = getMemoryUsage();
   }
 
@@ -147,9 +165,55 @@ final class ShuffleExternalSorter extends MemoryConsumer {
       writeMetricsToUse = new ShuffleWriteMetrics();
     }
 
+    final SpillInfo spillInfo = newSpillInfo();
+    if (writeSortedFile(inMemSorter, spillInfo, writeMetricsToUse)) {
+      spills.add(spillInfo);
+    }
+
+    if (!isLastFile) {  // i.e. this is a spill file
+      // The current semantics of `shuffleRecordsWritten` seem to be that it's updated when records
+      // are written to disk, not when they enter the shuffle sorting code. DiskBlockObjectWriter
+      // relies on its `recordWritten()` method being called in order to trigger periodic updates to
+      // `shuffleBytesWritten`. If we were to remove the `recordWritten()` call and increment that
+      // counter at a higher-level, then the in-progress metrics for records written and bytes
+      // written would get out of sync.
+      //
+      // When writing the last file, we pass `writeMetrics` directly to the DiskBlockObjectWriter;
+      // in all other cases, we pass in a dummy write metrics to capture metrics, then copy those
+      // metrics to the true write metrics here. The reason for performing this copying is so that
+      // we can avoid reporting spilled bytes as shuffle write bytes.
+      //
+      // Note that we intentionally ignore the value of `writeMetricsToUse.shuffleWriteTime()`.
+      // Consistent with ExternalSorter, we do not count this IO towards shuffle write time.
+      // This means that this IO time is not accounted for anywhere; SPARK-3577 will fix this.
+      writeMetrics.incRecordsWritten(writeMetricsToUse.recordsWritten());
+      taskContext.taskMetrics().incDiskBytesSpilled(writeMetricsToUse.bytesWritten());
+    }
+  }
+
+  /** Creates a temporary shuffle file to write sorted records to. */
+  private SpillInfo newSpillInfo() {
+    // Because this output will be read during shuffle, its compression codec must be controlled by
+    // spark.shuffle.compress instead of spark.shuffle.spill.compress, so we need to use
+    // createTempShuffleBlock here; see SPARK-3426 for more details.
+    final Tuple2<TempShuffleBlockId, File> spilledFileInfo =
+      blockManager.diskBlockManager().createTempShuffleBlock();
+    return new SpillInfo(numPartitions, spilledFileInfo._2(), spilledFileInfo._1());
+  }
+
+  /**
+   * Sorts the records of an in-memory sorter and writes them to the file of a spill. This only
+   * reads the sorter and the pages of its records, so it may run on a background thread.
+   *
+   * @return whether the sorter has records.
+   */
+  private boolean writeSortedFile(
+      ShuffleInMemorySorter sorter,
+      SpillInfo spillInfo,
+      ShuffleWriteMetrics writeMetricsToUse) throws IOException {
     // This call performs the actual sort.
     final ShuffleInMemorySorter.ShuffleSorterIterator sortedRecords =
-      inMemSorter.getSortedIterator();
+      sorter.getSortedIterator();
 
     // Small writes to DiskBlockObjectWriter will be fairly inefficient. Since there doesn't seem to
     // be an API to directly transfer bytes from managed memory to the disk writer, we buffer
@@ -157,24 +221,45 @@ final class ShuffleExternalSorter extends MemoryConsumer {
     // record;
     final byte[] writeBuffer = new byte[DISK_WRITE_BUFFER_SIZE];
 
-    // Because this output will be read during shuffle, its compression codec must be controlled by
-    // spark.shuffle.compress instead of spark.shuffle.spill.compress, so we need to use
-    // createTempShuffleBlock here; see SPARK-3426 for more details.
-    final Tuple2<TempShuffleBlockId, File> spilledFileInfo =
-      blockManager.diskBlockManager().createTempShuffleBlock();
-    final File file = spilledFileInfo._2();
-    final TempShuffleBlockId blockId = spilledFileInfo._1();
-    final SpillInfo spillInfo = new SpillInfo(numPartitions, file, blockId);
-
     // Unfortunately, we need a serializer instance in order to construct a DiskBlockObjectWriter.
     // Our write path doesn't actually use this serializer (since we end up calling the `write()`
     // OutputStream methods), but DiskBlockObjectWriter still calls some methods on it. To work
     // around this, we pass a dummy no-op serializer.
     final SerializerInstance ser = DummySerializerInstance.INSTANCE;
 
-    final DiskBlockObjectWriter writer =
-      blockManager.getDiskWriter(blockId, file, ser, fileBufferSizeBytes, writeMetricsToUse);
+    final DiskBlockObjectWriter writer = blockManager.getDiskWriter(
+      spillInfo.blockId, spillInfo.file, ser, fileBufferSizeBytes, writeMetricsToUse);
+
+    final int currentPartition;
+    try {
+      currentPartition = writeSortedRecords(sortedRecords, writer, writeBuffer, spillInfo);
+    } catch (IOException | RuntimeException e) {
+      writer.revertPartialWritesAndClose();
+      throw e;
+    }
 
+    final FileSegment committedSegment = writer.commitAndGet();
+    writer.close();
+    // If `writeSortedFile()` was called from `closeAndGetSpills()` and no records were inserted,
+    // then the file might be empty. Note that it might be better to avoid calling
+    // writeSortedFile() in that case.
+    if (currentPartition != -1) {
+      spillInfo.partitionLengths[currentPartition] = committedSegment.length();
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * Writes sorted records, committing the file segment of every partition but the last one.
+   *
+   * @return the partition of the last record, -1 if there are none.
+   */
+  private int writeSortedRecords(
+      ShuffleInMemorySorter.ShuffleSorterIterator sortedRecords,
+      DiskBlockObjectWriter writer,
+      byte[] writeBuffer,
+      SpillInfo spillInfo) throws IOException {
     int currentPartition = -1;
     while (sortedRecords.hasNext()) {
       sortedRecords.loadNext();
@@ -204,36 +289,7 @@ final class ShuffleExternalSorter extends MemoryConsumer {
       }
       writer.recordWritten();
     }
-
-    final FileSegment committedSegment = writer.commitAndGet();
-    writer.close();
-    // If `writeSortedFile()` was called from `closeAndGetSpills()` and no records were inserted,
-    // then the file might be empty. Note that it might be better to avoid calling
-    // writeSortedFile() in that case.
-    if (currentPartition != -1) {
-      spillInfo.partitionLengths[currentPartition] = committedSegment.length();
-      spills.add(spillInfo);
-    }
-
-    if (!isLastFile) {  // i.e. this is a spill file
-      // The current semantics of `shuffleRecordsWritten` seem to be that it's updated when records
-      // are written to disk, not when they enter the shuffle sorting code. DiskBlockObjectWriter
-      // relies on its `recordWritten()` method being called in order to trigger periodic updates to
-      // `shuffleBytesWritten`. If we were to remove the `recordWritten()` call and increment that
-      // counter at a higher-level, then the in-progress metrics for records written and bytes
-      // written would get out of sync.
-      //
-      // When writing the last file, we pass `writeMetrics` directly to the DiskBlockObjectWriter;
-      // in all other cases, we pass in a dummy write metrics to capture metrics, then copy those
-      // metrics to the true write metrics here. The reason for performing this copying is so that
-      // we can avoid reporting spilled bytes as shuffle write bytes.
-      //
-      // Note that we intentionally ignore the value of `writeMetricsToUse.shuffleWriteTime()`.
-      // Consistent with ExternalSorter, we do not count this IO towards shuffle write time.
-      // This means that this IO time is not accounted for anywhere; SPARK-3577 will fix this.
-      writeMetrics.incRecordsWritten(writeMetricsToUse.recordsWritten());
-      taskContext.taskMetrics().incDiskBytesSpilled(writeMetricsToUse.bytesWritten());
-    }
+    return currentPartition;
   }
 
   /**
@@ -241,8 +297,14 @@ final class ShuffleExternalSorter extends MemoryConsumer {
    */
   @Override
   public long spill(long size, MemoryConsumer trigger) throws IOException {
-    if (trigger != this || inMemSorter == null || inMemSorter.numRecords() == 0) {
-      return 0L;
+    // The records already handed to a background thread are the first to release memory, also
+    // when another consumer needs it
+    final long asyncSpillSize = finishAsyncSpill();
+    if (trigger != this) {
+      return asyncSpillSize;
+    }
+    if (asyncSpillSize >= size || inMemSorter == null || inMemSorter.numRecords() == 0) {
+      return asyncSpillSize;
     }
 
     logger.info("Thread {} spilling sort data of {} to disk ({} {} so far)",
@@ -258,15 +320,107 @@ final class ShuffleExternalSorter extends MemoryConsumer {
     // records. Otherwise, if the task is over allocated memory, then without freeing the memory
     // pages, we might not be able to get memory for the pointer array.
     taskContext.taskMetrics().incMemoryBytesSpilled(spillSize);
+    asyncSpillThresholdBytes = (long) (asyncSpillFraction * spillSize);
+    return asyncSpillSize + spillSize;
+  }
+
+  /**
+   * Finishes the spill of the records handed to a background thread, if any, once it is done.
+   * Then hands the in-memory records to a background thread to be spilled if they reached the
+   * threshold set by the last spill.
+   */
+  private void maybeSpillAsync() throws IOException {
+    if (asyncSpill != null && asyncSpill.isDone()) {
+      awaitAsyncSpill();
+    }
+    if (asyncSpill != null || asyncSpillThresholdBytes <= 0 || inMemSorter == null ||
+        inMemSorter.numRecords() == 0 || getUsed() < asyncSpillThresholdBytes) {
+      return;
+    }
+
+    final ShuffleInMemorySorter sorter = inMemSorter;
+    final LinkedList<MemoryBlock> pages = new LinkedList<>(allocatedPages);
+    final long memoryBytes = getMemoryUsage();
+    logger.info("Thread {} spilling sort data of {} to disk in the background ({} {} so far)",
+      Thread.currentThread().getId(),
+      Utils.bytesToString(memoryBytes),
+      spills.size(),
+      spills.size() > 1 ? " times" : " time");
+    updatePeakMemoryUsed();
+    // Spills are not counted as shuffle bytes written, see writeSortedFile(boolean)
+    final ShuffleWriteMetrics spillMetrics = new ShuffleWriteMetrics();
+    // Created on the task thread, so that its file is deleted if the spill fails
+    final SpillInfo spillInfo = newSpillInfo();
+    final boolean[] written = new boolean[1];
+    asyncSpill = new AsyncSpill(taskMemoryManager, memoryBytes) {
+      @Override
+      protected void write() throws IOException {
+        written[0] = writeSortedFile(sorter, spillInfo, spillMetrics);
+      }
+
+      @Override
+      protected void free() {
+        for (MemoryBlock page : pages) {
+          freePage(page);
+        }
+        sorter.free();
+        if (written[0]) {
+          spills.add(spillInfo);
+        } else if (spillInfo.file.exists() && !spillInfo.file.delete()) {
+          logger.error("Unable to delete spill file {}", spillInfo.file.getPath());
+        }
+        writeMetrics.incRecordsWritten(spillMetrics.recordsWritten());
+        taskContext.taskMetrics().incDiskBytesSpilled(spillMetrics.bytesWritten());
+      }
+    };
+    allocatedPages.clear();
+    currentPage = null;
+    pageCursor = 0;
+    inMemSorter = null;
+    asyncSpill.start();
+    // Allocating the pointer array could spill, which would wait for the spill just started
+    inMemSorter = new ShuffleInMemorySorter(this, initialSize, useRadixSort);
+  }
+
+  /**
+   * Waits for the spill running on a background thread, if any, and frees its memory.
+   *
+   * @return the number of bytes of memory freed.
+   */
+  private long finishAsyncSpill() throws IOException {
+    if (asyncSpill == null) {
+      return 0L;
+    }
+    final AsyncSpill spill = asyncSpill;
+    asyncSpill = null;
+    final long spillSize = spill.finish();
+    taskContext.taskMetrics().incMemoryBytesSpilled(spillSize);
     return spillSize;
   }
 
+  /**
+   * Finishes the spill running on a background thread, if any, outside of a call to spill().
+   */
+  private void awaitAsyncSpill() throws IOException {
+    final long spillSize = finishAsyncSpill();
+    if (spillSize > 0) {
+      taskMemoryManager.recordSpill(spillSize);
+    }
+  }
+
+  @VisibleForTesting
+  boolean isSpillingAsync() {
+    return asyncSpill != null;
+  }
+
   private long getMemoryUsage() {
     long totalPageSize = 0;
     for (MemoryBlock page : allocatedPages) {
       totalPageSize += page.size();
     }
-    return ((inMemSorter == null) ? 0 : inMemSorter.getMemoryUsage()) + totalPageSize;
+    final long asyncSpillSize = (asyncSpill == null) ? 0 : asyncSpill.memoryBytes();
+    return ((inMemSorter == null) ? 0 : inMemSorter.getMemoryUsage()) + totalPageSize +
+      asyncSpillSize;
   }
 
   private void updatePeakMemoryUsed() {
@@ -301,6 +455,13 @@ final class ShuffleExternalSorter extends MemoryConsumer {
    * Force all memory and spill files to be deleted; called by shuffle error-handling code.
    */
   public void cleanupResources() {
+    if (asyncSpill != null) {
+      try {
+        finishAsyncSpill();
+      } catch (IOException e) {
+        logger.warn("Failed to spill sort data in the background", e);
+      }
+    }
     freeMemory();
     if (inMemSorter != null) {
       inMemSorter.free();
@@ -368,6 +529,7 @@ final class ShuffleExternalSorter extends MemoryConsumer {
   public void insertRecord(Object recordBase, long recordOffset, int length, int partitionId)
     throws IOException {
 
+    maybeSpillAsync();
     // for tests
     assert(inMemSorter != null);
     if (inMemSorter.numRecords() >= numElementsForSpillThreshold) {
@@ -400,6 +562,7 @@ final class ShuffleExternalSorter extends MemoryConsumer {
    */
   public SpillInfo[] closeAndGetSpills() throws IOException {
     try {
+      awaitAsyncSpill();
       if (inMemSorter != null) {
         // Do not count the final file towards the spill count.
         writeSortedFile(true);
@@ -0,0 +1,142 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.spark.util.collection.unsafe.sort;
+
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
+import com.google.common.util.concurrent.Uninterruptibles;
+
+import org.apache.spark.SparkConf;
+import org.apache.spark.memory.TaskMemoryManager;
+import org.apache.spark.util.ThreadUtils;
+
+/**
+ * A spill of the in-memory records of a sorter that is sorted and written on a background thread
+ * while the task inserts records into a new, initially small, in-memory buffer, so that the CPU
+ * work of the task overlaps the disk writes of the spill.
+ * <p>
+ * The background thread neither allocates nor frees memory: the pages and pointer array of the
+ * spilled buffer stay allocated, and accounted for by the {@link TaskMemoryManager}, until the
+ * task thread {@link #finish()}es the spill and {@link #free()}s them. The background thread thus
+ * never takes the lock of the TaskMemoryManager, which the task thread may hold while it waits
+ * for the spill to release memory.
+ */
+public abstract class AsyncSpill implements Callable<Void> {
+
+  /**
+   * Whether sorters hand their in-memory records to a background thread to be spilled rather than
+   * spilling them on the task thread.
+   */
+  public static final String ENABLED_KEY = "spark.shuffle.spill.async.enabled";
+
+  /**
+   * Fraction of the memory released by the last spill of a sorter at which its in-memory records
+   * are handed to a background thread to be spilled.
+   */
+  public static final String BUFFER_FRACTION_KEY = "spark.shuffle.spill.async.bufferFraction";
+
+  private static final ExecutorService spillThreadPool = ThreadUtils.newDaemonCachedThreadPool(
+    "async-spill", Runtime.getRuntime().availableProcessors(), 60);
+
+  /**
+   * The fraction of the memory released by the last spill at which a sorter spills its records
+   * on a background thread, 0 if asynchronous spilling is disabled.
+   */
+  public static double bufferFraction(SparkConf conf) {
+    if (conf == null || !conf.getBoolean(ENABLED_KEY, false)) {
+      return 0.0;
+    }
+    double fraction = conf.getDouble(BUFFER_FRACTION_KEY, 0.5);
+    Preconditions.checkArgument(fraction > 0.0 && fraction <= 1.0,
+      BUFFER_FRACTION_KEY + " must be in (0, 1]: " + fraction);
+    return fraction;
+  }
+
+  private final TaskMemoryManager taskMemoryManager;
+  private final long memoryBytes;
+  private Future<Void> future = null;
+  private volatile long writeNanos = 0L;
+
+  /**
+   * @param memoryBytes the memory of the spilled buffer, released by {@link #free()}
+   */
+  protected AsyncSpill(TaskMemoryManager taskMemoryManager, long memoryBytes) {
+    this.taskMemoryManager = taskMemoryManager;
+    this.memoryBytes = memoryBytes;
+  }
+
+  /** Sorts and writes the records of the spilled buffer. Called on the background thread. */
+  protected abstract void write() throws IOException;
+
+  /** Frees the memory of the spilled buffer. Called on the task thread, once written or failed. */
+  protected abstract void free();
+
+  @Override
+  public final Void call() throws IOException {
+    long start = System.nanoTime();
+    try {
+      write();
+    } finally {
+      writeNanos = System.nanoTime() - start;
+    }
+    return null;
+  }
+
+  public final void start() {
+    Preconditions.checkState(future == null, "The spill was already started");
+    future = spillThreadPool.submit(this);
+  }
+
+  public final boolean isDone() {
+    return future.isDone();
+  }
+
+  /** The memory held by the spilled buffer until the spill is finished. */
+  public final long memoryBytes() {
+    return memoryBytes;
+  }
+
+  /**
+   * Waits for the spill to be written, even if the thread is interrupted since the background
+   * thread reads the memory being freed, then frees its buffer and records how long the spill
+   * took and how long the task waited for it in the metrics of the MemoryManager.
+   *
+   * @return the number of bytes of memory freed
+   * @throws IOException if the spill could not be written; its buffer is freed nevertheless
+   */
+  public final long finish() throws IOException {
+    long start = System.nanoTime();
+    try {
+      Uninterruptibles.getUninterruptibly(future);
+    } catch (ExecutionException e) {
+      Throwables.propagateIfInstanceOf(e.getCause(), IOException.class);
+      throw Throwables.propagate(e.getCause());
+    } finally {
+      long waitNanos = System.nanoTime() - start;
+      free();
+      taskMemoryManager.recordAsyncSpill(writeNanos, waitNanos);
+    }
+    return memoryBytes;
+  }
+}
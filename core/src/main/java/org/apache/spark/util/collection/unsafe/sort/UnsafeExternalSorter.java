@@ -27,6 +27,7 @@ import com.google.common.annotations.VisibleForTesting;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import org.apache.spark.SparkEnv;
 import org.apache.spark.TaskContext;
 import org.apache.spark.executor.ShuffleWriteMetrics;
 import org.apache.spark.memory.MemoryConsumer;
@@ -42,6 +43,10 @@ import org.apache.spark.util.Utils;
 
 /**
  * External sorter based on {@link UnsafeInMemorySorter}.
+ * <p>
+ * With {@code spark.shuffle.spill.async.enabled}, once the sorter has spilled, it hands its
+ * in-memory records to an {@link AsyncSpill} whenever they reach a fraction of the memory
+ * released by that spill, and goes on inserting records into a new in-memory sorter.
  */
 public final class UnsafeExternalSorter extends MemoryConsumer {
 
@@ -67,6 +72,18 @@ public final class UnsafeExternalSorter extends MemoryConsumer {
   public static final long DEFAULT_NUM_ELEMENTS_FOR_SPILL_THRESHOLD = 1024 * 1024 * 1024 / 2;
 
   private final long numElementsForSpillThreshold;
+
+  private final int initialSize;
+  private final boolean canUseRadixSort;
+
+  /**
+   * Fraction of the memory released by the last spill on the task thread at which the in-memory
+   * records are spilled on a background thread, 0 to always spill on the task thread.
+   */
+  private double asyncSpillFraction;
+  private long asyncSpillThresholdBytes = 0L;
+  @Nullable private AsyncSpill asyncSpill = null;
+
   /**
    * Memory pages that hold the records being sorted. The pages in this list are freed when
    * spilling, although in principle we could recycle these pages across spills (on the other hand,
@@ -158,6 +175,10 @@ public final class UnsafeExternalSorter extends MemoryConsumer {
     }
     this.peakMemoryUsedBytes = getMemoryUsage();
     this.numElementsForSpillThreshold = numElementsForSpillThreshold;
+    this.initialSize = initialSize;
+    this.canUseRadixSort = canUseRadixSort;
+    this.asyncSpillFraction =
+      AsyncSpill.bufferFraction(SparkEnv.get() == null ? null : SparkEnv.get().conf());
 
     // Register a cleanup task with TaskContext to ensure that memory is guaranteed to be freed at
     // the end of the task. This is necessary to avoid memory leaks in when the downstream operator
@@ -183,20 +204,33 @@ public final class UnsafeExternalSorter extends MemoryConsumer {
     }
   }
 
+  @VisibleForTesting
+  void setAsyncSpillFraction(double fraction) {
+    asyncSpillFraction = fraction;
+  }
+
+  @VisibleForTesting
+  boolean isSpillingAsync() {
+    return asyncSpill != null;
+  }
+
   /**
    * Sort and spill the current records in response to memory pressure.
    */
   @Override
   public long spill(long size, MemoryConsumer trigger) throws IOException {
+    // The records already handed to a background thread are the first to release memory, also
+    // when another consumer needs it
+    final long asyncSpillSize = finishAsyncSpill();
     if (trigger != this) {
-      if (readingIterator != null) {
-        return readingIterator.spill();
+      if (asyncSpillSize < size && readingIterator != null) {
+        return asyncSpillSize + readingIterator.spill();
       }
-      return 0L; // this should throw exception
+      return asyncSpillSize;
     }
 
-    if (inMemSorter == null || inMemSorter.numRecords() <= 0) {
-      return 0L;
+    if (asyncSpillSize >= size || inMemSorter == null || inMemSorter.numRecords() <= 0) {
+      return asyncSpillSize;
     }
 
     logger.info("Thread {} spilling sort data of {} to disk ({} {} so far)",
@@ -211,15 +245,7 @@ public final class UnsafeExternalSorter extends MemoryConsumer {
         new UnsafeSorterSpillWriter(blockManager, fileBufferSizeBytes, writeMetrics,
           inMemSorter.numRecords());
       spillWriters.add(spillWriter);
-      final UnsafeSorterIterator sortedRecords = inMemSorter.getSortedIterator();
-      while (sortedRecords.hasNext()) {
-        sortedRecords.loadNext();
-        final Object baseObject = sortedRecords.getBaseObject();
-        final long baseOffset = sortedRecords.getBaseOffset();
-        final int recordLength = sortedRecords.getRecordLength();
-        spillWriter.write(baseObject, baseOffset, recordLength, sortedRecords.getKeyPrefix());
-      }
-      spillWriter.close();
+      writeSortedRecords(inMemSorter.getSortedIterator(), spillWriter);
     }
 
     final long spillSize = freeMemory();
@@ -231,11 +257,104 @@ public final class UnsafeExternalSorter extends MemoryConsumer {
     // records. Otherwise, if the task is over allocated memory, then without freeing the memory
     // pages, we might not be able to get memory for the pointer array.
 
+    taskContext.taskMetrics().incMemoryBytesSpilled(spillSize);
+    totalSpillBytes += spillSize;
+    asyncSpillThresholdBytes = (long) (asyncSpillFraction * spillSize);
+    return asyncSpillSize + spillSize;
+  }
+
+  /**
+   * Finishes the spill of the records handed to a background thread, if any, once it is done.
+   * Then hands the in-memory records to a background thread to be spilled if they reached the
+   * threshold set by the last spill.
+   */
+  private void maybeSpillAsync() throws IOException {
+    if (asyncSpill != null && asyncSpill.isDone()) {
+      awaitAsyncSpill();
+    }
+    if (asyncSpill != null || asyncSpillThresholdBytes <= 0 || inMemSorter == null ||
+        inMemSorter.numRecords() == 0 || getUsed() < asyncSpillThresholdBytes) {
+      return;
+    }
+
+    final UnsafeInMemorySorter sorter = inMemSorter;
+    final LinkedList<MemoryBlock> pages = new LinkedList<>(allocatedPages);
+    final long memoryBytes = getMemoryUsage();
+    logger.info("Thread {} spilling sort data of {} to disk in the background ({} {} so far)",
+      Thread.currentThread().getId(),
+      Utils.bytesToString(memoryBytes),
+      spillWriters.size(),
+      spillWriters.size() > 1 ? " times" : " time");
+    updatePeakMemoryUsed();
+    // The spill writer is created here so that cleanupResources() deletes its file if the spill
+    // fails. Its metrics are discarded like those of writeMetrics.
+    final UnsafeSorterSpillWriter spillWriter = new UnsafeSorterSpillWriter(
+      blockManager, fileBufferSizeBytes, new ShuffleWriteMetrics(), sorter.numRecords());
+    spillWriters.add(spillWriter);
+    asyncSpill = new AsyncSpill(taskMemoryManager, memoryBytes) {
+      @Override
+      protected void write() throws IOException {
+        writeSortedRecords(sorter.getSortedIterator(), spillWriter);
+      }
+
+      @Override
+      protected void free() {
+        for (MemoryBlock page : pages) {
+          freePage(page);
+        }
+        sorter.free();
+      }
+    };
+    allocatedPages.clear();
+    currentPage = null;
+    pageCursor = 0;
+    inMemSorter = null;
+    asyncSpill.start();
+    // Allocating the pointer array could spill, which would wait for the spill just started
+    inMemSorter = new UnsafeInMemorySorter(
+      this, taskMemoryManager, recordComparator, prefixComparator, initialSize, canUseRadixSort);
+  }
+
+  /**
+   * Waits for the spill running on a background thread, if any, and frees its memory.
+   *
+   * @return the number of bytes of memory freed.
+   */
+  private long finishAsyncSpill() throws IOException {
+    if (asyncSpill == null) {
+      return 0L;
+    }
+    final AsyncSpill spill = asyncSpill;
+    asyncSpill = null;
+    final long spillSize = spill.finish();
     taskContext.taskMetrics().incMemoryBytesSpilled(spillSize);
     totalSpillBytes += spillSize;
     return spillSize;
   }
 
+  /**
+   * Finishes the spill running on a background thread, if any, outside of a call to spill().
+   */
+  private void awaitAsyncSpill() throws IOException {
+    final long spillSize = finishAsyncSpill();
+    if (spillSize > 0) {
+      taskMemoryManager.recordSpill(spillSize);
+    }
+  }
+
+  private static void writeSortedRecords(
+      UnsafeSorterIterator sortedRecords,
+      UnsafeSorterSpillWriter spillWriter) throws IOException {
+    while (sortedRecords.hasNext()) {
+      sortedRecords.loadNext();
+      final Object baseObject = sortedRecords.getBaseObject();
+      final long baseOffset = sortedRecords.getBaseOffset();
+      final int recordLength = sortedRecords.getRecordLength();
+      spillWriter.write(baseObject, baseOffset, recordLength, sortedRecords.getKeyPrefix());
+    }
+    spillWriter.close();
+  }
+
   /**
    * Return the total memory usage of this sorter, including the data pages and the sorter's pointer
    * array.
@@ -245,7 +364,9 @@ public final class UnsafeExternalSorter extends MemoryConsumer {
     for (MemoryBlock page : allocatedPages) {
       totalPageSize += page.size();
     }
-    return ((inMemSorter == null) ? 0 : inMemSorter.getMemoryUsage()) + totalPageSize;
+    final long asyncSpillSize = (asyncSpill == null) ? 0 : asyncSpill.memoryBytes();
+    return ((inMemSorter == null) ? 0 : inMemSorter.getMemoryUsage()) + totalPageSize +
+      asyncSpillSize;
   }
 
   private void updatePeakMemoryUsed() {
@@ -323,6 +444,13 @@ public final class UnsafeExternalSorter extends MemoryConsumer {
    */
   public void cleanupResources() {
     synchronized (this) {
+      if (asyncSpill != null) {
+        try {
+          finishAsyncSpill();
+        } catch (IOException e) {
+          logger.warn("Failed to spill sort data in the background", e);
+        }
+      }
       deleteSpillFiles();
       freeMemory();
       if (inMemSorter != null) {
@@ -388,6 +516,7 @@ public final class UnsafeExternalSorter extends MemoryConsumer {
       Object recordBase, long recordOffset, int length, long prefix, boolean prefixIsNull)
     throws IOException {
 
+    maybeSpillAsync();
     assert(inMemSorter != null);
     if (inMemSorter.numRecords() >= numElementsForSpillThreshold) {
       logger.info("Spilling data because number of spilledRecords crossed the threshold " +
@@ -422,6 +551,7 @@ public final class UnsafeExternalSorter extends MemoryConsumer {
       Object valueBase, long valueOffset, int valueLen, long prefix, boolean prefixIsNull)
     throws IOException {
 
+    maybeSpillAsync();
     growPointerArrayIfNecessary();
     int uaoSize = UnsafeAlignedOffset.getUaoSize();
     final int required = keyLen + valueLen + (2 * uaoSize);
@@ -461,6 +591,7 @@ public final class UnsafeExternalSorter extends MemoryConsumer {
    */
   public UnsafeSorterIterator getSortedIterator() throws IOException {
     assert(recordComparator != null);
+    awaitAsyncSpill();
     if (spillWriters.isEmpty()) {
       assert(inMemSorter != null);
       readingIterator = new SpillableIterator(inMemSorter.getSortedIterator());
@@ -604,6 +735,7 @@ public final class UnsafeExternalSorter extends MemoryConsumer {
    * TODO: support forced spilling
    */
   public UnsafeSorterIterator getIterator() throws IOException {
+    awaitAsyncSpill();
     if (spillWriters.isEmpty()) {
       assert(inMemSorter != null);
       return inMemSorter.getSortedIterator();
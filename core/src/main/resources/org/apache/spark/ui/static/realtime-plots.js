@@ -1,11 +1,73 @@
 var appId = ($("#realtime-info").attr("data-appId"));
 var mqttPort = ($("#realtime-info").attr("data-mqttPort"));
+var metricsUrl = ($("#realtime-info").attr("data-metricsUrl"));
 
 var client = new Paho.MQTT.Client(window.location.hostname, Number(mqttPort), "webclient-"+appId);
-var firstEntry;
-var realtimeData = [];
+// Metric paths published by any executor, and payload format of every executor
+var availableMetrics = {};
+var payloadFormats = {};
+// Points of the selected metric, per executor, the latest retainedPoints of each only
+var realtimeData = {};
+var retainedPoints = 300;
 var metricToDisplay;
+var metricTopic;
 var colorsMap = {};
+// The chart is redrawn at most once per interval, whatever the number of messages
+var RENDER_INTERVAL_MS = 1000;
+var renderPending = false;
+
+// A fixed size circular buffer of chart points, oldest first
+function SeriesBuffer(host, capacity) {
+    this.host = host;
+    this.capacity = capacity;
+    this.points = new Array(capacity);
+    this.start = 0;
+    this.count = 0;
+}
+
+SeriesBuffer.prototype.push = function (timestamp, value) {
+    var index = (this.start + this.count) % this.capacity;
+    this.points[index] = {date: new Date(timestamp * 1000), value: value, host: this.host};
+    if (this.count < this.capacity) {
+        this.count++;
+    } else {
+        this.start = (this.start + 1) % this.capacity;
+    }
+};
+
+SeriesBuffer.prototype.oldestTimestamp = function () {
+    return this.count == 0 ? Infinity : this.points[this.start].date.getTime() / 1000;
+};
+
+SeriesBuffer.prototype.toArray = function () {
+    var result = new Array(this.count);
+    for (var i = 0; i < this.count; i++) {
+        result[i] = this.points[(this.start + i) % this.capacity];
+    }
+    return result;
+};
+
+// Adds the points of the master that are older than those already received
+SeriesBuffer.prototype.prependHistory = function (history) {
+    var oldest = this.oldestTimestamp();
+    var merged = new SeriesBuffer(this.host, this.capacity);
+    $.each(history, function (i, point) {
+        if (point[0] < oldest) merged.push(point[0], point[1]);
+    });
+    $.each(this.toArray(), function (i, point) {
+        merged.push(point.date.getTime() / 1000, point.value);
+    });
+    this.points = merged.points;
+    this.start = merged.start;
+    this.count = merged.count;
+};
+
+function seriesOf(executor) {
+    if (!(executor in realtimeData)) {
+        realtimeData[executor] = new SeriesBuffer(executor, retainedPoints);
+    }
+    return realtimeData[executor];
+}
 
 // set callback handlers
 client.onConnectionLost = onConnectionLost;
@@ -14,13 +76,23 @@ client.onMessageArrived = onMessageArrived;
 // connect the client
 client.connect({onSuccess:onConnect});
 
+$('#executor-metric-option').on('change', function() {
+    selectMetric(this.value === 'NULL' ? undefined : this.value);
+});
+
 // called when the client connects
 function onConnect() {
-    // Once a connection has been made, make a subscription and send a message.
+    // Only the lists of metrics of the executors are received until a metric is selected
     console.log("onConnect");
-    client.subscribe("metrics-"+appId);
+    client.subscribe("metrics-catalog/" + appId + "/+");
 }
 
+// Metrics the master already has points of, for pages opened after the catalogs were published
+$.getJSON(metricsUrl, {appId: appId}, function (response) {
+    retainedPoints = response.retainedPoints;
+    addMetrics(response.metrics);
+});
+
 // called when the client loses its connection
 function onConnectionLost(responseObject) {
     if (responseObject.errorCode !== 0) {
@@ -28,93 +100,106 @@ function onConnectionLost(responseObject) {
     }
 }
 
-// called when a message arrives
+// called when a message arrives: a catalog on metrics-catalog/<appId>/<executor> or the points
+// of a metric on metrics/<appId>/<executor>/<metric>
 function onMessageArrived(message) {
-    var entry = JSON.parse(message.payloadString).values;
-    if(!firstEntry) {
-        discoverTags(entry,"");
-        availableKeys = (Object.keys(availableTags));
-        availableKeys.sort();
-        $.each(availableKeys, function(key, value) {
-            $('#executor-metric-option')
-                .append($("<option></option>")
-                    .attr("value",value)
-                    .text(value));
+    var levels = message.destinationName.split("/");
+    if (levels[0] == "metrics-catalog") {
+        onCatalog(levels[2], JSON.parse(message.payloadString));
+    } else if (levels[0] == "metrics" && levels.slice(3).join("/") == topicLevel(metricToDisplay)) {
+        var series = seriesOf(levels[2]);
+        $.each(decodePoints(levels[2], message), function (i, point) {
+            series.push(point[0], point[1]);
         });
-        $('#executor-metric-option').on('change', function() {
-            if(!(this.value==='NULL')) {
-                metricToDisplay = (this.value);
-                $('#executor-metrics').empty();
-                renderData();
-            }
-            else {
-                metricToDisplay = undefined;
-                $('#executor-metrics').empty();
-            }
-        });
-        firstEntry = entry;
+        scheduleRender();
     }
-    realtimeData.push(JSON.parse(message.payloadString));
-    renderData();
 }
 
-function renderData() {
-    if(!metricToDisplay) return;
+function onCatalog(executor, catalog) {
+    payloadFormats[executor] = catalog.payload;
+    addMetrics(catalog.metrics);
+}
 
-    var keyArr = metricToDisplay.split(".");
-    var lastHost;
-    var hostsProcessed = [];
-    var metricsMap = {};
-    var legend = [];
-    var data = [];
-    var colors = [];
+function addMetrics(metrics) {
+    var added = false;
+    $.each(metrics, function (i, metric) {
+        if (!(metric in availableMetrics)) {
+            availableMetrics[metric] = true;
+            added = true;
+        }
+    });
+    if (added) {
+        var select = $('#executor-metric-option');
+        select.find('option[value!="NULL"]').remove();
+        $.each(Object.keys(availableMetrics).sort(), function (i, metric) {
+            select.append($("<option></option>").attr("value", metric).text(metric));
+        });
+        select.val(metricToDisplay || 'NULL');
+    }
+}
 
-    $.each(realtimeData, function (key, value) {
+// Subscribes to the selected metric of every executor only
+function selectMetric(metric) {
+    if (metricTopic) {
+        client.unsubscribe(metricTopic);
+        metricTopic = undefined;
+    }
+    metricToDisplay = metric;
+    realtimeData = {};
+    $('#executor-metrics').empty();
+    if (metric) {
+        metricTopic = "metrics/" + appId + "/+/" + topicLevel(metric);
+        client.subscribe(metricTopic);
+        // Starts from the recent history kept by the master
+        $.getJSON(metricsUrl, {appId: appId, metric: metric}, function (response) {
+            if (metric !== metricToDisplay) return;
+            $.each(response.series, function (i, series) {
+                seriesOf(series.executor).prependHistory(series.points);
+            });
+            scheduleRender();
+        });
+    }
+}
 
-        var host = value.host;
-        if(keyArr[0]=='sigar') {
-            var splitted = host.split("_");
-            host = splitted.slice(0,splitted.length-1).join("_")
-        }
-        if(lastHost) {
-            if(lastHost!=host)
-            {
-                if(host in hostsProcessed) return false;
-                else {
-                    hostsProcessed.push(lastHost);
-                    lastHost = host;
-                }
-            } else {
-                if(host in hostsProcessed) return false;
-            }
-        }
-        if (!(host in metricsMap)) {
-            metricsMap[host] = {data: []};
-            legend.push(host);
-        }
-        var millis = value.timestamp*1000;
+// Same substitutions as the MQTT sink: '/' separates topic levels, '+' and '#' are wildcards
+function topicLevel(name) {
+    return name ? name.replace(/[\/+#]/g, "_") : name;
+}
 
-      /*  if (minimumDataTime == 0 || millis < minimumDataTime) {
-            minimumDataTime = millis;
-        }*/
+// JSON: [[timestamp, value], ...]. Binary: 16 bytes per point, the timestamp in seconds as a
+// big endian 64 bits integer then the value as a big endian double.
+function decodePoints(executor, message) {
+    if (payloadFormats[executor] != "binary") {
+        return JSON.parse(message.payloadString);
+    }
+    var bytes = message.payloadBytes;
+    var view = new DataView(bytes.buffer, bytes.byteOffset, bytes.byteLength);
+    var points = [];
+    for (var offset = 0; offset + 16 <= bytes.byteLength; offset += 16) {
+        var timestamp = view.getUint32(offset) * 4294967296 + view.getUint32(offset + 4);
+        points.push([timestamp, view.getFloat64(offset + 8)]);
+    }
+    return points;
+}
 
-        var entryObj = value.values;
-        var metric = entryObj[keyArr[0]];
-        for (var i = 1; i < keyArr.length; i++) {
-            metric = metric[keyArr[i]];
-        }
+function scheduleRender() {
+    if (renderPending) return;
+    renderPending = true;
+    setTimeout(function () {
+        renderPending = false;
+        renderData();
+    }, RENDER_INTERVAL_MS);
+}
 
-        var entryToAdd = {
-            date: new Date(millis),
-            value: metric,
-            host: host
-        };
+function renderData() {
+    if(!metricToDisplay) return;
 
-        metricsMap[host].data.push(entryToAdd);
-    });
+    var legend = Object.keys(realtimeData).sort();
+    var data = [];
+    var colors = [];
 
     $.each(legend, function (ind, value) {
-        data.push(metricsMap[value].data);
+        data.push(realtimeData[value].toArray());
         if(!(value in colorsMap))
         {
             colorsMap[value] = getRandomColor();
@@ -122,8 +207,6 @@ function renderData() {
         colors.push(colorsMap[value]);
     });
 
-    console.log(data);
-
     var graph = {
         title: metricToDisplay,
         data: data,
@@ -11,15 +11,15 @@ var stageInfo = [];
 var jobInfo = [];
 var tooltips = {};
 
+// The replayed executor metrics: {metrics: [...], minTime, maxTime}. The values of a metric
+// are fetched from the executorMetrics REST endpoint when it is selected.
 function parseExecutorMetrics(_executorMetrics,_stageInfo,_jobInfo,_tooltips) {
     executorMetrics = _executorMetrics;
     stageInfo = _stageInfo;
     stageInfo.reverse();
     jobInfo = _jobInfo;
     tooltips = _tooltips;
-    var firstEntryObj = JSON.parse(executorMetrics[0].values);
-    discoverTags(firstEntryObj, "");
-    availableKeys = (Object.keys(availableTags));
+    availableKeys = executorMetrics.metrics.slice();
     availableKeys.sort();
     $.each(availableKeys, function(key, value) {
         $('#executor-metric-option')
@@ -33,13 +33,63 @@ function parseExecutorMetrics(_executorMetrics,_stageInfo,_jobInfo,_tooltips) {
     });
 }
 
+function executorMetricsEndPoint() {
+    var words = document.baseURI.split('/');
+    var ind = words.indexOf("proxy");
+    if (ind > 0) {
+        var appId = words[ind + 1];
+        return words.slice(0, ind + 2).join('/') + "/api/v1/applications/" + appId +
+            "/executorMetrics";
+    }
+    ind = words.indexOf("history");
+    if (ind > 0) {
+        var appId = words[ind + 1];
+        var attemptId = words[ind + 2];
+        var newBaseURI = words.slice(0, ind).join('/');
+        if (isNaN(attemptId) || attemptId.length == 0) {
+            return newBaseURI + "/api/v1/applications/" + appId + "/executorMetrics";
+        }
+        return newBaseURI + "/api/v1/applications/" + appId + "/" + attemptId + "/executorMetrics";
+    }
+    return null;
+}
+
 function createChartForTag(inputKey) {
+    var endPoint = executorMetricsEndPoint();
+    var query = {
+        metric: inputKey,
+        minTime: executorMetrics.minTime,
+        maxTime: executorMetrics.maxTime,
+        pixels: Math.max(100, $('#executor-metrics').width())
+    };
+    var draw = function (url) {
+        $.getJSON(url, query, function (response) {
+            // Ignore answers for a metric that is no longer selected
+            if ($('#executor-metric-option').val() == inputKey) {
+                drawChartForTag(inputKey, response);
+            }
+        });
+    };
+    if (endPoint) {
+        draw(endPoint);
+    } else {
+        // Web UI of a running application, look its id up
+        $.getJSON(location.origin + "/api/v1/applications", function (apps) {
+            if (apps && apps.length > 0) {
+                draw(location.origin + "/api/v1/applications/" + apps[0].id + "/executorMetrics");
+            }
+        });
+    }
+}
+
+// Draws a response of the executorMetrics endpoint:
+// {resolution, width, series: [{metric, host, points: [[timestamp, min, max, avg, last]]}]}
+function drawChartForTag(inputKey, response) {
     var keyArr = inputKey.split(".");
     var metricsMap = {};
     var legend = [];
     var data = [];
-    var hostsProcessed = [];
-    var lastHost;
+    var hostsProcessed = {};
     markers = [];
 
     for (var x in jobInfo) {
@@ -52,48 +102,33 @@ function createChartForTag(inputKey) {
         })
     }
 
-    $.each(executorMetrics, function (key, value) {
-
-        var host = value.host;
+    $.each(response.series, function (ind, series) {
+        if (series.points.length == 0) return;
+        var host = series.host;
         if(keyArr[0]=='sigar') {
+            // Host level metrics are the same for all executors of a host, show one of them
             var splitted = host.split("_");
             host = splitted.slice(0,splitted.length-1).join("_")
+            if(host in hostsProcessed) return;
+            hostsProcessed[host] = true;
         }
-        if(lastHost) {
-            if(lastHost!=host)
-            {
-                if(host in hostsProcessed) return false;
-                else {
-                    hostsProcessed.push(lastHost);
-                    lastHost = host;
-                }
-            } else {
-                if(host in hostsProcessed) return false;
-            }
-        }
-        if (!(host in metricsMap)) {
-            metricsMap[host] = {data: []};
-            legend.push(host);
-        }
-        var millis = value.timestamp*1000;
-
-        if (minimumDataTime == 0 || millis < minimumDataTime) {
-            minimumDataTime = millis;
-        }
+        metricsMap[host] = {data: []};
+        legend.push(host);
 
-        var entryObj = JSON.parse(value.values);
-        var metric = entryObj[keyArr[0]];
-        for (var i = 1; i < keyArr.length; i++) {
-            metric = metric[keyArr[i]];
-        }
-
-        var entryToAdd = {
-            date: new Date(millis),
-            value: metric,
-            host: host
-        };
-
-        metricsMap[host].data.push(entryToAdd);
+        $.each(series.points, function (i, point) {
+            var millis = point[0]*1000;
+            if (minimumDataTime == 0 || millis < minimumDataTime) {
+                minimumDataTime = millis;
+            }
+            metricsMap[host].data.push({
+                date: new Date(millis),
+                value: point[3],
+                min: point[1],
+                max: point[2],
+                last: point[4],
+                host: host
+            });
+        });
     });
     $.each(metricsMap, function(key,value){
         if (minimumSubmittedValue < minimumDataTime) {
@@ -151,7 +186,8 @@ function createChartForTag(inputKey) {
     });
 
     var graph = {
-        title: inputKey,
+        title: response.width > 0 ?
+            inputKey + " (avg per " + response.resolution + ")" : inputKey,
         data: data,
         full_width: true,
         area: false,
@@ -169,6 +205,12 @@ function createChartForTag(inputKey) {
             var display = d3.select('#executor-metrics svg .mg-active-datapoint')
             display.text("Value:");
             display.append("tspan").text(Math.round(d.value * 100) / 100).style("font-weight","bold");
+            if (response.width > 0) {
+                display.append("tspan").text(" Min:")
+                display.append("tspan").text(Math.round(d.min * 100) / 100).style("font-weight","bold");
+                display.append("tspan").text(" Max:")
+                display.append("tspan").text(Math.round(d.max * 100) / 100).style("font-weight","bold");
+            }
             display.append("tspan").text(" Job:")
             display.append("tspan").text(d.job).style("font-weight","bold");
             display.append("tspan").text(" Stage:");
@@ -21,10 +21,13 @@ import java.lang.ref.{ReferenceQueue, WeakReference}
 import java.util.concurrent.{ConcurrentLinkedQueue, ScheduledExecutorService, TimeUnit}
 
 import scala.collection.JavaConverters._
+import scala.util.control.NonFatal
 
 import org.apache.spark.broadcast.Broadcast
 import org.apache.spark.internal.Logging
+import org.apache.spark.network.shuffle.ExternalShuffleClient
 import org.apache.spark.rdd.{RDD, ReliableRDDCheckpointData}
+import org.apache.spark.storage.BlockManagerId
 import org.apache.spark.util.{AccumulatorContext, AccumulatorV2, ThreadUtils, Utils}
 
 /**
@@ -216,8 +219,10 @@ private[spark] class ContextCleaner(sc: SparkContext) extends Logging {
   def doCleanupShuffle(shuffleId: Int, blocking: Boolean): Unit = {
     try {
       logDebug("Cleaning shuffle " + shuffleId)
+      val mergers = mapOutputTrackerMaster.getShuffleMergers(shuffleId)
       mapOutputTrackerMaster.unregisterShuffle(shuffleId)
       blockManagerMaster.removeShuffle(shuffleId, blocking)
+      removeMergedShuffle(shuffleId, mergers)
       listeners.asScala.foreach(_.shuffleCleaned(shuffleId))
       logInfo("Cleaned shuffle " + shuffleId)
     } catch {
@@ -225,6 +230,22 @@ private[spark] class ContextCleaner(sc: SparkContext) extends Logging {
     }
   }
 
+  /** Asks the shuffle services that merged the blocks of a shuffle to delete them. */
+  private def removeMergedShuffle(shuffleId: Int, mergers: Seq[BlockManagerId]): Unit = {
+    sc.env.blockManager.shuffleClient match {
+      case client: ExternalShuffleClient =>
+        mergers.foreach { merger =>
+          try {
+            client.removeMergedShuffle(merger.host, merger.port, shuffleId)
+          } catch {
+            case NonFatal(e) =>
+              logWarning(s"Failed to remove shuffle $shuffleId merged by ${merger.hostPort}", e)
+          }
+        }
+      case _ =>
+    }
+  }
+
   /** Perform broadcast cleanup. */
   def doCleanupBroadcast(broadcastId: Long, blocking: Boolean): Unit = {
     try {
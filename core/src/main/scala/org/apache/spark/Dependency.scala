@@ -23,6 +23,7 @@ import org.apache.spark.annotation.DeveloperApi
 import org.apache.spark.rdd.RDD
 import org.apache.spark.serializer.Serializer
 import org.apache.spark.shuffle.ShuffleHandle
+import org.apache.spark.storage.BlockManagerId
 
 /**
  * :: DeveloperApi ::
@@ -90,6 +91,13 @@ class ShuffleDependency[K: ClassTag, V: ClassTag, C: ClassTag](
   val shuffleHandle: ShuffleHandle = _rdd.context.env.shuffleManager.registerShuffle(
     shuffleId, _rdd.partitions.length, this)
 
+  /**
+   * External shuffle services that merge the blocks pushed by the map tasks, reduce partition `r`
+   * going to `mergerLocations(r % mergerLocations.size)`. Chosen by the DAGScheduler when the map
+   * stage is first submitted; empty when map tasks do not push their blocks.
+   */
+  @volatile private[spark] var mergerLocations: IndexedSeq[BlockManagerId] = IndexedSeq.empty
+
   _rdd.sparkContext.cleaner.foreach(_.registerShuffleForCleanup(this))
 }
 
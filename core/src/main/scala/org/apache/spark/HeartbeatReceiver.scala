@@ -22,6 +22,7 @@ import java.util.concurrent.{ScheduledFuture, TimeUnit}
 import scala.collection.mutable
 import scala.concurrent.Future
 
+import org.apache.spark.executor.{ExecutorMetricsDelta, HeartbeatMetricsDecoder}
 import org.apache.spark.internal.Logging
 import org.apache.spark.rpc.{RpcCallContext, RpcEnv, ThreadSafeRpcEndpoint}
 import org.apache.spark.scheduler._
@@ -37,7 +38,8 @@ import org.apache.spark.util._
 private[spark] case class Heartbeat(
     executorId: String,
     accumUpdates: Array[(Long, Seq[AccumulatorV2[_, _]])], // taskId -> accumulator updates
-    blockManagerId: BlockManagerId)
+    blockManagerId: BlockManagerId,
+    metrics: Option[ExecutorMetricsDelta] = None)
 
 /**
  * An event that SparkContext uses to notify HeartbeatReceiver that SparkContext.taskScheduler is
@@ -51,7 +53,13 @@ private case class ExecutorRegistered(executorId: String)
 
 private case class ExecutorRemoved(executorId: String)
 
-private[spark] case class HeartbeatResponse(reregisterBlockManager: Boolean)
+/**
+ * @param resendMetrics whether the executor should attach all its metrics to its next heartbeat,
+ *                      because the driver could not follow the changes it sent
+ */
+private[spark] case class HeartbeatResponse(
+    reregisterBlockManager: Boolean,
+    resendMetrics: Boolean = false)
 
 /**
  * Lives in the driver to receive heartbeats from executors..
@@ -72,6 +80,9 @@ private[spark] class HeartbeatReceiver(sc: SparkContext, clock: Clock)
   // executor ID -> timestamp of when the last heartbeat from this executor was received
   private val executorLastSeen = new mutable.HashMap[String, Long]
 
+  // executor ID -> the metrics attached to its heartbeats so far
+  private val executorMetrics = new mutable.HashMap[String, HeartbeatMetricsDecoder]
+
   // "spark.network.timeout" uses "seconds", while `spark.storage.blockManagerSlaveTimeoutMs` uses
   // "milliseconds"
   private val slaveTimeoutMs =
@@ -111,6 +122,7 @@ private[spark] class HeartbeatReceiver(sc: SparkContext, clock: Clock)
       context.reply(true)
     case ExecutorRemoved(executorId) =>
       executorLastSeen.remove(executorId)
+      executorMetrics.remove(executorId)
       context.reply(true)
     case TaskSchedulerIsSet =>
       scheduler = sc.taskScheduler
@@ -120,15 +132,19 @@ private[spark] class HeartbeatReceiver(sc: SparkContext, clock: Clock)
       context.reply(true)
 
     // Messages received from executors
-    case heartbeat @ Heartbeat(executorId, accumUpdates, blockManagerId) =>
+    case heartbeat @ Heartbeat(executorId, accumUpdates, blockManagerId, metrics) =>
       if (scheduler != null) {
         if (executorLastSeen.contains(executorId)) {
           executorLastSeen(executorId) = clock.getTimeMillis()
+          val resendMetrics = metrics.exists { delta =>
+            !postMetrics(executorId, blockManagerId.host, delta)
+          }
           eventLoopThread.submit(new Runnable {
             override def run(): Unit = Utils.tryLogNonFatalError {
               val unknownExecutor = !scheduler.executorHeartbeatReceived(
                 executorId, accumUpdates, blockManagerId)
-              val response = HeartbeatResponse(reregisterBlockManager = unknownExecutor)
+              val response = HeartbeatResponse(reregisterBlockManager = unknownExecutor,
+                resendMetrics = resendMetrics)
               context.reply(response)
             }
           })
@@ -149,6 +165,20 @@ private[spark] class HeartbeatReceiver(sc: SparkContext, clock: Clock)
       }
   }
 
+  /**
+   * Posts the metrics of an executor rebuilt with the changes of its heartbeat. Returns false
+   * if they could not be, the executor having sent changes to metrics the driver doesn't have.
+   */
+  private def postMetrics(executorId: String, host: String, delta: ExecutorMetricsDelta)
+    : Boolean = {
+    val values = executorMetrics.getOrElseUpdate(executorId, new HeartbeatMetricsDecoder)
+      .update(delta)
+    values.foreach { v =>
+      sc.listenerBus.post(SparkListenerExecutorMetricsSample(executorId, host, delta.timestamp, v))
+    }
+    values.isDefined
+  }
+
   /**
    * Send ExecutorRegistered to the event loop to add a new executor. Only for test.
    *
@@ -208,6 +238,7 @@ private[spark] class HeartbeatReceiver(sc: SparkContext, clock: Clock)
           }
         })
         executorLastSeen.remove(executorId)
+        executorMetrics.remove(executorId)
       }
     }
   }
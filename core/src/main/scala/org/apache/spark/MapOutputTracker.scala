@@ -29,17 +29,24 @@ import scala.util.control.NonFatal
 import org.apache.spark.broadcast.{Broadcast, BroadcastManager}
 import org.apache.spark.internal.Logging
 import org.apache.spark.rpc.{RpcCallContext, RpcEndpoint, RpcEndpointRef, RpcEnv}
-import org.apache.spark.scheduler.MapStatus
+import org.apache.spark.scheduler.{MapStatus, MapStatusesUpdate}
 import org.apache.spark.shuffle.MetadataFetchFailedException
-import org.apache.spark.storage.{BlockId, BlockManagerId, ShuffleBlockId}
+import org.apache.spark.storage.{BlockId, BlockManagerId, ShuffleBlockBatchId, ShuffleBlockId}
 import org.apache.spark.util._
 
 private[spark] sealed trait MapOutputTrackerMessage
-private[spark] case class GetMapOutputStatuses(shuffleId: Int)
+/**
+ * Asks for the map output statuses of a shuffle, only for those changed since `sinceVersion`
+ * when it is not negative.
+ */
+private[spark] case class GetMapOutputStatuses(shuffleId: Int, sinceVersion: Long = -1L)
   extends MapOutputTrackerMessage
 private[spark] case object StopMapOutputTracker extends MapOutputTrackerMessage
 
-private[spark] case class GetMapOutputMessage(shuffleId: Int, context: RpcCallContext)
+private[spark] case class GetMapOutputMessage(
+    shuffleId: Int,
+    context: RpcCallContext,
+    sinceVersion: Long = -1L)
 
 /** RpcEndpoint class for MapOutputTrackerMaster */
 private[spark] class MapOutputTrackerMasterEndpoint(
@@ -49,10 +56,11 @@ private[spark] class MapOutputTrackerMasterEndpoint(
   logDebug("init") // force eager creation of logger
 
   override def receiveAndReply(context: RpcCallContext): PartialFunction[Any, Unit] = {
-    case GetMapOutputStatuses(shuffleId: Int) =>
+    case GetMapOutputStatuses(shuffleId: Int, sinceVersion: Long) =>
       val hostPort = context.senderAddress.hostPort
-      logInfo("Asked to send map output locations for shuffle " + shuffleId + " to " + hostPort)
-      val mapOutputStatuses = tracker.post(new GetMapOutputMessage(shuffleId, context))
+      val changed = if (sinceVersion >= 0) s" changed since version $sinceVersion" else ""
+      logInfo(s"Asked to send map output locations$changed for shuffle $shuffleId to $hostPort")
+      tracker.post(new GetMapOutputMessage(shuffleId, context, sinceVersion))
 
     case StopMapOutputTracker =>
       logInfo("MapOutputTrackerMasterEndpoint stopped!")
@@ -93,6 +101,15 @@ private[spark] abstract class MapOutputTracker(conf: SparkConf) extends Logging
   /** Remembers which map output locations are currently being fetched on an executor. */
   private val fetching = new HashSet[Int]
 
+  /** Versions of the shuffles of the statuses in mapStatuses that were fetched from the driver. */
+  private val fetchedVersions = new ConcurrentHashMap[Int, Long]().asScala
+
+  /**
+   * Statuses fetched before the last change of the epoch, with the version of the shuffle they
+   * were fetched at, so that only the outputs that changed since are fetched again.
+   */
+  private val staleStatuses = new ConcurrentHashMap[Int, (Long, Array[MapStatus])]().asScala
+
   /**
    * Send a message to the trackerEndpoint and get its result within a default timeout, or
    * throw a SparkException if this fails.
@@ -134,17 +151,23 @@ private[spark] abstract class MapOutputTracker(conf: SparkConf) extends Logging
    * needs to be read from a given range of map output partitions (startPartition is included but
    * endPartition is excluded from the range).
    *
+   * @param fetchInBatch whether to describe the partitions of each map output as one
+   *                     [[ShuffleBlockBatchId]] rather than one [[ShuffleBlockId]] each
    * @return A sequence of 2-item tuples, where the first item in the tuple is a BlockManagerId,
    *         and the second item is a sequence of (shuffle block id, shuffle block size) tuples
    *         describing the shuffle blocks that are stored at that block manager.
    */
-  def getMapSizesByExecutorId(shuffleId: Int, startPartition: Int, endPartition: Int)
-      : Seq[(BlockManagerId, Seq[(BlockId, Long)])] = {
+  def getMapSizesByExecutorId(
+      shuffleId: Int,
+      startPartition: Int,
+      endPartition: Int,
+      fetchInBatch: Boolean = false): Seq[(BlockManagerId, Seq[(BlockId, Long)])] = {
     logDebug(s"Fetching outputs for shuffle $shuffleId, partitions $startPartition-$endPartition")
     val statuses = getStatuses(shuffleId)
     // Synchronize on the returned array because, on the driver, it gets mutated in place
     statuses.synchronized {
-      return MapOutputTracker.convertMapStatuses(shuffleId, startPartition, endPartition, statuses)
+      return MapOutputTracker.convertMapStatuses(
+        shuffleId, startPartition, endPartition, statuses, fetchInBatch)
     }
   }
 
@@ -201,9 +224,22 @@ private[spark] abstract class MapOutputTracker(conf: SparkConf) extends Logging
         logInfo("Doing the fetch; tracker endpoint = " + trackerEndpoint)
         // This try-finally prevents hangs due to timeouts:
         try {
-          val fetchedBytes = askTracker[Array[Byte]](GetMapOutputStatuses(shuffleId))
-          fetchedStatuses = MapOutputTracker.deserializeMapStatuses(fetchedBytes)
-          logInfo("Got the output locations")
+          val stale = staleStatuses.remove(shuffleId)
+          val sinceVersion = stale.map(_._1).getOrElse(-1L)
+          val fetchedBytes =
+            askTracker[Array[Byte]](GetMapOutputStatuses(shuffleId, sinceVersion))
+          val update = MapOutputTracker.deserializeMapStatusesUpdate(fetchedBytes)
+          if (update.isDelta) {
+            logInfo(s"Got the ${update.mapIds.length} output locations changed since version " +
+              s"$sinceVersion")
+            fetchedStatuses = update.applyTo(stale.get._2)
+          } else {
+            logInfo("Got the output locations")
+            fetchedStatuses = update.statuses
+          }
+          if (update.version >= 0) {
+            fetchedVersions.put(shuffleId, update.version)
+          }
           mapStatuses.put(shuffleId, fetchedStatuses)
         } finally {
           fetching.synchronized {
@@ -237,14 +273,19 @@ private[spark] abstract class MapOutputTracker(conf: SparkConf) extends Logging
   /**
    * Called from executors to update the epoch number, potentially clearing old outputs
    * because of a fetch failure. Each executor task calls this with the latest epoch
-   * number on the driver at the time it was created.
+   * number on the driver at the time it was created. The cleared outputs that were fetched
+   * from the driver are kept aside, to only fetch the changes to them on their next use.
    */
   def updateEpoch(newEpoch: Long) {
     epochLock.synchronized {
       if (newEpoch > epoch) {
         logInfo("Updating epoch to " + newEpoch + " and clearing cache")
         epoch = newEpoch
+        for ((shuffleId, statuses) <- mapStatuses; version <- fetchedVersions.get(shuffleId)) {
+          staleStatuses.put(shuffleId, (version, statuses))
+        }
         mapStatuses.clear()
+        fetchedVersions.clear()
       }
     }
   }
@@ -252,6 +293,8 @@ private[spark] abstract class MapOutputTracker(conf: SparkConf) extends Logging
   /** Unregister shuffle data. */
   def unregisterShuffle(shuffleId: Int) {
     mapStatuses.remove(shuffleId)
+    fetchedVersions.remove(shuffleId)
+    staleStatuses.remove(shuffleId)
   }
 
   /** Stop the tracker. */
@@ -265,9 +308,6 @@ private[spark] class MapOutputTrackerMaster(conf: SparkConf,
     broadcastManager: BroadcastManager, isLocal: Boolean)
   extends MapOutputTracker(conf) {
 
-  /** Cache a serialized version of the output statuses for each shuffle to send them out faster */
-  private var cacheEpoch = epoch
-
   // The size at which we use Broadcast to send the map output statuses to the executors
   private val minSizeForBroadcast =
     conf.getSizeAsBytes("spark.shuffle.mapOutput.minSizeForBroadcast", "512k").toInt
@@ -287,17 +327,23 @@ private[spark] class MapOutputTrackerMaster(conf: SparkConf,
   // can be read locally, but may lead to more delay in scheduling if those locations are busy.
   private val REDUCER_PREF_LOCS_FRACTION = 0.2
 
-  // HashMaps for storing mapStatuses and cached serialized statuses in the driver.
+  // Fraction of the map outputs of a shuffle above which all of its statuses are sent to an
+  // executor rather than the ones changed since the version the executor has.
+  private val MAX_CHANGED_MAP_OUTPUTS_FRACTION = 0.5
+
+  // HashMaps for storing mapStatuses and their versions in the driver.
   // Statuses are dropped only by explicit de-registering.
   protected val mapStatuses = new ConcurrentHashMap[Int, Array[MapStatus]]().asScala
-  private val cachedSerializedStatuses = new ConcurrentHashMap[Int, Array[Byte]]().asScala
+  private val mapOutputVersions = new ConcurrentHashMap[Int, MapOutputVersions]().asScala
+  // Shuffle services merging the blocks pushed by the map tasks of each shuffle
+  private val shuffleMergers = new ConcurrentHashMap[Int, Seq[BlockManagerId]]().asScala
 
   private val maxRpcMessageSize = RpcUtils.maxMessageSizeBytes(conf)
 
-  // Kept in sync with cachedSerializedStatuses explicitly
-  // This is required so that the Broadcast variable remains in scope until we remove
-  // the shuffleId explicitly or implicitly.
-  private val cachedSerializedBroadcast = new HashMap[Int, Broadcast[Array[Byte]]]()
+  // Statuses of each shuffle serialized at its current version, guarded by epochLock.
+  // This also keeps the Broadcast variables in scope until we remove the shuffleId explicitly
+  // or the version of the shuffle changes.
+  private val cachedSerializedStatuses = new HashMap[Int, CachedSerializedStatuses]()
 
   // This is to prevent multiple serializations of the same shuffle - which happens when
   // there is a request storm when shuffle start.
@@ -348,7 +394,7 @@ private[spark] class MapOutputTrackerMaster(conf: SparkConf,
             val hostPort = context.senderAddress.hostPort
             logDebug("Handling request to send map output locations for shuffle " + shuffleId +
               " to " + hostPort)
-            val mapOutputStatuses = getSerializedMapOutputStatuses(shuffleId)
+            val mapOutputStatuses = getSerializedMapOutputStatuses(shuffleId, data.sinceVersion)
             context.reply(mapOutputStatuses)
           } catch {
             case NonFatal(e) => logError(e.getMessage, e)
@@ -364,26 +410,56 @@ private[spark] class MapOutputTrackerMaster(conf: SparkConf,
   private val PoisonPill = new GetMapOutputMessage(-99, null)
 
   // Exposed for testing
-  private[spark] def getNumCachedSerializedBroadcast = cachedSerializedBroadcast.size
+  private[spark] def getNumCachedSerializedBroadcast: Int = {
+    epochLock.synchronized {
+      cachedSerializedStatuses.values.map(_.broadcasts.size).sum
+    }
+  }
+
+  /** The version of the map outputs of a shuffle, -1 if it is not registered. */
+  private[spark] def getMapOutputVersion(shuffleId: Int): Long = {
+    mapOutputVersions.get(shuffleId).map(v => v.synchronized(v.version)).getOrElse(-1L)
+  }
 
   def registerShuffle(shuffleId: Int, numMaps: Int) {
     if (mapStatuses.put(shuffleId, new Array[MapStatus](numMaps)).isDefined) {
       throw new IllegalArgumentException("Shuffle ID " + shuffleId + " registered twice")
     }
+    mapOutputVersions.put(shuffleId, new MapOutputVersions(numMaps, 0L))
     // add in advance
     shuffleIdLocks.putIfAbsent(shuffleId, new Object())
   }
 
   def registerMapOutput(shuffleId: Int, mapId: Int, status: MapStatus) {
-    val array = mapStatuses(shuffleId)
-    array.synchronized {
-      array(mapId) = status
+    val versions = mapOutputVersions(shuffleId)
+    versions.synchronized {
+      val array = mapStatuses(shuffleId)
+      array.synchronized {
+        array(mapId) = status
+      }
+      versions.changed(mapId)
     }
   }
 
   /** Register multiple map output information for the given shuffle */
   def registerMapOutputs(shuffleId: Int, statuses: Array[MapStatus], changeEpoch: Boolean = false) {
-    mapStatuses.put(shuffleId, statuses.clone())
+    val newStatuses = statuses.clone()
+    mapOutputVersions.get(shuffleId) match {
+      case Some(versions) if versions.numMaps == newStatuses.length =>
+        versions.synchronized {
+          val oldStatuses = mapStatuses.put(shuffleId, newStatuses).orNull
+          for (mapId <- 0 until newStatuses.length) {
+            if (oldStatuses == null || (oldStatuses(mapId) ne newStatuses(mapId))) {
+              versions.changed(mapId)
+            }
+          }
+        }
+      case oldVersions =>
+        // Start past any version executors may have, with every output changed at that version
+        val version = oldVersions.map(v => v.synchronized(v.version) + 1).getOrElse(0L)
+        mapStatuses.put(shuffleId, newStatuses)
+        mapOutputVersions.put(shuffleId, new MapOutputVersions(newStatuses.length, version))
+    }
     if (changeEpoch) {
       incrementEpoch()
     }
@@ -391,12 +467,16 @@ private[spark] class MapOutputTrackerMaster(conf: SparkConf,
 
   /** Unregister map output information of the given shuffle, mapper and block manager */
   def unregisterMapOutput(shuffleId: Int, mapId: Int, bmAddress: BlockManagerId) {
-    val arrayOpt = mapStatuses.get(shuffleId)
-    if (arrayOpt.isDefined && arrayOpt.get != null) {
-      val array = arrayOpt.get
-      array.synchronized {
-        if (array(mapId) != null && array(mapId).location == bmAddress) {
-          array(mapId) = null
+    val versionsOpt = mapOutputVersions.get(shuffleId)
+    if (versionsOpt.isDefined && mapStatuses.get(shuffleId).exists(_ != null)) {
+      val versions = versionsOpt.get
+      versions.synchronized {
+        val array = mapStatuses(shuffleId)
+        array.synchronized {
+          if (array(mapId) != null && array(mapId).location == bmAddress) {
+            array(mapId) = null
+            versions.changed(mapId)
+          }
         }
       }
       incrementEpoch()
@@ -406,16 +486,29 @@ private[spark] class MapOutputTrackerMaster(conf: SparkConf,
   }
 
   /** Unregister shuffle data */
+  /** Records the shuffle services that merge the blocks of a shuffle, to clean them up. */
+  def registerShuffleMergers(shuffleId: Int, mergers: Seq[BlockManagerId]): Unit = {
+    shuffleMergers.put(shuffleId, mergers)
+  }
+
+  /** The shuffle services that merge the blocks of a shuffle, none if its map tasks don't push. */
+  def getShuffleMergers(shuffleId: Int): Seq[BlockManagerId] = {
+    shuffleMergers.getOrElse(shuffleId, Nil)
+  }
+
   override def unregisterShuffle(shuffleId: Int) {
     mapStatuses.remove(shuffleId)
-    cachedSerializedStatuses.remove(shuffleId)
-    cachedSerializedBroadcast.remove(shuffleId).foreach(v => removeBroadcast(v))
+    mapOutputVersions.remove(shuffleId)
+    shuffleMergers.remove(shuffleId)
+    epochLock.synchronized {
+      removeCachedStatuses(shuffleId)
+    }
     shuffleIdLocks.remove(shuffleId)
   }
 
   /** Check if the given shuffle is being tracked */
   def containsShuffle(shuffleId: Int): Boolean = {
-    cachedSerializedStatuses.contains(shuffleId) || mapStatuses.contains(shuffleId)
+    mapStatuses.contains(shuffleId)
   }
 
   /**
@@ -509,34 +602,64 @@ private[spark] class MapOutputTrackerMaster(conf: SparkConf,
     }
   }
 
-  private def clearCachedBroadcast(): Unit = {
-    for (cached <- cachedSerializedBroadcast) removeBroadcast(cached._2)
-    cachedSerializedBroadcast.clear()
+  // Must be called with epochLock held
+  private def removeCachedStatuses(shuffleId: Int): Unit = {
+    cachedSerializedStatuses.remove(shuffleId).foreach(_.broadcasts.foreach(removeBroadcast))
+  }
+
+  private def clearCachedStatuses(): Unit = {
+    epochLock.synchronized {
+      cachedSerializedStatuses.values.foreach(_.broadcasts.foreach(removeBroadcast))
+      cachedSerializedStatuses.clear()
+    }
   }
 
-  def getSerializedMapOutputStatuses(shuffleId: Int): Array[Byte] = {
-    var statuses: Array[MapStatus] = null
+  /**
+   * Takes the statuses of a shuffle to send to an executor: the ones changed since
+   * `sinceVersion` when the executor has the statuses of that version and few of them changed,
+   * all of them otherwise.
+   */
+  private def takeMapStatusesUpdate(shuffleId: Int, sinceVersion: Long): MapStatusesUpdate = {
+    val versions = mapOutputVersions.get(shuffleId).orNull
+    if (versions == null) {
+      return MapStatusesUpdate.full(-1L, Array.empty[MapStatus])
+    }
+    versions.synchronized {
+      val statuses = mapStatuses.getOrElse(shuffleId, Array.empty[MapStatus])
+      statuses.synchronized {
+        if (sinceVersion >= 0 && sinceVersion <= versions.version) {
+          val changed = versions.changedSince(sinceVersion)
+          if (changed.length <= statuses.length * MAX_CHANGED_MAP_OUTPUTS_FRACTION) {
+            return new MapStatusesUpdate(versions.version, sinceVersion, statuses.length,
+              changed, changed.map(statuses(_)))
+          }
+        }
+        MapStatusesUpdate.full(versions.version, statuses.clone())
+      }
+    }
+  }
+
+  /**
+   * The serialized statuses of a shuffle, only those changed since `sinceVersion` when it is not
+   * negative and few of them changed.
+   */
+  def getSerializedMapOutputStatuses(shuffleId: Int, sinceVersion: Long = -1L): Array[Byte] = {
     var retBytes: Array[Byte] = null
-    var epochGotten: Long = -1
 
-    // Check to see if we have a cached version, returns true if it does
-    // and has side effect of setting retBytes.  If not returns false
-    // with side effect of setting statuses
+    // Check to see if we have the statuses serialized at the current version of the shuffle,
+    // returns true if we do and has side effect of setting retBytes. If not returns false
     def checkCachedStatuses(): Boolean = {
       epochLock.synchronized {
-        if (epoch > cacheEpoch) {
-          cachedSerializedStatuses.clear()
-          clearCachedBroadcast()
-          cacheEpoch = epoch
-        }
+        val version = getMapOutputVersion(shuffleId)
         cachedSerializedStatuses.get(shuffleId) match {
-          case Some(bytes) =>
-            retBytes = bytes
+          case Some(cached) if cached.version == version && cached.bytes.contains(sinceVersion) =>
+            retBytes = cached.bytes(sinceVersion)
             true
-          case None =>
+          case Some(cached) if cached.version != version =>
+            removeCachedStatuses(shuffleId)
+            false
+          case _ =>
             logDebug("cached status not found for : " + shuffleId)
-            statuses = mapStatuses.getOrElse(shuffleId, Array.empty[MapStatus])
-            epochGotten = epoch
             false
         }
       }
@@ -557,18 +680,31 @@ private[spark] class MapOutputTrackerMaster(conf: SparkConf,
       // mapstatus while we were waiting on the synchronize
       if (checkCachedStatuses()) return retBytes
 
-      // If we got here, we failed to find the serialized locations in the cache, so we pulled
-      // out a snapshot of the locations as "statuses"; let's serialize and return that
-      val (bytes, bcast) = MapOutputTracker.serializeMapStatuses(statuses, broadcastManager,
+      // If we got here, we failed to find the serialized locations in the cache, so we pull
+      // out a snapshot of the locations; let's serialize and return that
+      val update = takeMapStatusesUpdate(shuffleId, sinceVersion)
+      if (sinceVersion >= 0 && !update.isDelta) {
+        // Too many outputs changed, send all of them, serialized once for all such executors
+        return getSerializedMapOutputStatuses(shuffleId)
+      }
+      val (bytes, bcast) = MapOutputTracker.serializeMapStatusesUpdate(update, broadcastManager,
         isLocal, minSizeForBroadcast)
       logInfo("Size of output statuses for shuffle %d is %d bytes".format(shuffleId, bytes.length))
-      // Add them into the table only if the epoch hasn't changed while we were working
+      // Add them into the table only if the version hasn't changed while we were working
       epochLock.synchronized {
-        if (epoch == epochGotten) {
-          cachedSerializedStatuses(shuffleId) = bytes
-          if (null != bcast) cachedSerializedBroadcast(shuffleId) = bcast
+        if (update.version >= 0 && getMapOutputVersion(shuffleId) == update.version) {
+          val cached = cachedSerializedStatuses.get(shuffleId) match {
+            case Some(c) if c.version == update.version => c
+            case _ =>
+              removeCachedStatuses(shuffleId)
+              val c = new CachedSerializedStatuses(update.version)
+              cachedSerializedStatuses(shuffleId) = c
+              c
+          }
+          cached.bytes(sinceVersion) = bytes
+          if (null != bcast) cached.broadcasts += bcast
         } else {
-          logInfo("Epoch changed, not caching!")
+          logInfo("Map outputs changed, not caching!")
           removeBroadcast(bcast)
         }
       }
@@ -581,13 +717,42 @@ private[spark] class MapOutputTrackerMaster(conf: SparkConf,
     threadpool.shutdown()
     sendTracker(StopMapOutputTracker)
     mapStatuses.clear()
+    mapOutputVersions.clear()
     trackerEndpoint = null
-    cachedSerializedStatuses.clear()
-    clearCachedBroadcast()
+    clearCachedStatuses()
     shuffleIdLocks.clear()
   }
 }
 
+/**
+ * Versions of the map outputs of a shuffle on the driver. The version of the shuffle is bumped
+ * on every change of its outputs, and each output remembers the version it last changed at, so
+ * that an executor that has the statuses of an older version is only sent the changed ones.
+ * Changes to the outputs synchronize on this object, before the array of their statuses.
+ */
+private class MapOutputVersions(val numMaps: Int, initialVersion: Long) {
+  var version: Long = initialVersion
+  private val mapVersions = Array.fill(numMaps)(initialVersion)
+
+  def changed(mapId: Int): Unit = {
+    version += 1
+    mapVersions(mapId) = version
+  }
+
+  def changedSince(sinceVersion: Long): Array[Int] = {
+    (0 until numMaps).filter(mapVersions(_) > sinceVersion).toArray
+  }
+}
+
+/**
+ * Statuses of a shuffle serialized at `version` of its map outputs, by the version the
+ * executors asking for them have, -1 for the executors asking for all of them.
+ */
+private class CachedSerializedStatuses(val version: Long) {
+  val bytes = new HashMap[Long, Array[Byte]]
+  val broadcasts = new ArrayBuffer[Broadcast[Array[Byte]]]
+}
+
 /**
  * MapOutputTracker for the executors, which fetches map output information from the driver's
  * MapOutputTrackerMaster.
@@ -603,21 +768,19 @@ private[spark] object MapOutputTracker extends Logging {
   private val DIRECT = 0
   private val BROADCAST = 1
 
-  // Serialize an array of map output locations into an efficient byte format so that we can send
-  // it to reduce tasks. We do this by compressing the serialized bytes using GZIP. They will
-  // generally be pretty compressible because many map outputs will be on the same hostname.
-  def serializeMapStatuses(statuses: Array[MapStatus], broadcastManager: BroadcastManager,
+  // Serialize map output locations into an efficient byte format so that we can send them to
+  // reduce tasks. We do this with the columnar encoding of MapStatusesUpdate, compressed using
+  // GZIP. The locations will generally be pretty compressible because many map outputs will be
+  // on the same hostname.
+  def serializeMapStatusesUpdate(update: MapStatusesUpdate, broadcastManager: BroadcastManager,
       isLocal: Boolean, minBroadcastSize: Int): (Array[Byte], Broadcast[Array[Byte]]) = {
     val out = new ByteArrayOutputStream
     out.write(DIRECT)
-    val objOut = new ObjectOutputStream(new GZIPOutputStream(out))
+    val dataOut = new DataOutputStream(new GZIPOutputStream(out))
     Utils.tryWithSafeFinally {
-      // Since statuses can be modified in parallel, sync on it
-      statuses.synchronized {
-        objOut.writeObject(statuses)
-      }
+      MapStatusesUpdate.write(dataOut, update)
     } {
-      objOut.close()
+      dataOut.close()
     }
     val arr = out.toByteArray
     if (arr.length >= minBroadcastSize) {
@@ -638,35 +801,57 @@ private[spark] object MapOutputTracker extends Logging {
     }
   }
 
-  // Opposite of serializeMapStatuses.
-  def deserializeMapStatuses(bytes: Array[Byte]): Array[MapStatus] = {
+  def serializeMapStatuses(statuses: Array[MapStatus], broadcastManager: BroadcastManager,
+      isLocal: Boolean, minBroadcastSize: Int): (Array[Byte], Broadcast[Array[Byte]]) = {
+    // Since statuses can be modified in parallel, sync on it
+    val snapshot = statuses.synchronized {
+      statuses.clone()
+    }
+    serializeMapStatusesUpdate(MapStatusesUpdate.full(-1L, snapshot), broadcastManager, isLocal,
+      minBroadcastSize)
+  }
+
+  // Opposite of serializeMapStatusesUpdate.
+  def deserializeMapStatusesUpdate(bytes: Array[Byte]): MapStatusesUpdate = {
     assert (bytes.length > 0)
 
-    def deserializeObject(arr: Array[Byte], off: Int, len: Int): AnyRef = {
-      val objIn = new ObjectInputStream(new GZIPInputStream(
+    def deserializeUpdate(arr: Array[Byte], off: Int, len: Int): MapStatusesUpdate = {
+      val dataIn = new DataInputStream(new GZIPInputStream(
         new ByteArrayInputStream(arr, off, len)))
       Utils.tryWithSafeFinally {
-        objIn.readObject()
+        MapStatusesUpdate.read(dataIn)
       } {
-        objIn.close()
+        dataIn.close()
       }
     }
 
     bytes(0) match {
       case DIRECT =>
-        deserializeObject(bytes, 1, bytes.length - 1).asInstanceOf[Array[MapStatus]]
+        deserializeUpdate(bytes, 1, bytes.length - 1)
       case BROADCAST =>
         // deserialize the Broadcast, pull .value array out of it, and then deserialize that
-        val bcast = deserializeObject(bytes, 1, bytes.length - 1).
-          asInstanceOf[Broadcast[Array[Byte]]]
+        val objIn = new ObjectInputStream(new GZIPInputStream(
+          new ByteArrayInputStream(bytes, 1, bytes.length - 1)))
+        val bcast = Utils.tryWithSafeFinally {
+          objIn.readObject().asInstanceOf[Broadcast[Array[Byte]]]
+        } {
+          objIn.close()
+        }
         logInfo("Broadcast mapstatuses size = " + bytes.length +
           ", actual size = " + bcast.value.length)
         // Important - ignore the DIRECT tag ! Start from offset 1
-        deserializeObject(bcast.value, 1, bcast.value.length - 1).asInstanceOf[Array[MapStatus]]
+        deserializeUpdate(bcast.value, 1, bcast.value.length - 1)
       case _ => throw new IllegalArgumentException("Unexpected byte tag = " + bytes(0))
     }
   }
 
+  // Opposite of serializeMapStatuses, for bytes that hold the statuses of all map outputs.
+  def deserializeMapStatuses(bytes: Array[Byte]): Array[MapStatus] = {
+    val update = deserializeMapStatusesUpdate(bytes)
+    require(!update.isDelta, "Expected the statuses of all map outputs")
+    update.statuses
+  }
+
   /**
    * Given an array of map statuses and a range of map output partitions, returns a sequence that,
    * for each block manager ID, lists the shuffle block IDs and corresponding shuffle block sizes
@@ -679,6 +864,8 @@ private[spark] object MapOutputTracker extends Logging {
    * @param startPartition Start of map output partition ID range (included in range)
    * @param endPartition End of map output partition ID range (excluded from range)
    * @param statuses List of map statuses, indexed by map ID.
+   * @param fetchInBatch Whether to list the partitions of a map output as one block, when the
+   *                     range has more than one partition.
    * @return A sequence of 2-item tuples, where the first item in the tuple is a BlockManagerId,
    *         and the second item is a sequence of (shuffle block ID, shuffle block size) tuples
    *         describing the shuffle blocks that are stored at that block manager.
@@ -687,7 +874,8 @@ private[spark] object MapOutputTracker extends Logging {
       shuffleId: Int,
       startPartition: Int,
       endPartition: Int,
-      statuses: Array[MapStatus]): Seq[(BlockManagerId, Seq[(BlockId, Long)])] = {
+      statuses: Array[MapStatus],
+      fetchInBatch: Boolean): Seq[(BlockManagerId, Seq[(BlockId, Long)])] = {
     assert (statuses != null)
     val splitsByAddress = new HashMap[BlockManagerId, ArrayBuffer[(BlockId, Long)]]
     for ((status, mapId) <- statuses.zipWithIndex) {
@@ -695,6 +883,13 @@ private[spark] object MapOutputTracker extends Logging {
         val errorMessage = s"Missing an output location for shuffle $shuffleId"
         logError(errorMessage)
         throw new MetadataFetchFailedException(shuffleId, startPartition, errorMessage)
+      } else if (fetchInBatch && endPartition - startPartition > 1) {
+        var size = 0L
+        for (part <- startPartition until endPartition) {
+          size += status.getSizeForBlock(part)
+        }
+        splitsByAddress.getOrElseUpdate(status.location, ArrayBuffer()) +=
+          ((ShuffleBlockBatchId(shuffleId, mapId, startPartition, endPartition), size))
       } else {
         for (part <- startPartition until endPartition) {
           splitsByAddress.getOrElseUpdate(status.location, ArrayBuffer()) +=
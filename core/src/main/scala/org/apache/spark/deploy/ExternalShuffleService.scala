@@ -82,6 +82,7 @@ class ExternalShuffleService(sparkConf: SparkConf, securityManager: SecurityMana
         Nil
       }
     server = transportContext.createServer(port, bootstraps.asJava)
+    shuffleServiceSource.registerServerMetrics(server)
 
     masterMetricsSystem.registerSource(shuffleServiceSource)
     masterMetricsSystem.start()
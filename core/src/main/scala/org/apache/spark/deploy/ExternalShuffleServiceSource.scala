@@ -19,9 +19,12 @@ package org.apache.spark.deploy
 
 import javax.annotation.concurrent.ThreadSafe
 
+import scala.collection.JavaConverters._
+
 import com.codahale.metrics.{Gauge, MetricRegistry}
 
 import org.apache.spark.metrics.source.Source
+import org.apache.spark.network.server.TransportServer
 import org.apache.spark.network.shuffle.ExternalShuffleBlockHandler
 
 /**
@@ -34,4 +37,11 @@ private class ExternalShuffleServiceSource
   override val sourceName = "shuffleService"
 
   metricRegistry.registerAll(blockHandler.getAllMetrics)
+
+  /** Registers the memory usage of the buffer allocator of the server, once it is created. */
+  def registerServerMetrics(server: TransportServer): Unit = {
+    server.getAllMetrics.getMetrics.asScala.foreach { case (name, metric) =>
+      metricRegistry.register(MetricRegistry.name("server", name), metric)
+    }
+  }
 }
@@ -188,7 +188,13 @@ private[history] class ApplicationCache(
       updated = time(metrics.updateProbeTimer) {
         entry.updateProbe()
       }
-      if (updated) {
+      // An entry that takes in the update in place is kept, so the UI has not changed
+      if (updated && entry.catchUp.exists(catchUp => time(metrics.catchUpTimer)(catchUp()))) {
+        logDebug(s"caught up with $cacheKey")
+        metrics.catchUpCount.inc()
+        entry.probeTime = now
+        updated = false
+      } else if (updated) {
         logDebug(s"refreshing $cacheKey")
         metrics.updateTriggeredCount.inc()
         appCache.refresh(cacheKey)
@@ -213,7 +219,7 @@ private[history] class ApplicationCache(
    */
   def lookupCacheEntry(appId: String, attemptId: Option[String]): CacheEntry = {
     val entry = lookupAndUpdate(appId, attemptId)._1
-    new CacheEntry(entry.ui, entry.completed, entry.updateProbe, entry.probeTime)
+    new CacheEntry(entry.ui, entry.completed, entry.updateProbe, entry.probeTime, entry.catchUp)
   }
 
   /**
@@ -278,7 +284,7 @@ private[history] class ApplicationCache(
     metrics.loadCount.inc()
     time(metrics.loadTimer) {
       operations.getAppUI(appId, attemptId) match {
-        case Some(LoadedAppUI(ui, updateState)) =>
+        case Some(LoadedAppUI(ui, updateState, catchUp)) =>
           val completed = ui.getApplicationInfoList.exists(_.attempts.last.completed)
           if (completed) {
             // completed spark UIs are attached directly
@@ -290,7 +296,7 @@ private[history] class ApplicationCache(
           }
           // build the cache entry
           val now = clock.getTimeMillis()
-          val entry = new CacheEntry(ui, completed, updateState, now)
+          val entry = new CacheEntry(ui, completed, updateState, now, catchUp)
           logDebug(s"Loaded application $appId/$attemptId -> $entry")
           entry
         case None =>
@@ -358,12 +364,15 @@ private[history] class ApplicationCache(
  * @param updateProbe function to call to see if the application has been updated and
  *                    therefore that the cached value needs to be refreshed.
  * @param probeTime Times in milliseconds when the probe was last executed.
+ * @param catchUp function to call, when the probe reports an update, to take it in without
+ *                reloading the UI; the UI is reloaded if it returns false.
  */
 private[history] final class CacheEntry(
     val ui: SparkUI,
     val completed: Boolean,
     val updateProbe: () => Boolean,
-    var probeTime: Long) {
+    var probeTime: Long,
+    val catchUp: Option[() => Boolean] = None) {
 
   /** string value is for test assertions */
   override def toString: String = {
@@ -399,6 +408,8 @@ private[history] class CacheMetrics(prefix: String) extends Source {
   val updateProbeCount = new Counter()
   val updateProbeTimer = new Timer()
   val updateTriggeredCount = new Counter()
+  val catchUpCount = new Counter()
+  val catchUpTimer = new Timer()
 
   /** all the counters: for registration and string conversion. */
   private val counters = Seq(
@@ -407,12 +418,14 @@ private[history] class CacheMetrics(prefix: String) extends Source {
     ("eviction.count", evictionCount),
     ("load.count", loadCount),
     ("update.probe.count", updateProbeCount),
-    ("update.triggered.count", updateTriggeredCount))
+    ("update.triggered.count", updateTriggeredCount),
+    ("catchup.count", catchUpCount))
 
   /** all metrics, including timers */
   private val allMetrics = counters ++ Seq(
     ("load.timer", loadTimer),
-    ("update.probe.timer", updateProbeTimer))
+    ("update.probe.timer", updateProbeTimer),
+    ("catchup.timer", catchUpTimer))
 
   /**
    * Name of metric source
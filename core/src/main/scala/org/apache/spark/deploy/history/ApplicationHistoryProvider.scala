@@ -67,10 +67,13 @@ private[history] abstract class HistoryUpdateProbe {
  * and any required update state.
  * @param ui Spark UI
  * @param updateProbe probe to call to check on the update state of this application attempt
+ * @param catchUp when the UI can take in the updates of the attempt in place, the function
+ *                that does so, returning false if it could not and the UI must be loaded again
  */
 private[history] case class LoadedAppUI(
     ui: SparkUI,
-    updateProbe: () => Boolean)
+    updateProbe: () => Boolean,
+    catchUp: Option[() => Boolean] = None)
 
 private[history] abstract class ApplicationHistoryProvider {
 
@@ -0,0 +1,159 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.spark.deploy.history
+
+import java.io.FileNotFoundException
+
+import scala.collection.mutable
+
+import org.apache.hadoop.fs.{FileSystem, Path}
+
+import org.apache.spark.internal.Logging
+import org.apache.spark.metrics.hdfs.ExecutorMetricsFormat
+import org.apache.spark.scheduler._
+import org.apache.spark.scheduler.HDFSExecutorMetricsReplayListenerBus.FileTail
+import org.apache.spark.scheduler.ReplayListenerBus._
+import org.apache.spark.ui.{ExecutorMetricsRollups, ExecutorMetricsWindowLoader}
+
+/**
+ * Replays the event log and the executor metrics files of an application attempt into the
+ * buses of its UI, remembering how far every file was read, so that the UI of an attempt that
+ * is still running takes in only what was appended since its previous replay.
+ *
+ * Only the lines of the event log that end with a line feed are replayed, the last one being
+ * possibly still written. The event log is tailed only when uncompressed and in JSON, the
+ * other formats being replayed by [[FsHistoryProvider]] as a whole; the metrics files are
+ * always replayed by this class, from their index the first time. The time ranges that the UI
+ * no longer holds are read back from the index of the metrics files, see [[loadWindow]].
+ *
+ * @param logPath the event log, None when it is not tailed
+ * @param metricsDir the directory of the executor metrics files of the attempt, if any
+ */
+private[history] class ApplicationLogTail(
+    fs: FileSystem,
+    logPath: Option[Path],
+    replayBus: ReplayListenerBus,
+    metricsBus: HDFSExecutorMetricsReplayListenerBus,
+    metricsDir: Option[(FileSystem, Path)]) extends ExecutorMetricsWindowLoader with Logging {
+
+  private var logOffset = 0L
+  private val metricsFiles = new mutable.HashMap[Path, Option[FileTail]]
+
+  /** The size of the event log in the listing when the UI last caught up with it. */
+  @volatile var listedSize = 0L
+
+  /**
+   * Replays what was appended to the event log and to the metrics files since the previous
+   * call. Returns false when the event log shrank or is gone, in which case the UI must be
+   * replayed again from scratch.
+   */
+  def catchUp(): Boolean = synchronized {
+    val tailed = logPath.forall(replayEventLog)
+    if (tailed) {
+      replayMetrics()
+    }
+    tailed
+  }
+
+  private def replayEventLog(path: Path): Boolean = {
+    val length = try {
+      fs.getFileStatus(path).getLen
+    } catch {
+      case _: FileNotFoundException => -1L
+    }
+    if (length < logOffset) {
+      logInfo(s"Event log $path is gone or was rewritten, it can not be tailed")
+      false
+    } else {
+      if (length > logOffset) {
+        val in = fs.open(path)
+        try {
+          in.seek(logOffset)
+          val lines = new CompleteLines(in)
+          replayBus.replay(lines, path.toString, maybeTruncated = true, SELECT_ALL_FILTER)
+          logDebug(s"Replayed ${lines.consumedBytes} bytes of $path from offset $logOffset")
+          logOffset += lines.consumedBytes
+        } finally {
+          in.close()
+        }
+      }
+      true
+    }
+  }
+
+  private def replayMetrics(): Unit = {
+    // Executors added since the previous call have new files
+    foreachMetricsFile { (metricsFs, path) =>
+      metricsFiles(path) = metricsFiles.get(path) match {
+        case Some(Some(tail)) => metricsBus.replayFrom(metricsFs, path, tail)
+        // A file that could not be replayed is left out until the UI is loaded again
+        case Some(None) => None
+        case None => metricsBus.replayFile(metricsFs, path)
+      }
+    }
+  }
+
+  /**
+   * Replays the part of the metrics files in `[fromTimestamp, toTimestamp]` into new rollups,
+   * through a bus of its own, so the UI and its tail are left as they are.
+   */
+  override def loadWindow(
+      fromTimestamp: Long,
+      toTimestamp: Long,
+      retainedBuckets: Int): ExecutorMetricsRollups = {
+    val rollups = new ExecutorMetricsRollups(retainedBuckets)
+    val bus = new HDFSExecutorMetricsReplayListenerBus()
+    bus.addListener(new SparkListener {
+      override def onHDFSExecutorMetrics(metrics: HDFSExecutorMetrics): Unit = {
+        metrics.values match {
+          case replayed: ExecutorMetricsRecordValues => rollups.add(replayed.record)
+          case values => rollups.add(metrics.host, metrics.timestamp, values)
+        }
+      }
+    })
+    foreachMetricsFile { (metricsFs, path) =>
+      bus.replayFile(metricsFs, path, fromTimestamp, toTimestamp)
+    }
+    rollups
+  }
+
+  private def foreachMetricsFile(f: (FileSystem, Path) => Unit): Unit = {
+    metricsDir.foreach { case (metricsFs, dir) =>
+      try {
+        val files = metricsFs.listFiles(dir, false)
+        while (files.hasNext) {
+          val path = files.next().getPath
+          if (ExecutorMetricsFormat.forFileName(path.getName) != null) {
+            f(metricsFs, path)
+          }
+        }
+      } catch {
+        case fnf: FileNotFoundException =>
+          logWarning("Metrics dir " + dir + " not found")
+      }
+    }
+  }
+}
+
+private[history] object ApplicationLogTail {
+
+  /** Whether the event log can be read a line at a time from any line boundary. */
+  def canTail(log: Path): Boolean = {
+    !BinaryEventLog.isBinary(log) && EventLoggingListener.codecName(log).isEmpty
+  }
+}
@@ -36,9 +36,11 @@ import org.apache.hadoop.security.AccessControlException
 import org.apache.spark.{SecurityManager, SparkConf, SparkException}
 import org.apache.spark.deploy.SparkHadoopUtil
 import org.apache.spark.internal.Logging
+import org.apache.spark.internal.config._
 import org.apache.spark.scheduler._
 import org.apache.spark.scheduler.ReplayListenerBus._
 import org.apache.spark.ui.SparkUI
+import org.apache.spark.ui.jobs.TaskDataStore
 import org.apache.spark.util.{Clock, SystemClock, ThreadUtils, Utils}
 
 /**
@@ -123,6 +125,14 @@ private[history] class FsHistoryProvider(conf: SparkConf, clock: Clock)
 
   private val pendingReplayTasksCount = new java.util.concurrent.atomic.AtomicInteger(0)
 
+  // The stores of the previous run are useless, as the UIs they served are replayed again
+  private val storePath = conf.get(HISTORY_STORE_PATH)
+  storePath.foreach(TaskDataStore.deleteStale)
+
+  // Number of threads parsing the lines of one event log, on top of the replay threads
+  private val parseThreads =
+    conf.get(HISTORY_REPLAY_PARSE_THREADS).getOrElse(DEFAULT_REPLAY_THREADS)
+
   /**
    * Return a runnable that performs the given operation on the event logs.
    * This operation is expected to be executed periodically.
@@ -237,8 +247,8 @@ private[history] class FsHistoryProvider(conf: SparkConf, clock: Clock)
     try {
       applications.get(appId).flatMap { appInfo =>
         appInfo.attempts.find(_.attemptId == attemptId).flatMap { attempt =>
-          val replayBus = new ReplayListenerBus()
-          val hdfsExecutorMetricsBus = new HDFSExecutorMetricsReplayListenerBus()
+          val replayBus = new ReplayListenerBus(parseThreads)
+          val hdfsExecutorMetricsBus = new HDFSExecutorMetricsReplayListenerBus(parseThreads)
           val ui = {
             val conf = this.conf.clone()
             val appSecManager = new SecurityManager(conf)
@@ -249,45 +259,40 @@ private[history] class FsHistoryProvider(conf: SparkConf, clock: Clock)
           }
 
           val fileStatus = fs.getFileStatus(new Path(logDir, attempt.logPath))
-
-          val appListener = replay(fileStatus, isApplicationCompleted(fileStatus), replayBus)
+          val completed = isApplicationCompleted(fileStatus)
 
           logInfo("Checking hdfs.metrics.dir");
+          val metricsDir = conf.getOption("spark.hdfs.metrics.dir").map { dir =>
+            val metricsDirectory = new Path(dir, appId)
+            (metricsDirectory.getFileSystem(hadoopConf), metricsDirectory)
+          }
+          // The UI of a running attempt takes in what is appended to its files from then on
+          val tailedLog = Some(fileStatus.getPath)
+            .filter(path => !completed && ApplicationLogTail.canTail(path))
+          val tail = new ApplicationLogTail(fs, tailedLog, replayBus, hdfsExecutorMetricsBus,
+            metricsDir)
+          tail.listedSize = attempt.fileSize
+          if (metricsDir.isDefined) {
+            ui.hDFSExecutorMetricsListener.windowLoader = Some(tail)
+          }
 
-          if (conf.contains("spark.hdfs.metrics.dir")) {
-            val customMetricsPath = conf.get("spark.hdfs.metrics.dir")
-            val jsonDirectory = new Path(customMetricsPath + "/" + appId)
-            var inputStreamsAndKeys = new ListBuffer[(InputStream, String)]
-
-            // Do not fail the whole UI if metrics can not be replayed
-            try {
-
-              val nodesList = fs.listFiles(new Path(customMetricsPath + "/" + appId), false)
-
-              while (nodesList.hasNext) {
-                val locatedFileStatus = nodesList.next();
-                val pathOfMetric = locatedFileStatus.getPath
-
-                val oneNodeMetricsInput = {
-                  // Support local cluster mode
-                  if (fs.getScheme() == "file") {
-                    new BufferedInputStream(new FileInputStream(new File(pathOfMetric.toUri)))
-                  } else {
-                    new BufferedInputStream(fs.open(pathOfMetric))
-                  }
-                }
-                inputStreamsAndKeys +=
-                  ((oneNodeMetricsInput, pathOfMetric.getName.replaceAll(".json", "")))
-
-                hdfsExecutorMetricsBus
-                  .replay(inputStreamsAndKeys, customMetricsPath + "/" + appId, false)
-              }
-            } catch {
-              case fnf: FileNotFoundException =>
-                logWarning("Metrics dir " + jsonDirectory + " not found")
-            } finally {
-              inputStreamsAndKeys.foreach(_._1.close())
+          // Closed by the history server when it detaches the UI
+          ui.jobProgressListener.taskStore = storePath.map(TaskDataStore.create)
+          val appListener = try {
+            if (tailedLog.isDefined) {
+              val listener = new ApplicationEventListener
+              replayBus.addListener(listener)
+              tail.catchUp()
+              listener
+            } else {
+              val listener = replay(fileStatus, completed, replayBus)
+              tail.catchUp()
+              listener
             }
+          } catch {
+            case e: Throwable =>
+              ui.jobProgressListener.taskStore.foreach(_.close())
+              throw e
           }
 
           if (appListener.appId.isDefined) {
@@ -299,8 +304,14 @@ private[history] class FsHistoryProvider(conf: SparkConf, clock: Clock)
               appListener.viewAcls.getOrElse(""))
             ui.getSecurityManager.setAdminAclsGroups(appListener.adminAclsGroups.getOrElse(""))
             ui.getSecurityManager.setViewAclsGroups(appListener.viewAclsGroups.getOrElse(""))
-            Some(LoadedAppUI(ui, updateProbe(appId, attemptId, attempt.fileSize)))
+            if (tailedLog.isDefined) {
+              Some(LoadedAppUI(ui, () => updateProbe(appId, attemptId, tail.listedSize)(),
+                Some(() => catchUp(appId, attemptId, attempt.logPath, tail))))
+            } else {
+              Some(LoadedAppUI(ui, updateProbe(appId, attemptId, attempt.fileSize)))
+            }
           } else {
+            ui.jobProgressListener.taskStore.foreach(_.close())
             None
           }
         }
@@ -489,7 +500,8 @@ private[history] class FsHistoryProvider(conf: SparkConf, clock: Clock)
 
       val appCompleted = isApplicationCompleted(fileStatus)
 
-      val appListener = replay(fileStatus, appCompleted, new ReplayListenerBus(), eventsFilter)
+      val appListener =
+        replay(fileStatus, appCompleted, new ReplayListenerBus(parseThreads), eventsFilter)
 
       // Without an app ID, new logs will render incorrectly in the listing page, so do not list or
       // try to show their UI.
@@ -672,15 +684,20 @@ private[history] class FsHistoryProvider(conf: SparkConf, clock: Clock)
     // an error the other way -- if we report a size bigger (ie later) than the file that is
     // actually read, we may never refresh the app.  FileStatus is guaranteed to be static
     // after it's created, so we get a file size that is no bigger than what is actually read.
-    val logInput = EventLoggingListener.openEventLog(logPath, fs)
-    try {
-      val appListener = new ApplicationEventListener
-      bus.addListener(appListener)
-      bus.replay(logInput, logPath.toString, !appCompleted, eventsFilter)
-      appListener
-    } finally {
-      logInput.close()
+    val appListener = new ApplicationEventListener
+    bus.addListener(appListener)
+    // The format of a log is told by its name, so directories may hold both
+    if (BinaryEventLog.isBinary(logPath)) {
+      bus.replayBinary(fs, logPath, !appCompleted, eventsFilter)
+    } else {
+      val logInput = EventLoggingListener.openEventLog(logPath, fs)
+      try {
+        bus.replay(logInput, logPath.toString, !appCompleted, eventsFilter)
+      } finally {
+        logInput.close()
+      }
     }
+    appListener
   }
 
   /**
@@ -758,6 +775,26 @@ private[history] class FsHistoryProvider(conf: SparkConf, clock: Clock)
         prevFileSize < latest.fileSize
     }
   }
+
+  /**
+   * Replays into the UI of a running attempt what was appended to its files, as long as its
+   * event log is still the one the UI was loaded from: a log renamed once the attempt
+   * completed is replayed as a whole, into a new UI.
+   */
+  private def catchUp(
+      appId: String,
+      attemptId: Option[String],
+      logPath: String,
+      tail: ApplicationLogTail): Boolean = {
+    lookup(appId, attemptId) match {
+      case Some(latest) if latest.logPath == logPath =>
+        // Recorded first, as the log may grow between the listing and the replay
+        tail.listedSize = latest.fileSize
+        tail.catchUp()
+      case _ =>
+        false
+    }
+  }
 }
 
 private[history] object FsHistoryProvider {
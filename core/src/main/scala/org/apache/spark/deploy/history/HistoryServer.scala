@@ -158,6 +158,10 @@ class HistoryServer(
   override def detachSparkUI(appId: String, attemptId: Option[String], ui: SparkUI): Unit = {
     assert(serverInfo.isDefined, "HistoryServer must be bound before detaching SparkUIs")
     ui.getHandlers.foreach(detachHandler)
+    ui.jobProgressListener.synchronized {
+      ui.jobProgressListener.taskStore.foreach(_.close())
+      ui.jobProgressListener.taskStore = None
+    }
   }
 
   /**
@@ -0,0 +1,250 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.spark.deploy.master
+
+import java.nio.ByteBuffer
+import java.util.Arrays
+
+import scala.collection.mutable
+
+import com.fasterxml.jackson.core.{JsonFactory, JsonToken}
+import org.eclipse.paho.client.mqttv3.{IMqttDeliveryToken, MqttCallbackExtended, MqttClient,
+  MqttConnectOptions, MqttMessage}
+import org.eclipse.paho.client.mqttv3.persist.MemoryPersistence
+
+import org.apache.spark.internal.Logging
+
+/**
+ * The latest points of the executor metrics of the running applications, as published by the
+ * MQTT sinks of their executors on `metrics/<appId>/<executor>/<metric>` (see
+ * [[org.apache.spark.metrics.sink.MqttMetricMessages]]), so that a page opened while an
+ * application runs starts with its recent history rather than an empty chart.
+ *
+ * Every series keeps at most `retainedPoints` points in a ring, so memory is bounded per series
+ * whatever the length of the application. Only the messages of the applications registered
+ * with the master are kept, from their registration until they finish.
+ */
+private[deploy] class LiveExecutorMetrics(val retainedPoints: Int) extends Logging {
+
+  private val jsonFactory = new JsonFactory()
+
+  private class Application {
+    // Payload format of every executor, from its catalog
+    val binaryExecutors = new mutable.HashSet[String]
+    // Executors whose catalog is retained by the broker
+    val catalogExecutors = new mutable.HashSet[String]
+    // metric -> executor -> points
+    val series = new mutable.HashMap[String, mutable.HashMap[String, PointRing]]
+  }
+
+  private val applications = new mutable.HashMap[String, Application]
+
+  /** Handles a message of an MQTT sink; false if the topic is not one of theirs. */
+  def onMessage(topic: String, payload: Array[Byte]): Boolean = {
+    topic.split("/", 4) match {
+      case Array("metrics-catalog", appId, executor) =>
+        onCatalog(appId, executor, payload)
+        true
+      case Array("metrics", appId, executor, metric) =>
+        onPoints(appId, executor, metric, payload)
+        true
+      case _ => false
+    }
+  }
+
+  private def onCatalog(appId: String, executor: String, payload: Array[Byte]): Unit = {
+    // An empty payload clears a retained catalog
+    if (payload.isEmpty) {
+      return
+    }
+    val parser = jsonFactory.createParser(payload)
+    try {
+      var binary = false
+      var token = parser.nextToken()
+      while (token != null) {
+        if (token == JsonToken.FIELD_NAME && parser.getCurrentName == "payload") {
+          binary = parser.nextTextValue() == "binary"
+        }
+        token = parser.nextToken()
+      }
+      synchronized {
+        applications.get(appId).foreach { app =>
+          app.catalogExecutors += executor
+          if (binary) app.binaryExecutors += executor else app.binaryExecutors -= executor
+        }
+      }
+    } finally {
+      parser.close()
+    }
+  }
+
+  private def onPoints(appId: String, executor: String, metric: String, payload: Array[Byte])
+    : Unit = synchronized {
+    applications.get(appId).foreach(addPoints(_, executor, metric, payload))
+  }
+
+  private def addPoints(app: Application, executor: String, metric: String, payload: Array[Byte])
+    : Unit = {
+    val ring = app.series.getOrElseUpdate(metric, new mutable.HashMap[String, PointRing])
+      .getOrElseUpdate(executor, new PointRing(retainedPoints))
+    if (app.binaryExecutors.contains(executor)) {
+      val buffer = ByteBuffer.wrap(payload)
+      while (buffer.remaining() >= 16) {
+        ring.add(buffer.getLong(), buffer.getDouble())
+      }
+    } else {
+      // [[timestamp, value], ...], null values are kept as NaN
+      val parser = jsonFactory.createParser(payload)
+      try {
+        if (parser.nextToken() == JsonToken.START_ARRAY) {
+          while (parser.nextToken() == JsonToken.START_ARRAY) {
+            parser.nextToken()
+            val timestamp = parser.getLongValue
+            val value = parser.nextToken() match {
+              case JsonToken.VALUE_NULL => Double.NaN
+              case _ => parser.getDoubleValue
+            }
+            ring.add(timestamp, value)
+            parser.nextToken()
+          }
+        }
+      } finally {
+        parser.close()
+      }
+    }
+  }
+
+  /** Starts keeping the metrics of an application registered with the master. */
+  def addApplication(appId: String): Unit = synchronized {
+    applications.getOrElseUpdate(appId, new Application)
+  }
+
+  /**
+   * Drops the metrics of an application that finished. Returns the topics of the catalogs the
+   * broker retains for it, to clear them.
+   */
+  def removeApplication(appId: String): Seq[String] = synchronized {
+    applications.remove(appId).map { app =>
+      app.catalogExecutors.toSeq.sorted.map(executor => s"metrics-catalog/$appId/$executor")
+    }.getOrElse(Nil)
+  }
+
+  /** Metrics with points for the application, sorted. */
+  def metrics(appId: String): Seq[String] = synchronized {
+    applications.get(appId).map(_.series.keys.toSeq.sorted).getOrElse(Nil)
+  }
+
+  /** Points, oldest first, of a metric of the application per executor, sorted by executor. */
+  def points(appId: String, metric: String): Seq[(String, Seq[(Long, Double)])] = synchronized {
+    applications.get(appId).flatMap(_.series.get(metric)).map { byExecutor =>
+      byExecutor.toSeq.sortBy(_._1).map { case (executor, ring) => (executor, ring.toSeq) }
+    }.getOrElse(Nil)
+  }
+}
+
+/** The latest `capacity` points of a series, in arrays that grow up to `capacity`. */
+private class PointRing(capacity: Int) {
+  private var timestamps = new Array[Long](math.min(capacity, 16))
+  private var values = new Array[Double](math.min(capacity, 16))
+  private var start = 0
+  private var count = 0
+
+  def add(timestamp: Long, value: Double): Unit = {
+    if (count == timestamps.length && count < capacity) {
+      val size = math.min(capacity, count * 2)
+      timestamps = Arrays.copyOf(timestamps, size)
+      values = Arrays.copyOf(values, size)
+    }
+    val index = (start + count) % timestamps.length
+    timestamps(index) = timestamp
+    values(index) = value
+    if (count < timestamps.length) {
+      count += 1
+    } else {
+      start = (start + 1) % timestamps.length
+    }
+  }
+
+  def toSeq: Seq[(Long, Double)] = (0 until count).map { i =>
+    val index = (start + i) % timestamps.length
+    (timestamps(index), values(index))
+  }
+}
+
+/**
+ * Subscribes, through the broker embedded in the master, to the messages of the MQTT sinks and
+ * keeps them in `metrics`. Reconnects and subscribes again if the connection is lost.
+ */
+private[deploy] class LiveExecutorMetricsSubscriber(metrics: LiveExecutorMetrics, port: Int)
+  extends Logging {
+
+  private val client = new MqttClient(s"tcp://localhost:$port", "spark-master-live-metrics",
+    new MemoryPersistence)
+
+  client.setCallback(new MqttCallbackExtended {
+    override def connectComplete(reconnect: Boolean, serverURI: String): Unit = {
+      if (reconnect) {
+        subscribe()
+      }
+    }
+
+    override def connectionLost(cause: Throwable): Unit = {
+      logWarning("Lost the connection to the MQTT broker, reconnecting", cause)
+    }
+
+    override def messageArrived(topic: String, message: MqttMessage): Unit = {
+      try {
+        metrics.onMessage(topic, message.getPayload)
+      } catch {
+        case e: Exception => logWarning(s"Couldn't read the executor metrics of $topic", e)
+      }
+    }
+
+    override def deliveryComplete(token: IMqttDeliveryToken): Unit = {}
+  })
+
+  def start(): Unit = {
+    val options = new MqttConnectOptions
+    options.setCleanSession(true)
+    options.setAutomaticReconnect(true)
+    client.connect(options)
+    subscribe()
+  }
+
+  private def subscribe(): Unit = {
+    client.subscribe(Array("metrics-catalog/#", "metrics/#"), Array(0, 0))
+  }
+
+  /** Clears retained messages, so that the broker no longer delivers them to new subscribers. */
+  def clearRetained(topics: Seq[String]): Unit = {
+    topics.foreach { topic =>
+      try {
+        client.publish(topic, new Array[Byte](0), 0, true)
+      } catch {
+        case e: Exception => logWarning(s"Couldn't clear the retained message of $topic", e)
+      }
+    }
+  }
+
+  def stop(): Unit = {
+    if (client.isConnected) {
+      client.disconnect()
+    }
+    client.close()
+  }
+}
@@ -23,6 +23,7 @@ import java.util.concurrent.{ScheduledFuture, TimeUnit}
 
 import scala.collection.mutable.{ArrayBuffer, HashMap, HashSet}
 import scala.util.Random
+import scala.util.control.NonFatal
 
 import io.moquette.server.Server
 
@@ -127,6 +128,11 @@ private[deploy] class Master(
   private var restServer: Option[StandaloneRestServer] = None
   private var restServerBoundPort: Option[Int] = None
 
+  // Recent executor metrics published through the embedded MQTT broker, for the realtime page
+  private[master] val liveExecutorMetrics =
+    new LiveExecutorMetrics(conf.getInt("spark.master.liveMetrics.retainedPoints", 300))
+  private var liveExecutorMetricsSubscriber: Option[LiveExecutorMetricsSubscriber] = None
+
   override def onStart(): Unit = {
     logInfo("Starting Spark master at " + masterUrl)
     logInfo(s"Running Spark version ${org.apache.spark.SPARK_VERSION}")
@@ -193,6 +199,16 @@ private[deploy] class Master(
 
       mqttBroker.startServer(properties)
     }
+
+    try {
+      val subscriber = new LiveExecutorMetricsSubscriber(liveExecutorMetrics,
+        conf.get("spark.moquette.port").toInt)
+      subscriber.start()
+      liveExecutorMetricsSubscriber = Some(subscriber)
+    } catch {
+      case NonFatal(e) =>
+        logWarning("Couldn't subscribe to the executor metrics of the MQTT broker", e)
+    }
   }
 
   override def onStop() {
@@ -206,6 +222,7 @@ private[deploy] class Master(
       checkForWorkerTimeOutTask.cancel(true)
     }
     forwardMessageThread.shutdownNow()
+    liveExecutorMetricsSubscriber.foreach(_.stop())
     webUi.stop()
     restServer.foreach(_.stop())
     masterMetricsSystem.stop()
@@ -838,6 +855,7 @@ private[deploy] class Master(
     endpointToApp(app.driver) = app
     addressToApp(appAddress) = app
     waitingApps += app
+    liveExecutorMetrics.addApplication(app.id)
     if (reverseProxy) {
       webUi.addProxyTargets(app.id, app.desc.appUiUrl)
     }
@@ -866,6 +884,8 @@ private[deploy] class Master(
       }
       completedApps += app // Remember it in our history
       waitingApps -= app
+      val retainedCatalogs = liveExecutorMetrics.removeApplication(app.id)
+      liveExecutorMetricsSubscriber.foreach(_.clearRetained(retainedCatalogs))
 
       for (exec <- app.executors.values) {
         killExecutor(exec)
@@ -98,7 +98,8 @@ private[ui] class ApplicationPage(parent: MasterWebUI) extends WebUIPage("app")
         </div>
       </div>
 
-      <div id="realtime-info" data-appId={app.id} data-mqttPort={mqttPort}></div>
+      <div id="realtime-info" data-appId={app.id} data-mqttPort={mqttPort}
+           data-metricsUrl={UIUtils.prependBaseUri("/app/metrics/json")}></div>
       <div id="executor-parent">
           <label><b>Executor Metrics:</b></label>
           <select id="executor-metric-option">
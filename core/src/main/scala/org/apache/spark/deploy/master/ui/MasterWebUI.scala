@@ -17,9 +17,12 @@
 
 package org.apache.spark.deploy.master.ui
 
+import javax.servlet.http.HttpServletRequest
+
 import scala.collection.mutable.HashMap
 
 import org.eclipse.jetty.servlet.ServletContextHandler
+import org.json4s.JsonAST.{JArray, JDouble, JInt, JNull, JObject, JString, JValue}
 
 import org.apache.spark.deploy.master.Master
 import org.apache.spark.internal.Logging
@@ -52,6 +55,31 @@ class MasterWebUI(
       "/app/kill", "/", masterPage.handleAppKillRequest, httpMethods = Set("POST")))
     attachHandler(createRedirectHandler(
       "/driver/kill", "/", masterPage.handleDriverKillRequest, httpMethods = Set("POST")))
+    attachHandler(createServletHandler("/app/metrics/json",
+      (request: HttpServletRequest) => liveMetricsJson(request), master.securityMgr, master.conf))
+  }
+
+  /**
+   * The recent executor metrics of an application kept by the master, from which the realtime
+   * page starts: `{"retainedPoints", "metrics": [...], "series": [{"executor", "points":
+   * [[timestamp, value], ...]}, ...]}`, the series being those of the `metric` parameter.
+   */
+  private def liveMetricsJson(request: HttpServletRequest): JValue = {
+    val live = master.liveExecutorMetrics
+    val appId = request.getParameter("appId")
+    val series = Option(request.getParameter("metric")).toSeq.flatMap { metric =>
+      live.points(appId, metric).map { case (executor, points) =>
+        JObject(
+          "executor" -> JString(executor),
+          "points" -> JArray(points.map { case (timestamp, value) =>
+            JArray(List(JInt(timestamp), if (value.isNaN) JNull else JDouble(value)))
+          }.toList))
+      }
+    }
+    JObject(
+      "retainedPoints" -> JInt(live.retainedPoints),
+      "metrics" -> JArray(live.metrics(appId).map(JString(_)).toList),
+      "series" -> JArray(series.toList))
   }
 
   def addProxyTargets(id: String, target: String): Unit = {
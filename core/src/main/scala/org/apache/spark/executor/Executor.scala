@@ -32,11 +32,12 @@ import scala.util.control.NonFatal
 import org.apache.spark._
 import org.apache.spark.deploy.SparkHadoopUtil
 import org.apache.spark.internal.Logging
+import org.apache.spark.internal.config.EXECUTOR_HEARTBEAT_METRICS_SOURCES
 import org.apache.spark.memory.TaskMemoryManager
 import org.apache.spark.rpc.RpcTimeout
 import org.apache.spark.scheduler.{AccumulableInfo, DirectTaskResult, IndirectTaskResult, Task}
 import org.apache.spark.shuffle.FetchFailedException
-import org.apache.spark.storage.{StorageLevel, TaskResultBlockId}
+import org.apache.spark.storage.{ShuffleTransferSource, StorageLevel, TaskResultBlockId}
 import org.apache.spark.util._
 import org.apache.spark.util.io.ChunkedByteBuffer
 
@@ -84,10 +85,14 @@ private[spark] class Executor(
   // Start worker thread pool
   private val threadPool = ThreadUtils.newDaemonCachedThreadPool("Executor task launch worker")
   private val executorSource = new ExecutorSource(threadPool, executorId)
+  private val taskThreadSource = new TaskThreadSource(() => runningTaskThreads())
 
   if (!isLocal) {
     env.metricsSystem.registerSource(executorSource)
+    env.metricsSystem.registerSource(taskThreadSource)
+    env.metricsSystem.registerSource(env.memoryManager.metricsSource)
     env.blockManager.initialize(conf.getAppId)
+    env.metricsSystem.registerSource(new ShuffleTransferSource(env.blockManager, conf))
   }
 
   // Whether to load classes in user jars before those in Spark jars
@@ -133,6 +138,13 @@ private[spark] class Executor(
    */
   private var heartbeatFailures = 0
 
+  // Attaches the metrics of the configured sources to the heartbeats, when there are any
+  private val heartbeatMetrics = Some(conf.get(EXECUTOR_HEARTBEAT_METRICS_SOURCES))
+    .filter(_.nonEmpty)
+    .map { names =>
+      new HeartbeatMetricsEncoder(() => names.flatMap(env.metricsSystem.getSourcesByName))
+    }
+
   startDriverHeartbeater()
 
   def launchTask(
@@ -202,6 +214,15 @@ private[spark] class Executor(
     /** How much the JVM process has spent in GC when the task starts to run. */
     @volatile var startGCTime: Long = _
 
+    /** Id of the thread running the task, -1 until it starts. */
+    @volatile var threadId: Long = -1L
+
+    /** CPU time of the thread when the task starts to run, -1 if not measured. */
+    @volatile var startCpuTime: Long = -1L
+
+    /** Bytes allocated by the thread when the task is deserialized, -1 if not measured. */
+    @volatile var startAllocatedBytes: Long = -1L
+
     /**
      * The task to run. This will be set in run() by deserializing the task binary coming
      * from the driver. Once it is set, it will never be changed.
@@ -220,6 +241,14 @@ private[spark] class Executor(
       }
     }
 
+    /** Sets the bytes allocated by the thread since the task started, when measured. */
+    private[Executor] def setAllocatedBytes(metrics: TaskMetrics, threadAllocatedBytes: Long)
+      : Unit = {
+      if (threadAllocatedBytes >= 0 && startAllocatedBytes >= 0) {
+        metrics.setAllocatedBytes(threadAllocatedBytes - startAllocatedBytes)
+      }
+    }
+
     /**
      * Set the finished flag to true and clear the current thread's interrupt status
      */
@@ -232,6 +261,8 @@ private[spark] class Executor(
     }
 
     override def run(): Unit = {
+      threadId = Thread.currentThread.getId
+      startAllocatedBytes = TaskThreads.allocatedBytes(threadId)
       val threadMXBean = ManagementFactory.getThreadMXBean
       val taskMemoryManager = new TaskMemoryManager(env.memoryManager, taskId)
       val deserializeStartTime = System.currentTimeMillis()
@@ -277,6 +308,9 @@ private[spark] class Executor(
         taskStartCpu = if (threadMXBean.isCurrentThreadCpuTimeSupported) {
           threadMXBean.getCurrentThreadCpuTime
         } else 0L
+        if (threadMXBean.isCurrentThreadCpuTimeSupported) {
+          startCpuTime = taskStartCpu
+        }
         var threwException = true
         val value = try {
           val res = task.run(
@@ -336,6 +370,7 @@ private[spark] class Executor(
           (taskFinishCpu - taskStartCpu) - task.executorDeserializeCpuTime)
         task.metrics.setJvmGCTime(computeTotalGcTime() - startGCTime)
         task.metrics.setResultSerializationTime(afterSerialization - beforeSerialization)
+        setAllocatedBytes(task.metrics, TaskThreads.allocatedBytes(threadId))
 
         // Note: accumulator updates must be collected after TaskMetrics is updated
         val accumUpdates = task.collectAccumulatorUpdates()
@@ -400,6 +435,7 @@ private[spark] class Executor(
             if (task != null) {
               task.metrics.setExecutorRunTime(System.currentTimeMillis() - taskStart)
               task.metrics.setJvmGCTime(computeTotalGcTime() - startGCTime)
+              setAllocatedBytes(task.metrics, TaskThreads.allocatedBytes(threadId))
               task.collectAccumulatorUpdates(taskFailed = true)
             } else {
               Seq.empty
@@ -519,21 +555,39 @@ private[spark] class Executor(
     }
   }
 
+  /** Ids of the running tasks and of their threads. */
+  private def runningTaskThreads(): Seq[(Long, Long)] = {
+    runningTasks.values().asScala.filter(_.threadId >= 0).map(t => (t.taskId, t.threadId)).toSeq
+  }
+
   /** Reports heartbeat and metrics for active tasks to the driver. */
   private def reportHeartBeat(): Unit = {
     // list of (task id, accumUpdates) to send back to the driver
     val accumUpdates = new ArrayBuffer[(Long, Seq[AccumulatorV2[_, _]])]()
     val curGCTime = computeTotalGcTime()
 
-    for (taskRunner <- runningTasks.values().asScala) {
-      if (taskRunner.task != null) {
-        taskRunner.task.metrics.mergeShuffleReadMetrics()
-        taskRunner.task.metrics.setJvmGCTime(curGCTime - taskRunner.startGCTime)
-        accumUpdates += ((taskRunner.taskId, taskRunner.task.metrics.accumulators()))
+    val taskRunners = runningTasks.values().asScala.filter(_.task != null).toArray
+    // CPU time and allocations so far, from which the driver derives the rates of the tasks
+    val threadIds = taskRunners.map(_.threadId)
+    val cpuTimes = TaskThreads.cpuTimes(threadIds)
+    val allocatedBytes = TaskThreads.allocatedBytes(threadIds)
+
+    for (i <- taskRunners.indices) {
+      val taskRunner = taskRunners(i)
+      val task = taskRunner.task
+      task.metrics.mergeShuffleReadMetrics()
+      task.metrics.setJvmGCTime(curGCTime - taskRunner.startGCTime)
+      if (cpuTimes(i) >= 0 && taskRunner.startCpuTime >= 0) {
+        task.metrics.setExecutorCpuTime(math.max(0L,
+          cpuTimes(i) - taskRunner.startCpuTime - task.executorDeserializeCpuTime))
       }
+      taskRunner.setAllocatedBytes(task.metrics, allocatedBytes(i))
+      accumUpdates += ((taskRunner.taskId, task.metrics.accumulators()))
     }
 
-    val message = Heartbeat(executorId, accumUpdates.toArray, env.blockManager.blockManagerId)
+    val metrics = heartbeatMetrics.map(_.encode(System.currentTimeMillis() / 1000))
+    val message = Heartbeat(executorId, accumUpdates.toArray, env.blockManager.blockManagerId,
+      metrics)
     try {
       val response = heartbeatReceiverRef.askWithRetry[HeartbeatResponse](
           message, RpcTimeout(conf, "spark.executor.heartbeatInterval", "10s"))
@@ -541,10 +595,15 @@ private[spark] class Executor(
         logInfo("Told to re-register on heartbeat")
         env.blockManager.reregister()
       }
+      if (response.resendMetrics) {
+        heartbeatMetrics.foreach(_.reset())
+      }
       heartbeatFailures = 0
     } catch {
       case NonFatal(e) =>
         logWarning("Issue communicating with driver in heartbeater", e)
+        // The driver may not have received the changes of the metrics
+        heartbeatMetrics.foreach(_.reset())
         heartbeatFailures += 1
         if (heartbeatFailures >= HEARTBEAT_MAX_FAILURES) {
           logError(s"Exit as unable to send heartbeats to driver " +
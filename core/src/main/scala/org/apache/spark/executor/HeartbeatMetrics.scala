@@ -0,0 +1,132 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.spark.executor
+
+import scala.collection.JavaConverters._
+import scala.collection.mutable
+
+import org.apache.spark.metrics.source.Source
+
+/**
+ * The changes of the metrics of an executor since its previous heartbeat. Metric names are sent
+ * once, with the id that the following deltas refer to them by.
+ *
+ * @param timestamp time of the snapshot, in seconds
+ * @param reset whether the snapshot is complete and starts a new dictionary of names
+ * @param firstNewId id of the first of `newNames`, the following ones numbered in order
+ * @param newNames names of the metrics that appear in this snapshot for the first time
+ * @param ids ids of the metrics whose value changed
+ * @param values the new values of `ids`
+ */
+private[spark] case class ExecutorMetricsDelta(
+    timestamp: Long,
+    reset: Boolean,
+    firstNewId: Int,
+    newNames: Array[String],
+    ids: Array[Int],
+    values: Array[Double])
+
+/**
+ * Takes the snapshots that an executor attaches to its heartbeats, from the numeric gauges of
+ * `sources`. Metrics are named by their path in their source, as in the HDFS sink's files.
+ *
+ * Only the heartbeat thread uses an encoder. After a heartbeat the driver may not have received,
+ * or when the driver asks for it, `reset` makes the next snapshot complete.
+ */
+private[spark] class HeartbeatMetricsEncoder(sources: () => Seq[Source]) {
+
+  private val nameIds = new mutable.HashMap[String, Int]
+  private val lastValues = new mutable.ArrayBuffer[Double]
+  private var resetNext = true
+
+  def reset(): Unit = {
+    resetNext = true
+  }
+
+  def encode(timestamp: Long): ExecutorMetricsDelta = {
+    val reset = resetNext
+    if (reset) {
+      nameIds.clear()
+      lastValues.clear()
+      resetNext = false
+    }
+    val firstNewId = lastValues.size
+    val newNames = new mutable.ArrayBuffer[String]
+    val ids = new mutable.ArrayBuffer[Int]
+    val values = new mutable.ArrayBuffer[Double]
+    for (source <- sources(); (name, gauge) <- source.metricRegistry.getGauges.asScala) {
+      HeartbeatMetricsEncoder.numeric(gauge.getValue).foreach { value =>
+        val id = nameIds.getOrElseUpdate(name, {
+          newNames += name
+          lastValues += Double.NaN
+          lastValues.size - 1
+        })
+        // NaN never equals itself, so new metrics are always sent
+        if (lastValues(id) != value) {
+          lastValues(id) = value
+          ids += id
+          values += value
+        }
+      }
+    }
+    ExecutorMetricsDelta(timestamp, reset, firstNewId, newNames.toArray, ids.toArray,
+      values.toArray)
+  }
+}
+
+private[spark] object HeartbeatMetricsEncoder {
+
+  private def numeric(value: Any): Option[Double] = value match {
+    case n: Number => Some(n.doubleValue()).filter(v => !v.isNaN && !v.isInfinite)
+    case _ => None
+  }
+}
+
+/**
+ * Rebuilds, on the driver, the metrics of one executor from the deltas of its heartbeats.
+ * `update` fails, returning None, when a delta does not follow the ones received so far, in
+ * which case the executor is asked for a complete snapshot.
+ */
+private[spark] class HeartbeatMetricsDecoder {
+
+  private val names = new mutable.ArrayBuffer[String]
+  private val values = new mutable.ArrayBuffer[Double]
+  private var complete = false
+
+  def update(delta: ExecutorMetricsDelta): Option[Map[String, Double]] = {
+    if (delta.reset) {
+      names.clear()
+      values.clear()
+      complete = true
+    }
+    if (!complete || delta.firstNewId != names.size ||
+        delta.ids.exists(_ >= names.size + delta.newNames.length)) {
+      complete = false
+      None
+    } else {
+      names ++= delta.newNames
+      values ++= Iterator.fill(delta.newNames.length)(Double.NaN)
+      var i = 0
+      while (i < delta.ids.length) {
+        values(delta.ids(i)) = delta.values(i)
+        i += 1
+      }
+      Some(names.indices.filter(i => !values(i).isNaN).map(i => names(i) -> values(i)).toMap)
+    }
+  }
+}
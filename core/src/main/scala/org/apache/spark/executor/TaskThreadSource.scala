@@ -0,0 +1,122 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.spark.executor
+
+import java.lang.management.ManagementFactory
+
+import com.codahale.metrics.{Gauge, MetricRegistry}
+
+import org.apache.spark.metrics.source.{SampledSource, SamplingEpoch}
+
+/** CPU usage, in percent of one core, and heap allocation rate of the thread of a task. */
+private[spark] case class TaskThreadRates(cpuPercent: Double, allocatedBytesPerSecond: Double)
+
+/**
+ * Samples, once per sampling epoch, the CPU time and the heap allocations of the threads
+ * running tasks, and publishes their rates over the epoch: per task through `taskRates`, and
+ * summed over the running tasks as gauges.
+ *
+ * @param taskThreads the ids of the running tasks and of their threads
+ */
+private[spark] class TaskThreadSource(taskThreads: () => Seq[(Long, Long)])
+  extends SampledSource {
+
+  override val sourceName = "taskThreads"
+  override val metricRegistry = new MetricRegistry()
+
+  // Task id -> (epoch nano time, thread CPU time, thread allocated bytes) of the previous sample
+  private var previous = Map.empty[Long, (Long, Long, Long)]
+  @volatile private var latest = Map.empty[Long, TaskThreadRates]
+
+  /** Rates of the running tasks over the latest epoch, for tasks sampled at least twice. */
+  def taskRates: Map[Long, TaskThreadRates] = latest
+
+  override def sample(epoch: SamplingEpoch): Unit = synchronized {
+    val tasks = taskThreads()
+    val threadIds = tasks.map(_._2).toArray
+    val cpuTimes = TaskThreads.cpuTimes(threadIds)
+    val allocatedBytes = TaskThreads.allocatedBytes(threadIds)
+
+    val counters = tasks.indices.map { i =>
+      tasks(i)._1 -> ((epoch.nanoTime, cpuTimes(i), allocatedBytes(i)))
+    }.toMap
+    latest = counters.flatMap { case (taskId, (nanoTime, cpu, allocated)) =>
+      previous.get(taskId).collect {
+        case (previousNanoTime, previousCpu, previousAllocated) if nanoTime > previousNanoTime =>
+          val elapsed = (nanoTime - previousNanoTime).toDouble
+          val cpuPercent = if (cpu >= 0 && previousCpu >= 0) {
+            (cpu - previousCpu) * 100 / elapsed
+          } else 0.0
+          val allocationRate = if (allocated >= 0 && previousAllocated >= 0) {
+            (allocated - previousAllocated) * 1e9 / elapsed
+          } else 0.0
+          taskId -> TaskThreadRates(cpuPercent, allocationRate)
+      }
+    }
+    previous = counters
+  }
+
+  metricRegistry.register(MetricRegistry.name("tasks", "cpuPercent"), new Gauge[Double] {
+    override def getValue: Double = latest.values.map(_.cpuPercent).sum
+  })
+
+  metricRegistry.register(MetricRegistry.name("tasks", "allocatedMBPerSecond"),
+    new Gauge[Double] {
+      override def getValue: Double =
+        latest.values.map(_.allocatedBytesPerSecond).sum / (1024 * 1024)
+    })
+
+  metricRegistry.register(MetricRegistry.name("tasks", "maxAllocatedMBPerSecond"),
+    new Gauge[Double] {
+      override def getValue: Double =
+        latest.values.map(_.allocatedBytesPerSecond).foldLeft(0.0)(math.max) / (1024 * 1024)
+    })
+}
+
+/**
+ * CPU time and allocated bytes of threads, from the ThreadMXBean of the JVM. Both are
+ * cumulative over the life of a thread, and -1 for a thread that is gone or when the JVM does
+ * not measure them.
+ */
+private[spark] object TaskThreads {
+
+  private val threadMXBean = ManagementFactory.getThreadMXBean
+
+  // HotSpot's extension reads many threads in one call and measures allocations
+  private val hotSpotThreadMXBean = threadMXBean match {
+    case bean: com.sun.management.ThreadMXBean if bean.isThreadAllocatedMemorySupported =>
+      Some(bean)
+    case _ => None
+  }
+
+  def cpuTimes(threadIds: Array[Long]): Array[Long] = {
+    if (!threadMXBean.isThreadCpuTimeSupported) {
+      Array.fill(threadIds.length)(-1L)
+    } else {
+      hotSpotThreadMXBean.map(_.getThreadCpuTime(threadIds))
+        .getOrElse(threadIds.map(threadMXBean.getThreadCpuTime))
+    }
+  }
+
+  def allocatedBytes(threadIds: Array[Long]): Array[Long] = {
+    hotSpotThreadMXBean.map(_.getThreadAllocatedBytes(threadIds))
+      .getOrElse(Array.fill(threadIds.length)(-1L))
+  }
+
+  def allocatedBytes(threadId: Long): Long = allocatedBytes(Array(threadId))(0)
+}
@@ -146,6 +146,20 @@ package object config {
     .stringConf
     .createOptional
 
+  // Period of the sampling epochs of the sources, such as SigarSource, that are sampled once
+  // for all the sinks; the shortest period of the sinks by default
+  private[spark] val METRICS_SAMPLING_PERIOD = ConfigBuilder("spark.metrics.sampling.period")
+    .timeConf(TimeUnit.MILLISECONDS)
+    .createOptional
+
+  // Sources whose metrics executors attach to their heartbeats, for the driver to post them on
+  // the listener bus; none by default
+  private[spark] val EXECUTOR_HEARTBEAT_METRICS_SOURCES =
+    ConfigBuilder("spark.executor.heartbeat.metrics.sources")
+      .stringConf
+      .toSequence
+      .createWithDefault(Nil)
+
   private[spark] val PYSPARK_DRIVER_PYTHON = ConfigBuilder("spark.pyspark.driver.python")
     .stringConf
     .createOptional
@@ -163,6 +177,16 @@ package object config {
   private[spark] val HISTORY_UI_MAX_APPS =
     ConfigBuilder("spark.history.ui.maxApplications").intConf.createWithDefault(Integer.MAX_VALUE)
 
+  // Local directory where the History Server keeps the tasks of the stages of replayed
+  // applications, rather than on heap
+  private[spark] val HISTORY_STORE_PATH = ConfigBuilder("spark.history.store.path")
+    .stringConf
+    .createOptional
+
+  // Threads parsing the lines of one event log while the History Server replays it
+  private[spark] val HISTORY_REPLAY_PARSE_THREADS =
+    ConfigBuilder("spark.history.fs.replay.parseThreads").intConf.createOptional
+
   private[spark] val IO_ENCRYPTION_ENABLED = ConfigBuilder("spark.io.encryption.enabled")
     .booleanConf
     .createWithDefault(false)
@@ -220,4 +244,42 @@ package object config {
       " bigger files.")
     .longConf
     .createWithDefault(4 * 1024 * 1024)
+
+  private[spark] val SHUFFLE_FETCH_CONTINUOUS_BLOCKS_IN_BATCH =
+    ConfigBuilder("spark.shuffle.fetchContinuousBlocksInBatch")
+      .doc("Whether a task that reads a range of reduce partitions fetches the partitions of " +
+        "each map output as one contiguous segment of its data file rather than one block each. " +
+        "Only used when the serializer supports relocation of serialized objects, the " +
+        "compression codec supports concatenation of compressed streams and IO encryption is " +
+        "disabled. External shuffle services must be of a version that serves such segments.")
+      .booleanConf
+      .createWithDefault(false)
+
+  private[spark] val SHUFFLE_PUSH_ENABLED =
+    ConfigBuilder("spark.shuffle.push.enabled")
+      .doc("Whether map tasks push the blocks of their output to external shuffle services that " +
+        "merge them into one file per reduce partition, which reducers read before the blocks " +
+        "that were not merged. Requires the external shuffle service.")
+      .booleanConf
+      .createWithDefault(false)
+
+  private[spark] val SHUFFLE_PUSH_MAX_MERGERS =
+    ConfigBuilder("spark.shuffle.push.maxMergers")
+      .doc("Maximum number of external shuffle services, on hosts of the executors registered " +
+        "when a map stage is submitted, that merge the pushed blocks of a shuffle.")
+      .intConf
+      .createWithDefault(8)
+
+  private[spark] val SHUFFLE_PUSH_MAX_BLOCK_SIZE =
+    ConfigBuilder("spark.shuffle.push.maxBlockSizeToPush")
+      .doc("Blocks larger than this are not pushed, as reducers read them efficiently enough " +
+        "from the map outputs.")
+      .bytesConf(ByteUnit.BYTE)
+      .createWithDefault(1024 * 1024)
+
+  private[spark] val SHUFFLE_PUSH_MAX_BATCH_SIZE =
+    ConfigBuilder("spark.shuffle.push.maxBlockBatchSize")
+      .doc("Maximum size of the blocks pushed to a shuffle service in one request.")
+      .bytesConf(ByteUnit.BYTE)
+      .createWithDefault(3 * 1024 * 1024)
 }
@@ -17,10 +17,13 @@
 
 package org.apache.spark.memory
 
+import java.util.concurrent.TimeUnit
 import javax.annotation.concurrent.GuardedBy
 
 import scala.collection.mutable
 
+import com.codahale.metrics.{Counter, ExponentiallyDecayingReservoir, Histogram}
+
 import org.apache.spark.internal.Logging
 
 /**
@@ -55,6 +58,13 @@ private[memory] class ExecutionMemoryPool(
   @GuardedBy("lock")
   private val memoryForTask = new mutable.HashMap[Long, Long]()
 
+  /**
+   * Time, in milliseconds, that the calls to `acquireMemory` that had to wait for other tasks
+   * to release memory were blocked, and its total. See [[MemoryManagerSource]].
+   */
+  private[memory] val acquireBlockedMillis = new Histogram(new ExponentiallyDecayingReservoir)
+  private[memory] val totalBlockedMillis = new Counter
+
   override def memoryUsed: Long = lock.synchronized {
     memoryForTask.values.sum
   }
@@ -109,6 +119,7 @@ private[memory] class ExecutionMemoryPool(
     // task would have more than 1 / numActiveTasks of the memory) or we have enough free
     // memory to give it (we always let each task get at least 1 / (2 * numActiveTasks)).
     // TODO: simplify this to limit each task to its own slot
+    var blockedSince = -1L
     while (true) {
       val numActiveTasks = memoryForTask.keys.size
       val curMem = memoryForTask(taskAttemptId)
@@ -137,8 +148,16 @@ private[memory] class ExecutionMemoryPool(
       // (this happens if older tasks allocated lots of memory before N grew)
       if (toGrant < numBytes && curMem + toGrant < minMemoryPerTask) {
         logInfo(s"TID $taskAttemptId waiting for at least 1/2N of $poolName pool to be free")
+        if (blockedSince < 0) {
+          blockedSince = System.nanoTime()
+        }
         lock.wait()
       } else {
+        if (blockedSince >= 0) {
+          val blockedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - blockedSince)
+          acquireBlockedMillis.update(blockedMillis)
+          totalBlockedMillis.inc(blockedMillis)
+        }
         memoryForTask(taskAttemptId) += toGrant
         return toGrant
       }
@@ -17,6 +17,7 @@
 
 package org.apache.spark.memory
 
+import java.util.concurrent.TimeUnit
 import javax.annotation.concurrent.GuardedBy
 
 import org.apache.spark.SparkConf
@@ -61,6 +62,12 @@ private[spark] abstract class MemoryManager(
   offHeapExecutionMemoryPool.incrementPoolSize(maxOffHeapMemory - offHeapStorageMemory)
   offHeapStorageMemoryPool.incrementPoolSize(offHeapStorageMemory)
 
+  /**
+   * Usage of the pools of this manager, spills of the tasks using it and time tasks were
+   * blocked waiting for execution memory, registered with the metrics system of the executor.
+   */
+  private[spark] val metricsSource = new MemoryManagerSource(this)
+
   /**
    * Total available on heap memory for storage, in bytes. This amount can vary over time,
    * depending on the MemoryManager implementation.
@@ -179,6 +186,41 @@ private[spark] abstract class MemoryManager(
     onHeapStorageMemoryPool.memoryUsed + offHeapStorageMemoryPool.memoryUsed
   }
 
+  private[memory] final def executionPool(memoryMode: MemoryMode): ExecutionMemoryPool = {
+    memoryMode match {
+      case MemoryMode.ON_HEAP => onHeapExecutionMemoryPool
+      case MemoryMode.OFF_HEAP => offHeapExecutionMemoryPool
+    }
+  }
+
+  private[memory] final def storagePool(memoryMode: MemoryMode): StorageMemoryPool = {
+    memoryMode match {
+      case MemoryMode.ON_HEAP => onHeapStorageMemoryPool
+      case MemoryMode.OFF_HEAP => offHeapStorageMemoryPool
+    }
+  }
+
+  /**
+   * Counts a spill of a memory consumer, which released `numBytes` of execution memory.
+   */
+  private[spark] def recordSpill(numBytes: Long): Unit = {
+    metricsSource.spillCount.inc()
+    metricsSource.spillBytes.inc(numBytes)
+  }
+
+  /**
+   * Counts a spill written on a background thread for `writeNanos` while its task went on, which
+   * then waited `waitNanos` for the spill to finish.
+   */
+  private[spark] def recordAsyncSpill(writeNanos: Long, waitNanos: Long): Unit = {
+    val writeMillis = TimeUnit.NANOSECONDS.toMillis(writeNanos)
+    val waitMillis = TimeUnit.NANOSECONDS.toMillis(waitNanos)
+    metricsSource.asyncSpillCount.inc()
+    metricsSource.asyncSpillWriteMillis.inc(writeMillis)
+    metricsSource.asyncSpillWaitMillis.inc(waitMillis)
+    metricsSource.asyncSpillOverlapMillis.inc(math.max(writeMillis - waitMillis, 0L))
+  }
+
   /**
    * Returns the execution memory consumption, in bytes, for the given task.
    */
@@ -0,0 +1,72 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.spark.memory
+
+import com.codahale.metrics.{Counter, Gauge, MetricRegistry}
+
+import org.apache.spark.metrics.source.Source
+
+/**
+ * Metrics of a [[MemoryManager]]: the used and free bytes of its execution and storage pools
+ * for each [[MemoryMode]], the spills of the memory consumers of its tasks, including how much
+ * of the spills written on background threads overlapped their tasks, and the time tasks
+ * were blocked in `ExecutionMemoryPool.acquireMemory` waiting for other tasks to release memory.
+ *
+ * Besides the histogram of the blocked times, their total is kept in a counter: sinks that only
+ * report the count of a histogram still show how long tasks waited.
+ */
+private[spark] class MemoryManagerSource(memoryManager: MemoryManager) extends Source {
+
+  override val metricRegistry = new MetricRegistry()
+
+  override val sourceName = "memoryManager"
+
+  // Number of spills, and bytes of execution memory they released
+  val spillCount: Counter = metricRegistry.counter(MetricRegistry.name("spill", "count"))
+  val spillBytes: Counter = metricRegistry.counter(MetricRegistry.name("spill", "memoryBytes"))
+
+  // Spills written on a background thread, the time they took, the time their tasks waited for
+  // them to finish and the time their writes overlapped the work of their tasks
+  val asyncSpillCount: Counter =
+    metricRegistry.counter(MetricRegistry.name("spill", "async", "count"))
+  val asyncSpillWriteMillis: Counter =
+    metricRegistry.counter(MetricRegistry.name("spill", "async", "writeMillis"))
+  val asyncSpillWaitMillis: Counter =
+    metricRegistry.counter(MetricRegistry.name("spill", "async", "waitMillis"))
+  val asyncSpillOverlapMillis: Counter =
+    metricRegistry.counter(MetricRegistry.name("spill", "async", "overlapMillis"))
+
+  private def registerPool(kind: String, mode: String, pool: MemoryPool): Unit = {
+    metricRegistry.register(MetricRegistry.name(kind, mode, "used"), new Gauge[Long] {
+      override def getValue: Long = pool.memoryUsed
+    })
+    metricRegistry.register(MetricRegistry.name(kind, mode, "free"), new Gauge[Long] {
+      override def getValue: Long = pool.memoryFree
+    })
+  }
+
+  for ((mode, name) <- Seq(MemoryMode.ON_HEAP -> "onHeap", MemoryMode.OFF_HEAP -> "offHeap")) {
+    val executionPool = memoryManager.executionPool(mode)
+    registerPool("execution", name, executionPool)
+    registerPool("storage", name, memoryManager.storagePool(mode))
+    metricRegistry.register(MetricRegistry.name("execution", name, "acquireBlockedMillis"),
+      executionPool.acquireBlockedMillis)
+    metricRegistry.register(MetricRegistry.name("execution", name, "totalBlockedMillis"),
+      executionPool.totalBlockedMillis)
+  }
+}
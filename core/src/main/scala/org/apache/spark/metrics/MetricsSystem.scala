@@ -18,9 +18,11 @@
 package org.apache.spark.metrics
 
 import java.util.Properties
-import java.util.concurrent.TimeUnit
+import java.util.concurrent.{CopyOnWriteArrayList, ScheduledExecutorService, TimeUnit}
 
+import scala.collection.JavaConverters._
 import scala.collection.mutable
+import scala.util.control.NonFatal
 
 import com.codahale.metrics.{Metric, MetricFilter, MetricRegistry}
 import org.eclipse.jetty.servlet.ServletContextHandler
@@ -29,8 +31,8 @@ import org.apache.spark.{SecurityManager, SparkConf}
 import org.apache.spark.internal.config._
 import org.apache.spark.internal.Logging
 import org.apache.spark.metrics.sink.{MetricsServlet, Sink}
-import org.apache.spark.metrics.source.{Source, StaticSources}
-import org.apache.spark.util.Utils
+import org.apache.spark.metrics.source.{SampledSource, SamplingEpoch, Source, StaticSources}
+import org.apache.spark.util.{ThreadUtils, Utils}
 
 /**
  * Spark Metrics System, created by a specific "instance", combined by source,
@@ -66,6 +68,13 @@ import org.apache.spark.util.Utils
  * [name] specify the name of sink or source, if it is custom defined.
  *
  * [options] represent the specific property of this source or sink.
+ *
+ * Sources that are [[SampledSource]]s are sampled once per sampling epoch, every
+ * `spark.metrics.sampling.period`, by default the shortest period of the sinks: every sink then
+ * reads the same snapshot, and rates cover the same epoch for all the metrics of a source. A
+ * sink polling less often than the epochs reports the rates of the last epoch only, not their
+ * average over its own period. The sampling thread is only started once a sampled source is
+ * registered.
  */
 private[spark] class MetricsSystem private (
     val instance: String,
@@ -79,6 +88,12 @@ private[spark] class MetricsSystem private (
   private val sources = new mutable.ArrayBuffer[Source]
   private val registry = new MetricRegistry()
 
+  private val sampledSources = new CopyOnWriteArrayList[SampledSource]()
+  private var sampler: Option[ScheduledExecutorService] = None
+  // Known once the sinks are registered
+  private var samplingPeriodMs: Option[Long] = None
+  private var epoch = 0L
+
   private var running: Boolean = false
 
   // Treat MetricsServlet as a special sink as it should be exposed to add handlers to web ui
@@ -100,11 +115,21 @@ private[spark] class MetricsSystem private (
     StaticSources.allSources.foreach(registerSource)
     registerSources()
     registerSinks()
+    synchronized {
+      samplingPeriodMs = Some(conf.get(METRICS_SAMPLING_PERIOD)
+        .getOrElse(MetricsSystem.samplingPeriod(sinks)))
+    }
+    maybeStartSampler()
     sinks.foreach(_.start)
   }
 
   def stop() {
     if (running) {
+      synchronized {
+        sampler.foreach(_.shutdownNow())
+        sampler = None
+        samplingPeriodMs = None
+      }
       sinks.foreach(_.stop)
     } else {
       logWarning("Stopping a MetricsSystem that is not running")
@@ -116,6 +141,35 @@ private[spark] class MetricsSystem private (
     sinks.foreach(_.report())
   }
 
+  /** Starts the sampling thread once the system is started and has a sampled source. */
+  private def maybeStartSampler(): Unit = synchronized {
+    samplingPeriodMs.filter(_ => sampler.isEmpty && !sampledSources.isEmpty).foreach { period =>
+      logInfo(s"Sampling metric sources every $period ms")
+      val executor = ThreadUtils.newDaemonSingleThreadScheduledExecutor("metrics-sampler")
+      executor.scheduleAtFixedRate(new Runnable {
+        override def run(): Unit = Utils.tryLogNonFatalError(sampleSources())
+      }, period, period, TimeUnit.MILLISECONDS)
+      sampler = Some(executor)
+    }
+  }
+
+  private[metrics] def isSampling: Boolean = synchronized(sampler.isDefined)
+
+  private[metrics] def samplingPeriod: Option[Long] = synchronized(samplingPeriodMs)
+
+  /** Starts a new sampling epoch, in which every sampled source takes its snapshot. */
+  private[metrics] def sampleSources(): Unit = synchronized {
+    epoch += 1
+    val current = SamplingEpoch(epoch, System.nanoTime())
+    sampledSources.asScala.foreach { source =>
+      try {
+        source.sample(current)
+      } catch {
+        case NonFatal(e) => logWarning(s"Failed to sample source ${source.sourceName}", e)
+      }
+    }
+  }
+
   /**
    * Build a name that uniquely identifies each metric source.
    * The name is structured as follows: <app ID>.<executor ID (or "driver")>.<source name>.
@@ -155,6 +209,12 @@ private[spark] class MetricsSystem private (
 
   def registerSource(source: Source) {
     sources += source
+    source match {
+      case sampled: SampledSource =>
+        sampledSources.add(sampled)
+        maybeStartSampler()
+      case _ =>
+    }
     try {
       val regName = buildRegistryName(source)
       registry.register(regName, source.metricRegistry)
@@ -165,6 +225,10 @@ private[spark] class MetricsSystem private (
 
   def removeSource(source: Source) {
     sources -= source
+    source match {
+      case sampled: SampledSource => sampledSources.remove(sampled)
+      case _ =>
+    }
     val regName = buildRegistryName(source)
     registry.removeMatching(new MetricFilter {
       def matches(name: String, metric: Metric): Boolean = name.startsWith(regName)
@@ -220,6 +284,15 @@ private[spark] object MetricsSystem {
   private[this] val MINIMAL_POLL_UNIT = TimeUnit.SECONDS
   private[this] val MINIMAL_POLL_PERIOD = 1
 
+  // Period of the sampling epochs when no sink polls the metrics
+  private val DEFAULT_SAMPLING_PERIOD_MS = 1000L
+
+  /** The shortest polling period of the sinks, so that no poll sees the same epoch twice. */
+  def samplingPeriod(sinks: Seq[Sink]): Long = {
+    val periods = sinks.flatMap(_.pollPeriodMillis)
+    if (periods.isEmpty) DEFAULT_SAMPLING_PERIOD_MS else periods.min
+  }
+
   def checkMinimalPollingPeriod(pollUnit: TimeUnit, pollPeriod: Int) {
     val period = MINIMAL_POLL_UNIT.convert(pollPeriod, pollUnit)
     if (period < MINIMAL_POLL_PERIOD) {
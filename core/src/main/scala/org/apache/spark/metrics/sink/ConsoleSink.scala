@@ -45,6 +45,8 @@ private[spark] class ConsoleSink(val property: Properties, val registry: MetricR
 
   MetricsSystem.checkMinimalPollingPeriod(pollUnit, pollPeriod)
 
+  override def pollPeriodMillis: Option[Long] = Some(pollUnit.toMillis(pollPeriod))
+
   val reporter: ConsoleReporter = ConsoleReporter.forRegistry(registry)
       .convertDurationsTo(TimeUnit.MILLISECONDS)
       .convertRatesTo(TimeUnit.SECONDS)
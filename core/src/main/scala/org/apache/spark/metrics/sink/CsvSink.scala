@@ -48,6 +48,8 @@ private[spark] class CsvSink(val property: Properties, val registry: MetricRegis
 
   MetricsSystem.checkMinimalPollingPeriod(pollUnit, pollPeriod)
 
+  override def pollPeriodMillis: Option[Long] = Some(pollUnit.toMillis(pollPeriod))
+
   val pollDir = Option(property.getProperty(CSV_KEY_DIR)) match {
     case Some(s) => s
     case None => CSV_DEFAULT_DIR
@@ -24,16 +24,31 @@ import com.codahale.metrics.MetricRegistry
 
 import org.apache.spark.{HDFSReporter, SecurityManager}
 import org.apache.spark.metrics.MetricsSystem
+import org.apache.spark.metrics.hdfs.{ExecutorMetricsFormat, ExecutorMetricsPipeline}
 
 private[spark] class HDFSSink(val property: Properties, val registry: MetricRegistry,
                               securityMgr: SecurityManager) extends Sink {
   val HDFS_KEY_PERIOD = "period"
   val HDFS_KEY_UNIT = "unit"
   val HDFS_KEY_DIR = "dir"
+  val HDFS_KEY_FORMAT = "format"
+  val HDFS_KEY_BLOCK_SIZE = "blockSize"
+  val HDFS_KEY_DURABILITY = "durability"
+  val HDFS_KEY_QUEUE_SIZE = "queueSize"
+  val HDFS_KEY_BATCH_TICKS = "batchTicks"
+  val HDFS_KEY_BATCH_MILLIS = "batchMillis"
+  val HDFS_KEY_INDEX_INTERVAL = "indexInterval"
 
   val HDFS_DEFAULT_PERIOD = 10
   val HDFS_DEFAULT_UNIT = "SECONDS"
   val HDFS_DEFAULT_DIR = "hdfs://localhost:9000/custom-metrics/"
+  val HDFS_DEFAULT_FORMAT = "json"
+  val HDFS_DEFAULT_BLOCK_SIZE = 60
+  val HDFS_DEFAULT_DURABILITY = "hsync"
+  val HDFS_DEFAULT_QUEUE_SIZE = 1024
+  val HDFS_DEFAULT_BATCH_TICKS = 1
+  val HDFS_DEFAULT_BATCH_MILLIS = 0L
+  val HDFS_DEFAULT_INDEX_INTERVAL = 60L
 
   val pollPeriod = Option(property.getProperty(HDFS_KEY_PERIOD)) match {
     case Some(s) => s.toInt
@@ -47,14 +62,58 @@ private[spark] class HDFSSink(val property: Properties, val registry: MetricRegi
 
   MetricsSystem.checkMinimalPollingPeriod(pollUnit, pollPeriod)
 
+  override def pollPeriodMillis: Option[Long] = Some(pollUnit.toMillis(pollPeriod))
+
   val pollDir = Option(property.getProperty(HDFS_KEY_DIR)) match {
     case Some(s) => s
     case None => HDFS_DEFAULT_DIR
   }
 
+  val format: ExecutorMetricsFormat = ExecutorMetricsFormat.fromConfigName(
+    Option(property.getProperty(HDFS_KEY_FORMAT)).getOrElse(HDFS_DEFAULT_FORMAT))
+
+  // Ticks per block for the columnar format, the file is synced once per block
+  val blockSize = Option(property.getProperty(HDFS_KEY_BLOCK_SIZE)) match {
+    case Some(s) => s.toInt
+    case None => HDFS_DEFAULT_BLOCK_SIZE
+  }
+
+  // Writes happen on a background flusher: ticks are queued and written in batches of
+  // batchTicks ticks, or after batchMillis, and each batch is made durable once
+  val durability = ExecutorMetricsPipeline.Durability.fromString(
+    Option(property.getProperty(HDFS_KEY_DURABILITY)).getOrElse(HDFS_DEFAULT_DURABILITY))
+
+  val queueSize = Option(property.getProperty(HDFS_KEY_QUEUE_SIZE)) match {
+    case Some(s) => s.toInt
+    case None => HDFS_DEFAULT_QUEUE_SIZE
+  }
+
+  val batchTicks = Option(property.getProperty(HDFS_KEY_BATCH_TICKS)) match {
+    case Some(s) => s.toInt
+    case None => HDFS_DEFAULT_BATCH_TICKS
+  }
+
+  val batchMillis = Option(property.getProperty(HDFS_KEY_BATCH_MILLIS)) match {
+    case Some(s) => s.toLong
+    case None => HDFS_DEFAULT_BATCH_MILLIS
+  }
+
+  // Seconds per time bucket of the index written next to every metrics file, which lets the
+  // history server read only the part of a file covering a time window
+  val indexInterval = Option(property.getProperty(HDFS_KEY_INDEX_INTERVAL)) match {
+    case Some(s) => s.toLong
+    case None => HDFS_DEFAULT_INDEX_INTERVAL
+  }
+
   val reporter: HDFSReporter = HDFSReporter.forRegistry(registry)
     .convertDurationsTo(TimeUnit.MILLISECONDS)
     .convertRatesTo(TimeUnit.SECONDS)
+    .withFormat(format)
+    .pointsPerBlock(blockSize)
+    .withDurability(durability)
+    .queueSize(queueSize)
+    .batch(batchTicks, batchMillis)
+    .indexInterval(indexInterval)
     .build(pollDir)
 
   override def start() {
@@ -31,11 +31,19 @@ private[spark] class MQTTSink(val property: Properties, val registry: MetricRegi
   val MQTT_KEY_UNIT = "unit"
   val MQTT_KEY_HOST = "host"
   val MQTT_KEY_PORT = "port"
+  val MQTT_KEY_QOS = "qos"
+  val MQTT_KEY_LAYOUT = "layout"
+  val MQTT_KEY_PAYLOAD = "payload"
+  val MQTT_KEY_BATCH_TICKS = "batchTicks"
 
   val MQTT_DEFAULT_PERIOD = 10
   val MQTT_DEFAULT_UNIT = "SECONDS"
   val MQTT_DEFAULT_HOST = "localhost"
   val MQTT_DEFAULT_PORT = 1883
+  val MQTT_DEFAULT_QOS = 0
+  val MQTT_DEFAULT_LAYOUT = "metric"
+  val MQTT_DEFAULT_PAYLOAD = "json"
+  val MQTT_DEFAULT_BATCH_TICKS = 1
 
   val pollPeriod = Option(property.getProperty(MQTT_KEY_PERIOD)) match {
     case Some(s) => s.toInt
@@ -49,6 +57,8 @@ private[spark] class MQTTSink(val property: Properties, val registry: MetricRegi
 
   MetricsSystem.checkMinimalPollingPeriod(pollUnit, pollPeriod)
 
+  override def pollPeriodMillis: Option[Long] = Some(pollUnit.toMillis(pollPeriod))
+
   val masterHost = Option(property.getProperty(MQTT_KEY_HOST)) match {
     case Some(s) => s
     case None => MQTT_DEFAULT_HOST
@@ -59,9 +69,31 @@ private[spark] class MQTTSink(val property: Properties, val registry: MetricRegi
     case None => MQTT_DEFAULT_PORT
   }
 
+  val qos = Option(property.getProperty(MQTT_KEY_QOS)) match {
+    case Some(s) => s.toInt
+    case None => MQTT_DEFAULT_QOS
+  }
+
+  // One topic per metric (metric) or one message per tick on metrics-<appId> (executor)
+  val layout = MQTTReporter.Layout.fromString(
+    Option(property.getProperty(MQTT_KEY_LAYOUT)).getOrElse(MQTT_DEFAULT_LAYOUT))
+
+  // json or binary, and ticks per message, of the per metric messages
+  val payload = MqttMetricMessages.Payload.fromString(
+    Option(property.getProperty(MQTT_KEY_PAYLOAD)).getOrElse(MQTT_DEFAULT_PAYLOAD))
+
+  val batchTicks = Option(property.getProperty(MQTT_KEY_BATCH_TICKS)) match {
+    case Some(s) => s.toInt
+    case None => MQTT_DEFAULT_BATCH_TICKS
+  }
+
   val reporter: MQTTReporter = MQTTReporter.forRegistry(registry)
     .convertDurationsTo(TimeUnit.MILLISECONDS)
     .convertRatesTo(TimeUnit.SECONDS)
+    .qos(qos)
+    .withLayout(layout)
+    .withPayload(payload)
+    .batchTicks(batchTicks)
     .build(masterHost, masterPort)
 
   override def start() {
@@ -21,4 +21,7 @@ private[spark] trait Sink {
   def start(): Unit
   def stop(): Unit
   def report(): Unit
+
+  /** Period at which the sink reads the metrics, None for the sinks that are read on demand. */
+  def pollPeriodMillis: Option[Long] = None
 }
@@ -0,0 +1,175 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.spark.metrics.source
+
+import java.io.{File, FileInputStream, IOException}
+import java.nio.charset.StandardCharsets
+import java.util.Arrays
+
+/**
+ * Reads a small text file such as `/proc/stat` into a buffer that is reused from one read to
+ * the next, and parses it in place: tokens are compared with and numbers decoded from the raw
+ * bytes, so that sampling allocates nothing once the buffer has grown to the size of the file.
+ *
+ * Tokens are separated by spaces, tabs and colons, and never span lines.
+ */
+private[source] class ProcFileReader(initialCapacity: Int = 4096) {
+
+  private var buffer = new Array[Byte](initialCapacity)
+  private var length = 0
+  private var pos = 0
+
+  /** Reads the whole of `file`, and rewinds to its start. False if it could not be read. */
+  def load(file: File): Boolean = {
+    length = 0
+    pos = 0
+    var in: FileInputStream = null
+    try {
+      in = new FileInputStream(file)
+      var read = 0
+      while (read >= 0) {
+        if (length == buffer.length) {
+          buffer = Arrays.copyOf(buffer, buffer.length * 2)
+        }
+        read = in.read(buffer, length, buffer.length - length)
+        if (read > 0) {
+          length += read
+        }
+      }
+      true
+    } catch {
+      case _: IOException =>
+        length = 0
+        false
+    } finally {
+      if (in != null) {
+        try {
+          in.close()
+        } catch {
+          case _: IOException =>
+        }
+      }
+    }
+  }
+
+  /** Whether there is anything left to parse. */
+  def hasMore: Boolean = pos < length
+
+  /** Moves to the start of the next line. */
+  def nextLine(): Unit = {
+    while (pos < length && buffer(pos) != '\n') {
+      pos += 1
+    }
+    if (pos < length) {
+      pos += 1
+    }
+  }
+
+  /** Moves past the last occurrence of `b` in the file, e.g. the `)` ending a process name. */
+  def skipPastLast(b: Byte): Unit = {
+    var i = length - 1
+    while (i >= pos && buffer(i) != b) {
+      i -= 1
+    }
+    if (i >= pos) {
+      pos = i + 1
+    }
+  }
+
+  /** Moves past the next `count` tokens of the current line. */
+  def skipTokens(count: Int): Unit = {
+    var i = 0
+    while (i < count) {
+      skipSeparators()
+      while (pos < length && !isSeparator(buffer(pos)) && buffer(pos) != '\n') {
+        pos += 1
+      }
+      i += 1
+    }
+  }
+
+  /**
+   * Reads the next token of the current line as a non negative decimal number, 0 if it is not
+   * one.
+   */
+  def readLong(): Long = {
+    skipSeparators()
+    var value = 0L
+    while (pos < length && buffer(pos) >= '0' && buffer(pos) <= '9') {
+      value = value * 10 + (buffer(pos) - '0')
+      pos += 1
+    }
+    while (pos < length && !isSeparator(buffer(pos)) && buffer(pos) != '\n') {
+      pos += 1
+    }
+    value
+  }
+
+  /** Whether the next token of the current line starts with `prefix`. Consumes nothing. */
+  def nextTokenStartsWith(prefix: Array[Byte]): Boolean = {
+    skipSeparators()
+    regionMatches(prefix)
+  }
+
+  /**
+   * Reads the next token of the current line and returns its index in `names`, -1 if it is
+   * none of them.
+   */
+  def readToken(names: Array[Array[Byte]]): Int = {
+    skipSeparators()
+    val start = pos
+    while (pos < length && !isSeparator(buffer(pos)) && buffer(pos) != '\n') {
+      pos += 1
+    }
+    val tokenLength = pos - start
+    var i = 0
+    while (i < names.length) {
+      val name = names(i)
+      if (name.length == tokenLength && regionMatches(name, start)) {
+        return i
+      }
+      i += 1
+    }
+    -1
+  }
+
+  private def regionMatches(bytes: Array[Byte], from: Int = pos): Boolean = {
+    if (from + bytes.length > length) {
+      false
+    } else {
+      var i = 0
+      while (i < bytes.length && buffer(from + i) == bytes(i)) {
+        i += 1
+      }
+      i == bytes.length
+    }
+  }
+
+  private def skipSeparators(): Unit = {
+    while (pos < length && isSeparator(buffer(pos))) {
+      pos += 1
+    }
+  }
+
+  private def isSeparator(b: Byte): Boolean = b == ' ' || b == '\t' || b == ':'
+}
+
+private[source] object ProcFileReader {
+
+  def bytes(s: String): Array[Byte] = s.getBytes(StandardCharsets.US_ASCII)
+}
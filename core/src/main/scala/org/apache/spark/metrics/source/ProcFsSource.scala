@@ -0,0 +1,330 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.spark.metrics.source
+
+import java.io.File
+
+import scala.io.{Codec, Source => IOSource}
+import scala.util.Try
+
+import com.codahale.metrics.{Gauge, MetricRegistry}
+import org.slf4j.LoggerFactory
+
+/**
+ * A replacement of [[SigarSource]] for Linux that needs no native library: it reads
+ * `/proc/stat`, `/proc/self/stat`, `/proc/meminfo`, `/proc/net/dev`, `/proc/diskstats` and the
+ * `cpu.stat` of the executor's cgroup, and publishes the same metrics under the same `sigar`
+ * source name, so that it can be swapped in without touching dashboards.
+ *
+ * All the files are read once per sampling epoch of the metrics system, and every gauge reads
+ * the resulting snapshot. Besides the metrics of [[SigarSource]] this publishes per interface
+ * network and per block device disk rates, as `network.<interface>.*` and `disk.<device>.*`,
+ * and the CPU throttling of the cgroup as `cpu.cgroup.*`. Interfaces and devices are those
+ * present when the source is created.
+ *
+ * CPU times are in milliseconds, like those of Sigar, assuming the usual 100 ticks per second
+ * of `/proc`.
+ */
+private[spark] class ProcFsSource(root: File) extends SampledCounterSource {
+  import ProcFsSource._
+
+  def this() = this(new File("/"))
+
+  override def sourceName: String = "sigar"
+
+  override val metricRegistry: MetricRegistry = new MetricRegistry
+
+  private val LOGGER = LoggerFactory.getLogger(classOf[ProcFsSource])
+
+  private val procStat = new File(root, "proc/stat")
+  private val procSelfStat = new File(root, "proc/self/stat")
+  private val procMeminfo = new File(root, "proc/meminfo")
+  private val procNetDev = new File(root, "proc/net/dev")
+  private val procDiskstats = new File(root, "proc/diskstats")
+
+  private val interfaces: Array[String] = listInterfaces()
+  private val disks: Array[String] = listDisks()
+  private val cgroupCpuStat: Option[File] = findCgroupCpuStat()
+
+  private val interfaceNames = interfaces.map(ProcFileReader.bytes)
+  private val diskNames = disks.map(ProcFileReader.bytes)
+
+  private val reader = new ProcFileReader()
+
+  // The fixed counters, then received and sent bytes per interface, then read and written
+  // bytes per disk
+  override protected val counterCount: Int =
+    FIXED_COUNTERS + 2 * interfaces.length + 2 * disks.length
+
+  override protected val levelCount: Int = LEVELS
+
+  registerRate("network.sent_per_second", NET_TX)
+  registerRate("network.received_per_second", NET_RX)
+  registerRate("disk.written_per_second", DISK_WRITE)
+  registerRate("disk.read_per_second", DISK_READ)
+  metricRegistry.register("cpu.host.count", new Gauge[Double] {
+    override def getValue: Double = snapshot.level(CPU_COUNT).toDouble
+  })
+  registerRate("cpu.host.sys", HOST_SYS)
+  registerRate("cpu.host.user", HOST_USER)
+  registerRate("cpu.host.wait", HOST_WAIT)
+  registerRate("cpu.host.total", HOST_TOTAL)
+  registerRate("cpu.process.sys", PROCESS_SYS)
+  registerRate("cpu.process.user", PROCESS_USER)
+  registerRate("cpu.process.total", PROCESS_TOTAL)
+  registerLevel("memory.host.total", MEMORY_TOTAL)
+  registerLevel("memory.host.used", MEMORY_USED)
+  registerLevel("memory.host.free", MEMORY_FREE)
+  registerLevel("memory.process.total", PROCESS_SIZE)
+
+  interfaces.indices.foreach { i =>
+    val name = metricName(interfaces(i))
+    registerRate(s"network.$name.received_per_second", interfaceCounter(i))
+    registerRate(s"network.$name.sent_per_second", interfaceCounter(i) + 1)
+  }
+
+  disks.indices.foreach { i =>
+    val name = metricName(disks(i))
+    registerRate(s"disk.$name.read_per_second", diskCounter(i))
+    registerRate(s"disk.$name.written_per_second", diskCounter(i) + 1)
+  }
+
+  if (cgroupCpuStat.isDefined) {
+    registerRate("cpu.cgroup.throttled_periods_per_second", CGROUP_THROTTLED_PERIODS)
+    registerRate("cpu.cgroup.throttled_per_second", CGROUP_THROTTLED_TIME)
+  }
+
+  sample(SamplingEpoch.initial())
+
+  private def interfaceCounter(interface: Int): Int = FIXED_COUNTERS + 2 * interface
+
+  private def diskCounter(disk: Int): Int = FIXED_COUNTERS + 2 * interfaces.length + 2 * disk
+
+  override protected def read(counters: Array[Long], levels: Array[Long]): Unit = {
+    sampleHostCpu(counters, levels)
+    sampleProcess(counters, levels)
+    sampleMemory(levels)
+    sampleNetwork(counters)
+    sampleDisks(counters)
+    cgroupCpuStat.foreach(sampleCgroup(_, counters))
+  }
+
+  // cpu  user nice system idle iowait irq softirq steal ..., then one such line per cpu
+  private def sampleHostCpu(counters: Array[Long], levels: Array[Long]): Unit = {
+    if (reader.load(procStat)) {
+      reader.skipTokens(1)
+      val user = reader.readLong()
+      val nice = reader.readLong()
+      val system = reader.readLong()
+      val idle = reader.readLong()
+      val iowait = reader.readLong()
+      val irq = reader.readLong()
+      val softirq = reader.readLong()
+      val steal = reader.readLong()
+      counters(HOST_USER) = user * MILLIS_PER_TICK
+      counters(HOST_SYS) = system * MILLIS_PER_TICK
+      counters(HOST_WAIT) = iowait * MILLIS_PER_TICK
+      counters(HOST_TOTAL) =
+        (user + nice + system + idle + iowait + irq + softirq + steal) * MILLIS_PER_TICK
+      reader.nextLine()
+      while (reader.hasMore && reader.nextTokenStartsWith(CPU)) {
+        levels(CPU_COUNT) += 1
+        reader.nextLine()
+      }
+    }
+  }
+
+  // pid (comm) state ppid ... utime(14) stime(15) ... vsize(23) ...
+  private def sampleProcess(counters: Array[Long], levels: Array[Long]): Unit = {
+    if (reader.load(procSelfStat)) {
+      reader.skipPastLast(')'.toByte)
+      reader.skipTokens(11)
+      val user = reader.readLong()
+      val system = reader.readLong()
+      reader.skipTokens(7)
+      levels(PROCESS_SIZE) = reader.readLong()
+      counters(PROCESS_USER) = user * MILLIS_PER_TICK
+      counters(PROCESS_SYS) = system * MILLIS_PER_TICK
+      counters(PROCESS_TOTAL) = (user + system) * MILLIS_PER_TICK
+    }
+  }
+
+  // MemTotal:  16318504 kB
+  private def sampleMemory(levels: Array[Long]): Unit = {
+    if (reader.load(procMeminfo)) {
+      var found = 0
+      while (reader.hasMore && found < MEMINFO_FIELDS.length) {
+        reader.readToken(MEMINFO_FIELDS) match {
+          case 0 =>
+            levels(MEMORY_TOTAL) = reader.readLong() * 1024
+            found += 1
+          case 1 =>
+            levels(MEMORY_FREE) = reader.readLong() * 1024
+            found += 1
+          case _ =>
+        }
+        reader.nextLine()
+      }
+      levels(MEMORY_USED) = levels(MEMORY_TOTAL) - levels(MEMORY_FREE)
+    }
+  }
+
+  // Two header lines, then  eth0: rxBytes rxPackets ... (8 fields) txBytes ...
+  private def sampleNetwork(counters: Array[Long]): Unit = {
+    if (reader.load(procNetDev)) {
+      reader.nextLine()
+      reader.nextLine()
+      while (reader.hasMore) {
+        val interface = reader.readToken(interfaceNames)
+        val received = reader.readLong()
+        reader.skipTokens(7)
+        val sent = reader.readLong()
+        counters(NET_RX) += received
+        counters(NET_TX) += sent
+        if (interface >= 0) {
+          counters(interfaceCounter(interface)) = received
+          counters(interfaceCounter(interface) + 1) = sent
+        }
+        reader.nextLine()
+      }
+    }
+  }
+
+  // major minor device reads merged sectorsRead msReading writes merged sectorsWritten ...
+  // Partitions are skipped, so that their bytes are not counted twice.
+  private def sampleDisks(counters: Array[Long]): Unit = {
+    if (diskNames.nonEmpty && reader.load(procDiskstats)) {
+      while (reader.hasMore) {
+        reader.skipTokens(2)
+        val disk = reader.readToken(diskNames)
+        if (disk >= 0) {
+          reader.skipTokens(2)
+          val read = reader.readLong() * SECTOR_SIZE
+          reader.skipTokens(3)
+          val written = reader.readLong() * SECTOR_SIZE
+          counters(diskCounter(disk)) = read
+          counters(diskCounter(disk) + 1) = written
+          counters(DISK_READ) += read
+          counters(DISK_WRITE) += written
+        }
+        reader.nextLine()
+      }
+    }
+  }
+
+  // nr_periods, nr_throttled, then throttled_time in nanoseconds (cgroup v1) or
+  // throttled_usec in microseconds (cgroup v2)
+  private def sampleCgroup(cpuStat: File, counters: Array[Long]): Unit = {
+    if (reader.load(cpuStat)) {
+      while (reader.hasMore) {
+        reader.readToken(CPU_STAT_FIELDS) match {
+          case 0 => counters(CGROUP_THROTTLED_PERIODS) = reader.readLong()
+          case 1 => counters(CGROUP_THROTTLED_TIME) = reader.readLong() / 1000000
+          case 2 => counters(CGROUP_THROTTLED_TIME) = reader.readLong() / 1000
+          case _ =>
+        }
+        reader.nextLine()
+      }
+    }
+  }
+
+  private def listInterfaces(): Array[String] = {
+    readLines(procNetDev).drop(2).map(_.split(":")(0).trim).filter(_.nonEmpty).toArray
+  }
+
+  // The block devices of /sys/block, which lists whole disks but not their partitions
+  private def listDisks(): Array[String] = {
+    val sysBlock = new File(root, "sys/block")
+    Option(sysBlock.list()).map(_.sorted.filterNot { device =>
+      VIRTUAL_DEVICE_PREFIXES.exists(device.startsWith)
+    }).getOrElse {
+      LOGGER.warn(s"Couldn't list the block devices of $sysBlock, disk metrics will be 0")
+      Array.empty[String]
+    }
+  }
+
+  // /proc/self/cgroup has a hierarchy-id:controllers:path line per hierarchy, with an empty
+  // list of controllers for the unified hierarchy of cgroup v2. Inside a container the paths
+  // are those of the host, so the root of the mounted hierarchy is tried as well.
+  private def findCgroupCpuStat(): Option[File] = {
+    val cgroupRoot = new File(root, "sys/fs/cgroup")
+    val candidates = readLines(new File(root, "proc/self/cgroup")).flatMap { line =>
+      line.split(":", 3) match {
+        case Array(_, "", path) =>
+          Seq(new File(new File(cgroupRoot, path), "cpu.stat"), new File(cgroupRoot, "cpu.stat"))
+        case Array(_, controllers, path) if controllers.split(",").contains("cpu") =>
+          Seq(controllers, "cpu").distinct.flatMap { dir =>
+            Seq(new File(new File(new File(cgroupRoot, dir), path), "cpu.stat"),
+              new File(new File(cgroupRoot, dir), "cpu.stat"))
+          }
+        case _ => Nil
+      }
+    }
+    candidates.find(_.isFile)
+  }
+
+  private def readLines(file: File): Seq[String] = {
+    Try {
+      val source = IOSource.fromFile(file)(Codec.UTF8)
+      try source.getLines().toList finally source.close()
+    }.getOrElse {
+      LOGGER.warn(s"Couldn't read $file")
+      Nil
+    }
+  }
+
+  // Metric names are split on dots, as in eth0.100
+  private def metricName(device: String): String = device.replace('.', '_')
+}
+
+private[spark] object ProcFsSource {
+
+  // Indices of the fixed counters
+  private val HOST_USER = 0
+  private val HOST_SYS = 1
+  private val HOST_WAIT = 2
+  private val HOST_TOTAL = 3
+  private val PROCESS_USER = 4
+  private val PROCESS_SYS = 5
+  private val PROCESS_TOTAL = 6
+  private val NET_RX = 7
+  private val NET_TX = 8
+  private val DISK_READ = 9
+  private val DISK_WRITE = 10
+  private val CGROUP_THROTTLED_PERIODS = 11
+  private val CGROUP_THROTTLED_TIME = 12
+  private val FIXED_COUNTERS = 13
+
+  // Indices of the levels
+  private val CPU_COUNT = 0
+  private val MEMORY_TOTAL = 1
+  private val MEMORY_USED = 2
+  private val MEMORY_FREE = 3
+  private val PROCESS_SIZE = 4
+  private val LEVELS = 5
+
+  private val MILLIS_PER_TICK = 10L
+  private val SECTOR_SIZE = 512L
+
+  private val VIRTUAL_DEVICE_PREFIXES = Seq("loop", "ram", "zram")
+
+  private val CPU = ProcFileReader.bytes("cpu")
+  private val MEMINFO_FIELDS = Array("MemTotal", "MemFree").map(ProcFileReader.bytes)
+  private val CPU_STAT_FIELDS =
+    Array("nr_throttled", "throttled_time", "throttled_usec").map(ProcFileReader.bytes)
+}
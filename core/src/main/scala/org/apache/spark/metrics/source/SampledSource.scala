@@ -0,0 +1,138 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.spark.metrics.source
+
+import com.codahale.metrics.Gauge
+
+/**
+ * A sampling epoch of a [[org.apache.spark.metrics.MetricsSystem]], which samples all its
+ * [[SampledSource]]s once per epoch, whatever the periods of its sinks.
+ *
+ * @param id sequence number of the epoch, starting at 1; 0 for a sample a source takes of itself
+ * @param nanoTime `System.nanoTime` at the start of the epoch
+ */
+private[spark] case class SamplingEpoch(id: Long, nanoTime: Long)
+
+private[spark] object SamplingEpoch {
+
+  /** The epoch of the sample a source takes when it is created. */
+  def initial(): SamplingEpoch = SamplingEpoch(0L, System.nanoTime())
+}
+
+/**
+ * A source whose gauges read a snapshot taken once per sampling epoch rather than the host
+ * itself. The rates of such a source are computed once per epoch, so that they all cover the
+ * same window, and reading its gauges has no side effect: sinks polling at different periods
+ * see the same values and don't disturb each other.
+ */
+private[spark] trait SampledSource extends Source {
+
+  /** Takes the snapshot of `epoch`. Called by a single thread at a time. */
+  def sample(epoch: SamplingEpoch): Unit
+}
+
+/**
+ * The levels, and the per second rates of the counters, of a source as of one epoch. Immutable
+ * once published.
+ */
+private[spark] final class MetricsSnapshot(
+    val epoch: SamplingEpoch,
+    rates: Array[Float],
+    levels: Array[Long]) {
+
+  def rate(counter: Int): Float = if (counter < rates.length) rates(counter) else 0f
+
+  def level(index: Int): Long = if (index < levels.length) levels(index) else 0L
+}
+
+private[spark] object MetricsSnapshot {
+
+  val EMPTY = new MetricsSnapshot(SamplingEpoch(-1L, 0L), Array.empty, Array.empty)
+}
+
+/**
+ * A [[SampledSource]] made of cumulative counters, published as per second rates between two
+ * consecutive epochs, and of levels, published as they are. Subclasses read both in one go in
+ * `read` and register gauges with `registerRate` and `registerLevel`; they take an initial
+ * sample at the end of their constructor, once the sizes of their arrays are known.
+ */
+private[spark] abstract class SampledCounterSource extends SampledSource {
+
+  // Counters of the latest and of the previous sample, swapped at every sample
+  private var counters: Array[Long] = _
+  private var previous: Array[Long] = _
+  private var previousNanoTime = 0L
+  private var hasPrevious = false
+
+  @volatile private var latest: MetricsSnapshot = MetricsSnapshot.EMPTY
+
+  /** Number of counters filled in by `read`. */
+  protected def counterCount: Int
+
+  /** Number of levels filled in by `read`. */
+  protected def levelCount: Int
+
+  /**
+   * Reads the current value of every counter and level. `counters` is zeroed, `levels` is a
+   * fresh array that ends up in the published snapshot.
+   */
+  protected def read(counters: Array[Long], levels: Array[Long]): Unit
+
+  /** The latest published snapshot. */
+  def snapshot: MetricsSnapshot = latest
+
+  override def sample(epoch: SamplingEpoch): Unit = synchronized {
+    if (counters == null) {
+      counters = new Array[Long](counterCount)
+      previous = new Array[Long](counterCount)
+    } else {
+      val swap = previous
+      previous = counters
+      counters = swap
+      java.util.Arrays.fill(counters, 0L)
+    }
+    val levels = new Array[Long](levelCount)
+    read(counters, levels)
+
+    val rates = new Array[Float](counters.length)
+    val elapsed = epoch.nanoTime - previousNanoTime
+    if (hasPrevious && elapsed > 0) {
+      var i = 0
+      while (i < counters.length) {
+        // Counters going backwards were reset, e.g. a network interface that went down
+        rates(i) = (math.max(0L, counters(i) - previous(i)) * 1e9 / elapsed).toFloat
+        i += 1
+      }
+    }
+    previousNanoTime = epoch.nanoTime
+    hasPrevious = true
+    latest = new MetricsSnapshot(epoch, rates, levels)
+  }
+
+  protected def registerRate(name: String, counter: Int): Gauge[Float] = {
+    metricRegistry.register(name, new Gauge[Float] {
+      override def getValue: Float = latest.rate(counter)
+    })
+  }
+
+  protected def registerLevel(name: String, index: Int): Gauge[Long] = {
+    metricRegistry.register(name, new Gauge[Long] {
+      override def getValue: Long = latest.level(index)
+    })
+  }
+}
@@ -17,13 +17,18 @@
 
 package org.apache.spark.metrics.source
 
-import java.util.Date
-
 import com.codahale.metrics.{Gauge, MetricRegistry}
 import org.hyperic.sigar.Sigar
 import org.slf4j.LoggerFactory
 
-private[spark] class SigarSource() extends Source {
+/**
+ * Host and process metrics read through the Hyperic Sigar native library, once per sampling
+ * epoch of the metrics system. On Linux, [[ProcFsSource]] publishes the same metrics without
+ * it.
+ */
+private[spark] class SigarSource() extends SampledCounterSource {
+  import SigarSource._
+
   override def sourceName: String = "sigar"
 
   override val metricRegistry: MetricRegistry = new MetricRegistry
@@ -33,85 +38,59 @@ private[spark] class SigarSource() extends Source {
 
   def pid : Long = sigar.getPid
 
-  register(metricRegistry, new StatefulMetric {
-    override val name = "network.sent_per_second"
-    override def momentaryValue : Float = networkMetrics().bytesTx
-  })
-
-  register(metricRegistry, new StatefulMetric {
-    override val name = "network.received_per_second"
-    override def momentaryValue : Float = networkMetrics().bytesRx
-  })
-
-  register(metricRegistry, new StatefulMetric {
-    override val name = "disk.written_per_second"
-    override def momentaryValue : Float = diskMetrics.bytesWritten
-  })
-
-  register(metricRegistry, new StatefulMetric {
-    override val name = "disk.read_per_second"
-    override def momentaryValue : Float = diskMetrics.bytesRead
-  })
-
-  register(metricRegistry, new Metric[Double] {
-    override def name : String = "cpu.host.count"
-    override def value : Double = sigar.getCpuInfoList.length
-  })
-
-  register(metricRegistry, new StatefulMetric {
-    override val name = "cpu.host.sys"
-    override def momentaryValue : Float = sigar.getCpu.getSys
-  })
-
-  register(metricRegistry, new StatefulMetric {
-    override val name = "cpu.host.user"
-    override def momentaryValue : Float = sigar.getCpu.getUser
-  })
-
-  register(metricRegistry, new StatefulMetric {
-    override val name = "cpu.host.wait"
-    override def momentaryValue : Float = sigar.getCpu.getWait
-  })
-
-  register(metricRegistry, new StatefulMetric {
-    override val name = "cpu.host.total"
-    override def momentaryValue : Float = sigar.getCpu.getTotal
-  })
-
-  register(metricRegistry, new StatefulMetric {
-    override val name = "cpu.process.sys"
-    override def momentaryValue : Float = sigar.getProcCpu(pid).getSys
-  })
-
-  register(metricRegistry, new StatefulMetric {
-    override val name = "cpu.process.user"
-    override def momentaryValue : Float = sigar.getProcCpu(pid).getUser
-  })
-
-  register(metricRegistry, new StatefulMetric {
-    override val name = "cpu.process.total"
-    override def momentaryValue : Float = sigar.getProcCpu(pid).getTotal
-  })
-
-  register(metricRegistry, new Metric[Long] {
-    override def name : String = "memory.host.total"
-    override def value : Long = sigar.getMem.getTotal
-  })
-
-  register(metricRegistry, new Metric[Long] {
-    override def name : String = "memory.host.used"
-    override def value : Long = sigar.getMem.getUsed
-  })
-
-  register(metricRegistry, new Metric[Long] {
-    override def name : String = "memory.host.free"
-    override def value : Long = sigar.getMem.getFree
-  })
-
-  register(metricRegistry, new Metric[Long] {
-    override def name : String = "memory.process.total"
-    override def value : Long = sigar.getProcMem(pid).getSize
-  })
+  override protected val counterCount: Int = COUNTERS
+
+  override protected val levelCount: Int = LEVELS
+
+  registerRate("network.sent_per_second", NET_TX)
+  registerRate("network.received_per_second", NET_RX)
+  registerRate("disk.written_per_second", DISK_WRITE)
+  registerRate("disk.read_per_second", DISK_READ)
+  metricRegistry.register("cpu.host.count", new Gauge[Double] {
+    override def getValue: Double = snapshot.level(CPU_COUNT).toDouble
+  })
+  registerRate("cpu.host.sys", HOST_SYS)
+  registerRate("cpu.host.user", HOST_USER)
+  registerRate("cpu.host.wait", HOST_WAIT)
+  registerRate("cpu.host.total", HOST_TOTAL)
+  registerRate("cpu.process.sys", PROCESS_SYS)
+  registerRate("cpu.process.user", PROCESS_USER)
+  registerRate("cpu.process.total", PROCESS_TOTAL)
+  registerLevel("memory.host.total", MEMORY_TOTAL)
+  registerLevel("memory.host.used", MEMORY_USED)
+  registerLevel("memory.host.free", MEMORY_FREE)
+  registerLevel("memory.process.total", PROCESS_SIZE)
+
+  sample(SamplingEpoch.initial())
+
+  // Every Sigar call is made once per epoch, whatever the number of gauges it feeds
+  override protected def read(counters: Array[Long], levels: Array[Long]): Unit = {
+    val cpu = sigar.getCpu
+    counters(HOST_SYS) = cpu.getSys
+    counters(HOST_USER) = cpu.getUser
+    counters(HOST_WAIT) = cpu.getWait
+    counters(HOST_TOTAL) = cpu.getTotal
+
+    val procCpu = sigar.getProcCpu(pid)
+    counters(PROCESS_SYS) = procCpu.getSys
+    counters(PROCESS_USER) = procCpu.getUser
+    counters(PROCESS_TOTAL) = procCpu.getTotal
+
+    val network = networkMetrics()
+    counters(NET_RX) = network.bytesRx
+    counters(NET_TX) = network.bytesTx
+
+    val disk = diskMetrics()
+    counters(DISK_READ) = disk.bytesRead
+    counters(DISK_WRITE) = disk.bytesWritten
+
+    val mem = sigar.getMem
+    levels(CPU_COUNT) = sigar.getCpuInfoList.length
+    levels(MEMORY_TOTAL) = mem.getTotal
+    levels(MEMORY_USED) = mem.getUsed
+    levels(MEMORY_FREE) = mem.getFree
+    levels(PROCESS_SIZE) = sigar.getProcMem(pid).getSize
+  }
 
   case class NetworkMetrics(bytesRx: Long, bytesTx: Long)
 
@@ -160,35 +139,29 @@ private[spark] class SigarSource() extends Source {
     })
     DiskMetrics(bytesWritten, bytesRead)
   }
+}
 
-  def register[T](registry: MetricRegistry, metric: Metric[T]) : Gauge[T] =
-  {metricRegistry.register(metric.name, metric.gauge)}
-
-  trait Metric[T] {
-    def value: T
-    def name: String
-
-    def gauge: Gauge[T] = new Gauge[T] {
-      override def getValue = value
-    }
-  }
-
-  trait StatefulMetric extends Metric[Float] {
-    var lastProbeTimestamp: Long = System.currentTimeMillis
-    var lastValue: Float = momentaryValue
-
-    def value : Float = synchronized {
-      val now = System.currentTimeMillis
-      val timeWindowInSec = (now - lastProbeTimestamp) / 1000f
-      lastProbeTimestamp = now
-
-      val newValue = momentaryValue
-      val valueDiff = newValue - lastValue
-      lastValue = newValue
-
-      valueDiff / timeWindowInSec
-    }
-
-    def momentaryValue: Float
-  }
+private object SigarSource {
+
+  // Indices of the counters
+  private val HOST_SYS = 0
+  private val HOST_USER = 1
+  private val HOST_WAIT = 2
+  private val HOST_TOTAL = 3
+  private val PROCESS_SYS = 4
+  private val PROCESS_USER = 5
+  private val PROCESS_TOTAL = 6
+  private val NET_RX = 7
+  private val NET_TX = 8
+  private val DISK_READ = 9
+  private val DISK_WRITE = 10
+  private val COUNTERS = 11
+
+  // Indices of the levels
+  private val CPU_COUNT = 0
+  private val MEMORY_TOTAL = 1
+  private val MEMORY_USED = 2
+  private val MEMORY_FREE = 3
+  private val PROCESS_SIZE = 4
+  private val LEVELS = 5
 }
@@ -69,6 +69,12 @@ abstract class BlockTransferService extends ShuffleClient with Closeable with Lo
       blockIds: Array[String],
       listener: BlockFetchingListener): Unit
 
+  /**
+   * Total size of the blocks this service sent to other nodes; 0 for services that don't serve
+   * blocks.
+   */
+  def servedBytes: Long = 0L
+
   /**
    * Upload a single block to a remote node, available only after [[init]] is invoked.
    */
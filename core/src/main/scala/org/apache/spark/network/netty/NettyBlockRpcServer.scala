@@ -45,7 +45,7 @@ class NettyBlockRpcServer(
     blockManager: BlockDataManager)
   extends RpcHandler with Logging {
 
-  private val streamManager = new OneForOneStreamManager()
+  private[netty] val streamManager = new OneForOneStreamManager()
 
   override def receive(
       client: TransportClient,
@@ -18,11 +18,14 @@
 package org.apache.spark.network.netty
 
 import java.nio.ByteBuffer
+import java.util.{HashMap => JHashMap, Map => JMap}
 
 import scala.collection.JavaConverters._
 import scala.concurrent.{Future, Promise}
 import scala.reflect.ClassTag
 
+import com.codahale.metrics.{Gauge, Metric, MetricSet}
+
 import org.apache.spark.{SecurityManager, SparkConf}
 import org.apache.spark.network._
 import org.apache.spark.network.buffer.ManagedBuffer
@@ -54,12 +57,13 @@ private[spark] class NettyBlockTransferService(
   private val transportConf = SparkTransportConf.fromSparkConf(conf, "shuffle", numCores)
 
   private[this] var transportContext: TransportContext = _
+  private[this] var rpcHandler: NettyBlockRpcServer = _
   private[this] var server: TransportServer = _
   private[this] var clientFactory: TransportClientFactory = _
   private[this] var appId: String = _
 
   override def init(blockDataManager: BlockDataManager): Unit = {
-    val rpcHandler = new NettyBlockRpcServer(conf.getAppId, serializer, blockDataManager)
+    rpcHandler = new NettyBlockRpcServer(conf.getAppId, serializer, blockDataManager)
     var serverBootstrap: Option[TransportServerBootstrap] = None
     var clientBootstrap: Option[TransportClientBootstrap] = None
     if (authEnabled) {
@@ -116,6 +120,28 @@ private[spark] class NettyBlockTransferService(
 
   override def port: Int = server.getPort
 
+  override def servedBytes: Long = rpcHandler.streamManager.servedBytes()
+
+  /**
+   * Memory used by the buffers of the clients and of the server of this service, and the streams
+   * of blocks it serves.
+   */
+  override def shuffleMetrics(): MetricSet = {
+    val metrics = new JHashMap[String, Metric]
+    clientFactory.getAllMetrics.getMetrics.asScala.foreach { case (name, metric) =>
+      metrics.put(s"client.$name", metric)
+    }
+    server.getAllMetrics.getMetrics.asScala.foreach { case (name, metric) =>
+      metrics.put(s"server.$name", metric)
+    }
+    metrics.put("openStreams", new Gauge[Int] {
+      override def getValue: Int = rpcHandler.streamManager.numStreams()
+    })
+    new MetricSet {
+      override def getMetrics: JMap[String, Metric] = metrics
+    }
+  }
+
   override def uploadBlock(
       hostname: String,
       port: Int,
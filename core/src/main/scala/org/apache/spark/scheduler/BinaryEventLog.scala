@@ -0,0 +1,429 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.spark.scheduler
+
+import java.io._
+import java.nio.ByteBuffer
+import java.nio.charset.StandardCharsets
+
+import scala.collection.mutable
+import scala.collection.mutable.ArrayBuffer
+
+import org.apache.hadoop.fs.{FileSystem, FSDataInputStream, Path}
+import org.json4s.JsonAST._
+
+import org.apache.spark.SparkConf
+import org.apache.spark.io.CompressionCodec
+
+/**
+ * Binary event log, an alternative to one JSON line per event that is smaller and much cheaper
+ * to replay. Events are the trees of [[org.apache.spark.util.JsonProtocol]] written as binary
+ * records, so the two formats hold the same fields and stay compatible in the same way.
+ *
+ * File layout:
+ * {{{
+ *   header: int FILE_MAGIC, byte VERSION, UTF codec short name ("" if uncompressed),
+ *           UTF Spark version
+ *   block*: int BLOCK_MAGIC, int record count, int payload length, int stored length,
+ *           stored length bytes of payload, compressed by the codec if there is one
+ *   index:  int INDEX_MAGIC, int block count, block count x (long offset, int record count)
+ *   footer: long index offset, int FOOTER_MAGIC
+ * }}}
+ *
+ * A payload is a dictionary, varint count x (varint length + UTF-8 bytes), followed by the
+ * records, varint length + value. Every string of a block, field names included, is written once
+ * in its dictionary and referred to by its position, and blocks don't refer to each other so
+ * that they can be decoded in parallel. A value is a tag byte followed by:
+ * nothing for null and booleans, a zig-zag varint for integers, 8 bytes for doubles, a
+ * dictionary reference for strings, big integers and decimals, and a varint count followed by the
+ * elements for arrays, or by (name reference, value) pairs for objects.
+ *
+ * The index and footer are written when the log is closed; logs still being written are read
+ * block by block from the start.
+ */
+private[spark] object BinaryEventLog {
+
+  /** Suffix of the names of binary event logs, before [[EventLoggingListener.IN_PROGRESS]]. */
+  val SUFFIX = ".evlog"
+
+  private[scheduler] val FILE_MAGIC = 0x5345564C   // "SEVL"
+  private[scheduler] val BLOCK_MAGIC = 0x5342424B  // "SBBK"
+  private[scheduler] val INDEX_MAGIC = 0x53494458  // "SIDX"
+  private[scheduler] val FOOTER_MAGIC = 0x53454E44 // "SEND"
+  private[scheduler] val VERSION: Byte = 1
+
+  private[scheduler] val NULL: Byte = 0
+  private[scheduler] val FALSE: Byte = 1
+  private[scheduler] val TRUE: Byte = 2
+  private[scheduler] val INT: Byte = 3
+  private[scheduler] val BIG_INT: Byte = 4
+  private[scheduler] val DOUBLE: Byte = 5
+  private[scheduler] val DECIMAL: Byte = 6
+  private[scheduler] val STRING: Byte = 7
+  private[scheduler] val ARRAY: Byte = 8
+  private[scheduler] val OBJECT: Byte = 9
+
+  def isBinary(log: Path): Boolean =
+    log.getName.stripSuffix(EventLoggingListener.IN_PROGRESS).endsWith(SUFFIX)
+
+  /** Offsets and record counts of the blocks of a complete log, None for a log in progress. */
+  def readIndex(fs: FileSystem, log: Path): Option[Seq[(Long, Int)]] = {
+    val length = fs.getFileStatus(log).getLen
+    val in = fs.open(log)
+    try {
+      if (length < 12) {
+        None
+      } else {
+        in.seek(length - 12)
+        val indexOffset = in.readLong()
+        if (in.readInt() != FOOTER_MAGIC || indexOffset < 0 || indexOffset >= length - 12) {
+          None
+        } else {
+          in.seek(indexOffset)
+          if (in.readInt() != INDEX_MAGIC) {
+            None
+          } else {
+            val blocks = in.readInt()
+            Some((0 until blocks).map(_ => (in.readLong(), in.readInt())))
+          }
+        }
+      }
+    } finally {
+      in.close()
+    }
+  }
+
+  private[scheduler] def writeVarLong(out: OutputStream, value: Long): Unit = {
+    var v = value
+    while ((v & ~0x7FL) != 0) {
+      out.write(((v & 0x7F) | 0x80).toInt)
+      v >>>= 7
+    }
+    out.write(v.toInt)
+  }
+
+  private[scheduler] def readVarLong(in: ByteBuffer): Long = {
+    var result = 0L
+    var shift = 0
+    var b = 0
+    do {
+      b = in.get()
+      result |= (b & 0x7FL) << shift
+      shift += 7
+    } while ((b & 0x80) != 0)
+    result
+  }
+
+  private[scheduler] def readVarInt(in: ByteBuffer): Int = readVarLong(in).toInt
+}
+
+/**
+ * Writes a binary event log to `out`, one block whenever the records buffered reach `blockSize`
+ * bytes or the log is flushed. See [[BinaryEventLog]] for the layout.
+ */
+private[spark] class BinaryEventLogWriter(
+    out: OutputStream,
+    codec: Option[CompressionCodec],
+    blockSize: Int,
+    sparkVersion: String) {
+  import BinaryEventLog._
+
+  require(blockSize > 0, s"blockSize must be positive: $blockSize")
+
+  private val data = new DataOutputStream(out)
+  private var offset = 0L
+
+  private val dictionary = new mutable.HashMap[String, Int]
+  private val strings = new ArrayBuffer[String]
+  private val records = new ByteArrayOutputStream(blockSize + 1024)
+  private val record = new ByteArrayOutputStream(1024)
+  private var recordCount = 0
+
+  private val blockOffsets = new ArrayBuffer[Long]
+  private val blockRecords = new ArrayBuffer[Int]
+
+  data.writeInt(FILE_MAGIC)
+  data.writeByte(VERSION)
+  data.writeUTF(codec.map(c => CompressionCodec.getShortName(c.getClass.getName)).getOrElse(""))
+  data.writeUTF(sparkVersion)
+  offset = data.size()
+
+  def write(event: JValue): Unit = {
+    record.reset()
+    writeValue(event)
+    writeVarLong(records, record.size())
+    record.writeTo(records)
+    recordCount += 1
+    if (records.size() >= blockSize) {
+      writeBlock()
+    }
+  }
+
+  /** Writes the buffered records as a (possibly short) block and flushes the stream. */
+  def flush(): Unit = {
+    writeBlock()
+    data.flush()
+  }
+
+  /** Writes the buffered records, the index and the footer, and closes the stream. */
+  def close(): Unit = {
+    try {
+      writeBlock()
+      val indexOffset = offset
+      data.writeInt(INDEX_MAGIC)
+      data.writeInt(blockOffsets.size)
+      blockOffsets.indices.foreach { i =>
+        data.writeLong(blockOffsets(i))
+        data.writeInt(blockRecords(i))
+      }
+      data.writeLong(indexOffset)
+      data.writeInt(FOOTER_MAGIC)
+    } finally {
+      data.close()
+    }
+  }
+
+  private def writeValue(value: JValue): Unit = value match {
+    case JNull | JNothing => record.write(NULL)
+    case JBool(b) => record.write(if (b) TRUE else FALSE)
+    case JInt(n) if n.isValidLong =>
+      record.write(INT)
+      val v = n.longValue()
+      writeVarLong(record, (v << 1) ^ (v >> 63))
+    case JInt(n) =>
+      record.write(BIG_INT)
+      writeString(n.toString)
+    case JDouble(d) =>
+      record.write(DOUBLE)
+      val bits = java.lang.Double.doubleToLongBits(d)
+      var i = 56
+      while (i >= 0) {
+        record.write((bits >>> i).toInt)
+        i -= 8
+      }
+    case JDecimal(d) =>
+      record.write(DECIMAL)
+      writeString(d.toString)
+    case JString(s) =>
+      record.write(STRING)
+      writeString(s)
+    case JArray(elements) =>
+      record.write(ARRAY)
+      writeVarLong(record, elements.size)
+      elements.foreach(writeValue)
+    case JObject(fields) =>
+      // Fields without a value are left out, as when rendering JSON
+      val present = fields.filter(_._2 != JNothing)
+      record.write(OBJECT)
+      writeVarLong(record, present.size)
+      present.foreach { case (name, v) =>
+        writeString(name)
+        writeValue(v)
+      }
+  }
+
+  private def writeString(s: String): Unit = {
+    writeVarLong(record, dictionary.getOrElseUpdate(s, {
+      strings += s
+      strings.size - 1
+    }))
+  }
+
+  private def writeBlock(): Unit = {
+    if (recordCount > 0) {
+      val payload = new ByteArrayOutputStream(records.size() + strings.size * 16)
+      writeVarLong(payload, strings.size)
+      strings.foreach { s =>
+        val bytes = s.getBytes(StandardCharsets.UTF_8)
+        writeVarLong(payload, bytes.length)
+        payload.write(bytes)
+      }
+      records.writeTo(payload)
+      val stored = codec.map { c =>
+        val compressed = new ByteArrayOutputStream(payload.size() / 4)
+        val stream = c.compressedOutputStream(compressed)
+        payload.writeTo(stream)
+        stream.close()
+        compressed.toByteArray
+      }.getOrElse(payload.toByteArray)
+
+      data.writeInt(BLOCK_MAGIC)
+      data.writeInt(recordCount)
+      data.writeInt(payload.size())
+      data.writeInt(stored.length)
+      data.write(stored)
+      blockOffsets += offset
+      blockRecords += recordCount
+      offset += 16 + stored.length
+
+      dictionary.clear()
+      strings.clear()
+      records.reset()
+      recordCount = 0
+    }
+  }
+}
+
+/**
+ * A block of a binary event log as stored, decoded by `records`; decoding does not depend on
+ * other blocks, so blocks may be decoded by different threads.
+ */
+private[spark] class BinaryEventLogBlock(
+    recordCount: Int,
+    payloadLength: Int,
+    stored: Array[Byte],
+    codec: Option[CompressionCodec]) {
+  import BinaryEventLog._
+
+  /**
+   * The records of the block, skipping without decoding them those whose event name `accept`
+   * rejects.
+   */
+  def records(accept: String => Boolean = _ => true): Seq[JValue] = {
+    val payload = codec.map { c =>
+      val bytes = new Array[Byte](payloadLength)
+      val in = new DataInputStream(c.compressedInputStream(new ByteArrayInputStream(stored)))
+      try {
+        in.readFully(bytes)
+      } finally {
+        in.close()
+      }
+      bytes
+    }.getOrElse(stored)
+
+    val buffer = ByteBuffer.wrap(payload)
+    val strings = Array.fill(readVarInt(buffer)) {
+      val length = readVarInt(buffer)
+      val s = new String(payload, buffer.position(), length, StandardCharsets.UTF_8)
+      buffer.position(buffer.position() + length)
+      s
+    }
+
+    val result = new ArrayBuffer[JValue](recordCount)
+    (0 until recordCount).foreach { _ =>
+      val length = readVarInt(buffer)
+      val end = buffer.position() + length
+      if (accept(eventName(buffer.duplicate(), strings))) {
+        result += readValue(buffer, strings)
+      }
+      buffer.position(end)
+    }
+    result
+  }
+
+  // The value of the first field, which JsonProtocol always makes "Event"
+  private def eventName(buffer: ByteBuffer, strings: Array[String]): String = {
+    if (buffer.get() == OBJECT && readVarInt(buffer) > 0 &&
+        strings(readVarInt(buffer)) == "Event" && buffer.get() == STRING) {
+      strings(readVarInt(buffer))
+    } else {
+      ""
+    }
+  }
+
+  private def readValue(buffer: ByteBuffer, strings: Array[String]): JValue = {
+    buffer.get() match {
+      case NULL => JNull
+      case FALSE => JBool(false)
+      case TRUE => JBool(true)
+      case INT =>
+        val v = readVarLong(buffer)
+        JInt(BigInt((v >>> 1) ^ -(v & 1)))
+      case BIG_INT => JInt(BigInt(strings(readVarInt(buffer))))
+      case DOUBLE => JDouble(buffer.getDouble())
+      case DECIMAL => JDecimal(BigDecimal(strings(readVarInt(buffer))))
+      case STRING => JString(strings(readVarInt(buffer)))
+      case ARRAY => JArray(List.fill(readVarInt(buffer))(readValue(buffer, strings)))
+      case OBJECT =>
+        JObject(List.fill(readVarInt(buffer)) {
+          val name = strings(readVarInt(buffer))
+          (name, readValue(buffer, strings))
+        })
+      case tag => throw new IOException(s"Unknown value tag $tag in binary event log")
+    }
+  }
+}
+
+/**
+ * Reads the blocks of a binary event log, in order from its start with `nextBlock`, or at the
+ * offsets of its index with `blockAt`. Only the header is read when the reader is created;
+ * blocks are read but not decoded.
+ */
+private[spark] class BinaryEventLogReader(in: InputStream) extends Closeable {
+  import BinaryEventLog._
+
+  private val data = new DataInputStream(in)
+
+  if (data.readInt() != FILE_MAGIC) {
+    throw new IOException("Not a binary event log")
+  }
+  private val version = data.readByte()
+  if (version != VERSION) {
+    throw new IOException(s"Unsupported binary event log version $version")
+  }
+  private val codec = Some(data.readUTF()).filter(_.nonEmpty).map { name =>
+    CompressionCodec.createCodec(new SparkConf, name)
+  }
+  val sparkVersion: String = data.readUTF()
+
+  private var finished = false
+
+  /**
+   * The next block, or None after the last one. A log still being written may end in the middle
+   * of a block, in which case an EOFException is thrown.
+   */
+  def nextBlock(): Option[BinaryEventLogBlock] = {
+    if (finished) {
+      None
+    } else {
+      val magic = try {
+        data.readInt()
+      } catch {
+        case _: EOFException => INDEX_MAGIC
+      }
+      if (magic == INDEX_MAGIC) {
+        finished = true
+        None
+      } else if (magic != BLOCK_MAGIC) {
+        throw new IOException(s"Corrupt binary event log: bad block magic $magic")
+      } else {
+        val recordCount = data.readInt()
+        val payloadLength = data.readInt()
+        val stored = new Array[Byte](data.readInt())
+        data.readFully(stored)
+        Some(new BinaryEventLogBlock(recordCount, payloadLength, stored, codec))
+      }
+    }
+  }
+
+  /** The block at `offset`, read with positioned reads so that threads may share `in`. */
+  def blockAt(in: FSDataInputStream, offset: Long): BinaryEventLogBlock = {
+    val header = ByteBuffer.allocate(16)
+    in.readFully(offset, header.array())
+    if (header.getInt() != BLOCK_MAGIC) {
+      throw new IOException(s"Corrupt binary event log: no block at offset $offset")
+    }
+    val recordCount = header.getInt()
+    val payloadLength = header.getInt()
+    val stored = new Array[Byte](header.getInt())
+    in.readFully(offset + 16, stored)
+    new BinaryEventLogBlock(recordCount, payloadLength, stored, codec)
+  }
+
+  override def close(): Unit = data.close()
+}
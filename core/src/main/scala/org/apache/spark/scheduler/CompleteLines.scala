@@ -0,0 +1,86 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.spark.scheduler
+
+import java.io.{ByteArrayOutputStream, InputStream}
+import java.nio.charset.StandardCharsets
+
+/**
+ * The UTF-8 lines of a file that is still being written, leaving out a last line without its
+ * line feed, as the writer may not have finished it. `consumedBytes` is where a later read of
+ * the file resumes: the number of bytes of the lines returned so far, line feeds included.
+ */
+private[spark] class CompleteLines(in: InputStream) extends Iterator[String] {
+
+  private val buffer = new Array[Byte](64 * 1024)
+  private var position = 0
+  private var limit = 0
+  private val line = new ByteArrayOutputStream()
+  private var nextLine: String = null
+  private var eof = false
+  private var consumed = 0L
+
+  def consumedBytes: Long = consumed
+
+  override def hasNext: Boolean = {
+    if (nextLine == null) {
+      nextLine = readLine()
+    }
+    nextLine != null
+  }
+
+  override def next(): String = {
+    if (!hasNext) {
+      throw new NoSuchElementException("End of stream")
+    }
+    val result = nextLine
+    nextLine = null
+    result
+  }
+
+  private def readLine(): String = {
+    var result: String = null
+    while (result == null && !eof) {
+      if (position == limit) {
+        val read = in.read(buffer)
+        if (read < 0) {
+          eof = true
+        } else {
+          position = 0
+          limit = read
+        }
+      } else {
+        var end = position
+        while (end < limit && buffer(end) != '\n') {
+          end += 1
+        }
+        line.write(buffer, position, end - position)
+        if (end < limit) {
+          position = end + 1
+          consumed += line.size() + 1
+          val s = new String(line.toByteArray, StandardCharsets.UTF_8)
+          line.reset()
+          result = if (s.endsWith("\r")) s.dropRight(1) else s
+        } else {
+          position = limit
+        }
+      }
+    }
+    result
+  }
+}
@@ -36,10 +36,12 @@ import org.apache.spark._
 import org.apache.spark.broadcast.Broadcast
 import org.apache.spark.executor.TaskMetrics
 import org.apache.spark.internal.Logging
+import org.apache.spark.internal.config.{SHUFFLE_PUSH_ENABLED, SHUFFLE_PUSH_MAX_MERGERS}
 import org.apache.spark.network.util.JavaUtils
 import org.apache.spark.partial.{ApproximateActionListener, ApproximateEvaluator, PartialResult}
 import org.apache.spark.rdd.RDD
 import org.apache.spark.rpc.RpcTimeout
+import org.apache.spark.shuffle.ShuffleBlockPusher
 import org.apache.spark.storage._
 import org.apache.spark.storage.BlockManagerMessages.BlockManagerHeartbeat
 import org.apache.spark.util._
@@ -187,6 +189,10 @@ class DAGScheduler(
   /** If enabled, FetchFailed will not cause stage retry, in order to surface the problem. */
   private val disallowStageRetryForTest = sc.getConf.getBoolean("spark.test.noStageRetry", false)
 
+  /** Whether map tasks push their blocks to external shuffle services that merge them. */
+  private val pushBasedShuffleEnabled = sc.getConf.get(SHUFFLE_PUSH_ENABLED) &&
+    sc.getConf.getBoolean("spark.shuffle.service.enabled", false)
+
   private val messageScheduler =
     ThreadUtils.newDaemonSingleThreadScheduledExecutor("dag-scheduler-message")
 
@@ -928,6 +934,31 @@ class DAGScheduler(
     }
   }
 
+  /**
+   * Chooses the external shuffle services that merge the blocks pushed by the map tasks of a
+   * shuffle, on hosts of the registered executors. This is done once per shuffle, before its
+   * dependency is first serialized for tasks, so that all the map tasks and reducers of the
+   * shuffle agree on where each reduce partition is merged.
+   */
+  private def assignShuffleMergers(dep: ShuffleDependency[_, _, _]): Unit = {
+    if (pushBasedShuffleEnabled && dep.mergerLocations.isEmpty) {
+      try {
+        val hosts = blockManagerMaster.getMemoryStatus.keys.filterNot(_.isDriver).map(_.host)
+        val port = env.blockManager.externalShuffleServicePort
+        dep.mergerLocations = Utils.randomize(hosts.toSeq.distinct)
+          .take(sc.getConf.get(SHUFFLE_PUSH_MAX_MERGERS))
+          .map(host => BlockManagerId(ShuffleBlockPusher.MERGER_EXECUTOR_ID, host, port))
+          .toIndexedSeq
+        mapOutputTracker.registerShuffleMergers(dep.shuffleId, dep.mergerLocations)
+        logInfo(s"Shuffle ${dep.shuffleId} is merged by the shuffle services on " +
+          dep.mergerLocations.map(_.host).mkString(", "))
+      } catch {
+        case NonFatal(e) =>
+          logWarning(s"Failed to choose the shuffle services merging shuffle ${dep.shuffleId}", e)
+      }
+    }
+  }
+
   /** Called when stage's parents are available and we can now do its task. */
   private def submitMissingTasks(stage: Stage, jobId: Int) {
     logDebug("submitMissingTasks(" + stage + ")")
@@ -987,6 +1018,7 @@ class DAGScheduler(
       // For ResultTask, serialize and broadcast (rdd, func).
       val taskBinaryBytes: Array[Byte] = stage match {
         case stage: ShuffleMapStage =>
+          assignShuffleMergers(stage.shuffleDep)
           JavaUtils.bufferToArray(
             closureSerializer.serialize((stage.rdd, stage.shuffleDep): AnyRef))
         case stage: ResultStage =>
@@ -45,6 +45,8 @@ import org.apache.spark.util.{JsonProtocol, Utils}
  *   spark.eventLog.overwrite - Whether to overwrite any existing files.
  *   spark.eventLog.dir - Path to the directory in which events are logged.
  *   spark.eventLog.buffer.kb - Buffer size to use when writing to output streams
+ *   spark.eventLog.format - json, one line per event, or binary (see [[BinaryEventLog]])
+ *   spark.eventLog.binary.blockSize - Size of the blocks of binary logs before compression
  */
 private[spark] class EventLoggingListener(
     appId: String,
@@ -74,17 +76,32 @@ private[spark] class EventLoggingListener(
   private val compressionCodecName = compressionCodec.map { c =>
     CompressionCodec.getShortName(c.getClass.getName)
   }
+  private val binaryFormat = sparkConf.get("spark.eventLog.format", "json") match {
+    case "json" => false
+    case "binary" => true
+    case other => throw new IllegalArgumentException(
+      s"spark.eventLog.format must be json or binary: $other")
+  }
+  private val binaryBlockSize =
+    sparkConf.getSizeAsBytes("spark.eventLog.binary.blockSize", "1m").toInt
 
   // Only defined if the file system scheme is not local
   private var hadoopDataStream: Option[FSDataOutputStream] = None
 
   private var writer: Option[PrintWriter] = None
 
+  private var binaryWriter: Option[BinaryEventLogWriter] = None
+
   // For testing. Keep track of all JSON serialized events that have been logged.
   private[scheduler] val loggedEvents = new ArrayBuffer[JValue]
 
   // Visible for tests only.
-  private[scheduler] val logPath = getLogPath(logBaseDir, appId, appAttemptId, compressionCodecName)
+  // Binary logs compress their blocks and name their codec in their header
+  private[scheduler] val logPath = if (binaryFormat) {
+    getLogPath(logBaseDir, appId, appAttemptId) + BinaryEventLog.SUFFIX
+  } else {
+    getLogPath(logBaseDir, appId, appAttemptId, compressionCodecName)
+  }
 
   /**
    * Creates the log file in the configured log directory.
@@ -115,12 +132,18 @@ private[spark] class EventLoggingListener(
       }
 
     try {
-      val cstream = compressionCodec.map(_.compressedOutputStream(dstream)).getOrElse(dstream)
-      val bstream = new BufferedOutputStream(cstream, outputBufferSize)
+      if (binaryFormat) {
+        binaryWriter = Some(new BinaryEventLogWriter(
+          new BufferedOutputStream(dstream, outputBufferSize), compressionCodec, binaryBlockSize,
+          SPARK_VERSION))
+      } else {
+        val cstream = compressionCodec.map(_.compressedOutputStream(dstream)).getOrElse(dstream)
+        val bstream = new BufferedOutputStream(cstream, outputBufferSize)
 
-      EventLoggingListener.initEventLog(bstream)
+        EventLoggingListener.initEventLog(bstream)
+        writer = Some(new PrintWriter(bstream))
+      }
       fileSystem.setPermission(path, LOG_FILE_PERMISSIONS)
-      writer = Some(new PrintWriter(bstream))
       logInfo("Logging events to %s".format(logPath))
     } catch {
       case e: Exception =>
@@ -129,14 +152,16 @@ private[spark] class EventLoggingListener(
     }
   }
 
-  /** Log the event as JSON. */
+  /** Log the event as JSON, or as its binary record. */
   private def logEvent(event: SparkListenerEvent, flushLogger: Boolean = false) {
     val eventJson = JsonProtocol.sparkEventToJson(event)
     // scalastyle:off println
     writer.foreach(_.println(compact(render(eventJson))))
     // scalastyle:on println
+    binaryWriter.foreach(_.write(eventJson))
     if (flushLogger) {
       writer.foreach(_.flush())
+      binaryWriter.foreach(_.flush())
       hadoopDataStream.foreach(_.hflush())
     }
     if (testing) {
@@ -197,6 +222,11 @@ private[spark] class EventLoggingListener(
   // No-op because logging every update would be overkill
   override def onExecutorMetricsUpdate(event: SparkListenerExecutorMetricsUpdate): Unit = { }
 
+  // One line per heartbeat of an executor, so the history server plots them as the live UI does
+  override def onExecutorMetricsSample(event: SparkListenerExecutorMetricsSample): Unit = {
+    logEvent(event)
+  }
+
   override def onOtherEvent(event: SparkListenerEvent): Unit = {
     if (event.logEvent) {
       logEvent(event, flushLogger = true)
@@ -209,6 +239,7 @@ private[spark] class EventLoggingListener(
    */
   def stop(): Unit = {
     writer.foreach(_.close())
+    binaryWriter.foreach(_.close())
 
     val target = new Path(logPath)
     if (fileSystem.exists(target)) {
@@ -292,19 +323,29 @@ private[spark] object EventLoggingListener extends Logging {
     str.replaceAll("[ :/]", "-").replaceAll("[.${}'\"]", "_").toLowerCase
   }
 
+  /**
+   * The codec that compresses a JSON event log as a whole, None for an uncompressed or a binary
+   * log.
+   */
+  def codecName(log: Path): Option[String] = {
+    if (BinaryEventLog.isBinary(log)) {
+      None
+    } else {
+      // Compression codec is encoded as an extension, e.g. app_123.lzf
+      // Since we sanitize the app ID to not include periods, it is safe to split on it
+      log.getName.stripSuffix(IN_PROGRESS).split("\\.").tail.lastOption
+    }
+  }
+
   /**
    * Opens an event log file and returns an input stream that contains the event data.
    *
-   * @return input stream that holds one JSON record per line.
+   * @return input stream that holds one JSON record per line, or the binary log as stored for
+   *         a binary log, whose blocks are compressed on their own (see [[BinaryEventLog]]).
    */
   def openEventLog(log: Path, fs: FileSystem): InputStream = {
     val in = new BufferedInputStream(fs.open(log))
-
-    // Compression codec is encoded as an extension, e.g. app_123.lzf
-    // Since we sanitize the app ID to not include periods, it is safe to split on it
-    val logName = log.getName.stripSuffix(IN_PROGRESS)
-    val codecName: Option[String] = logName.split("\\.").tail.lastOption
-    val codec = codecName.map { c =>
+    val codec = codecName(log).map { c =>
       codecMap.getOrElseUpdate(c, CompressionCodec.createCodec(new SparkConf, c))
     }
 
@@ -0,0 +1,76 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.spark.scheduler
+
+import scala.collection.mutable
+
+import org.apache.spark.metrics.hdfs.ExecutorMetricsRecord
+
+/**
+ * The `values` of a replayed [[HDFSExecutorMetrics]]: the values of an [[ExecutorMetricsRecord]]
+ * nested by the segments of their dotted names, as they are in the JSON files. The nested maps
+ * are only built when the map is read, so listeners that match on this class and read
+ * `record` do not pay for them.
+ */
+private[spark] class ExecutorMetricsRecordValues(val record: ExecutorMetricsRecord)
+  extends Map[String, Any] {
+
+  private lazy val nested: Map[String, Any] = {
+    val values = new mutable.HashMap[String, Any]
+    var i = 0
+    while (i < record.size) {
+      val value = record.value(i)
+      if (!value.isNaN) {
+        putLeaf(values, record.name(i).split("\\."), 0, value)
+      }
+      i += 1
+    }
+    toImmutable(values)
+  }
+
+  override def get(key: String): Option[Any] = nested.get(key)
+
+  override def iterator: Iterator[(String, Any)] = nested.iterator
+
+  override def +[B >: Any](kv: (String, B)): Map[String, B] = nested + kv
+
+  override def -(key: String): Map[String, Any] = nested - key
+
+  private def putLeaf(
+      map: mutable.HashMap[String, Any],
+      path: Array[String],
+      index: Int,
+      value: Double): Unit = {
+    if (index == path.length - 1) {
+      map(path(index)) = value
+    } else {
+      map.getOrElseUpdate(path(index), new mutable.HashMap[String, Any]) match {
+        case child: mutable.HashMap[String, Any] @unchecked =>
+          putLeaf(child, path, index + 1, value)
+        case _ => // a leaf is already stored at this prefix
+      }
+    }
+  }
+
+  private def toImmutable(map: mutable.HashMap[String, Any]): Map[String, Any] = {
+    map.map {
+      case (key, child: mutable.HashMap[String, Any] @unchecked) => (key, toImmutable(child))
+      case (key, value) => (key, value)
+    }.toMap
+  }
+}
@@ -16,25 +16,50 @@
  */
 package org.apache.spark.scheduler
 
-import java.io.InputStream
+import java.io.{BufferedInputStream, InputStream, IOException}
+import java.util.Arrays
 
-import scala.collection.immutable
+import scala.collection.JavaConverters._
 import scala.collection.mutable.ListBuffer
 import scala.io.Source
-import scala.util.parsing.json._
+import scala.util.Try
+import scala.util.control.NonFatal
+
+import com.google.common.io.ByteStreams
+import org.apache.hadoop.fs.{FileSystem, Path}
 
 import org.apache.spark.internal.Logging
+import org.apache.spark.metrics.hdfs._
+import org.apache.spark.scheduler.HDFSExecutorMetricsReplayListenerBus.FileTail
+import org.apache.spark.scheduler.ReplayListenerBus.DEFAULT_REPLAY_THREADS
+
+/**
+ * A SparkListenerBus that replays the executor metrics files of an application.
+ *
+ * Files are read into [[ExecutorMetricsRecord]]s numbered by the [[MetricDictionary]] of the
+ * bus, and posted as [[HDFSExecutorMetrics]] whose `values` are an
+ * [[ExecutorMetricsRecordValues]] view of the record.
+ *
+ * @param replayThreads number of threads parsing the lines of a JSON metrics file, see
+ *        [[ReplayPipeline]]
+ */
+private[spark] class HDFSExecutorMetricsReplayListenerBus(
+    replayThreads: Int = DEFAULT_REPLAY_THREADS) extends SparkListenerBus with Logging {
+
+  /** Numbers the metrics and the hosts of the files replayed by this bus. */
+  val dictionary = new MetricDictionary
 
-private[spark] class HDFSExecutorMetricsReplayListenerBus extends SparkListenerBus with Logging {
+  private val jsonParser = new JsonExecutorMetricsParser(dictionary)
 
   /**
-   * Replay each event in the order maintained in the given stream. The stream is expected to
-   * contain one JSON-encoded SparkListenerEvent per line.
+   * Replay each event in the order maintained in the given streams. Each stream holds the
+   * metrics of one executor, in the format given by the suffix of its file name: either one
+   * JSON object per line or the columnar block format.
    *
    * This method can be called multiple times, but the listener behavior is undefined after any
    * error is thrown by this method.
    *
-   * @param logDataList Stream containing event log data.
+   * @param logDataList Streams containing executor metrics and the names of their files.
    * @param sourceName Filename (or other source identifier) from whence @logData is being read
    * @param maybeTruncated Indicate whether log file might be truncated (some abnormal situations
    *        encountered, log file might not finished writing) or not
@@ -46,19 +71,9 @@ private[spark] class HDFSExecutorMetricsReplayListenerBus extends SparkListenerB
 
     logDataList.foreach(logData => {
       try {
-        for (line <- Source.fromInputStream(logData._1).getLines()) {
-          val hashMapParsed = JSON.parseFull(line)
-          val hashMap = {
-            hashMapParsed match {
-              case Some(m: Map[String, Any]) => m
-              case _ => new immutable.HashMap[String, Any]
-            }
-          }
-          val hdfsExecutorMetrics = new HDFSExecutorMetrics(
-            hashMap("values").asInstanceOf[Map[String, Any]],
-            hashMap("host").asInstanceOf[String],
-            hashMap("timestamp").asInstanceOf[Double].toLong)
-          postToAll(hdfsExecutorMetrics)
+        ExecutorMetricsFormat.forFileName(logData._2) match {
+          case ExecutorMetricsFormat.COLUMNAR => replayColumnar(logData._1)
+          case _ => replayJson(logData._1)
         }
       } catch {
         case ex: Exception =>
@@ -68,4 +83,226 @@ private[spark] class HDFSExecutorMetricsReplayListenerBus extends SparkListenerB
       }
     })
   }
+
+  /**
+   * Replays the points of one executor metrics file within `[fromTimestamp, toTimestamp]`.
+   *
+   * When the file has a sidecar [[ExecutorMetricsIndex]], only the part of every indexed
+   * segment from the bucket holding `fromTimestamp` to the first record past `toTimestamp` is
+   * read. Bytes outside of the indexed segments, written by a reporter that is still running or
+   * did not stop cleanly, are scanned, whether they are between segments or after the last one.
+   *
+   * @return where a later replay of the file resumes with [[replayFrom]], None if it failed
+   */
+  def replayFile(
+      fs: FileSystem,
+      path: Path,
+      fromTimestamp: Long = Long.MinValue,
+      toTimestamp: Long = Long.MaxValue): Option[FileTail] = {
+    val format = ExecutorMetricsFormat.forFileName(path.getName)
+    try {
+      val length = fs.getFileStatus(path).getLen
+      val segments = readIndex(fs, path, length).sortBy(_.startOffset())
+      // Every session that the index does not cover starts with a header
+      var indexedEnd = 0L
+      segments.foreach { segment =>
+        scan(fs, path, format, FileTail(indexedEnd, null, Nil), segment.startOffset(),
+          fromTimestamp, toTimestamp)
+        if (segment.overlaps(fromTimestamp, toTimestamp)) {
+          val in = open(fs, path, segment.offsetFor(fromTimestamp), segment.endOffset())
+          try {
+            format match {
+              case ExecutorMetricsFormat.COLUMNAR =>
+                replayColumnar(new ColumnarExecutorMetricsReader(in, segment.host(),
+                  segment.metricNames()), fromTimestamp, toTimestamp, stopAfterRange = true)
+              case _ => replayJson(Source.fromInputStream(in).getLines(), fromTimestamp,
+                toTimestamp, stopAfterRange = true)
+            }
+          } finally {
+            in.close()
+          }
+        }
+        indexedEnd = segment.endOffset()
+      }
+      Some(scan(fs, path, format, FileTail(indexedEnd, null, Nil), length, fromTimestamp,
+        toTimestamp))
+    } catch {
+      case NonFatal(e) =>
+        logWarning(s"Could not replay executor metrics from $path", e)
+        None
+    }
+  }
+
+  /**
+   * Replays what was appended to a metrics file since a previous replay stopped at `tail`,
+   * ignoring the index.
+   *
+   * @return where the next replay resumes, None if this one failed
+   */
+  def replayFrom(fs: FileSystem, path: Path, tail: FileTail): Option[FileTail] = {
+    try {
+      val length = fs.getFileStatus(path).getLen
+      if (length < tail.offset) {
+        throw new IOException(s"$path was truncated to $length bytes")
+      }
+      Some(scan(fs, path, ExecutorMetricsFormat.forFileName(path.getName), tail, length,
+        Long.MinValue, Long.MaxValue))
+    } catch {
+      case NonFatal(e) =>
+        logWarning(s"Could not replay executor metrics from $path", e)
+        None
+    }
+  }
+
+  /** Replays the complete records in `[tail.offset, length)`. */
+  private def scan(
+      fs: FileSystem,
+      path: Path,
+      format: ExecutorMetricsFormat,
+      tail: FileTail,
+      length: Long,
+      fromTimestamp: Long,
+      toTimestamp: Long): FileTail = {
+    if (length <= tail.offset) {
+      tail
+    } else {
+      val in = open(fs, path, tail.offset, length)
+      try {
+        format match {
+          case ExecutorMetricsFormat.COLUMNAR =>
+            val reader = if (tail.host == null) {
+              new ColumnarExecutorMetricsReader(in)
+            } else {
+              new ColumnarExecutorMetricsReader(in, tail.host, tail.metricNames.asJava)
+            }
+            replayColumnar(reader, fromTimestamp, toTimestamp, stopAfterRange = false)
+            FileTail(tail.offset + reader.completeBytes(), reader.host(),
+              reader.metricNames().asScala.toVector)
+          case _ =>
+            val lines = new CompleteLines(in)
+            replayJson(lines, fromTimestamp, toTimestamp, stopAfterRange = false)
+            FileTail(tail.offset + lines.consumedBytes, null, Nil)
+        }
+      } finally {
+        in.close()
+      }
+    }
+  }
+
+  private def readIndex(
+      fs: FileSystem,
+      path: Path,
+      length: Long): Seq[ExecutorMetricsIndex.Segment] = {
+    val indexPath = new Path(path.getParent, path.getName + ExecutorMetricsIndex.SUFFIX)
+    try {
+      if (!fs.exists(indexPath)) {
+        return Nil
+      }
+      val in = fs.open(indexPath)
+      val segments = try ExecutorMetricsIndex.read(in).asScala finally in.close()
+      if (segments.exists(_.endOffset() > length)) {
+        // The metrics file was rewritten after the index was, fall back to a full scan
+        logWarning(s"Ignoring stale index $indexPath")
+        Nil
+      } else {
+        segments
+      }
+    } catch {
+      case NonFatal(e) =>
+        logWarning(s"Could not read index $indexPath", e)
+        Nil
+    }
+  }
+
+  /** Opens `path` and limits the stream to the bytes in `[start, end)`. */
+  private def open(fs: FileSystem, path: Path, start: Long, end: Long): InputStream = {
+    val in = fs.open(path)
+    in.seek(start)
+    new BufferedInputStream(ByteStreams.limit(in, end - start), 64 * 1024)
+  }
+
+  private def replayJson(logData: InputStream): Unit = {
+    replayJson(Source.fromInputStream(logData).getLines(), Long.MinValue, Long.MaxValue,
+      stopAfterRange = false)
+  }
+
+  private def replayJson(
+      lines: Iterator[String],
+      fromTimestamp: Long,
+      toTimestamp: Long,
+      stopAfterRange: Boolean): Unit = {
+    ReplayPipeline.parseInOrder(lines, replayThreads, "executor-metrics-replay") { line =>
+      Try(jsonParser.parse(line))
+    } { records =>
+      var done = false
+      while (!done && records.hasNext) {
+        val record = records.next().get
+        if (record.timestamp > toTimestamp) {
+          done = stopAfterRange
+        } else if (record.timestamp >= fromTimestamp) {
+          post(record)
+        }
+      }
+    }
+  }
+
+  private def replayColumnar(logData: InputStream): Unit = {
+    replayColumnar(new ColumnarExecutorMetricsReader(logData), Long.MinValue, Long.MaxValue,
+      stopAfterRange = false)
+  }
+
+  /**
+   * Replays a file written in the columnar format. Blocks are decoded one at a time, their
+   * columns being mapped to the metrics of the dictionary. Blocks outside of the time range
+   * are skipped without being decoded.
+   */
+  private def replayColumnar(
+      reader: ColumnarExecutorMetricsReader,
+      fromTimestamp: Long,
+      toTimestamp: Long,
+      stopAfterRange: Boolean): Unit = {
+    var block = reader.nextBlock(fromTimestamp, toTimestamp)
+    while (block != null) {
+      val hostId = dictionary.hostId(reader.host())
+      val columns = (0 until block.columnCount()).map(block.column).toArray
+      val indices = (0 until block.columnCount())
+        .map(column => dictionary.indexOf(block.metricName(column))).toArray
+      val size = if (indices.isEmpty) 0 else indices.max + 1
+      var point = 0
+      while (point < block.size()) {
+        val timestamp = block.timestamp(point)
+        if (timestamp >= fromTimestamp && timestamp <= toTimestamp) {
+          val values = new Array[Double](size)
+          Arrays.fill(values, Double.NaN)
+          var column = 0
+          while (column < columns.length) {
+            values(indices(column)) = columns(column)(point)
+            column += 1
+          }
+          post(new ExecutorMetricsRecord(dictionary, hostId, timestamp, values))
+        }
+        point += 1
+      }
+      block = if (stopAfterRange && block.lastTimestamp() >= toTimestamp) {
+        null
+      } else {
+        reader.nextBlock(fromTimestamp, toTimestamp)
+      }
+    }
+  }
+
+  private def post(record: ExecutorMetricsRecord): Unit = {
+    postToAll(new HDFSExecutorMetrics(new ExecutorMetricsRecordValues(record), record.host,
+      record.timestamp))
+  }
+}
+
+private[spark] object HDFSExecutorMetricsReplayListenerBus {
+
+  /**
+   * Where the replay of a metrics file stopped: the end of its last complete record and, for
+   * the columnar format, the host and the metric names of the session being written there, or
+   * a null host when a header comes next.
+   */
+  case class FileTail(offset: Long, host: String, metricNames: Seq[String])
 }
@@ -106,6 +106,9 @@ private[spark] class CompressedMapStatus(
     MapStatus.decompressSize(compressedSizes(reduceId))
   }
 
+  /** The compressed sizes of the blocks, not to be modified. */
+  private[scheduler] def sizes: Array[Byte] = compressedSizes
+
   override def writeExternal(out: ObjectOutput): Unit = Utils.tryOrIOException {
     loc.writeExternal(out)
     out.writeInt(compressedSizes.length)
@@ -152,6 +155,14 @@ private[spark] class HighlyCompressedMapStatus private (
     }
   }
 
+  /** -1 when the status was read with Java serialization, which does not write it. */
+  private[scheduler] def nonEmptyBlockCount: Int = numNonEmptyBlocks
+
+  /** The bitmap of the empty blocks, not to be modified. */
+  private[scheduler] def emptyBlockBitmap: RoaringBitmap = emptyBlocks
+
+  private[scheduler] def averageSize: Long = avgSize
+
   override def writeExternal(out: ObjectOutput): Unit = Utils.tryOrIOException {
     loc.writeExternal(out)
     emptyBlocks.writeExternal(out)
@@ -197,4 +208,12 @@ private[spark] object HighlyCompressedMapStatus {
     emptyBlocks.runOptimize()
     new HighlyCompressedMapStatus(loc, numNonEmptyBlocks, emptyBlocks, avgSize)
   }
+
+  private[scheduler] def apply(
+      loc: BlockManagerId,
+      numNonEmptyBlocks: Int,
+      emptyBlocks: RoaringBitmap,
+      avgSize: Long): HighlyCompressedMapStatus = {
+    new HighlyCompressedMapStatus(loc, numNonEmptyBlocks, emptyBlocks, avgSize)
+  }
 }
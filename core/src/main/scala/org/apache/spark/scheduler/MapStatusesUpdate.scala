@@ -0,0 +1,258 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.spark.scheduler
+
+import java.io.{DataInputStream, DataOutputStream}
+
+import scala.collection.mutable.{ArrayBuffer, HashMap}
+
+import org.roaringbitmap.RoaringBitmap
+
+import org.apache.spark.storage.BlockManagerId
+
+/**
+ * Map statuses of a shuffle as sent by the driver to executors: the statuses of the map outputs
+ * `mapIds` at `version` of the shuffle. These are either all `numMaps` outputs, or only the ones
+ * that changed since `sinceVersion`, the version of the statuses the executor already has.
+ * A null status is a missing output.
+ */
+private[spark] class MapStatusesUpdate(
+    val version: Long,
+    val sinceVersion: Long,
+    val numMaps: Int,
+    val mapIds: Array[Int],
+    val statuses: Array[MapStatus]) {
+
+  require(mapIds.length == statuses.length, "Expected a status for each map id")
+
+  def isDelta: Boolean = sinceVersion >= 0
+
+  /** The statuses of all the map outputs, taking those of `base` for the unchanged ones. */
+  def applyTo(base: Array[MapStatus]): Array[MapStatus] = {
+    if (isDelta) {
+      require(base != null && base.length == numMaps,
+        s"Expected the statuses of $numMaps map outputs to apply the changes to")
+      val result = base.clone()
+      var i = 0
+      while (i < mapIds.length) {
+        result(mapIds(i)) = statuses(i)
+        i += 1
+      }
+      result
+    } else {
+      statuses
+    }
+  }
+}
+
+/**
+ * Columnar encoding of [[MapStatusesUpdate]]s. After a header of the versions and counts, each
+ * field of the statuses is written as a column of values bit-packed to the width of its largest
+ * value: the gaps between the map ids of a delta, the kind of each status, the index of its
+ * location in a dictionary of the distinct locations, the number of blocks and the compressed
+ * sizes of the [[CompressedMapStatus]]es, and the number of non-empty blocks and the average size
+ * of the [[HighlyCompressedMapStatus]]es, followed by the bitmaps of their empty blocks.
+ */
+private[spark] object MapStatusesUpdate {
+
+  private val MISSING = 0
+  private val COMPRESSED = 1
+  private val HIGHLY_COMPRESSED = 2
+
+  /** An update with the statuses of all the map outputs, indexed by map id. */
+  def full(version: Long, statuses: Array[MapStatus]): MapStatusesUpdate = {
+    new MapStatusesUpdate(version, -1L, statuses.length, Array.range(0, statuses.length), statuses)
+  }
+
+  def write(out: DataOutputStream, update: MapStatusesUpdate): Unit = {
+    val statuses = update.statuses
+    val count = statuses.length
+    out.writeLong(update.version)
+    out.writeLong(update.sinceVersion)
+    out.writeInt(update.numMaps)
+    out.writeInt(count)
+    if (update.isDelta) {
+      val mapIds = update.mapIds
+      writeColumn(out, count, i => mapIds(i) - (if (i == 0) 0 else mapIds(i - 1) + 1))
+    }
+    writeColumn(out, count, i => statuses(i) match {
+      case null => MISSING
+      case _: CompressedMapStatus => COMPRESSED
+      case _: HighlyCompressedMapStatus => HIGHLY_COMPRESSED
+    })
+
+    val present = statuses.filter(_ != null)
+    val locations = new HashMap[BlockManagerId, Int]
+    val dictionary = new ArrayBuffer[BlockManagerId]
+    val locationIds = present.map { status =>
+      locations.getOrElseUpdate(status.location, {
+        dictionary += status.location
+        dictionary.length - 1
+      })
+    }
+    out.writeInt(dictionary.length)
+    dictionary.foreach { loc =>
+      out.writeUTF(loc.executorId)
+      out.writeUTF(loc.host)
+      out.writeInt(loc.port)
+      out.writeBoolean(loc.topologyInfo.isDefined)
+      loc.topologyInfo.foreach(out.writeUTF)
+    }
+    writeColumn(out, locationIds.length, i => locationIds(i))
+
+    val compressed = present.collect { case s: CompressedMapStatus => s.sizes }
+    writeColumn(out, compressed.length, i => compressed(i).length)
+    writeValues(out, compressed.iterator.flatMap(_.iterator).map(_ & 0xFFL))
+
+    val highlyCompressed = present.collect { case s: HighlyCompressedMapStatus => s }
+    // Unknown counts of statuses read with Java serialization are only checked against the
+    // average size, which is positive when there are non-empty blocks
+    writeColumn(out, highlyCompressed.length, { i =>
+      math.max(highlyCompressed(i).nonEmptyBlockCount, 0)
+    })
+    writeColumn(out, highlyCompressed.length, i => highlyCompressed(i).averageSize)
+    highlyCompressed.foreach(_.emptyBlockBitmap.serialize(out))
+  }
+
+  def read(in: DataInputStream): MapStatusesUpdate = {
+    val version = in.readLong()
+    val sinceVersion = in.readLong()
+    val numMaps = in.readInt()
+    val count = in.readInt()
+    val mapIds = if (sinceVersion >= 0) {
+      val gaps = new ColumnReader(in)
+      var mapId = -1
+      Array.fill(count) {
+        mapId += gaps.next().toInt + 1
+        mapId
+      }
+    } else {
+      Array.range(0, count)
+    }
+    val kinds = new ColumnReader(in)
+    val statusKinds = Array.fill(count)(kinds.next().toInt)
+
+    val dictionary = Array.fill(in.readInt()) {
+      val executorId = in.readUTF()
+      val host = in.readUTF()
+      val port = in.readInt()
+      val topologyInfo = if (in.readBoolean()) Some(in.readUTF()) else None
+      BlockManagerId(executorId, host, port, topologyInfo)
+    }
+    val locationIds = new ColumnReader(in)
+    val locations = statusKinds.map { kind =>
+      if (kind == MISSING) null else dictionary(locationIds.next().toInt)
+    }
+
+    val blockCounts = new ColumnReader(in)
+    val numBlocks = statusKinds.map { kind =>
+      if (kind == COMPRESSED) blockCounts.next().toInt else 0
+    }
+    val compressedSizes = new ColumnReader(in)
+    val statuses = new Array[MapStatus](count)
+    var i = 0
+    while (i < count) {
+      if (statusKinds(i) == COMPRESSED) {
+        val sizes = Array.fill(numBlocks(i))(compressedSizes.next().toByte)
+        statuses(i) = new CompressedMapStatus(locations(i), sizes)
+      }
+      i += 1
+    }
+
+    val nonEmptyBlockCounts = new ColumnReader(in)
+    val highlyCompressed = statusKinds.count(_ == HIGHLY_COMPRESSED)
+    val numNonEmptyBlocks = Array.fill(highlyCompressed)(nonEmptyBlockCounts.next().toInt)
+    val averageSizes = new ColumnReader(in)
+    val avgSizes = Array.fill(highlyCompressed)(averageSizes.next())
+    var j = 0
+    i = 0
+    while (i < count) {
+      if (statusKinds(i) == HIGHLY_COMPRESSED) {
+        val emptyBlocks = new RoaringBitmap()
+        emptyBlocks.deserialize(in)
+        statuses(i) =
+          HighlyCompressedMapStatus(locations(i), numNonEmptyBlocks(j), emptyBlocks, avgSizes(j))
+        j += 1
+      }
+      i += 1
+    }
+    new MapStatusesUpdate(version, sinceVersion, numMaps, mapIds, statuses)
+  }
+
+  private def writeColumn(out: DataOutputStream, count: Int, value: Int => Long): Unit = {
+    writeValues(out, Iterator.range(0, count).map(value))
+  }
+
+  /**
+   * Writes non-negative values as a byte holding their width in bits followed by the values,
+   * most significant bit first. `values` is evaluated twice, for the width and for the values.
+   */
+  private def writeValues(out: DataOutputStream, values: => Iterator[Long]): Unit = {
+    var max = 0L
+    values.foreach { v =>
+      require(v >= 0, s"Cannot bit-pack negative value $v")
+      max = math.max(max, v)
+    }
+    val width = 64 - java.lang.Long.numberOfLeadingZeros(max)
+    out.writeByte(width)
+    if (width > 0) {
+      var current = 0
+      var used = 0
+      values.foreach { v =>
+        var remaining = width
+        while (remaining > 0) {
+          val n = math.min(remaining, 8 - used)
+          current = (current << n) | ((v >>> (remaining - n)) & ((1L << n) - 1)).toInt
+          used += n
+          remaining -= n
+          if (used == 8) {
+            out.write(current)
+            current = 0
+            used = 0
+          }
+        }
+      }
+      if (used > 0) {
+        out.write(current << (8 - used))
+      }
+    }
+  }
+
+  /** Reads back the values of a column written by `writeColumn`, one at a time. */
+  private class ColumnReader(in: DataInputStream) {
+    private val width = in.readUnsignedByte()
+    private var current = 0
+    private var available = 0
+
+    def next(): Long = {
+      var result = 0L
+      var remaining = width
+      while (remaining > 0) {
+        if (available == 0) {
+          current = in.readUnsignedByte()
+          available = 8
+        }
+        val n = math.min(remaining, available)
+        result = (result << n) | ((current >>> (available - n)) & ((1 << n) - 1))
+        available -= n
+        remaining -= n
+      }
+      result
+    }
+  }
+}
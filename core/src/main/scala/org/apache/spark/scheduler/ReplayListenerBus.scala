@@ -17,12 +17,15 @@
 
 package org.apache.spark.scheduler
 
-import java.io.{InputStream, IOException}
+import java.io.{EOFException, InputStream, IOException}
 
 import scala.io.Source
+import scala.util.Try
 
 import com.fasterxml.jackson.core.JsonParseException
 import com.fasterxml.jackson.databind.exc.UnrecognizedPropertyException
+import org.apache.hadoop.fs.{FileSystem, Path}
+import org.json4s.JsonAST.JValue
 import org.json4s.jackson.JsonMethods._
 
 import org.apache.spark.internal.Logging
@@ -31,8 +34,11 @@ import org.apache.spark.util.JsonProtocol
 
 /**
  * A SparkListenerBus that can be used to replay events from serialized event data.
+ *
+ * @param replayThreads number of threads parsing the events of a log, see [[ReplayPipeline]]
  */
-private[spark] class ReplayListenerBus extends SparkListenerBus with Logging {
+private[spark] class ReplayListenerBus(replayThreads: Int = DEFAULT_REPLAY_THREADS)
+  extends SparkListenerBus with Logging {
 
   /**
    * Replay each event in the order maintained in the given stream. The stream is expected to
@@ -61,6 +67,9 @@ private[spark] class ReplayListenerBus extends SparkListenerBus with Logging {
   /**
    * Overloaded variant of [[replay()]] which accepts an iterator of lines instead of an
    * [[InputStream]]. Exposed for use by custom ApplicationHistoryProvider implementations.
+   *
+   * The lines are read by a thread of their own and parsed by `replayThreads` threads, the
+   * events being posted on the calling thread in the order of the lines.
    */
   def replay(
       lines: Iterator[String],
@@ -75,35 +84,40 @@ private[spark] class ReplayListenerBus extends SparkListenerBus with Logging {
         .zipWithIndex
         .filter { case (line, _) => eventsFilter(line) }
 
-      while (lineEntries.hasNext) {
-        try {
-          val entry = lineEntries.next()
-
-          currentLine = entry._1
-          lineNumber = entry._2 + 1
-
-          postToAll(JsonProtocol.sparkEventFromJson(parse(currentLine)))
-        } catch {
-          case e: ClassNotFoundException if KNOWN_REMOVED_CLASSES.contains(e.getMessage) =>
-            // Ignore events generated by Structured Streaming in Spark 2.0.0 and 2.0.1.
-            // It's safe since no place uses them.
-            logWarning(s"Dropped incompatible Structured Streaming log: $currentLine")
-          case e: UnrecognizedPropertyException if e.getMessage != null && e.getMessage.startsWith(
-            "Unrecognized field \"queryStatus\" " +
-              "(class org.apache.spark.sql.streaming.StreamingQueryListener$") =>
-            // Ignore events generated by Structured Streaming in Spark 2.0.2
-            // It's safe since no place uses them.
-            logWarning(s"Dropped incompatible Structured Streaming log: $currentLine")
-          case jpe: JsonParseException =>
-            // We can only ignore exception from last line of the file that might be truncated
-            // the last entry may not be the very last line in the event log, but we treat it
-            // as such in a best effort to replay the given input
-            if (!maybeTruncated || lineEntries.hasNext) {
-              throw jpe
-            } else {
-              logWarning(s"Got JsonParseException from log file $sourceName" +
-                s" at line $lineNumber, the file might not have finished writing cleanly.")
-            }
+      ReplayPipeline.parseInOrder(lineEntries, replayThreads, "event-log-replay") {
+        case (line, index) =>
+          (line, index + 1, Try(JsonProtocol.sparkEventFromJson(parse(line))))
+      } { events =>
+        while (events.hasNext) {
+          try {
+            val entry = events.next()
+
+            currentLine = entry._1
+            lineNumber = entry._2
+
+            postToAll(entry._3.get)
+          } catch {
+            case e: ClassNotFoundException if KNOWN_REMOVED_CLASSES.contains(e.getMessage) =>
+              // Ignore events generated by Structured Streaming in Spark 2.0.0 and 2.0.1.
+              // It's safe since no place uses them.
+              logWarning(s"Dropped incompatible Structured Streaming log: $currentLine")
+            case e: UnrecognizedPropertyException if e.getMessage != null &&
+              e.getMessage.startsWith("Unrecognized field \"queryStatus\" " +
+                "(class org.apache.spark.sql.streaming.StreamingQueryListener$") =>
+              // Ignore events generated by Structured Streaming in Spark 2.0.2
+              // It's safe since no place uses them.
+              logWarning(s"Dropped incompatible Structured Streaming log: $currentLine")
+            case jpe: JsonParseException =>
+              // We can only ignore exception from last line of the file that might be truncated
+              // the last entry may not be the very last line in the event log, but we treat it
+              // as such in a best effort to replay the given input
+              if (!maybeTruncated || events.hasNext) {
+                throw jpe
+              } else {
+                logWarning(s"Got JsonParseException from log file $sourceName" +
+                  s" at line $lineNumber, the file might not have finished writing cleanly.")
+              }
+          }
         }
       }
     } catch {
@@ -115,6 +129,70 @@ private[spark] class ReplayListenerBus extends SparkListenerBus with Logging {
     }
   }
 
+  /**
+   * Replays a binary event log (see [[BinaryEventLog]]). Blocks are decoded into events by
+   * `threads` threads of a [[ReplayPipeline]], one block per task, reading them at the offsets
+   * of the index of a complete log, and the events are posted in the order they were logged.
+   *
+   * `eventsFilter` is given `{"Event":"<event name>"` rather than the whole JSON of an event,
+   * which is enough for the prefix filters of the history provider.
+   */
+  def replayBinary(
+      fs: FileSystem,
+      log: Path,
+      maybeTruncated: Boolean = false,
+      eventsFilter: ReplayEventsFilter = SELECT_ALL_FILTER,
+      threads: Int = replayThreads): Unit = {
+    val accept = if (eventsFilter eq SELECT_ALL_FILTER) {
+      (_: String) => true
+    } else {
+      (name: String) => eventsFilter("{\"Event\":\"" + name + "\"")
+    }
+    val index = if (maybeTruncated) None else BinaryEventLog.readIndex(fs, log)
+    val reader = new BinaryEventLogReader(fs.open(log))
+    val shared = index.map(_ => fs.open(log))
+    try {
+      val blocks: Iterator[() => BinaryEventLogBlock] = index match {
+        case Some(offsets) =>
+          offsets.iterator.map { case (offset, _) => () => reader.blockAt(shared.get, offset) }
+        case None =>
+          Iterator.continually(reader.nextBlock()).takeWhile(_.isDefined).map(b => () => b.get)
+      }
+      ReplayPipeline.parseInOrder(blocks, threads, "binary-event-log-replay", batchSize = 1) {
+        block => block().records(accept).flatMap(toEvent(_, log.toString))
+      } { events =>
+        events.foreach(_.foreach(postToAll))
+      }
+    } catch {
+      case e: EOFException if maybeTruncated =>
+        logWarning(s"Binary event log $log ends in the middle of a block, " +
+          "the file might not have finished writing cleanly.")
+      case ioe: IOException =>
+        throw ioe
+      case e: Exception =>
+        logError(s"Exception parsing Spark event log: $log", e)
+    } finally {
+      shared.foreach(_.close())
+      reader.close()
+    }
+  }
+
+  // Drops the events that the JSON replay drops too
+  private def toEvent(json: JValue, sourceName: String): Option[SparkListenerEvent] = {
+    try {
+      Some(JsonProtocol.sparkEventFromJson(json))
+    } catch {
+      case e: ClassNotFoundException if KNOWN_REMOVED_CLASSES.contains(e.getMessage) =>
+        logWarning(s"Dropped incompatible Structured Streaming event from $sourceName")
+        None
+      case e: UnrecognizedPropertyException if e.getMessage != null && e.getMessage.startsWith(
+        "Unrecognized field \"queryStatus\" " +
+          "(class org.apache.spark.sql.streaming.StreamingQueryListener$") =>
+        logWarning(s"Dropped incompatible Structured Streaming event from $sourceName")
+        None
+    }
+  }
+
 }
 
 
@@ -125,6 +203,8 @@ private[spark] object ReplayListenerBus {
   // utility filter that selects all event logs during replay
   val SELECT_ALL_FILTER: ReplayEventsFilter = { (eventString: String) => true }
 
+  val DEFAULT_REPLAY_THREADS = math.min(8, Runtime.getRuntime.availableProcessors())
+
   /**
    * Classes that were removed. Structured Streaming doesn't use them any more. However, parsing
    * old json may fail and we can just ignore these failures.
@@ -0,0 +1,154 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.spark.scheduler
+
+import java.util.concurrent.{ArrayBlockingQueue, Callable, ExecutionException, Future,
+  FutureTask, TimeUnit}
+
+import org.apache.spark.util.ThreadUtils
+
+/**
+ * Parses the lines of a log on several threads while keeping their order: a reader thread
+ * groups the lines into batches, a pool of parser threads parses the batches, and the calling
+ * thread, acting as the sequencer, consumes the parsed lines in the order they were read.
+ *
+ * Inputs of a single batch are parsed on the calling thread, which keeps the small replays of
+ * the listing and of log tailing from starting threads.
+ */
+private[spark] object ReplayPipeline {
+
+  /** Default number of inputs parsed by a task of the pool. */
+  val BATCH_SIZE = 512
+
+  /**
+   * Parses `inputs` with `parse` on `threads` threads and calls `consume` with the results, in
+   * the order of the inputs. Failures of `parse` or of `inputs` are thrown by the iterator
+   * given to `consume`. At most `2 * threads` batches of `batchSize` inputs are read ahead of
+   * the one being consumed, and no thread of the pipeline reads `inputs` once this method
+   * returns.
+   */
+  def parseInOrder[T, R](
+      inputs: Iterator[T],
+      threads: Int,
+      name: String,
+      batchSize: Int = BATCH_SIZE)(parse: T => R)(consume: Iterator[R] => Unit): Unit = {
+    if (threads <= 1) {
+      consume(inputs.map(parse))
+    } else {
+      val batches = inputs.grouped(batchSize)
+      val first = if (batches.hasNext) batches.next() else Nil
+      if (!batches.hasNext) {
+        consume(first.iterator.map(parse))
+      } else {
+        new Pipeline(first, batches, threads, name, parse).run(consume)
+      }
+    }
+  }
+
+  private class Pipeline[T, R](
+      first: Seq[T],
+      batches: Iterator[Seq[T]],
+      threads: Int,
+      name: String,
+      parse: T => R) {
+
+    private val parsers = ThreadUtils.newDaemonFixedThreadPool(threads, name + "-parser")
+    private val parsed = new ArrayBlockingQueue[Future[Seq[R]]](threads * 2)
+    private val end = completed[Seq[R]](Right(Nil))
+    @volatile private var stopped = false
+
+    private val reader = new Thread(name + "-reader") {
+      setDaemon(true)
+
+      override def run(): Unit = {
+        try {
+          enqueue(submit(first))
+          while (!stopped && batches.hasNext) {
+            enqueue(submit(batches.next()))
+          }
+          enqueue(end)
+        } catch {
+          case e: Throwable => enqueue(completed[Seq[R]](Left(e)))
+        }
+      }
+    }
+
+    def run(consume: Iterator[R] => Unit): Unit = {
+      reader.start()
+      try {
+        consume(new Iterator[R] {
+          private var current: Iterator[R] = Iterator.empty
+          private var done = false
+
+          override def hasNext: Boolean = {
+            while (!done && !current.hasNext) {
+              val batch = parsed.take()
+              if (batch eq end) {
+                done = true
+              } else {
+                current = try {
+                  batch.get().iterator
+                } catch {
+                  case e: ExecutionException => throw e.getCause
+                }
+              }
+            }
+            current.hasNext
+          }
+
+          override def next(): R = {
+            if (!hasNext) {
+              throw new NoSuchElementException("End of log")
+            }
+            current.next()
+          }
+        })
+      } finally {
+        // The caller closes the stream behind `batches` once this returns
+        stopped = true
+        reader.join()
+        parsers.shutdownNow()
+      }
+    }
+
+    private def submit(batch: Seq[T]): Future[Seq[R]] = {
+      parsers.submit(new Callable[Seq[R]] {
+        override def call(): Seq[R] = batch.map(parse)
+      })
+    }
+
+    // Waits for room in the queue unless the sequencer is gone
+    private def enqueue(batch: Future[Seq[R]]): Unit = {
+      var queued = false
+      while (!stopped && !queued) {
+        queued = parsed.offer(batch, 100, TimeUnit.MILLISECONDS)
+      }
+    }
+  }
+
+  private def completed[R](result: Either[Throwable, R]): Future[R] = {
+    val task = new FutureTask[R](new Callable[R] {
+      override def call(): R = result match {
+        case Left(e) => throw e
+        case Right(r) => r
+      }
+    })
+    task.run()
+    task
+  }
+}
@@ -119,6 +119,22 @@ case class SparkListenerExecutorMetricsUpdate(
     accumUpdates: Seq[(Long, Int, Int, Seq[AccumulableInfo])])
   extends SparkListenerEvent
 
+/**
+ * Metrics of the sources of an executor, attached to its heartbeat (see
+ * `spark.executor.heartbeat.metrics.sources`).
+ * @param execId executor id
+ * @param host host of the executor
+ * @param timestamp time the metrics were taken, in seconds
+ * @param values metric path in its source, as in the HDFS sink's files, -> value
+ */
+@DeveloperApi
+case class SparkListenerExecutorMetricsSample(
+    execId: String,
+    host: String,
+    timestamp: Long,
+    values: Map[String, Double])
+  extends SparkListenerEvent
+
 @DeveloperApi
 case class SparkListenerApplicationStart(
     appName: String,
@@ -232,6 +248,11 @@ private[spark] trait SparkListenerInterface {
    */
   def onExecutorMetricsUpdate(executorMetricsUpdate: SparkListenerExecutorMetricsUpdate): Unit
 
+  /**
+   * Called when the driver receives the metrics of the sources of an executor in a heartbeat.
+   */
+  def onExecutorMetricsSample(executorMetricsSample: SparkListenerExecutorMetricsSample): Unit
+
   /**
    * Called when the driver registers a new executor.
    */
@@ -298,6 +319,9 @@ abstract class SparkListener extends SparkListenerInterface {
   override def onExecutorMetricsUpdate(
       executorMetricsUpdate: SparkListenerExecutorMetricsUpdate): Unit = { }
 
+  override def onExecutorMetricsSample(
+      executorMetricsSample: SparkListenerExecutorMetricsSample): Unit = { }
+
   override def onExecutorAdded(executorAdded: SparkListenerExecutorAdded): Unit = { }
 
   override def onExecutorRemoved(executorRemoved: SparkListenerExecutorRemoved): Unit = { }
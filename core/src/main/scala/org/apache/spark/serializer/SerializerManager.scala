@@ -77,6 +77,16 @@ private[spark] class SerializerManager(
 
   def encryptionEnabled: Boolean = encryptionKey.isDefined
 
+  /**
+   * Whether the streams written for consecutive reduce partitions of a map output can be read as
+   * one: they must not be encrypted, and their compression codec must allow concatenation.
+   */
+  def canReadConcatenatedShuffleStreams: Boolean = {
+    val codecSupportsConcatenation =
+      CompressionCodec.supportsConcatenationOfSerializedStreams(compressionCodec)
+    !encryptionEnabled && (!compressShuffle || codecSupportsConcatenation)
+  }
+
   def canUseKryo(ct: ClassTag[_]): Boolean = {
     primitiveAndPrimitiveArrayClassTags.contains(ct) || ct == stringClassTag
   }
@@ -106,6 +116,8 @@ private[spark] class SerializerManager(
   private def shouldCompress(blockId: BlockId): Boolean = {
     blockId match {
       case _: ShuffleBlockId => compressShuffle
+      case _: ShuffleBlockBatchId => compressShuffle
+      case _: ShuffleMergedBlockId => compressShuffle
       case _: BroadcastBlockId => compressBroadcast
       case _: RDDBlockId => compressRdds
       case _: TempLocalBlockId => compressShuffleSpill
@@ -17,10 +17,21 @@
 
 package org.apache.spark.shuffle
 
+import java.io.InputStream
+
+import scala.collection.mutable.HashMap
+import scala.util.control.NonFatal
+
+import com.google.common.io.ByteStreams
+
 import org.apache.spark._
 import org.apache.spark.internal.Logging
+import org.apache.spark.internal.config.{SHUFFLE_FETCH_CONTINUOUS_BLOCKS_IN_BATCH,
+  SHUFFLE_PUSH_ENABLED}
+import org.apache.spark.network.shuffle.ExternalShuffleClient
+import org.apache.spark.network.shuffle.protocol.MergedBlockMeta
 import org.apache.spark.serializer.SerializerManager
-import org.apache.spark.storage.{BlockManager, ShuffleBlockFetcherIterator}
+import org.apache.spark.storage._
 import org.apache.spark.util.CompletionIterator
 import org.apache.spark.util.collection.ExternalSorter
 
@@ -40,19 +51,137 @@ private[spark] class BlockStoreShuffleReader[K, C](
 
   private val dep = handle.dependency
 
+  /**
+   * Whether the partitions of each map output are fetched as one contiguous segment. The
+   * serialized and compressed streams of consecutive partitions are then read as one stream.
+   */
+  private def fetchContinuousBlocksInBatch: Boolean = {
+    endPartition - startPartition > 1 &&
+      SparkEnv.get.conf.get(SHUFFLE_FETCH_CONTINUOUS_BLOCKS_IN_BATCH) &&
+      dep.serializer.supportsRelocationOfSerializedObjects &&
+      serializerManager.canReadConcatenatedShuffleStreams
+  }
+
+  /**
+   * The blocks merged into the partitions in range by the shuffle services the map tasks pushed
+   * their blocks to, as (merger, reduce partition, merged blocks), asked from each merger with a
+   * single request. Empty when the map tasks did not push; a partition whose merged blocks cannot
+   * be found is read from the map outputs.
+   */
+  private def fetchMergedBlockMetas(): Seq[(BlockManagerId, Int, MergedBlockMeta)] = {
+    if (!SparkEnv.get.conf.get(SHUFFLE_PUSH_ENABLED) || dep.mergerLocations.isEmpty) {
+      return Nil
+    }
+    blockManager.shuffleClient match {
+      case client: ExternalShuffleClient =>
+        val reduceIdsByMerger = (startPartition until endPartition).groupBy { reduceId =>
+          ShuffleBlockPusher.mergerFor(dep.mergerLocations, reduceId)
+        }
+        reduceIdsByMerger.toSeq.flatMap { case (merger, reduceIds) =>
+          try {
+            val metas = client.getMergedBlockMetas(
+              merger.host, merger.port, handle.shuffleId, reduceIds.toArray)
+            reduceIds.zip(metas).collect {
+              case (reduceId, meta) if meta.mapIds.nonEmpty => (merger, reduceId, meta)
+            }
+          } catch {
+            case NonFatal(e) =>
+              logWarning(s"Failed to get the merged blocks of partitions " +
+                s"${reduceIds.mkString(", ")} of shuffle ${handle.shuffleId} from " +
+                s"${merger.hostPort}", e)
+              Nil
+          }
+        }
+      case _ => Nil
+    }
+  }
+
+  /**
+   * Replaces the blocks of the map outputs that were merged with the chunks of the merged
+   * partitions. Returns for each chunk the blocks of the map outputs it holds, with their
+   * addresses to fetch them from the map outputs instead when the chunk fails, and with their
+   * sizes to read them out of the chunk. A partition holding blocks of map outputs that are not
+   * registered, from an earlier attempt for instance, is read from the map outputs.
+   */
+  private def replaceMergedBlocks(
+      blocksByAddress: Seq[(BlockManagerId, Seq[(BlockId, Long)])],
+      mergedMetas: Seq[(BlockManagerId, Int, MergedBlockMeta)])
+    : (Seq[(BlockManagerId, Seq[(BlockId, Long)])],
+      Map[BlockId, Seq[(BlockManagerId, BlockId, Long)]],
+      Map[BlockId, Seq[(BlockId, Long)]]) = {
+    val unmerged = new HashMap[BlockId, (BlockManagerId, Long)]
+    for ((address, blocks) <- blocksByAddress; (blockId, size) <- blocks) {
+      unmerged(blockId) = (address, size)
+    }
+    val fallbackBlocks = new HashMap[BlockId, Seq[(BlockManagerId, BlockId, Long)]]
+    val chunkBlocks = new HashMap[BlockId, Seq[(BlockId, Long)]]
+    val usableMetas = mergedMetas.filter { case (merger, reduceId, meta) =>
+      val registered = meta.mapIds.forall { mapId =>
+        unmerged.contains(ShuffleBlockId(handle.shuffleId, mapId, reduceId))
+      }
+      if (!registered) {
+        logWarning(s"Partition $reduceId of shuffle ${handle.shuffleId} merged by " +
+          s"${merger.hostPort} holds map outputs that are not registered, reading it from the " +
+          "map outputs instead")
+      }
+      registered
+    }
+    val mergedBlocksByAddress = usableMetas.groupBy(_._1).toSeq.map { case (merger, metas) =>
+      val chunks = metas.flatMap { case (_, reduceId, meta) =>
+        meta.chunkEnds.indices.map { i =>
+          val chunk = ShuffleMergedBlockId(handle.shuffleId, reduceId, i)
+          val first = if (i > 0) meta.chunkEnds(i - 1) else 0
+          val blocks = (first until meta.chunkEnds(i)).map { b =>
+            (ShuffleBlockId(handle.shuffleId, meta.mapIds(b), reduceId): BlockId, meta.sizes(b))
+          }
+          fallbackBlocks(chunk) = blocks.map { case (blockId, _) =>
+            val (address, size) = unmerged.remove(blockId).get
+            (address, blockId, size)
+          }
+          chunkBlocks(chunk) = blocks
+          (chunk: BlockId, blocks.map(_._2).sum)
+        }
+      }
+      (merger, chunks)
+    }
+    val unmergedBlocksByAddress = blocksByAddress.map { case (address, blocks) =>
+      (address, blocks.filter { case (blockId, _) => unmerged.contains(blockId) })
+    }
+    (unmergedBlocksByAddress ++ mergedBlocksByAddress, fallbackBlocks.toMap, chunkBlocks.toMap)
+  }
+
   /** Read the combined key-values for this reduce task */
   override def read(): Iterator[Product2[K, C]] = {
+    val mergedMetas = fetchMergedBlockMetas()
+    val mapSizes = mapOutputTracker.getMapSizesByExecutorId(handle.shuffleId, startPartition,
+      endPartition, mergedMetas.isEmpty && fetchContinuousBlocksInBatch)
+    val (blocksByAddress, fallbackBlocks, chunkBlocks) = if (mergedMetas.nonEmpty) {
+      replaceMergedBlocks(mapSizes, mergedMetas)
+    } else {
+      (mapSizes, Map.empty[BlockId, Seq[(BlockManagerId, BlockId, Long)]],
+        Map.empty[BlockId, Seq[(BlockId, Long)]])
+    }
     val blockFetcherItr = new ShuffleBlockFetcherIterator(
       context,
       blockManager.shuffleClient,
       blockManager,
-      mapOutputTracker.getMapSizesByExecutorId(handle.shuffleId, startPartition, endPartition),
+      blocksByAddress,
       // Note: we use getSizeAsMb when no suffix is provided for backwards compatibility
       SparkEnv.get.conf.getSizeAsMb("spark.reducer.maxSizeInFlight", "48m") * 1024 * 1024,
-      SparkEnv.get.conf.getInt("spark.reducer.maxReqsInFlight", Int.MaxValue))
+      SparkEnv.get.conf.getInt("spark.reducer.maxReqsInFlight", Int.MaxValue),
+      blockManager.shuffleFetchMetrics,
+      fallbackBlocks)
+
+    // Split the merged chunks into the blocks of their map outputs, each its own stream
+    val blockStreams = blockFetcherItr.flatMap { case (blockId, inputStream) =>
+      chunkBlocks.get(blockId) match {
+        case Some(blocks) => MergedBlockInputStream.split(inputStream, blocks)
+        case None => Iterator.single((blockId, inputStream))
+      }
+    }
 
     // Wrap the streams for compression and encryption based on configuration
-    val wrappedStreams = blockFetcherItr.map { case (blockId, inputStream) =>
+    val wrappedStreams = blockStreams.map { case (blockId, inputStream) =>
       serializerManager.wrapStream(blockId, inputStream)
     }
 
@@ -112,3 +241,71 @@ private[spark] class BlockStoreShuffleReader[K, C](
     }
   }
 }
+
+/**
+ * The block of one map output within a chunk of a merged partition: the next `size` bytes of the
+ * chunk. Closing it skips what was not read, and closes the chunk after its last block.
+ */
+private class MergedBlockInputStream(chunk: InputStream, size: Long, isLastBlock: Boolean)
+  extends InputStream {
+
+  private[this] var remaining = size
+  private[this] var closed = false
+
+  override def read(): Int = {
+    if (remaining <= 0) {
+      -1
+    } else {
+      val b = chunk.read()
+      if (b >= 0) {
+        remaining -= 1
+      }
+      b
+    }
+  }
+
+  override def read(b: Array[Byte], off: Int, len: Int): Int = {
+    if (remaining <= 0) {
+      -1
+    } else {
+      val n = chunk.read(b, off, math.min(len.toLong, remaining).toInt)
+      if (n > 0) {
+        remaining -= n
+      }
+      n
+    }
+  }
+
+  override def skip(n: Long): Long = {
+    val skipped = chunk.skip(math.min(n, remaining))
+    remaining -= skipped
+    skipped
+  }
+
+  override def available(): Int = math.min(chunk.available().toLong, remaining).toInt
+
+  override def close(): Unit = {
+    if (!closed) {
+      closed = true
+      if (isLastBlock) {
+        chunk.close()
+      } else {
+        ByteStreams.skipFully(chunk, remaining)
+      }
+      remaining = 0
+    }
+  }
+}
+
+private object MergedBlockInputStream {
+
+  /**
+   * Reads the blocks of a merged chunk one after the other. The stream of a block is only created
+   * once the previous ones were read and closed.
+   */
+  def split(chunk: InputStream, blocks: Seq[(BlockId, Long)]): Iterator[(BlockId, InputStream)] = {
+    blocks.iterator.zipWithIndex.map { case ((blockId, size), i) =>
+      (blockId, new MergedBlockInputStream(chunk, size, i == blocks.size - 1))
+    }
+  }
+}
@@ -191,19 +191,46 @@ private[spark] class IndexShuffleBlockResolver(
     }
   }
 
+  /**
+   * The offsets of the reduce partitions of a committed map output in its data file, followed by
+   * the length of the file.
+   */
+  def getPartitionOffsets(shuffleId: Int, mapId: Int, numPartitions: Int): Array[Long] = {
+    val in = new DataInputStream(new NioBufferedFileInputStream(getIndexFile(shuffleId, mapId)))
+    try {
+      Array.fill(numPartitions + 1)(in.readLong())
+    } finally {
+      in.close()
+    }
+  }
+
   override def getBlockData(blockId: ShuffleBlockId): ManagedBuffer = {
+    getSegment(blockId.shuffleId, blockId.mapId, blockId.reduceId, blockId.reduceId + 1)
+  }
+
+  override def getBlockData(blockId: ShuffleBlockBatchId): ManagedBuffer = {
+    getSegment(blockId.shuffleId, blockId.mapId, blockId.startReduceId, blockId.endReduceId)
+  }
+
+  /** The reduce partitions [startReduceId, endReduceId), which sit next to each other. */
+  private def getSegment(
+      shuffleId: Int,
+      mapId: Int,
+      startReduceId: Int,
+      endReduceId: Int): ManagedBuffer = {
     // The block is actually going to be a range of a single map output file for this map, so
     // find out the consolidated file, then the offset within that from our index
-    val indexFile = getIndexFile(blockId.shuffleId, blockId.mapId)
+    val indexFile = getIndexFile(shuffleId, mapId)
 
     val in = new DataInputStream(new FileInputStream(indexFile))
     try {
-      ByteStreams.skipFully(in, blockId.reduceId * 8)
+      ByteStreams.skipFully(in, startReduceId * 8)
       val offset = in.readLong()
+      ByteStreams.skipFully(in, (endReduceId - startReduceId - 1) * 8)
       val nextOffset = in.readLong()
       new FileSegmentManagedBuffer(
         transportConf,
-        getDataFile(blockId.shuffleId, blockId.mapId),
+        getDataFile(shuffleId, mapId),
         offset,
         nextOffset - offset)
     } finally {
@@ -0,0 +1,145 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.spark.shuffle
+
+import java.io.{EOFException, FileInputStream}
+import java.nio.ByteBuffer
+import java.nio.channels.FileChannel
+
+import scala.collection.mutable.ArrayBuffer
+import scala.util.control.NonFatal
+
+import org.apache.spark.{ShuffleDependency, SparkConf, SparkEnv}
+import org.apache.spark.internal.Logging
+import org.apache.spark.internal.config.{SHUFFLE_PUSH_MAX_BATCH_SIZE, SHUFFLE_PUSH_MAX_BLOCK_SIZE}
+import org.apache.spark.network.shuffle.ExternalShuffleClient
+import org.apache.spark.storage.BlockManagerId
+
+/**
+ * Pushes the blocks of a committed map output to the external shuffle services that merge the
+ * reduce partitions of its shuffle, see
+ * [[org.apache.spark.network.shuffle.MergedShuffleFileManager]]. The blocks are read from the data
+ * file of the map output and pushed to each service in batches of at most
+ * `spark.shuffle.push.maxBlockBatchSize` bytes. Blocks larger than
+ * `spark.shuffle.push.maxBlockSizeToPush`, and those of a batch that fails to be pushed, are left
+ * for reducers to fetch from the map output.
+ */
+private[spark] class ShuffleBlockPusher(conf: SparkConf) extends Logging {
+
+  private val maxBlockSize = conf.get(SHUFFLE_PUSH_MAX_BLOCK_SIZE)
+  private val maxBatchSize = conf.get(SHUFFLE_PUSH_MAX_BATCH_SIZE)
+
+  def pushBlocks(
+      client: ExternalShuffleClient,
+      resolver: IndexShuffleBlockResolver,
+      dep: ShuffleDependency[_, _, _],
+      mapId: Int): Unit = {
+    val mergers = dep.mergerLocations
+    val numPartitions = dep.partitioner.numPartitions
+    val offsets = resolver.getPartitionOffsets(dep.shuffleId, mapId, numPartitions)
+    val channel = new FileInputStream(resolver.getDataFile(dep.shuffleId, mapId)).getChannel
+    try {
+      for (m <- mergers.indices) {
+        val reduceIds = new ArrayBuffer[Int]
+        val blocks = new ArrayBuffer[Array[Byte]]
+        var batchSize = 0L
+        // The reduce partitions merged by mergers(m), see ShuffleBlockPusher.mergerFor
+        var reduceId = m
+        while (reduceId < numPartitions) {
+          val length = offsets(reduceId + 1) - offsets(reduceId)
+          if (length > 0 && length <= maxBlockSize) {
+            if (batchSize + length > maxBatchSize && blocks.nonEmpty) {
+              push(client, mergers(m), dep.shuffleId, mapId, reduceIds, blocks)
+              reduceIds.clear()
+              blocks.clear()
+              batchSize = 0
+            }
+            reduceIds += reduceId
+            blocks += read(channel, offsets(reduceId), length.toInt)
+            batchSize += length
+          }
+          reduceId += mergers.size
+        }
+        if (blocks.nonEmpty) {
+          push(client, mergers(m), dep.shuffleId, mapId, reduceIds, blocks)
+        }
+      }
+    } finally {
+      channel.close()
+    }
+  }
+
+  private def read(channel: FileChannel, position: Long, length: Int): Array[Byte] = {
+    val buf = ByteBuffer.allocate(length)
+    while (buf.hasRemaining) {
+      if (channel.read(buf, position + buf.position()) < 0) {
+        throw new EOFException(s"Reached the end of the map output reading $length bytes at " +
+          position)
+      }
+    }
+    buf.array()
+  }
+
+  private def push(
+      client: ExternalShuffleClient,
+      merger: BlockManagerId,
+      shuffleId: Int,
+      mapId: Int,
+      reduceIds: ArrayBuffer[Int],
+      blocks: ArrayBuffer[Array[Byte]]): Unit = {
+    try {
+      client.pushBlocks(merger.host, merger.port, shuffleId, mapId, reduceIds.toArray,
+        blocks.toArray)
+    } catch {
+      case NonFatal(e) =>
+        logWarning(s"Failed to push ${blocks.size} blocks of map $mapId of shuffle $shuffleId " +
+          s"to ${merger.hostPort}, reducers will fetch them from the map output", e)
+    }
+  }
+}
+
+private[spark] object ShuffleBlockPusher extends Logging {
+
+  /** Executor id of the [[BlockManagerId]]s of the shuffle services that merge pushed blocks. */
+  val MERGER_EXECUTOR_ID = "shuffle-merger"
+
+  /** The shuffle service that merges a reduce partition. */
+  def mergerFor(mergers: IndexedSeq[BlockManagerId], reduceId: Int): BlockManagerId = {
+    mergers(reduceId % mergers.size)
+  }
+
+  /**
+   * Pushes the blocks of a committed map output when its shuffle has mergers. Failures are only
+   * logged, as reducers fall back to the map output for anything that was not merged.
+   */
+  def pushMapOutput(dep: ShuffleDependency[_, _, _], mapId: Int): Unit = {
+    val env = SparkEnv.get
+    if (dep.mergerLocations.nonEmpty) {
+      (env.blockManager.shuffleClient, env.shuffleManager.shuffleBlockResolver) match {
+        case (client: ExternalShuffleClient, resolver: IndexShuffleBlockResolver) =>
+          try {
+            new ShuffleBlockPusher(env.conf).pushBlocks(client, resolver, dep, mapId)
+          } catch {
+            case NonFatal(e) =>
+              logWarning(s"Failed to push the blocks of map $mapId of shuffle ${dep.shuffleId}", e)
+          }
+        case _ =>
+      }
+    }
+  }
+}
@@ -17,8 +17,9 @@
 
 package org.apache.spark.shuffle
 
-import org.apache.spark.network.buffer.ManagedBuffer
-import org.apache.spark.storage.ShuffleBlockId
+import org.apache.spark.network.buffer.{ManagedBuffer, NettyManagedBuffer}
+import org.apache.spark.storage.{ShuffleBlockBatchId, ShuffleBlockId}
+import org.apache.spark.util.io.ChunkedByteBuffer
 
 private[spark]
 /**
@@ -36,5 +37,17 @@ trait ShuffleBlockResolver {
    */
   def getBlockData(blockId: ShuffleBlockId): ManagedBuffer
 
+  /**
+   * Retrieve the data for the specified range of reduce partitions of a map output, as one
+   * buffer. By default the blocks of the range are read one by one and concatenated in memory;
+   * resolvers that store the range contiguously should serve it without copying.
+   */
+  def getBlockData(blockId: ShuffleBlockBatchId): ManagedBuffer = {
+    val chunks = (blockId.startReduceId until blockId.endReduceId).map { reduceId =>
+      getBlockData(ShuffleBlockId(blockId.shuffleId, blockId.mapId, reduceId)).nioByteBuffer()
+    }
+    new NettyManagedBuffer(new ChunkedByteBuffer(chunks.toArray).toNetty)
+  }
+
   def stop(): Unit
 }
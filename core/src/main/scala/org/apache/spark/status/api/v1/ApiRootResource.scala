@@ -116,6 +116,22 @@ private[v1] class ApiRootResource extends UIRootFromServletContext {
     }
   }
 
+  @Path("applications/{appId}/executorMetrics")
+  def getExecutorMetrics(@PathParam("appId") appId: String): ExecutorMetricsResource = {
+    uiRoot.withSparkUI(appId, None) { ui =>
+      new ExecutorMetricsResource(ui.hDFSExecutorMetricsListener)
+    }
+  }
+
+  @Path("applications/{appId}/{attemptId}/executorMetrics")
+  def getExecutorMetrics(
+      @PathParam("appId") appId: String,
+      @PathParam("attemptId") attemptId: String): ExecutorMetricsResource = {
+    uiRoot.withSparkUI(appId, Some(attemptId)) { ui =>
+      new ExecutorMetricsResource(ui.hDFSExecutorMetricsListener)
+    }
+  }
+
 
   @Path("applications/{appId}/stages")
   def getStages(@PathParam("appId") appId: String): AllStagesResource = {
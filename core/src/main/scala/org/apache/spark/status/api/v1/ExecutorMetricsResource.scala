@@ -0,0 +1,149 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.spark.status.api.v1
+
+import java.io.OutputStream
+import java.util.{List => JList}
+import java.util.regex.Pattern
+import javax.ws.rs.{DefaultValue, GET, Produces, QueryParam}
+import javax.ws.rs.core.{MediaType, Response, StreamingOutput}
+
+import scala.collection.JavaConverters._
+
+import com.fasterxml.jackson.core.{JsonEncoding, JsonFactory}
+
+import org.apache.spark.ui.{ExecutorMetricsRollups, HDFSExecutorMetricsListener}
+
+/**
+ * Executor and host metrics replayed from the files of the HDFS sink, read from the rollups of
+ * [[HDFSExecutorMetricsListener]].
+ *
+ * Query parameters:
+ *  - `metric`: metric path, `*` matches any characters (e.g. `cpu.*`); may be repeated,
+ *    all metrics if absent
+ *  - `host`: `<host>_<executor id>`, with the same wildcards; may be repeated
+ *  - `minTime`, `maxTime`: time range, in seconds since the epoch. When the rollups of the
+ *    listener no longer hold `minTime` at the resolution asked for, the range is read back from
+ *    the indexed files of the HDFS sink by the `windowLoader` of the listener, if any
+ *  - `resolution`: `raw`, `10s`, `1m`, `10m` or `auto` (the default), which picks the finest
+ *    resolution that draws the time range with about one point per pixel
+ *  - `pixels`: width of the chart for `auto`
+ *
+ * The response is `{"resolution", "width", "series": [{"metric", "host", "points":
+ * [[timestamp, min, max, avg, last], ...]}, ...]}` and is streamed one series at a time.
+ */
+@Produces(Array(MediaType.APPLICATION_JSON))
+private[v1] class ExecutorMetricsResource(listener: HDFSExecutorMetricsListener) {
+
+  @GET
+  def executorMetrics(
+      @QueryParam("metric") metrics: JList[String],
+      @QueryParam("host") hosts: JList[String],
+      @DefaultValue("0") @QueryParam("minTime") minTime: Long,
+      @DefaultValue("9223372036854775807") @QueryParam("maxTime") maxTime: Long,
+      @DefaultValue("auto") @QueryParam("resolution") resolution: String,
+      @DefaultValue("1000") @QueryParam("pixels") pixels: Int): Response = {
+    val metricFilter = ExecutorMetricsResource.globFilter(metrics.asScala)
+    val hostFilter = ExecutorMetricsResource.globFilter(hosts.asScala)
+
+    val requestedTier = if (resolution == "auto") {
+      None
+    } else {
+      Some(ExecutorMetricsRollups.tier(resolution).getOrElse(
+        throw new BadParameterException("resolution", "one of raw, 10s, 1m, 10m or auto",
+          resolution)))
+    }
+
+    // The rollups of the window when they have to be read back from the files, else None
+    val window = listener.windowLoader.filter(_ => minTime > 0).flatMap { loader =>
+      val dropped = listener.synchronized {
+        val rollups = listener.rollups
+        rollups.timeRange.exists { case (first, last) =>
+          val tier = requestedTier.getOrElse(ExecutorMetricsRollups.finestTier(
+            math.max(minTime, first), math.min(maxTime, last), pixels))
+          !rollups.retains(tier, math.max(minTime, first))
+        }
+      }
+      if (dropped) Some(loader.loadWindow(minTime, maxTime, listener.retainedBuckets)) else None
+    }
+
+    // Only the listener's rollups are shared, the ones of a window are this request's own
+    def withRollups[T](f: ExecutorMetricsRollups => T): T = window match {
+      case Some(rollups) => f(rollups)
+      case None => listener.synchronized(f(listener.rollups))
+    }
+
+    val (tier, selected) = withRollups { rollups =>
+      val tier = requestedTier.getOrElse {
+        val (first, last) = rollups.timeRange.getOrElse((0L, 0L))
+        rollups.chooseTier(math.max(minTime, first), math.min(maxTime, last), pixels)
+      }
+      (tier, rollups.metricNames.filter(metricFilter))
+    }
+
+    val stream = new StreamingOutput {
+      override def write(output: OutputStream): Unit = {
+        val generator = new JsonFactory().createGenerator(output, JsonEncoding.UTF8)
+        generator.writeStartObject()
+        generator.writeStringField("resolution", tier.name)
+        generator.writeNumberField("width", tier.width)
+        generator.writeArrayFieldStart("series")
+        selected.foreach { metric =>
+          // Only one metric is copied out of the listener at a time
+          val series = withRollups(_.points(metric, tier, minTime, maxTime, hostFilter))
+          series.foreach { case (host, points) =>
+            generator.writeStartObject()
+            generator.writeStringField("metric", metric)
+            generator.writeStringField("host", host)
+            generator.writeArrayFieldStart("points")
+            points.foreach { p =>
+              generator.writeStartArray()
+              generator.writeNumber(p.timestamp)
+              generator.writeNumber(p.min)
+              generator.writeNumber(p.max)
+              generator.writeNumber(p.avg)
+              generator.writeNumber(p.last)
+              generator.writeEndArray()
+            }
+            generator.writeEndArray()
+            generator.writeEndObject()
+          }
+          generator.flush()
+        }
+        generator.writeEndArray()
+        generator.writeEndObject()
+        generator.close()
+      }
+    }
+    Response.ok(stream).`type`(MediaType.APPLICATION_JSON).build()
+  }
+}
+
+private[v1] object ExecutorMetricsResource {
+
+  /** Matches any of the patterns, `*` standing for any characters; everything if empty. */
+  def globFilter(patterns: Seq[String]): String => Boolean = {
+    if (patterns.isEmpty) {
+      _ => true
+    } else {
+      val regex = Pattern.compile(patterns.map { pattern =>
+        pattern.split("\\*", -1).map(Pattern.quote).mkString(".*")
+      }.mkString("|"))
+      s => regex.matcher(s).matches()
+    }
+  }
+}
@@ -68,7 +68,7 @@ private[v1] class OneStageResource(ui: SparkUI) {
             throw new BadParameterException("quantiles", "double", s)
         }
       }
-      AllStagesResource.taskMetricDistributions(stage.ui.taskData.values, quantiles)
+      AllStagesResource.taskMetricDistributions(stage.ui.tasks, quantiles)
     }
   }
 
@@ -81,9 +81,31 @@ private[v1] class OneStageResource(ui: SparkUI) {
       @DefaultValue("20") @QueryParam("length") length: Int,
       @DefaultValue("ID") @QueryParam("sortBy") sortBy: TaskSorting): Seq[TaskData] = {
     withStageAttempt(stageId, stageAttemptId) { stage =>
-      val tasks = stage.ui.taskData.values.map{AllStagesResource.convertTaskData}.toIndexedSeq
-        .sorted(OneStageResource.ordering(sortBy))
-      tasks.slice(offset, offset + length)
+      stage.ui.storedTasks match {
+        // Stored tasks are in the order of their ids, so only the page is read
+        case Some(stored) if sortBy == ID && stage.ui.taskData.isEmpty =>
+          stored.slice(offset, offset + length).map(AllStagesResource.convertTaskData)
+        case _ =>
+          val tasks = stage.ui.tasks.map(AllStagesResource.convertTaskData).toIndexedSeq
+            .sorted(OneStageResource.ordering(sortBy))
+          tasks.slice(offset, offset + length)
+      }
+    }
+  }
+
+  @GET
+  @Path("/{stageAttemptId: \\d+}/resources")
+  def resourceUsage(
+      @PathParam("stageId") stageId: Int,
+      @PathParam("stageAttemptId") stageAttemptId: Int): StageResourceUsage = {
+    withStageAttempt(stageId, stageAttemptId) { stage =>
+      ui.taskResourceAttributionListener.stageUsage(stageId, stageAttemptId).map { usage =>
+        new StageResourceUsage(usage.cpuSeconds, usage.diskBytes, usage.networkBytes,
+          usage.samples)
+      }.getOrElse {
+        throw new NotFoundException(
+          s"no executor metrics sampled while stage $stageId:$stageAttemptId ran")
+      }
     }
   }
 
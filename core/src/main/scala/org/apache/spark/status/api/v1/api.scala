@@ -241,6 +241,12 @@ class ShuffleWriteMetricDistributions private[spark](
     val writeRecords: IndexedSeq[Double],
     val writeTime: IndexedSeq[Double])
 
+class StageResourceUsage private[spark](
+    val cpuSeconds: Double,
+    val diskBytes: Double,
+    val networkBytes: Double,
+    val samples: Long)
+
 class AccumulableInfo private[spark](
     val id: Long,
     val name: String,
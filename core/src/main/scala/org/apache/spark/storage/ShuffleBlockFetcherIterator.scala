@@ -18,7 +18,7 @@
 package org.apache.spark.storage
 
 import java.io.InputStream
-import java.util.concurrent.LinkedBlockingQueue
+import java.util.concurrent.{LinkedBlockingQueue, TimeUnit}
 import javax.annotation.concurrent.GuardedBy
 
 import scala.collection.mutable.{ArrayBuffer, HashSet, Queue}
@@ -49,6 +49,10 @@ import org.apache.spark.util.Utils
  *                        order to throttle the memory usage.
  * @param maxBytesInFlight max size (in bytes) of remote blocks to fetch at any given point.
  * @param maxReqsInFlight max number of remote requests to fetch blocks at any given point.
+ * @param fetchMetrics [[ShuffleFetchMetrics]] of the executor, shared by all its iterators
+ * @param fallbackBlocks for each chunk of a partition merged by a shuffle service, the address,
+ *                       id and size of the blocks of the map outputs it holds, which are fetched
+ *                       instead when the chunk cannot be fetched or read.
  */
 private[spark]
 final class ShuffleBlockFetcherIterator(
@@ -57,7 +61,9 @@ final class ShuffleBlockFetcherIterator(
     blockManager: BlockManager,
     blocksByAddress: Seq[(BlockManagerId, Seq[(BlockId, Long)])],
     maxBytesInFlight: Long,
-    maxReqsInFlight: Int)
+    maxReqsInFlight: Int,
+    fetchMetrics: ShuffleFetchMetrics,
+    fallbackBlocks: Map[BlockId, Seq[(BlockManagerId, BlockId, Long)]] = Map.empty)
   extends Iterator[(BlockId, InputStream)] with Logging {
 
   import ShuffleBlockFetcherIterator._
@@ -137,6 +143,7 @@ final class ShuffleBlockFetcherIterator(
     synchronized {
       isZombie = true
     }
+    fetchMetrics.inFlightReleased(reqsInFlight, bytesInFlight)
     releaseCurrentResultBuffer()
     // Release buffers in the results queue
     val iter = results.iterator()
@@ -159,6 +166,8 @@ final class ShuffleBlockFetcherIterator(
       req.blocks.size, Utils.bytesToString(req.size), req.address.hostPort))
     bytesInFlight += req.size
     reqsInFlight += 1
+    fetchMetrics.requestSent(req.size)
+    val sentTime = System.nanoTime()
 
     // so we can look up the size of each blockID
     val sizeMap = req.blocks.map { case (blockId, size) => (blockId.toString, size) }.toMap
@@ -169,6 +178,7 @@ final class ShuffleBlockFetcherIterator(
     shuffleClient.fetchBlocks(address.host, address.port, address.executorId, blockIds.toArray,
       new BlockFetchingListener {
         override def onBlockFetchSuccess(blockId: String, buf: ManagedBuffer): Unit = {
+          fetchMetrics.remoteBlockReceived(buf.size)
           // Only add the buffer to results queue if the iterator is not zombie,
           // i.e. cleanup() has not been called yet.
           ShuffleBlockFetcherIterator.this.synchronized {
@@ -180,14 +190,28 @@ final class ShuffleBlockFetcherIterator(
               results.put(new SuccessFetchResult(BlockId(blockId), address, sizeMap(blockId), buf,
                 remainingBlocks.isEmpty))
               logDebug("remainingBlocks: " + remainingBlocks)
+              if (remainingBlocks.isEmpty) {
+                fetchMetrics.remoteLatencyMillis.update(
+                  TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - sentTime))
+              }
             }
           }
           logTrace("Got remote block " + blockId + " after " + Utils.getUsedTimeMs(startTime))
         }
 
         override def onBlockFetchFailure(blockId: String, e: Throwable): Unit = {
-          logError(s"Failed to get block(s) from ${req.address.host}:${req.address.port}", e)
-          results.put(new FailureFetchResult(BlockId(blockId), address, e))
+          if (fallbackBlocks.contains(BlockId(blockId))) {
+            ShuffleBlockFetcherIterator.this.synchronized {
+              if (!isZombie) {
+                remainingBlocks -= blockId
+                results.put(new FallbackFetchResult(BlockId(blockId), address, sizeMap(blockId),
+                  remainingBlocks.isEmpty, e))
+              }
+            }
+          } else {
+            logError(s"Failed to get block(s) from ${req.address.host}:${req.address.port}", e)
+            results.put(new FailureFetchResult(BlockId(blockId), address, e))
+          }
         }
       }
     )
@@ -252,20 +276,51 @@ final class ShuffleBlockFetcherIterator(
    */
   private[this] def fetchLocalBlocks() {
     val iter = localBlocks.iterator
-    while (iter.hasNext) {
-      val blockId = iter.next()
-      try {
-        val buf = blockManager.getBlockData(blockId)
-        shuffleMetrics.incLocalBlocksFetched(1)
-        shuffleMetrics.incLocalBytesRead(buf.size)
-        buf.retain()
-        results.put(new SuccessFetchResult(blockId, blockManager.blockManagerId, 0, buf, false))
-      } catch {
-        case e: Exception =>
-          // If we see an exception, stop immediately.
-          logError(s"Error occurred while fetching local blocks", e)
-          results.put(new FailureFetchResult(blockId, blockManager.blockManagerId, e))
-          return
+    var failed = false
+    // If we see an exception, stop immediately.
+    while (iter.hasNext && !failed) {
+      failed = !fetchLocalBlock(iter.next())
+    }
+  }
+
+  /** Puts the result of reading a local block into [[results]], returns whether it was read. */
+  private[this] def fetchLocalBlock(blockId: BlockId): Boolean = {
+    try {
+      val openTime = System.nanoTime()
+      val buf = blockManager.getBlockData(blockId)
+      fetchMetrics.localLatencyMicros.update(
+        TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - openTime))
+      shuffleMetrics.incLocalBlocksFetched(1)
+      shuffleMetrics.incLocalBytesRead(buf.size)
+      buf.retain()
+      results.put(new SuccessFetchResult(blockId, blockManager.blockManagerId, 0, buf, false))
+      true
+    } catch {
+      case e: Exception =>
+        logError(s"Error occurred while fetching local blocks", e)
+        results.put(new FailureFetchResult(blockId, blockManager.blockManagerId, e))
+        false
+    }
+  }
+
+  /**
+   * Fetches the blocks of the map outputs held by a merged chunk that could not be fetched or
+   * read. They take the place of the chunk among the blocks to fetch.
+   */
+  private[this] def fetchFallbackBlocks(
+      blockId: BlockId,
+      address: BlockManagerId,
+      e: Throwable): Unit = {
+    val blocks = fallbackBlocks(blockId)
+    logWarning(s"Failed to get merged block $blockId from ${address.hostPort}, " +
+      s"fetching ${blocks.map(_._2).mkString(", ")} from the map outputs instead", e)
+    numBlocksToFetch += blocks.size - 1
+    blocks.groupBy(_._1).foreach { case (address, addressBlocks) =>
+      if (address.executorId == blockManager.blockManagerId.executorId) {
+        addressBlocks.foreach { case (_, blockId, _) => fetchLocalBlock(blockId) }
+      } else {
+        fetchRequests += new FetchRequest(address,
+          addressBlocks.map { case (_, blockId, size) => (blockId, size) })
       }
     }
   }
@@ -305,40 +360,58 @@ final class ShuffleBlockFetcherIterator(
    */
   override def next(): (BlockId, InputStream) = {
     numBlocksProcessed += 1
-    val startFetchWait = System.currentTimeMillis()
-    currentResult = results.take()
-    val result = currentResult
-    val stopFetchWait = System.currentTimeMillis()
-    shuffleMetrics.incFetchWaitTime(stopFetchWait - startFetchWait)
-
-    result match {
-      case SuccessFetchResult(_, address, size, buf, isNetworkReqDone) =>
-        if (address != blockManager.blockManagerId) {
-          shuffleMetrics.incRemoteBytesRead(buf.size)
-          shuffleMetrics.incRemoteBlocksFetched(1)
-        }
-        bytesInFlight -= size
-        if (isNetworkReqDone) {
-          reqsInFlight -= 1
-          logDebug("Number of requests in flight " + reqsInFlight)
-        }
-      case _ =>
-    }
-    // Send fetch requests up to maxBytesInFlight
-    fetchUpToMaxBytes()
+    var block: (BlockId, InputStream) = null
+    // A merged chunk that cannot be fetched or read is replaced by the blocks it holds
+    while (block == null) {
+      val startFetchWait = System.currentTimeMillis()
+      currentResult = results.take()
+      val result = currentResult
+      val stopFetchWait = System.currentTimeMillis()
+      shuffleMetrics.incFetchWaitTime(stopFetchWait - startFetchWait)
 
-    result match {
-      case FailureFetchResult(blockId, address, e) =>
-        throwFetchFailedException(blockId, address, e)
+      result match {
+        case SuccessFetchResult(_, address, size, buf, isNetworkReqDone) =>
+          if (address != blockManager.blockManagerId) {
+            shuffleMetrics.incRemoteBytesRead(buf.size)
+            shuffleMetrics.incRemoteBlocksFetched(1)
+          }
+          bytesInFlight -= size
+          if (isNetworkReqDone) {
+            reqsInFlight -= 1
+            logDebug("Number of requests in flight " + reqsInFlight)
+          }
+          fetchMetrics.inFlightReleased(if (isNetworkReqDone) 1 else 0, size)
+        case FallbackFetchResult(_, _, size, isNetworkReqDone, _) =>
+          bytesInFlight -= size
+          if (isNetworkReqDone) {
+            reqsInFlight -= 1
+          }
+          fetchMetrics.inFlightReleased(if (isNetworkReqDone) 1 else 0, size)
+        case _ =>
+      }
 
-      case SuccessFetchResult(blockId, address, _, buf, _) =>
-        try {
-          (result.blockId, new BufferReleasingInputStream(buf.createInputStream(), this))
-        } catch {
-          case NonFatal(t) =>
-            throwFetchFailedException(blockId, address, t)
-        }
+      result match {
+        case FailureFetchResult(blockId, address, e) =>
+          throwFetchFailedException(blockId, address, e)
+
+        case FallbackFetchResult(blockId, address, _, _, e) =>
+          fetchFallbackBlocks(blockId, address, e)
+
+        case SuccessFetchResult(blockId, address, _, buf, _) =>
+          try {
+            block = (result.blockId, new BufferReleasingInputStream(buf.createInputStream(), this))
+          } catch {
+            case NonFatal(t) if fallbackBlocks.contains(blockId) =>
+              releaseCurrentResultBuffer()
+              fetchFallbackBlocks(blockId, address, t)
+            case NonFatal(t) =>
+              throwFetchFailedException(blockId, address, t)
+          }
+      }
+      // Send fetch requests up to maxBytesInFlight
+      fetchUpToMaxBytes()
     }
+    block
   }
 
   private def fetchUpToMaxBytes(): Unit = {
@@ -355,6 +428,13 @@ final class ShuffleBlockFetcherIterator(
     blockId match {
       case ShuffleBlockId(shufId, mapId, reduceId) =>
         throw new FetchFailedException(address, shufId.toInt, mapId.toInt, reduceId, e)
+      case ShuffleBlockBatchId(shufId, mapId, startReduceId, _) =>
+        throw new FetchFailedException(address, shufId, mapId, startReduceId, e)
+      case ShuffleMergedBlockId(_, _, _) =>
+        // Merged chunks are fetched from the map outputs when they fail, retrying the stage
+        // would not make a merger serve them
+        throw new SparkException(s"Failed to get merged block $blockId from " +
+          s"${address.hostPort} with no map outputs to fetch it from instead", e)
       case _ =>
         throw new SparkException(
           "Failed to get block " + blockId + ", which is not a shuffle block", e)
@@ -447,4 +527,21 @@ object ShuffleBlockFetcherIterator {
       address: BlockManagerId,
       e: Throwable)
     extends FetchResult
+
+  /**
+   * Result of a fetch from a merged chunk unsuccessfully, which is fetched from the map output
+   * instead.
+   * @param blockId block id of the merged chunk
+   * @param address shuffle service that the chunk was attempted to be fetched from
+   * @param size estimated size of the chunk, used to calculate bytesInFlight.
+   * @param isNetworkReqDone Is this the last network request for this host in this fetch request.
+   * @param e the failure exception
+   */
+  private[storage] case class FallbackFetchResult(
+      blockId: BlockId,
+      address: BlockManagerId,
+      size: Long,
+      isNetworkReqDone: Boolean,
+      e: Throwable)
+    extends FetchResult
 }
@@ -0,0 +1,58 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.spark.storage
+
+import java.util.concurrent.atomic.AtomicLong
+
+import com.codahale.metrics.{ExponentiallyDecayingReservoir, Histogram}
+
+/**
+ * Shuffle fetches of all the [[ShuffleBlockFetcherIterator]]s of a block manager, whatever the
+ * task they read for. Published by [[ShuffleTransferSource]].
+ */
+private[spark] class ShuffleFetchMetrics {
+
+  private val _requestsInFlight = new AtomicLong
+  private val _bytesInFlight = new AtomicLong
+  private val _remoteBytesReceived = new AtomicLong
+
+  /** Time from sending a remote fetch request to receiving the last of its blocks. */
+  val remoteLatencyMillis = new Histogram(new ExponentiallyDecayingReservoir)
+
+  /** Time to open a local block. */
+  val localLatencyMicros = new Histogram(new ExponentiallyDecayingReservoir)
+
+  def requestsInFlight: Long = _requestsInFlight.get()
+
+  def bytesInFlight: Long = _bytesInFlight.get()
+
+  def remoteBytesReceived: Long = _remoteBytesReceived.get()
+
+  def requestSent(bytes: Long): Unit = {
+    _requestsInFlight.incrementAndGet()
+    _bytesInFlight.addAndGet(bytes)
+  }
+
+  /** Called when the blocks of requests were taken by the task, or given up. */
+  def inFlightReleased(requests: Int, bytes: Long): Unit = {
+    _requestsInFlight.addAndGet(-requests)
+    _bytesInFlight.addAndGet(-bytes)
+  }
+
+  def remoteBlockReceived(bytes: Long): Unit = _remoteBytesReceived.addAndGet(bytes)
+}
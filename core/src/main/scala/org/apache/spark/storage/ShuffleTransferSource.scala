@@ -0,0 +1,97 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.spark.storage
+
+import scala.collection.JavaConverters._
+
+import com.codahale.metrics.{Gauge, MetricRegistry, MetricSet}
+
+import org.apache.spark.SparkConf
+import org.apache.spark.metrics.source.{SampledCounterSource, SamplingEpoch}
+
+/**
+ * Shuffle and block transfers of an executor: the per second rates of the bytes it fetched from
+ * other nodes and of the bytes it served them, to tell shuffle traffic apart from the network
+ * rates of the host published by `SigarSource` (the name of a source is not part of the path
+ * its values are written under, so these must not reuse the names of the host rates); the
+ * fetch requests and bytes in flight across all tasks, against the `maxBytesInFlight` of each
+ * task; the latencies of remote and local fetches; and the memory of the Netty buffer allocators
+ * of the transfer clients and server, with the streams of blocks the server has open.
+ *
+ * Must be created once the block manager is initialized.
+ */
+private[spark] class ShuffleTransferSource(blockManager: BlockManager, conf: SparkConf)
+  extends SampledCounterSource {
+  import ShuffleTransferSource._
+
+  override val metricRegistry = new MetricRegistry()
+
+  override val sourceName = "shuffle"
+
+  override protected val counterCount: Int = COUNTERS
+
+  override protected val levelCount: Int = LEVELS
+
+  private val fetchMetrics = blockManager.shuffleFetchMetrics
+
+  private val maxBytesInFlight =
+    conf.getSizeAsMb("spark.reducer.maxSizeInFlight", "48m") * 1024 * 1024
+
+  registerRate("shuffle.fetchedBytesPerSecond", BYTES_RECEIVED)
+  registerRate("shuffle.servedBytesPerSecond", BYTES_SENT)
+  registerLevel("fetch.requestsInFlight", REQUESTS_IN_FLIGHT)
+  registerLevel("fetch.bytesInFlight", BYTES_IN_FLIGHT)
+  metricRegistry.register("fetch.maxBytesInFlight", new Gauge[Long] {
+    override def getValue: Long = maxBytesInFlight
+  })
+  metricRegistry.register("fetch.remoteLatencyMillis", fetchMetrics.remoteLatencyMillis)
+  metricRegistry.register("fetch.localLatencyMicros", fetchMetrics.localLatencyMicros)
+
+  private def registerAll(prefix: String, metrics: MetricSet): Unit = {
+    metrics.getMetrics.asScala.foreach { case (name, metric) =>
+      metricRegistry.register(MetricRegistry.name(prefix, name), metric)
+    }
+  }
+
+  registerAll("blockTransfer", blockManager.blockTransferService.shuffleMetrics())
+  if (blockManager.shuffleClient ne blockManager.blockTransferService) {
+    registerAll("shuffleServiceClient", blockManager.shuffleClient.shuffleMetrics())
+  }
+
+  sample(SamplingEpoch.initial())
+
+  override protected def read(counters: Array[Long], levels: Array[Long]): Unit = {
+    counters(BYTES_RECEIVED) = fetchMetrics.remoteBytesReceived
+    counters(BYTES_SENT) = blockManager.blockTransferService.servedBytes
+    levels(REQUESTS_IN_FLIGHT) = fetchMetrics.requestsInFlight
+    levels(BYTES_IN_FLIGHT) = fetchMetrics.bytesInFlight
+  }
+}
+
+private object ShuffleTransferSource {
+
+  // Indices of the counters
+  private val BYTES_RECEIVED = 0
+  private val BYTES_SENT = 1
+  private val COUNTERS = 2
+
+  // Indices of the levels
+  private val REQUESTS_IN_FLIGHT = 0
+  private val BYTES_IN_FLIGHT = 1
+  private val LEVELS = 2
+}
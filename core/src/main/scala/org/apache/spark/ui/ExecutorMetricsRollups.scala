@@ -0,0 +1,285 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.spark.ui
+
+import scala.collection.mutable
+
+import org.apache.spark.metrics.hdfs.ExecutorMetricsRecord
+
+/**
+ * A resolution at which executor metrics are kept. Every bucket of `width` seconds holds the
+ * min, max, average and last value of the samples that fell into it; the raw tier (width 0)
+ * holds every sample in its own bucket.
+ */
+private[spark] case class RollupTier(name: String, width: Long)
+
+/** One bucket of a rolled up series. `timestamp` is the start of the bucket, in seconds. */
+private[spark] case class RollupPoint(
+    timestamp: Long,
+    min: Double,
+    max: Double,
+    avg: Double,
+    last: Double)
+
+private[spark] object ExecutorMetricsRollups {
+
+  val RAW = RollupTier("raw", 0)
+
+  val TIERS: Seq[RollupTier] =
+    Seq(RAW, RollupTier("10s", 10), RollupTier("1m", 60), RollupTier("10m", 600))
+
+  def tier(name: String): Option[RollupTier] = TIERS.find(_.name == name)
+
+  /** The finest tier that draws `[from, to]` with no more than about one bucket per pixel. */
+  def finestTier(from: Long, to: Long, pixels: Int): RollupTier = {
+    val secondsPerPixel = math.max(0L, to - from) / math.max(1, pixels)
+    TIERS.find(_.width >= secondsPerPixel).getOrElse(TIERS.last)
+  }
+
+  /** Flattens the nested `values` of an executor metrics sample into `path -> value`. */
+  def flatten(values: Map[String, Any], prefix: String = ""): Iterator[(String, Double)] = {
+    values.iterator.flatMap {
+      case (key, child: Map[String, Any] @unchecked) => flatten(child, prefix + key + ".")
+      case (key, value) => toDouble(value).iterator.map(v => (prefix + key, v))
+    }
+  }
+
+  private def toDouble(value: Any): Option[Double] = value match {
+    case d: Double => if (d.isNaN) None else Some(d)
+    case n: Number => Some(n.doubleValue())
+    case b: Boolean => Some(if (b) 1.0 else 0.0)
+    case _ => None
+  }
+}
+
+/**
+ * Multi resolution store of executor metrics, updated incrementally as samples arrive.
+ *
+ * Every metric of every host (`<host>_<executor id>`) is kept once per [[RollupTier]] in a
+ * ring of at most `retainedBuckets` buckets, so memory is bounded per series whatever the
+ * length of the application: finer tiers cover the recent past, coarser tiers the whole run.
+ * A raw sample with the timestamp of a sample already held for the same metric and host, as an
+ * executor reporting twice within a second sends, replaces it and is counted in
+ * `mergedDuplicates`.
+ *
+ * Not thread safe, callers synchronize.
+ */
+private[spark] class ExecutorMetricsRollups(retainedBuckets: Int) {
+  import ExecutorMetricsRollups._
+
+  require(retainedBuckets > 0, "retainedBuckets must be positive")
+
+  // metric -> host -> series
+  private val series = new mutable.HashMap[String, mutable.HashMap[String, RollupSeries]]
+  private var minTimestamp = Long.MaxValue
+  private var maxTimestamp = Long.MinValue
+  private var _mergedDuplicates = 0L
+
+  def isEmpty: Boolean = series.isEmpty
+
+  /** How many raw samples replaced one of the same metric, host and timestamp. */
+  def mergedDuplicates: Long = _mergedDuplicates
+
+  def metricNames: Seq[String] = series.keys.toSeq.sorted
+
+  def hosts: Seq[String] = series.values.flatMap(_.keys).toSet.toSeq.sorted
+
+  /** First and last sample timestamps, in seconds. */
+  def timeRange: Option[(Long, Long)] =
+    if (series.isEmpty) None else Some((minTimestamp, maxTimestamp))
+
+  def add(host: String, timestamp: Long, values: Map[String, Any]): Unit = {
+    flatten(values).foreach { case (metric, value) => addValue(metric, host, timestamp, value) }
+    addTimestamp(timestamp)
+  }
+
+  /** Adds a tick replayed from the files of the HDFS sink, without nesting its values. */
+  def add(record: ExecutorMetricsRecord): Unit = {
+    val host = record.host
+    var i = 0
+    while (i < record.size) {
+      val value = record.value(i)
+      if (!value.isNaN) {
+        addValue(record.name(i), host, record.timestamp, value)
+      }
+      i += 1
+    }
+    addTimestamp(record.timestamp)
+  }
+
+  private def addValue(metric: String, host: String, timestamp: Long, value: Double): Unit = {
+    val merged = series.getOrElseUpdate(metric, new mutable.HashMap[String, RollupSeries])
+      .getOrElseUpdate(host, new RollupSeries(retainedBuckets))
+      .add(timestamp, value)
+    if (merged) {
+      _mergedDuplicates += 1
+    }
+  }
+
+  private def addTimestamp(timestamp: Long): Unit = {
+    minTimestamp = math.min(minTimestamp, timestamp)
+    maxTimestamp = math.max(maxTimestamp, timestamp)
+  }
+
+  /**
+   * Picks the finest tier that draws `[from, to]` with no more than about one bucket per
+   * pixel, and that still holds buckets as old as `from`.
+   */
+  def chooseTier(from: Long, to: Long, pixels: Int): RollupTier = {
+    val secondsPerPixel = math.max(0L, to - from) / math.max(1, pixels)
+    val candidates = TIERS.filter(_.width >= secondsPerPixel)
+    candidates.find(tier => retains(tier, from))
+      .getOrElse(if (candidates.isEmpty) TIERS.last else candidates.last)
+  }
+
+  /** Whether the buckets of `tier` go back to `from`, none of them having been dropped since. */
+  def retains(tier: RollupTier, from: Long): Boolean = oldestRetained(tier).forall(_ <= from)
+
+  private def oldestRetained(tier: RollupTier): Option[Long] = {
+    val index = TIERS.indexOf(tier)
+    series.valuesIterator.flatMap(_.valuesIterator).flatMap(_.ring(index).oldest)
+      .reduceOption(math.max)
+  }
+
+  /** Buckets of `metric` in `[from, to]` at the given tier, per host. */
+  def points(
+      metric: String,
+      tier: RollupTier,
+      from: Long = Long.MinValue,
+      to: Long = Long.MaxValue,
+      hostFilter: String => Boolean = _ => true): Seq[(String, Seq[RollupPoint])] = {
+    val index = TIERS.indexOf(tier)
+    series.get(metric).toSeq.flatMap { byHost =>
+      byHost.toSeq.sortBy(_._1).collect {
+        case (host, s) if hostFilter(host) => (host, s.ring(index).points(from, to))
+      }
+    }
+  }
+}
+
+/** The rings of one metric of one host, one per tier. */
+private class RollupSeries(retainedBuckets: Int) {
+  val rings: Array[BucketRing] =
+    ExecutorMetricsRollups.TIERS.map(t => new BucketRing(t.width, retainedBuckets)).toArray
+
+  def ring(index: Int): BucketRing = rings(index)
+
+  /** Returns whether the sample replaced a raw sample of the same timestamp. */
+  def add(timestamp: Long, value: Double): Boolean = {
+    var merged = false
+    var i = 0
+    while (i < rings.length) {
+      merged |= rings(i).add(timestamp, value)
+      i += 1
+    }
+    merged
+  }
+}
+
+/**
+ * Fixed capacity ring of time buckets stored in primitive arrays. Once full, a new bucket
+ * replaces the oldest one. In the raw ring (width 0), a sample replaces the one of the same
+ * timestamp.
+ */
+private class BucketRing(width: Long, capacity: Int) {
+  private val starts = new Array[Long](capacity)
+  private val mins = new Array[Double](capacity)
+  private val maxs = new Array[Double](capacity)
+  private val sums = new Array[Double](capacity)
+  private val counts = new Array[Int](capacity)
+  private val lasts = new Array[Double](capacity)
+  // Index of the newest bucket and number of buckets in use
+  private var newest = -1
+  private var size = 0
+
+  private def bucketStart(timestamp: Long): Long = {
+    if (width == 0) timestamp else timestamp - (((timestamp % width) + width) % width)
+  }
+
+  def oldest: Option[Long] =
+    if (size == 0) None else Some(starts((newest - size + 1 + capacity) % capacity))
+
+  /** Returns whether the sample replaced a raw sample of the same timestamp. */
+  def add(timestamp: Long, value: Double): Boolean = {
+    val start = bucketStart(timestamp)
+    if (size > 0 && starts(newest) == start) {
+      merge(newest, value)
+    } else if (size == 0 || start > starts(newest)) {
+      newest = (newest + 1) % capacity
+      size = math.min(size + 1, capacity)
+      starts(newest) = start
+      mins(newest) = value
+      maxs(newest) = value
+      sums(newest) = value
+      counts(newest) = 1
+      lasts(newest) = value
+      false
+    } else {
+      // A late sample, rare since every host's samples are replayed in order
+      var i = 1
+      var merged = false
+      var found = false
+      while (!found && i < size) {
+        val index = (newest - i + capacity) % capacity
+        if (starts(index) == start) {
+          merged = merge(index, value)
+          found = true
+        }
+        i += 1
+      }
+      merged
+    }
+  }
+
+  private def merge(index: Int, value: Double): Boolean = {
+    if (width > 0) {
+      update(index, value)
+      false
+    } else {
+      mins(index) = value
+      maxs(index) = value
+      sums(index) = value
+      counts(index) = 1
+      lasts(index) = value
+      true
+    }
+  }
+
+  private def update(index: Int, value: Double): Unit = {
+    mins(index) = math.min(mins(index), value)
+    maxs(index) = math.max(maxs(index), value)
+    sums(index) += value
+    counts(index) += 1
+    lasts(index) = value
+  }
+
+  def points(from: Long, to: Long): Seq[RollupPoint] = {
+    val result = new mutable.ArrayBuffer[RollupPoint]
+    var i = size - 1
+    while (i >= 0) {
+      val index = (newest - i + capacity) % capacity
+      val start = starts(index)
+      if (start + math.max(width, 1) > from && start <= to) {
+        result += RollupPoint(start, mins(index), maxs(index), sums(index) / counts(index),
+          lasts(index))
+      }
+      i -= 1
+    }
+    result
+  }
+}
@@ -16,19 +16,58 @@
  */
 package org.apache.spark.ui
 
-import scala.collection.mutable.ListBuffer
-
+import org.apache.spark.SparkConf
 import org.apache.spark.annotation.DeveloperApi
 import org.apache.spark.internal.Logging
-import org.apache.spark.scheduler.{HDFSExecutorMetrics, SparkListener}
+import org.apache.spark.scheduler.{ExecutorMetricsRecordValues, HDFSExecutorMetrics,
+  SparkListener, SparkListenerExecutorMetricsSample}
 
+/**
+ * Keeps the executor metrics replayed from the HDFS sink's files, or received with the heartbeats
+ * of the executors (live or from the event log), as multi resolution rollups
+ * rather than as a list of samples, so memory does not grow with the length of the
+ * application. See [[ExecutorMetricsRollups]].
+ */
 @DeveloperApi
-class HDFSExecutorMetricsListener() extends SparkListener with Logging {
+class HDFSExecutorMetricsListener(conf: SparkConf) extends SparkListener with Logging {
+
+  def this() = this(new SparkConf(false))
 
-  val hdfsExecutorMetricsData = new ListBuffer[HDFSExecutorMetrics]
+  // How many buckets to retain per metric, host and tier
+  private[spark] val retainedBuckets =
+    conf.getInt("spark.ui.executorMetrics.retainedBuckets", 1000)
+
+  private[spark] val rollups = new ExecutorMetricsRollups(retainedBuckets)
+
+  /** Reads back the time ranges that the rollups no longer hold, when the metrics have files. */
+  @volatile private[spark] var windowLoader: Option[ExecutorMetricsWindowLoader] = None
 
   override def onHDFSExecutorMetrics(hdfsExecutorMetrics: HDFSExecutorMetrics) : Unit =
     synchronized {
-    hdfsExecutorMetricsData += hdfsExecutorMetrics;
+    hdfsExecutorMetrics.values match {
+      case replayed: ExecutorMetricsRecordValues => rollups.add(replayed.record)
+      case values => rollups.add(hdfsExecutorMetrics.host, hdfsExecutorMetrics.timestamp, values)
+    }
   }
+
+  override def onExecutorMetricsSample(sample: SparkListenerExecutorMetricsSample): Unit =
+    synchronized {
+      rollups.add(s"${sample.host}_${sample.execId}", sample.timestamp, sample.values)
+    }
+}
+
+/**
+ * Replays the executor metrics of a time range from the files of the HDFS sink, for the ranges
+ * that an [[HDFSExecutorMetricsListener]] dropped from its rollups.
+ */
+private[spark] trait ExecutorMetricsWindowLoader {
+
+  /**
+   * Rollups of the samples in `[fromTimestamp, toTimestamp]` only, in seconds, holding at most
+   * `retainedBuckets` buckets per metric, host and tier.
+   */
+  def loadWindow(
+      fromTimestamp: Long,
+      toTimestamp: Long,
+      retainedBuckets: Int): ExecutorMetricsRollups
 }
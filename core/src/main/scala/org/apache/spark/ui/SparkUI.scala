@@ -49,6 +49,7 @@ private[spark] class SparkUI private (
     val storageListener: StorageListener,
     val operationGraphListener: RDDOperationGraphListener,
     val hDFSExecutorMetricsListener: HDFSExecutorMetricsListener,
+    val taskResourceAttributionListener: TaskResourceAttributionListener,
     var appName: String,
     val basePath: String,
     val startTime: Long)
@@ -214,17 +215,25 @@ private[spark] object SparkUI {
     val executorsListener = new ExecutorsListener(storageStatusListener, conf)
     val storageListener = new StorageListener(storageStatusListener)
     val operationGraphListener = new RDDOperationGraphListener(conf)
-    val hdfsExecutorMetricsListener = new HDFSExecutorMetricsListener();
+    val hdfsExecutorMetricsListener = new HDFSExecutorMetricsListener(conf)
+    val taskResourceAttributionListener = new TaskResourceAttributionListener(conf)
 
     listenerBus.addListener(environmentListener)
     listenerBus.addListener(storageStatusListener)
     listenerBus.addListener(executorsListener)
     listenerBus.addListener(storageListener)
     listenerBus.addListener(operationGraphListener)
-    hdfsExecutorMetricsReplayListenerBus.foreach(_.addListener(hdfsExecutorMetricsListener))
+    // Heartbeat samples, live or replayed from the event log
+    listenerBus.addListener(hdfsExecutorMetricsListener)
+    hdfsExecutorMetricsReplayListenerBus.foreach { bus =>
+      bus.addListener(hdfsExecutorMetricsListener)
+      // Task windows come from the event log, samples from the executor metrics
+      listenerBus.addListener(taskResourceAttributionListener)
+      bus.addListener(taskResourceAttributionListener)
+    }
 
     new SparkUI(sc, conf, securityManager, environmentListener, storageStatusListener,
       executorsListener, _jobProgressListener, storageListener, operationGraphListener,
-      hdfsExecutorMetricsListener, appName, basePath, startTime)
+      hdfsExecutorMetricsListener, taskResourceAttributionListener, appName, basePath, startTime)
   }
 }
@@ -0,0 +1,447 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.spark.ui
+
+import java.lang.{Integer => JInteger, Long => JLong}
+import java.util.{Arrays, TreeMap => JTreeMap}
+
+import scala.collection.mutable
+
+import org.apache.spark.SparkConf
+import org.apache.spark.scheduler.{ExecutorMetricsRecordValues, HDFSExecutorMetrics,
+  SparkListener, SparkListenerApplicationEnd, SparkListenerExecutorMetricsSample,
+  SparkListenerTaskEnd, SparkListenerTaskStart}
+
+/**
+ * Resources used by the tasks of one stage attempt, estimated from the executor metrics
+ * samples taken while they ran.
+ *
+ * @param cpuSeconds CPU time of the executor processes
+ * @param diskBytes bytes read from and written to the disks of the hosts
+ * @param networkBytes bytes received and sent by the hosts
+ * @param samples number of samples that contributed to the estimates
+ */
+private[spark] case class StageResourceUsage(
+    cpuSeconds: Double,
+    diskBytes: Double,
+    networkBytes: Double,
+    samples: Long)
+
+/**
+ * Attributes the executor metrics replayed from the HDFS sink's files, or from the heartbeats
+ * in the event log, to the stages whose tasks ran when they were sampled, so that a stage can
+ * be told CPU bound from I/O bound.
+ *
+ * A sample of an executor covers the time since its previous sample. The CPU time of the
+ * executor process over that time is split among the tasks of the executor by how long each
+ * ran in it; disk and network are host wide, so they are split among the tasks of every
+ * executor of the host. When the tasks ran for less than the whole interval, only their share
+ * of it is attributed.
+ *
+ * Task windows come from the event log and must all be known before a sample is attributed:
+ * heartbeat samples are in the event log before the ends of the tasks they cover, and the
+ * samples of the HDFS sink's files of a running application are read while those tasks still
+ * run. A sample is therefore kept until it is settled, that is until it ends before both the
+ * launch of the earliest task still running and the latest task start or end seen, and is then
+ * folded into the per stage totals and dropped.
+ *
+ * The samples of a source come in order for each executor, so a task window is dropped once
+ * it ends before the pending samples of its executors and their latest sample of every source:
+ * of the HDFS sink's files when a metrics directory is set, as they may be read after the whole
+ * event log, and of heartbeats once one is seen.
+ */
+private[spark] class TaskResourceAttributionListener(conf: SparkConf) extends SparkListener {
+  import TaskResourceAttributionListener._
+
+  // Values of the trees, indices in the per stage attempt arrays
+  private val stageAttemptIndices = new mutable.HashMap[(Int, Int), Int]
+  private val executorHosts = new mutable.HashMap[String, String]
+  private val hostExecutors = new mutable.HashMap[String, mutable.HashSet[String]]
+  private val tasksByExecutor = new mutable.HashMap[String, IntervalTree]
+  private val tasksByHost = new mutable.HashMap[String, IntervalTree]
+  private val lastSampleTimes = new mutable.HashMap[String, Long]
+  private val lastHeartbeatSampleTimes = new mutable.HashMap[String, Long]
+  // Sources whose samples may still come for any executor
+  private var hdfsSamples = conf.contains("spark.hdfs.metrics.dir")
+  private var heartbeatSamples = false
+  // Samples not settled yet, the one ending first at the head
+  private val pendingSamples =
+    new mutable.PriorityQueue[PendingSample]()(Ordering.by[PendingSample, Long](_.to).reverse)
+  // Launch times of the tasks still running, by task id and as counts per launch time
+  private val runningTasks = new mutable.HashMap[Long, Long]
+  private val runningLaunchTimes = new JTreeMap[JLong, JInteger]
+  // Latest launch or finish time of the tasks seen
+  private var latestTaskTime = Long.MinValue
+
+  private var cpuMillis = new Array[Double](16)
+  private var diskBytes = new Array[Double](16)
+  private var networkBytes = new Array[Double](16)
+  private var samples = new Array[Long](16)
+  // Sequence number of the latest sample counted in `samples`, per stage attempt
+  private var lastSamples = new Array[Long](16)
+  private var sampleCount = 0L
+
+  override def onTaskStart(taskStart: SparkListenerTaskStart): Unit = synchronized {
+    val info = taskStart.taskInfo
+    if (info != null && !runningTasks.contains(info.taskId)) {
+      runningTasks(info.taskId) = info.launchTime
+      val count = runningLaunchTimes.get(info.launchTime)
+      runningLaunchTimes.put(info.launchTime, if (count == null) 1 else count + 1)
+      latestTaskTime = math.max(latestTaskTime, info.launchTime)
+    }
+    attributeSettled()
+  }
+
+  override def onTaskEnd(taskEnd: SparkListenerTaskEnd): Unit = synchronized {
+    val info = taskEnd.taskInfo
+    if (info != null) {
+      runningTasks.remove(info.taskId).foreach(removeRunningLaunchTime)
+      latestTaskTime = math.max(latestTaskTime, math.max(info.launchTime, info.finishTime))
+    }
+    if (info != null && info.finishTime > info.launchTime) {
+      val stage = stageAttemptIndex(taskEnd.stageId, taskEnd.stageAttemptId)
+      executorHosts(info.executorId) = info.host
+      hostExecutors.getOrElseUpdate(info.host, new mutable.HashSet[String]) += info.executorId
+      tasksByExecutor.getOrElseUpdate(info.executorId, new IntervalTree)
+        .add(info.launchTime, info.finishTime, stage)
+      tasksByHost.getOrElseUpdate(info.host, new IntervalTree)
+        .add(info.launchTime, info.finishTime, stage)
+    }
+    attributeSettled()
+  }
+
+  override def onApplicationEnd(applicationEnd: SparkListenerApplicationEnd): Unit =
+    synchronized {
+      // Tasks without an end never ran to it
+      runningTasks.clear()
+      runningLaunchTimes.clear()
+      latestTaskTime = Long.MaxValue
+      attributeSettled()
+    }
+
+  private def removeRunningLaunchTime(launchTime: Long): Unit = {
+    val count: Int = runningLaunchTimes.get(launchTime)
+    if (count == 1) {
+      runningLaunchTimes.remove(launchTime)
+    } else {
+      runningLaunchTimes.put(launchTime, count - 1)
+    }
+  }
+
+  override def onHDFSExecutorMetrics(metrics: HDFSExecutorMetrics): Unit = synchronized {
+    val executorId = executorIdOf(metrics.host)
+    val timestamp = metrics.timestamp * 1000
+    hdfsSamples = true
+    for (from <- lastSampleTimes.put(executorId, timestamp) if from < timestamp) {
+      val sample = metrics.values match {
+        case replayed: ExecutorMetricsRecordValues =>
+          sampleOf(executorId, from, timestamp, path => recordValue(replayed, path))
+        case values => sampleOf(executorId, from, timestamp, path => value(values, path))
+      }
+      pendingSamples += sample
+      attributeSettled()
+    }
+    dropSampledWindows(executorId)
+  }
+
+  override def onExecutorMetricsSample(sample: SparkListenerExecutorMetricsSample): Unit =
+    synchronized {
+      val timestamp = sample.timestamp * 1000
+      heartbeatSamples = true
+      for (from <- lastHeartbeatSampleTimes.put(sample.execId, timestamp) if from < timestamp) {
+        pendingSamples += sampleOf(sample.execId, from, timestamp, value(sample.values, _))
+        attributeSettled()
+      }
+      dropSampledWindows(sample.execId)
+    }
+
+  /** Attributes and drops the samples that no task still to come or to end can overlap. */
+  private def attributeSettled(): Unit = {
+    val settledUntil = if (runningLaunchTimes.isEmpty) {
+      latestTaskTime
+    } else {
+      math.min(latestTaskTime, runningLaunchTimes.firstKey().longValue())
+    }
+    while (pendingSamples.nonEmpty && pendingSamples.head.to <= settledUntil) {
+      attribute(pendingSamples.dequeue())
+    }
+  }
+
+  /** Drops the task windows of an executor, and of its host, that no sample can overlap. */
+  private def dropSampledWindows(executorId: String): Unit = {
+    for (tasks <- tasksByExecutor.get(executorId)) {
+      val host = executorHosts(executorId)
+      tasks.dropEndedBy(sampledUntil(executorId))
+      tasksByHost(host).dropEndedBy(hostExecutors(host).iterator.map(sampledUntil).min)
+    }
+  }
+
+  /** Time before which no sample of an executor, pending or still to come, starts. */
+  private def sampledUntil(executorId: String): Long = {
+    var until = if (hdfsSamples || heartbeatSamples) Long.MaxValue else Long.MinValue
+    if (hdfsSamples) {
+      until = math.min(until, lastSampleTimes.getOrElse(executorId, Long.MinValue))
+    }
+    if (heartbeatSamples) {
+      until = math.min(until, lastHeartbeatSampleTimes.getOrElse(executorId, Long.MinValue))
+    }
+    pendingSamples.foreach { sample =>
+      if (sample.executorId == executorId) {
+        until = math.min(until, sample.from)
+      }
+    }
+    until
+  }
+
+  /** Number of samples kept until the tasks they cover are known. */
+  private[ui] def numPendingSamples: Int = synchronized(pendingSamples.size)
+
+  private def attribute(sample: PendingSample): Unit = {
+    val PendingSample(executorId, from, to, cpu, disk, network) = sample
+    for (tasks <- tasksByExecutor.get(executorId)) {
+      val interval = (to - from).toDouble
+      val hostTasks = tasksByHost(executorHosts(executorId))
+
+      val cpuShare = interval.max(tasks.totalOverlap(from, to))
+      val hostShare = interval.max(hostTasks.totalOverlap(from, to))
+      sampleCount += 1
+      tasks.foreachOverlapping(from, to) { (stage, overlap) =>
+        cpuMillis(stage) += cpu * overlap / cpuShare
+        diskBytes(stage) += disk * overlap / hostShare
+        networkBytes(stage) += network * overlap / hostShare
+        if (lastSamples(stage) != sampleCount) {
+          lastSamples(stage) = sampleCount
+          samples(stage) += 1
+        }
+      }
+    }
+  }
+
+  /** Number of task windows kept for an executor. */
+  private[ui] def numTaskWindows(executorId: String): Int =
+    synchronized(tasksByExecutor.get(executorId).map(_.numIntervals).getOrElse(0))
+
+  /** Estimated resources of a stage attempt, if any of its tasks ran while a sample was taken. */
+  def stageUsage(stageId: Int, stageAttemptId: Int): Option[StageResourceUsage] = synchronized {
+    stageAttemptIndices.get((stageId, stageAttemptId)).filter(samples(_) > 0).map { stage =>
+      StageResourceUsage(cpuMillis(stage) / 1000, diskBytes(stage), networkBytes(stage),
+        samples(stage))
+    }
+  }
+
+  private def stageAttemptIndex(stageId: Int, stageAttemptId: Int): Int = {
+    stageAttemptIndices.getOrElseUpdate((stageId, stageAttemptId), {
+      val size = stageAttemptIndices.size + 1
+      if (size > cpuMillis.length) {
+        cpuMillis = Arrays.copyOf(cpuMillis, size * 2)
+        diskBytes = Arrays.copyOf(diskBytes, size * 2)
+        networkBytes = Arrays.copyOf(networkBytes, size * 2)
+        samples = Arrays.copyOf(samples, size * 2)
+        lastSamples = Arrays.copyOf(lastSamples, size * 2)
+      }
+      size - 1
+    })
+  }
+}
+
+private[spark] object TaskResourceAttributionListener {
+
+  // Per second rates published by SigarSource and ProcFsSource, CPU in milliseconds
+  private val CPU_PATH = Seq("cpu", "process", "total")
+  private val DISK_PATHS =
+    Seq(Seq("disk", "read_per_second"), Seq("disk", "written_per_second"))
+  private val NETWORK_PATHS =
+    Seq(Seq("network", "received_per_second"), Seq("network", "sent_per_second"))
+
+  /** Resources used by an executor, and its host, from `from` to `to` in milliseconds. */
+  private[ui] case class PendingSample(
+      executorId: String,
+      from: Long,
+      to: Long,
+      cpu: Double,
+      disk: Double,
+      network: Double)
+
+  private def sampleOf(
+      executorId: String,
+      from: Long,
+      to: Long,
+      valueAt: Seq[String] => Double): PendingSample = {
+    val seconds = (to - from).toDouble / 1000
+    PendingSample(executorId, from, to,
+      valueAt(CPU_PATH) * seconds,
+      DISK_PATHS.map(valueAt).sum * seconds,
+      NETWORK_PATHS.map(valueAt).sum * seconds)
+  }
+
+  /** The executor id of a `<host>_<executor id>` metrics host. */
+  def executorIdOf(host: String): String = host.substring(host.lastIndexOf('_') + 1)
+
+  private def recordValue(values: ExecutorMetricsRecordValues, path: Seq[String]): Double = {
+    val value = values.record.value(path.mkString("."))
+    if (value.isNaN) 0.0 else value
+  }
+
+  // Values are nested by path in the HDFS sink's files, and keyed by their path in heartbeats
+  private def value(values: Map[String, Any], path: Seq[String]): Double = {
+    values.get(path.mkString(".")) match {
+      case Some(n: Number) if !n.doubleValue().isNaN => n.doubleValue()
+      case _ => values.get(path.head) match {
+        case Some(child: Map[String, Any] @unchecked) if path.size > 1 => value(child, path.tail)
+        case _ => 0.0
+      }
+    }
+  }
+}
+
+/**
+ * Intervals `[start, end)` with an int value, queried by overlap. Intervals are kept sorted by
+ * start in arrays, the middle of every range of slots being the root of a balanced tree over
+ * it, and every node holds the largest end of its subtree so that subtrees ending before a
+ * query are skipped. An interval is inserted at its place, which is near the last one when
+ * they come roughly in order, and only the nodes over the slots that moved are updated on the
+ * next query; slots past the last interval are empty.
+ */
+private[ui] class IntervalTree {
+  private var starts = new Array[Long](16)
+  private var ends = Array.fill(16)(Long.MinValue)
+  private var values = new Array[Int](16)
+  private var maxEnds = Array.fill(16)(Long.MinValue)
+  private var size = 0
+  // Slots whose intervals changed since the largest ends were last updated
+  private var dirtyFrom = 0
+  private var dirtyUntil = 0
+  // Number of intervals left by the last drop
+  private var sizeAfterDrop = 0
+
+  def add(start: Long, end: Long, value: Int): Unit = {
+    if (size == starts.length) {
+      // The tree has a new shape, all of its nodes are updated
+      val capacity = size * 2
+      starts = Arrays.copyOf(starts, capacity)
+      ends = Arrays.copyOf(ends, capacity)
+      Arrays.fill(ends, size, capacity, Long.MinValue)
+      values = Arrays.copyOf(values, capacity)
+      maxEnds = Array.fill(capacity)(Long.MinValue)
+      markDirty(0, size)
+    }
+    // After the intervals starting at or before this one
+    var lo = 0
+    var hi = size
+    while (lo < hi) {
+      val mid = (lo + hi) >>> 1
+      if (starts(mid) <= start) lo = mid + 1 else hi = mid
+    }
+    System.arraycopy(starts, lo, starts, lo + 1, size - lo)
+    System.arraycopy(ends, lo, ends, lo + 1, size - lo)
+    System.arraycopy(values, lo, values, lo + 1, size - lo)
+    starts(lo) = start
+    ends(lo) = end
+    values(lo) = value
+    size += 1
+    markDirty(lo, size)
+  }
+
+  /**
+   * Drops the intervals ending at or before `time`, which no query from then on overlaps. The
+   * intervals are only compacted, and `time` evaluated, once as many were added as were left
+   * by the previous drop, so that dropping costs a constant time per interval added.
+   */
+  def dropEndedBy(time: => Long): Unit = {
+    if (size >= 16 && size >= 2 * sizeAfterDrop) {
+      val until = time
+      val oldSize = size
+      var kept = 0
+      var i = 0
+      while (i < oldSize) {
+        if (ends(i) > until) {
+          if (kept < i) {
+            starts(kept) = starts(i)
+            ends(kept) = ends(i)
+            values(kept) = values(i)
+          }
+          kept += 1
+        } else if (kept == i) {
+          markDirty(i, oldSize)
+        }
+        i += 1
+      }
+      Arrays.fill(ends, kept, oldSize, Long.MinValue)
+      size = kept
+      sizeAfterDrop = kept
+    }
+  }
+
+  def numIntervals: Int = size
+
+  /** Calls `f` with the value and overlap of every interval overlapping `[from, to)`. */
+  def foreachOverlapping(from: Long, to: Long)(f: (Int, Long) => Unit): Unit = {
+    if (dirtyFrom < dirtyUntil) {
+      updateMaxEnds(0, starts.length)
+      dirtyFrom = 0
+      dirtyUntil = 0
+    }
+    visit(0, starts.length, from, to, f)
+  }
+
+  /** Sum of the overlaps of the intervals with `[from, to)`. */
+  def totalOverlap(from: Long, to: Long): Long = {
+    var total = 0L
+    foreachOverlapping(from, to) { (_, overlap) => total += overlap }
+    total
+  }
+
+  private def markDirty(from: Int, until: Int): Unit = {
+    if (dirtyFrom < dirtyUntil) {
+      dirtyFrom = math.min(dirtyFrom, from)
+      dirtyUntil = math.max(dirtyUntil, until)
+    } else {
+      dirtyFrom = from
+      dirtyUntil = until
+    }
+  }
+
+  private def visit(lo: Int, hi: Int, from: Long, to: Long, f: (Int, Long) => Unit): Unit = {
+    if (lo < hi) {
+      val mid = (lo + hi) >>> 1
+      if (maxEnds(mid) > from) {
+        visit(lo, mid, from, to, f)
+        if (mid < size && starts(mid) < to) {
+          if (ends(mid) > from) {
+            f(values(mid), math.min(ends(mid), to) - math.max(starts(mid), from))
+          }
+          visit(mid + 1, hi, from, to, f)
+        }
+      }
+    }
+  }
+
+  /** Updates the nodes over the dirty slots, returning the largest end of the subtree. */
+  private def updateMaxEnds(lo: Int, hi: Int): Long = {
+    if (lo >= hi) {
+      Long.MinValue
+    } else {
+      val mid = (lo + hi) >>> 1
+      if (lo < dirtyUntil && hi > dirtyFrom) {
+        val children = math.max(updateMaxEnds(lo, mid), updateMaxEnds(mid + 1, hi))
+        maxEnds(mid) = math.max(ends(mid), children)
+      }
+      maxEnds(mid)
+    }
+  }
+}
@@ -91,6 +91,16 @@ private[spark] object ToolTips {
   val TASK_TIME =
   "Shaded red when garbage collection (GC) time is over 10% of task time"
 
+  val ALLOCATED_BYTES =
+    """Bytes allocated on the heap by the thread running the task. Running tasks also show
+       their allocation rate and CPU usage since their previous heartbeat."""
+
+  val ESTIMATED_RESOURCE_USAGE =
+    """CPU time of the executors and bytes read and written by the disks and network interfaces
+       of their hosts while the tasks of this stage ran, from the executor metrics sampled by
+       the HDFS sink. Samples are split among the tasks that overlapped them by running time.
+    """
+
   val APPLICATION_EXECUTOR_LIMIT =
     """Maximum number of executors that this application will use. This limit is finite only when
        dynamic allocation is enabled. The number of granted executors may exceed the limit
@@ -35,7 +35,7 @@ import org.apache.spark.JobExecutionStatus
 import org.apache.spark.scheduler._
 import org.apache.spark.ui._
 import org.apache.spark.ui.jobs.UIData.{JobUIData, StageUIData}
-import org.apache.spark.util.{JsonProtocol, Utils}
+import org.apache.spark.util.Utils
 
 /** Page showing list of all ongoing and recently finished jobs */
 private[ui] class AllJobsPage(parent: JobsTab) extends WebUIPage("") {
@@ -287,6 +287,18 @@ private[ui] class AllJobsPage(parent: JobsTab) extends WebUIPage("") {
     }
   }
 
+  /**
+   * Lists the replayed executor metrics: `{"metrics": [...], "minTime", "maxTime"}`. The page
+   * fetches the values of a metric from the executorMetrics REST endpoint when it is selected.
+   * None if no metrics were replayed.
+   */
+  private def executorMetricsToJson(rollups: ExecutorMetricsRollups): Option[String] = {
+    rollups.timeRange.map { case (from, to) =>
+      compact(JsonMethods.render(("metrics" -> rollups.metricNames) ~ ("minTime" -> from) ~
+        ("maxTime" -> to)))
+    }
+  }
+
   def render(request: HttpServletRequest): Seq[Node] = {
     val listener = parent.jobProgresslistener
     listener.synchronized {
@@ -387,17 +399,12 @@ private[ui] class AllJobsPage(parent: JobsTab) extends WebUIPage("") {
            |]
         """.stripMargin
 
-      if(hdfsExecutorMetricsListener.hdfsExecutorMetricsData.size>0)
-      {
-        var hdfsExecutorMetricsDataJson = hdfsExecutorMetricsListener.hdfsExecutorMetricsData
-          .map(e => compact(JsonMethods.render(JsonProtocol.sparkEventToJson(e)))).mkString(",")
-        val hdfsExecutorMetricsDataJsonAsStr =
-          s"""
-             |[
-             |${hdfsExecutorMetricsDataJson}
-             |]
-        """.stripMargin
+      val executorMetricsJson = hdfsExecutorMetricsListener.synchronized {
+        executorMetricsToJson(hdfsExecutorMetricsListener.rollups)
+      }
 
+      if(executorMetricsJson.isDefined)
+      {
         val jobInfoJson = listener.completedJobs.filter{ jobUIData =>
           jobUIData.status != JobExecutionStatus.UNKNOWN && jobUIData.submissionTime.isDefined
         }.map(job =>
@@ -422,7 +429,7 @@ private[ui] class AllJobsPage(parent: JobsTab) extends WebUIPage("") {
 
         content ++= <script type="text/javascript">
           {
-          Unparsed(s"parseExecutorMetrics(${hdfsExecutorMetricsDataJsonAsStr}," +
+          Unparsed(s"parseExecutorMetrics(${executorMetricsJson.get}," +
             s"${stageInfoAsStr},${jobInfoAsStr},${UIUtils.metricsTooltipsJson});")
           }
         </script>
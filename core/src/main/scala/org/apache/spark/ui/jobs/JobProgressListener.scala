@@ -96,6 +96,9 @@ class JobProgressListener(conf: SparkConf) extends SparkListener with Logging {
   val retainedJobs = conf.getInt("spark.ui.retainedJobs", SparkUI.DEFAULT_RETAINED_JOBS)
   val retainedTasks = conf.get(UI_RETAINED_TASKS)
 
+  // Where the history server moves the tasks of completed stages, when it is configured to
+  private[spark] var taskStore: Option[TaskDataStore] = None
+
   // We can test for memory leaks by ensuring that collections that track non-active jobs and
   // stages do not grow without bound and that collections for active jobs/stages eventually become
   // empty once Spark is idle.  Let's partition our collections into ones that should be empty
@@ -144,7 +147,7 @@ class JobProgressListener(conf: SparkConf) extends SparkListener with Logging {
     if (stages.size > retainedStages) {
       val toRemove = (stages.size - retainedStages)
       stages.take(toRemove).foreach { s =>
-        stageIdToData.remove((s.stageId, s.attemptId))
+        stageIdToData.remove((s.stageId, s.attemptId)).foreach(_.storedTasks.foreach(_.delete()))
         stageIdToInfo.remove(s.stageId)
       }
       stages.trimStart(toRemove)
@@ -263,6 +266,12 @@ class JobProgressListener(conf: SparkConf) extends SparkListener with Logging {
       stageData.accumulables(id) = info
     }
 
+    for (store <- taskStore if stageData.storedTasks.isEmpty && stageData.taskData.nonEmpty) {
+      stageData.storedTasks = Some(store.write(stage.stageId, stage.attemptId,
+        stageData.taskData.values))
+      stageData.taskData = new LinkedHashMap[Long, TaskUIData]
+    }
+
     poolToActiveStages.get(stageData.schedulingPool).foreach { hashMap =>
       hashMap.remove(stage.stageId)
     }
@@ -520,6 +529,7 @@ class JobProgressListener(conf: SparkConf) extends SparkListener with Logging {
       taskData.foreach { t =>
         if (!t.taskInfo.finished) {
           updateAggregateMetrics(stageData, executorMetricsUpdate.execId, metrics, t.metrics)
+          t.updateLiveRates(metrics, System.currentTimeMillis())
           // Overwrite task metrics
           t.updateTaskMetrics(Some(metrics))
         }
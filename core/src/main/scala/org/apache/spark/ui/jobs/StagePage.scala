@@ -41,6 +41,7 @@ private[ui] class StagePage(parent: StagesTab) extends WebUIPage("stage") {
   private val progressListener = parent.progressListener
   private val operationGraphListener = parent.operationGraphListener
   private val executorsListener = parent.executorsListener
+  private val taskResourceAttributionListener = parent.taskResourceAttributionListener
 
   private val TIMELINE_LEGEND = {
     <div class="legend-area">
@@ -70,8 +71,8 @@ private[ui] class StagePage(parent: StagesTab) extends WebUIPage("stage") {
   // if we find that it's okay.
   private val MAX_TIMELINE_TASKS = parent.conf.getInt("spark.ui.timeline.tasks.maximum", 1000)
 
-  private def getLocalitySummaryString(stageData: StageUIData): String = {
-    val localities = stageData.taskData.values.map(_.taskInfo.taskLocality)
+  private def getLocalitySummaryString(tasks: Seq[TaskUIData]): String = {
+    val localities = tasks.map(_.taskInfo.taskLocality)
     val localityCounts = localities.groupBy(identity).mapValues(_.size)
     val localityNamesAndCounts = localityCounts.toSeq.map { case (locality, count) =>
       val localityName = locality match {
@@ -120,7 +121,7 @@ private[ui] class StagePage(parent: StagesTab) extends WebUIPage("stage") {
         return UIUtils.headerSparkPage(stageHeader, content, parent)
 
       }
-      if (stageDataOption.get.taskData.isEmpty) {
+      if (!stageDataOption.get.hasTasks) {
         val content =
           <div>
             <h4>Summary Metrics</h4> No tasks have started yet
@@ -130,7 +131,8 @@ private[ui] class StagePage(parent: StagesTab) extends WebUIPage("stage") {
       }
 
       val stageData = stageDataOption.get
-      val tasks = stageData.taskData.values.toSeq.sortBy(_.taskInfo.launchTime)
+      // Read once, as the stored tasks of a completed stage are read back from the history store
+      val tasks = stageData.tasks.sortBy(_.taskInfo.launchTime)
       val numCompleted = stageData.numCompleteTasks
       val totalTasks = stageData.numActiveTasks +
         stageData.numCompleteTasks + stageData.numFailedTasks
@@ -144,6 +146,8 @@ private[ui] class StagePage(parent: StagesTab) extends WebUIPage("stage") {
       val externalAccumulables = allAccumulables.values.filter { acc => !acc.internal }
       val hasAccumulators = externalAccumulables.size > 0
 
+      val resourceUsage = taskResourceAttributionListener.stageUsage(stageId, stageAttemptId)
+
       val summary =
         <div>
           <ul class="unstyled">
@@ -153,7 +157,7 @@ private[ui] class StagePage(parent: StagesTab) extends WebUIPage("stage") {
             </li>
             <li>
               <strong>Locality Level Summary: </strong>
-              {getLocalitySummaryString(stageData)}
+              {getLocalitySummaryString(tasks)}
             </li>
             {if (stageData.hasInput) {
               <li>
@@ -191,6 +195,17 @@ private[ui] class StagePage(parent: StagesTab) extends WebUIPage("stage") {
                 {Utils.bytesToString(stageData.diskBytesSpilled)}
               </li>
             }}
+            {resourceUsage.toSeq.flatMap { usage =>
+              <li>
+                <span data-toggle="tooltip" data-placement="right"
+                      title={ToolTips.ESTIMATED_RESOURCE_USAGE}>
+                  <strong>Estimated CPU / Disk / Network: </strong>
+                  {s"${UIUtils.formatDuration((usage.cpuSeconds * 1000).toLong)} / " +
+                   s"${Utils.bytesToString(usage.diskBytes.toLong)} / " +
+                   s"${Utils.bytesToString(usage.networkBytes.toLong)}"}
+                </span>
+              </li>
+            }}
           </ul>
         </div>
 
@@ -257,6 +272,13 @@ private[ui] class StagePage(parent: StagesTab) extends WebUIPage("stage") {
                   <span class="additional-metric-title">Peak Execution Memory</span>
                 </span>
               </li>
+              <li>
+                <span data-toggle="tooltip"
+                      title={ToolTips.ALLOCATED_BYTES} data-placement="right">
+                  <input type="checkbox" name={TaskDetailsClassNames.ALLOCATED_BYTES}/>
+                  <span class="additional-metric-title">Allocated Bytes</span>
+                </span>
+              </li>
             </ul>
           </div>
         </div>
@@ -415,6 +437,18 @@ private[ui] class StagePage(parent: StagesTab) extends WebUIPage("stage") {
             </td> +: getFormattedSizeQuantiles(peakExecutionMemory)
           }
 
+          val allocatedBytes = validTasks.map { taskUIData: TaskUIData =>
+            taskUIData.metrics.get.allocatedBytes.toDouble
+          }
+          val allocatedBytesQuantiles = {
+            <td>
+              <span data-toggle="tooltip"
+                    title={ToolTips.ALLOCATED_BYTES} data-placement="right">
+                Allocated Bytes
+              </span>
+            </td> +: getFormattedSizeQuantiles(allocatedBytes)
+          }
+
           // The scheduler delay includes the network delay to send the task to the worker
           // machine and to send back the result (but not the time to fetch the task result,
           // if it needed to be fetched from the block manager on the worker).
@@ -531,6 +565,7 @@ private[ui] class StagePage(parent: StagesTab) extends WebUIPage("stage") {
             <tr class={TaskDetailsClassNames.PEAK_EXECUTION_MEMORY}>
               {peakExecutionMemoryQuantiles}
             </tr>,
+            <tr class={TaskDetailsClassNames.ALLOCATED_BYTES}>{allocatedBytesQuantiles}</tr>,
             if (stageData.hasInput) <tr>{inputQuantiles}</tr> else Nil,
             if (stageData.hasOutput) <tr>{outputQuantiles}</tr> else Nil,
             if (stageData.hasShuffleRead) {
@@ -584,7 +619,7 @@ private[ui] class StagePage(parent: StagesTab) extends WebUIPage("stage") {
         showAdditionalMetrics ++
         makeTimeline(
           // Only show the tasks in the table
-          stageData.taskData.values.toSeq.filter(t => taskIdsInPage.contains(t.taskInfo.taskId)),
+          tasks.filter(t => taskIdsInPage.contains(t.taskInfo.taskId)),
           currentTime) ++
         <h4>Summary Metrics for <a href="#tasks-section">{numCompleted} Completed Tasks</a></h4> ++
         <div>{summaryTable.getOrElse("No tasks have reported metrics yet.")}</div> ++
@@ -844,6 +879,8 @@ private[ui] class TaskTableRowData(
     val serializationTime: Long,
     val gettingResultTime: Long,
     val peakExecutionMemoryUsed: Long,
+    val allocatedBytes: Long,
+    val allocatedBytesReadable: String,
     val accumulators: Option[String], // HTML
     val input: Option[TaskTableRowInputData],
     val output: Option[TaskTableRowOutputData],
@@ -906,6 +943,15 @@ private[ui] class TaskDataSource(
         }
       }
     val peakExecutionMemoryUsed = metrics.map(_.peakExecutionMemory).getOrElse(0L)
+    val allocatedBytes = metrics.map(_.allocatedBytes).getOrElse(0L)
+    // Running tasks also show their rates since their previous heartbeat
+    val allocatedBytesReadable = taskData.liveRates.filter(_ => info.running) match {
+      case Some(rates) =>
+        s"${Utils.bytesToString(allocatedBytes)} " +
+          s"(${Utils.bytesToString(rates.allocatedBytesPerSecond.toLong)}/s, " +
+          f"${rates.cpuPercent}%.0f%% CPU)"
+      case None => Utils.bytesToString(allocatedBytes)
+    }
 
     val maybeInput = metrics.map(_.inputMetrics)
     val inputSortable = maybeInput.map(_.bytesRead).getOrElse(0L)
@@ -1028,6 +1074,8 @@ private[ui] class TaskDataSource(
       serializationTime,
       gettingResultTime,
       peakExecutionMemoryUsed,
+      allocatedBytes,
+      allocatedBytesReadable,
       if (hasAccumulators) Some(externalAccumulableReadable.mkString("<br/>")) else None,
       input,
       output,
@@ -1057,6 +1105,7 @@ private[ui] class TaskDataSource(
       case "Result Serialization Time" => Ordering.by(_.serializationTime)
       case "Getting Result Time" => Ordering.by(_.gettingResultTime)
       case "Peak Execution Memory" => Ordering.by(_.peakExecutionMemoryUsed)
+      case "Allocated Bytes" => Ordering.by(_.allocatedBytes)
       case "Accumulators" =>
         if (hasAccumulators) {
           Ordering.by(_.accumulators.get)
@@ -1207,7 +1256,8 @@ private[ui] class TaskPagedTable(
         ("GC Time", ""),
         ("Result Serialization Time", TaskDetailsClassNames.RESULT_SERIALIZATION_TIME),
         ("Getting Result Time", TaskDetailsClassNames.GETTING_RESULT_TIME),
-        ("Peak Execution Memory", TaskDetailsClassNames.PEAK_EXECUTION_MEMORY)) ++
+        ("Peak Execution Memory", TaskDetailsClassNames.PEAK_EXECUTION_MEMORY),
+        ("Allocated Bytes", TaskDetailsClassNames.ALLOCATED_BYTES)) ++
         {if (hasAccumulators) Seq(("Accumulators", "")) else Nil} ++
         {if (hasInput) Seq(("Input Size / Records", "")) else Nil} ++
         {if (hasOutput) Seq(("Output Size / Records", "")) else Nil} ++
@@ -1302,6 +1352,9 @@ private[ui] class TaskPagedTable(
       <td class={TaskDetailsClassNames.PEAK_EXECUTION_MEMORY}>
         {Utils.bytesToString(task.peakExecutionMemoryUsed)}
       </td>
+      <td class={TaskDetailsClassNames.ALLOCATED_BYTES}>
+        {task.allocatedBytesReadable}
+      </td>
       {if (task.accumulators.nonEmpty) {
         <td>{Unparsed(task.accumulators.get)}</td>
       }}
@@ -439,11 +439,10 @@ private[ui] class StageDataSource(
 
     // The submission time for a stage is misleading because it counts the time
     // the stage waits to be launched. (SPARK-10930)
-    val taskLaunchTimes =
-      stageData.taskData.values.map(_.taskInfo.launchTime).filter(_ > 0)
+    val firstTaskLaunchTime = stageData.firstTaskLaunchTime
     val duration: Option[Long] =
-      if (taskLaunchTimes.nonEmpty) {
-        val startTime = taskLaunchTimes.min
+      if (firstTaskLaunchTime.nonEmpty) {
+        val startTime = firstTaskLaunchTime.get
         if (finishTime > startTime) {
           Some(finishTime - startTime)
         } else {
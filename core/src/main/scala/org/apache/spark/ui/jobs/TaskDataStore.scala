@@ -0,0 +1,265 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.spark.ui.jobs
+
+import java.io._
+import java.nio.ByteBuffer
+import java.nio.charset.StandardCharsets
+
+import scala.collection.mutable.ArrayBuffer
+
+import com.fasterxml.jackson.databind.ObjectMapper
+import org.iq80.leveldb.DB
+import org.json4s.jackson.JsonMethods._
+
+import org.apache.spark.network.util.LevelDBProvider
+import org.apache.spark.network.util.LevelDBProvider.StoreVersion
+import org.apache.spark.ui.jobs.UIData._
+import org.apache.spark.util.{JsonProtocol, Utils}
+
+/**
+ * A LevelDB database, in a directory of its own, holding the tasks of the completed stages of
+ * one application UI of the history server, so that they are read back only when a page shows
+ * them rather than kept on heap.
+ *
+ * The tasks of a stage attempt are written once, in the order of their ids, under keys made of
+ * the stage id, the attempt id and their position, so a page of them is a range of keys.
+ * The database is deleted when the store is closed, once the reads in progress are done; the
+ * [[StoredTasks]] that pages still hold then read no tasks.
+ */
+private[spark] class TaskDataStore(dir: File) extends Closeable {
+
+  import TaskDataStore._
+
+  private val db: DB = LevelDBProvider.initLevelDB(dir, CURRENT_VERSION, new ObjectMapper())
+
+  // Guarded by `this`
+  private var closed = false
+  private var users = 0
+
+  /** Writes the tasks of a stage attempt, which must not have been written already. */
+  def write(stageId: Int, stageAttemptId: Int, tasks: Iterable[TaskUIData]): StoredTasks = {
+    val sorted = tasks.toSeq.sortBy(_.taskInfo.taskId)
+    withDb(throw new IllegalStateException(s"Task store $dir is closed")) { db =>
+      val batch = db.createWriteBatch()
+      try {
+        sorted.zipWithIndex.foreach { case (task, position) =>
+          batch.put(key(stageId, stageAttemptId, position), encode(task))
+        }
+        db.write(batch)
+      } finally {
+        batch.close()
+      }
+    }
+    val launchTimes = sorted.map(_.taskInfo.launchTime).filter(_ > 0)
+    new StoredTasks(this, stageId, stageAttemptId, sorted.size,
+      if (launchTimes.nonEmpty) Some(launchTimes.min) else None)
+  }
+
+  /** Reads the tasks of a stage attempt at the positions from `from` until `until`. */
+  def read(stageId: Int, stageAttemptId: Int, from: Int, until: Int): Seq[TaskUIData] = {
+    withDb(Seq.empty[TaskUIData]) { db =>
+      val tasks = new ArrayBuffer[TaskUIData]
+      val prefix = key(stageId, stageAttemptId, 0).take(8)
+      val it = db.iterator()
+      try {
+        it.seek(key(stageId, stageAttemptId, from))
+        var done = false
+        while (!done && tasks.size < until - from && it.hasNext) {
+          val entry = it.next()
+          if (entry.getKey.length == KEY_LENGTH && entry.getKey.startsWith(prefix)) {
+            tasks += decode(entry.getValue)
+          } else {
+            done = true
+          }
+        }
+      } finally {
+        it.close()
+      }
+      tasks
+    }
+  }
+
+  def delete(stageId: Int, stageAttemptId: Int, count: Int): Unit = {
+    withDb(()) { db =>
+      val batch = db.createWriteBatch()
+      try {
+        (0 until count).foreach(position => batch.delete(key(stageId, stageAttemptId, position)))
+        db.write(batch)
+      } finally {
+        batch.close()
+      }
+    }
+  }
+
+  /** Deletes the database now if no read is in progress, or else when the last one is done. */
+  override def close(): Unit = {
+    val idle = synchronized {
+      val wasOpen = !closed
+      closed = true
+      wasOpen && users == 0
+    }
+    if (idle) {
+      dispose()
+    }
+  }
+
+  // Runs `f` unless the store is closed, keeping the database open until `f` returns
+  private def withDb[T](ifClosed: => T)(f: DB => T): T = {
+    val open = synchronized {
+      if (!closed) {
+        users += 1
+      }
+      !closed
+    }
+    if (!open) {
+      ifClosed
+    } else {
+      try {
+        f(db)
+      } finally {
+        val last = synchronized {
+          users -= 1
+          closed && users == 0
+        }
+        if (last) {
+          dispose()
+        }
+      }
+    }
+  }
+
+  private def dispose(): Unit = {
+    db.close()
+    Utils.deleteRecursively(dir)
+  }
+}
+
+/**
+ * The tasks of a stage attempt in a [[TaskDataStore]], with what the stage tables need to know
+ * of them without reading them.
+ */
+private[spark] class StoredTasks(
+    store: TaskDataStore,
+    stageId: Int,
+    stageAttemptId: Int,
+    val size: Int,
+    val firstLaunchTime: Option[Long]) {
+
+  def all: Seq[TaskUIData] = slice(0, size)
+
+  /** The tasks from position `from` until `until`, in the order of their ids. */
+  def slice(from: Int, until: Int): Seq[TaskUIData] = {
+    val start = math.max(from, 0)
+    val end = math.min(until, size)
+    if (start >= end) Nil else store.read(stageId, stageAttemptId, start, end)
+  }
+
+  def delete(): Unit = store.delete(stageId, stageAttemptId, size)
+}
+
+private[spark] object TaskDataStore {
+
+  /** Prefix of the names of the store directories, under `spark.history.store.path`. */
+  val DIR_PREFIX = "tasks"
+
+  private val CURRENT_VERSION = new StoreVersion(1, 0)
+  private val KEY_LENGTH = 12
+
+  /** Opens a new store in a directory of its own under `root`. */
+  def create(root: String): TaskDataStore = {
+    new TaskDataStore(Utils.createDirectory(root, DIR_PREFIX))
+  }
+
+  /** Deletes the stores that a previous history server left behind under `root`. */
+  def deleteStale(root: String): Unit = {
+    Option(new File(root).listFiles()).getOrElse(Array.empty[File])
+      .filter(_.getName.startsWith(DIR_PREFIX + "-"))
+      .foreach(Utils.deleteRecursively)
+  }
+
+  private def key(stageId: Int, stageAttemptId: Int, position: Int): Array[Byte] = {
+    ByteBuffer.allocate(KEY_LENGTH).putInt(stageId).putInt(stageAttemptId).putInt(position).array()
+  }
+
+  private[jobs] def encode(task: TaskUIData): Array[Byte] = {
+    val bytes = new ByteArrayOutputStream()
+    val out = new DataOutputStream(bytes)
+    writeString(out, compact(JsonProtocol.taskInfoToJson(task.taskInfo)))
+    out.writeBoolean(task.errorMessage.isDefined)
+    task.errorMessage.foreach(writeString(out, _))
+    out.writeBoolean(task.metrics.isDefined)
+    task.metrics.foreach { m =>
+      Seq(m.executorDeserializeTime, m.executorDeserializeCpuTime, m.executorRunTime,
+        m.executorCpuTime, m.resultSize, m.jvmGCTime, m.resultSerializationTime,
+        m.memoryBytesSpilled, m.diskBytesSpilled, m.peakExecutionMemory, m.allocatedBytes,
+        m.inputMetrics.bytesRead, m.inputMetrics.recordsRead,
+        m.outputMetrics.bytesWritten, m.outputMetrics.recordsWritten,
+        m.shuffleReadMetrics.remoteBlocksFetched, m.shuffleReadMetrics.localBlocksFetched,
+        m.shuffleReadMetrics.remoteBytesRead, m.shuffleReadMetrics.localBytesRead,
+        m.shuffleReadMetrics.fetchWaitTime, m.shuffleReadMetrics.recordsRead,
+        m.shuffleReadMetrics.totalBytesRead, m.shuffleReadMetrics.totalBlocksFetched,
+        m.shuffleWriteMetrics.bytesWritten, m.shuffleWriteMetrics.recordsWritten,
+        m.shuffleWriteMetrics.writeTime).foreach(out.writeLong)
+    }
+    out.close()
+    bytes.toByteArray
+  }
+
+  private[jobs] def decode(bytes: Array[Byte]): TaskUIData = {
+    val in = new DataInputStream(new ByteArrayInputStream(bytes))
+    val taskInfo = JsonProtocol.taskInfoFromJson(parse(readString(in)))
+    val errorMessage = if (in.readBoolean()) Some(readString(in)) else None
+    val metrics = if (in.readBoolean()) {
+      val v = Array.fill(26)(in.readLong())
+      Some(TaskMetricsUIData(
+        executorDeserializeTime = v(0),
+        executorDeserializeCpuTime = v(1),
+        executorRunTime = v(2),
+        executorCpuTime = v(3),
+        resultSize = v(4),
+        jvmGCTime = v(5),
+        resultSerializationTime = v(6),
+        memoryBytesSpilled = v(7),
+        diskBytesSpilled = v(8),
+        peakExecutionMemory = v(9),
+        allocatedBytes = v(10),
+        inputMetrics = InputMetricsUIData(v(11), v(12)),
+        outputMetrics = OutputMetricsUIData(v(13), v(14)),
+        shuffleReadMetrics = ShuffleReadMetricsUIData(v(15), v(16), v(17), v(18), v(19), v(20),
+          v(21), v(22)),
+        shuffleWriteMetrics = ShuffleWriteMetricsUIData(v(23), v(24), v(25))))
+    } else {
+      None
+    }
+    TaskUIData.stored(taskInfo, metrics, errorMessage)
+  }
+
+  // Error messages hold stack traces, which may not fit the 64KB of writeUTF
+  private def writeString(out: DataOutputStream, s: String): Unit = {
+    val bytes = s.getBytes(StandardCharsets.UTF_8)
+    out.writeInt(bytes.length)
+    out.write(bytes)
+  }
+
+  private def readString(in: DataInputStream): String = {
+    val bytes = new Array[Byte](in.readInt())
+    in.readFully(bytes)
+    new String(bytes, StandardCharsets.UTF_8)
+  }
+}
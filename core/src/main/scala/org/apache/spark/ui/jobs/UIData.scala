@@ -21,7 +21,8 @@ import scala.collection.mutable
 import scala.collection.mutable.{HashMap, LinkedHashMap}
 
 import org.apache.spark.JobExecutionStatus
-import org.apache.spark.executor.{ShuffleReadMetrics, ShuffleWriteMetrics, TaskMetrics}
+import org.apache.spark.executor.{ShuffleReadMetrics, ShuffleWriteMetrics, TaskMetrics,
+  TaskThreadRates}
 import org.apache.spark.scheduler.{AccumulableInfo, TaskInfo}
 import org.apache.spark.util.AccumulatorContext
 import org.apache.spark.util.collection.OpenHashSet
@@ -100,6 +101,27 @@ private[spark] object UIData {
     var taskData = new LinkedHashMap[Long, TaskUIData]
     var executorSummary = new HashMap[String, ExecutorSummary]
 
+    /**
+     * The tasks moved out of `taskData` into the history store when the stage completed, if
+     * they were. Tasks that end after that are kept in `taskData`.
+     */
+    var storedTasks: Option[StoredTasks] = None
+
+    /** All the tasks of the stage, reading back the stored ones. */
+    def tasks: Seq[TaskUIData] = storedTasks match {
+      case Some(stored) =>
+        stored.all.filterNot(t => taskData.contains(t.taskInfo.taskId)) ++ taskData.values
+      case None => taskData.values.toSeq
+    }
+
+    def hasTasks: Boolean = storedTasks.exists(_.size > 0) || taskData.nonEmpty
+
+    def firstTaskLaunchTime: Option[Long] = {
+      val launchTimes = storedTasks.flatMap(_.firstLaunchTime) ++
+        taskData.values.map(_.taskInfo.launchTime).filter(_ > 0)
+      if (launchTimes.nonEmpty) Some(launchTimes.min) else None
+    }
+
     def hasInput: Boolean = inputBytes > 0
     def hasOutput: Boolean = outputBytes > 0
     def hasShuffleRead: Boolean = shuffleReadTotalBytes > 0
@@ -127,6 +149,32 @@ private[spark] object UIData {
     def updateTaskMetrics(metrics: Option[TaskMetrics]): Unit = {
       _metrics = TaskUIData.toTaskMetricsUIData(metrics)
     }
+
+    /** CPU usage and allocation rate of the running task between its latest metrics updates. */
+    def liveRates: Option[TaskThreadRates] = _liveRates
+
+    private var _liveRates: Option[TaskThreadRates] = None
+    private var lastUpdateTime = -1L
+
+    /**
+     * Computes the live rates from the metrics of a heartbeat received at `time`, and those of
+     * the previous one, or the launch of the task for the first one. Call before
+     * `updateTaskMetrics`.
+     */
+    def updateLiveRates(metrics: TaskMetrics, time: Long): Unit = {
+      val (since, cpuTime, allocatedBytes) = _metrics match {
+        case Some(m) if lastUpdateTime >= 0 => (lastUpdateTime, m.executorCpuTime, m.allocatedBytes)
+        case _ => (_taskInfo.launchTime, 0L, 0L)
+      }
+      if (time > since) {
+        val seconds = (time - since) / 1000.0
+        _liveRates = Some(TaskThreadRates(
+          cpuPercent = math.max(0L, metrics.executorCpuTime - cpuTime) / 1e7 / seconds,
+          allocatedBytesPerSecond =
+            math.max(0L, metrics.allocatedBytes - allocatedBytes) / seconds))
+      }
+      lastUpdateTime = time
+    }
   }
 
   object TaskUIData {
@@ -134,6 +182,16 @@ private[spark] object UIData {
       new TaskUIData(dropInternalAndSQLAccumulables(taskInfo), toTaskMetricsUIData(metrics))
     }
 
+    /** A task read back from the history store, whose info was already stripped. */
+    private[jobs] def stored(
+        taskInfo: TaskInfo,
+        metrics: Option[TaskMetricsUIData],
+        errorMessage: Option[String]): TaskUIData = {
+      val task = new TaskUIData(taskInfo, metrics)
+      task.errorMessage = errorMessage
+      task
+    }
+
     private def toTaskMetricsUIData(metrics: Option[TaskMetrics]): Option[TaskMetricsUIData] = {
       metrics.map { m =>
         TaskMetricsUIData(
@@ -147,6 +205,7 @@ private[spark] object UIData {
           memoryBytesSpilled = m.memoryBytesSpilled,
           diskBytesSpilled = m.diskBytesSpilled,
           peakExecutionMemory = m.peakExecutionMemory,
+          allocatedBytes = m.allocatedBytes,
           inputMetrics = InputMetricsUIData(m.inputMetrics.bytesRead, m.inputMetrics.recordsRead),
           outputMetrics =
             OutputMetricsUIData(m.outputMetrics.bytesWritten, m.outputMetrics.recordsWritten),
@@ -191,6 +250,7 @@ private[spark] object UIData {
       memoryBytesSpilled: Long,
       diskBytesSpilled: Long,
       peakExecutionMemory: Long,
+      allocatedBytes: Long,
       inputMetrics: InputMetricsUIData,
       outputMetrics: OutputMetricsUIData,
       shuffleReadMetrics: ShuffleReadMetricsUIData,
@@ -28,7 +28,6 @@ import org.json4s.DefaultFormats
 import org.json4s.JsonAST._
 import org.json4s.JsonDSL._
 import org.json4s.jackson.JsonMethods._
-import org.json4s.jackson.Serialization
 
 import org.apache.spark._
 import org.apache.spark.executor._
@@ -99,6 +98,8 @@ private[spark] object JsonProtocol {
         logStartToJson(logStart)
       case metricsUpdate: SparkListenerExecutorMetricsUpdate =>
         executorMetricsUpdateToJson(metricsUpdate)
+      case metricsSample: SparkListenerExecutorMetricsSample =>
+        executorMetricsSampleToJson(metricsSample)
       case hdfsExecutorMetrics: HDFSExecutorMetrics =>
         hdfsExecutorMetricsToJson(hdfsExecutorMetrics)
       case blockUpdated: SparkListenerBlockUpdated =>
@@ -247,12 +248,33 @@ private[spark] object JsonProtocol {
     })
   }
 
+  def executorMetricsSampleToJson(metricsSample: SparkListenerExecutorMetricsSample): JValue = {
+    ("Event" -> Utils.getFormattedClassName(metricsSample)) ~
+    ("Executor ID" -> metricsSample.execId) ~
+    ("Host" -> metricsSample.host) ~
+    ("Timestamp" -> metricsSample.timestamp) ~
+    ("Values" -> JObject(metricsSample.values.toList.map { case (k, v) => (k, JDouble(v)) }))
+  }
+
   def hdfsExecutorMetricsToJson(hDFSExecutorMetrics: HDFSExecutorMetrics): JValue = {
     ("timestamp" -> hDFSExecutorMetrics.timestamp ) ~
-      ("values" -> Serialization.write(hDFSExecutorMetrics.values) ) ~
+      ("values" -> metricValuesToJson(hDFSExecutorMetrics.values) ) ~
       ("host" -> hDFSExecutorMetrics.host)
   }
 
+  /** The nested metric values as a JSON object rather than a string holding one. */
+  private def metricValuesToJson(values: Map[String, Any]): JValue = {
+    JObject(values.toList.map {
+      case (key, child: Map[String, Any] @unchecked) => (key, metricValuesToJson(child))
+      case (key, value: Double) => (key, JDouble(value))
+      case (key, value: Float) => (key, JDouble(value))
+      case (key, value: Number) => (key, JInt(BigInt(value.longValue())))
+      case (key, value: Boolean) => (key, JBool(value))
+      case (key, null) => (key, JNull)
+      case (key, value) => (key, JString(value.toString))
+    })
+  }
+
   /** ------------------------------------------------------------------- *
    * JSON serialization methods for classes SparkListenerEvents depend on |
    * -------------------------------------------------------------------- */
@@ -365,6 +387,7 @@ private[spark] object JsonProtocol {
     ("Result Serialization Time" -> taskMetrics.resultSerializationTime) ~
     ("Memory Bytes Spilled" -> taskMetrics.memoryBytesSpilled) ~
     ("Disk Bytes Spilled" -> taskMetrics.diskBytesSpilled) ~
+    ("Allocated Bytes" -> taskMetrics.allocatedBytes) ~
     ("Shuffle Read Metrics" -> shuffleReadMetrics) ~
     ("Shuffle Write Metrics" -> shuffleWriteMetrics) ~
     ("Input Metrics" -> inputMetrics) ~
@@ -512,6 +535,7 @@ private[spark] object JsonProtocol {
     val executorRemoved = Utils.getFormattedClassName(SparkListenerExecutorRemoved)
     val logStart = Utils.getFormattedClassName(SparkListenerLogStart)
     val metricsUpdate = Utils.getFormattedClassName(SparkListenerExecutorMetricsUpdate)
+    val metricsSample = Utils.getFormattedClassName(SparkListenerExecutorMetricsSample)
 
     (json \ "Event").extract[String] match {
       case `stageSubmitted` => stageSubmittedFromJson(json)
@@ -531,6 +555,7 @@ private[spark] object JsonProtocol {
       case `executorRemoved` => executorRemovedFromJson(json)
       case `logStart` => logStartFromJson(json)
       case `metricsUpdate` => executorMetricsUpdateFromJson(json)
+      case `metricsSample` => executorMetricsSampleFromJson(json)
       case other => mapper.readValue(compact(render(json)), Utils.classForName(other))
         .asInstanceOf[SparkListenerEvent]
     }
@@ -665,6 +690,14 @@ private[spark] object JsonProtocol {
     SparkListenerExecutorMetricsUpdate(execInfo, accumUpdates)
   }
 
+  def executorMetricsSampleFromJson(json: JValue): SparkListenerExecutorMetricsSample = {
+    val execId = (json \ "Executor ID").extract[String]
+    val host = (json \ "Host").extract[String]
+    val timestamp = (json \ "Timestamp").extract[Long]
+    val values = (json \ "Values").extract[Map[String, Double]]
+    SparkListenerExecutorMetricsSample(execId, host, timestamp, values)
+  }
+
   /** --------------------------------------------------------------------- *
    * JSON deserialization methods for classes SparkListenerEvents depend on |
    * ---------------------------------------------------------------------- */
@@ -784,6 +817,10 @@ private[spark] object JsonProtocol {
     metrics.setResultSerializationTime((json \ "Result Serialization Time").extract[Long])
     metrics.incMemoryBytesSpilled((json \ "Memory Bytes Spilled").extract[Long])
     metrics.incDiskBytesSpilled((json \ "Disk Bytes Spilled").extract[Long])
+    metrics.setAllocatedBytes((json \ "Allocated Bytes") match {
+      case JNothing => 0
+      case x => x.extract[Long]
+    })
 
     // Shuffle read metrics
     Utils.jsonOption(json \ "Shuffle Read Metrics").foreach { readJson =>
@@ -98,6 +98,7 @@ private[spark] abstract class Spillable[C](taskMemoryManager: TaskMemoryManager)
       _elementsRead = 0
       _memoryBytesSpilled += currentMemory
       releaseMemory()
+      taskMemoryManager.recordSpill(currentMemory)
     }
     shouldSpill
   }
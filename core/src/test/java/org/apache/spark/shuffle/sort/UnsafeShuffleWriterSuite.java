@@ -55,7 +55,9 @@ import org.apache.spark.security.CryptoStreamUtils;
 import org.apache.spark.serializer.*;
 import org.apache.spark.shuffle.IndexShuffleBlockResolver;
 import org.apache.spark.storage.*;
+import org.apache.spark.unsafe.Platform;
 import org.apache.spark.util.Utils;
+import org.apache.spark.util.collection.unsafe.sort.AsyncSpill;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.greaterThan;
@@ -573,4 +575,80 @@ public class UnsafeShuffleWriterSuite {
     }
   }
 
+
+  private ShuffleExternalSorter newAsyncSpillingSorter() {
+    conf.set(AsyncSpill.ENABLED_KEY, "true");
+    return new ShuffleExternalSorter(taskMemoryManager, blockManager, taskContext, 1024,
+      NUM_PARTITITONS, conf, taskMetrics.shuffleWriteMetrics());
+  }
+
+  private int insertUntilSpillingAsync(ShuffleExternalSorter sorter, int inserted)
+      throws IOException {
+    final byte[] record = new byte[16];
+    do {
+      sorter.insertRecord(record, Platform.BYTE_ARRAY_OFFSET, record.length,
+        inserted++ % NUM_PARTITITONS);
+    } while (!sorter.isSpillingAsync());
+    return inserted;
+  }
+
+  @Test
+  public void sorterSpillsInTheBackgroundForAnotherConsumer() throws Exception {
+    final ShuffleExternalSorter sorter = newAsyncSpillingSorter();
+    final ShuffleExternalSorter other = newAsyncSpillingSorter();
+    final byte[] record = new byte[16];
+    int inserted = 0;
+    for (; inserted < 1000; inserted++) {
+      sorter.insertRecord(record, Platform.BYTE_ARRAY_OFFSET, record.length,
+        inserted % NUM_PARTITITONS);
+    }
+    sorter.spill();
+    inserted = insertUntilSpillingAsync(sorter, inserted);
+    // Another consumer short of memory gets the memory of the records spilled in the background
+    assertThat(sorter.spill(Long.MAX_VALUE, other), greaterThan(0L));
+    assertFalse(sorter.isSpillingAsync());
+    sorter.insertRecord(record, Platform.BYTE_ARRAY_OFFSET, record.length, 0);
+    inserted++;
+
+    // Every record is in one of the spills
+    sorter.closeAndGetSpills();
+    assertEquals(inserted, taskMetrics.shuffleWriteMetrics().recordsWritten());
+    sorter.cleanupResources();
+    other.cleanupResources();
+    assertSpillFilesWereCleanedUp();
+  }
+
+  @Test
+  public void sorterDeletesTheFileOfAFailedBackgroundSpill() throws Exception {
+    final ShuffleExternalSorter sorter = newAsyncSpillingSorter();
+    final byte[] record = new byte[16];
+    for (int i = 0; i < 1000; i++) {
+      sorter.insertRecord(record, Platform.BYTE_ARRAY_OFFSET, record.length, i % NUM_PARTITITONS);
+    }
+    sorter.spill();
+    doAnswer(new Answer<DiskBlockObjectWriter>() {
+      @Override
+      public DiskBlockObjectWriter answer(InvocationOnMock invocationOnMock) throws Throwable {
+        throw new IOException("disk full");
+      }
+    }).when(blockManager).getDiskWriter(
+      any(BlockId.class),
+      any(File.class),
+      any(SerializerInstance.class),
+      anyInt(),
+      any(ShuffleWriteMetrics.class));
+    insertUntilSpillingAsync(sorter, 0);
+    final File failedSpillFile = spillFilesCreated.getLast();
+
+    try {
+      sorter.spill(Long.MAX_VALUE, sorter);
+      fail("Should have failed");
+    } catch (IOException e) {
+      assertEquals("disk full", e.getMessage());
+    }
+    assertFalse(sorter.isSpillingAsync());
+    assertFalse(failedSpillFile.exists());
+    sorter.cleanupResources();
+    assertSpillFilesWereCleanedUp();
+  }
 }
@@ -269,6 +269,66 @@ public class UnsafeExternalSorterSuite {
     assertSpillFilesWereCleanedUp();
   }
 
+  @Test
+  public void spillingInTheBackground() throws Exception {
+    final UnsafeExternalSorter sorter = newSorter();
+    sorter.setAsyncSpillFraction(0.5);
+    final int numRecords = (int) (pageSizeBytes / (4 + 4));
+    for (int i = 0; i < numRecords; i++) {
+      insertNumber(sorter, 3 * numRecords - 3 * i);
+    }
+    // The first spill sets the amount of records that are spilled in the background
+    sorter.spill();
+    for (int i = 0; i < numRecords; i++) {
+      insertNumber(sorter, 3 * numRecords - 3 * i - 1);
+      insertNumber(sorter, 3 * numRecords - 3 * i - 2);
+    }
+    UnsafeSorterIterator iter = sorter.getSortedIterator();
+    assertThat(memoryManager.metricsSource().asyncSpillCount().getCount(), greaterThan(0L));
+
+    int i = 1;
+    while (iter.hasNext()) {
+      iter.loadNext();
+      assertEquals(i, iter.getKeyPrefix());
+      assertEquals(i, Platform.getInt(iter.getBaseObject(), iter.getBaseOffset()));
+      i++;
+    }
+    assertEquals(3 * numRecords + 1, i);
+    sorter.cleanupResources();
+    assertSpillFilesWereCleanedUp();
+  }
+
+  @Test
+  public void spillingInTheBackgroundForAnotherConsumer() throws Exception {
+    final UnsafeExternalSorter sorter = newSorter();
+    final UnsafeExternalSorter other = newSorter();
+    sorter.setAsyncSpillFraction(0.5);
+    final int numRecords = (int) (pageSizeBytes / (4 + 4));
+    int inserted = 0;
+    while (inserted < numRecords) {
+      insertNumber(sorter, inserted++);
+    }
+    sorter.spill();
+    while (!sorter.isSpillingAsync()) {
+      insertNumber(sorter, inserted++);
+    }
+    // Another consumer short of memory gets the memory of the records spilled in the background
+    assertThat(sorter.spill(Long.MAX_VALUE, other), greaterThan(0L));
+    assertFalse(sorter.isSpillingAsync());
+
+    UnsafeSorterIterator iter = sorter.getSortedIterator();
+    int i = 0;
+    while (iter.hasNext()) {
+      iter.loadNext();
+      assertEquals(i, Platform.getInt(iter.getBaseObject(), iter.getBaseOffset()));
+      i++;
+    }
+    assertEquals(inserted, i);
+    sorter.cleanupResources();
+    other.cleanupResources();
+    assertSpillFilesWereCleanedUp();
+  }
+
   @Test
   public void testFillingPage() throws Exception {
     final UnsafeExternalSorter sorter = newSorter();
@@ -17,8 +17,10 @@
 
 package org.apache.spark
 
+import com.codahale.metrics.{Gauge, Meter}
 import org.scalatest.BeforeAndAfterAll
 
+import org.apache.spark.internal.config.SHUFFLE_PUSH_ENABLED
 import org.apache.spark.network.TransportContext
 import org.apache.spark.network.netty.SparkTransportConf
 import org.apache.spark.network.server.TransportServer
@@ -84,4 +86,27 @@ class ExternalShuffleServiceSuite extends ShuffleSuite with BeforeAndAfterAll {
     }
     e.getMessage should include ("Fetch failure will not retry stage due to testing config")
   }
+
+  test("blocks pushed to the shuffle service are merged and read by reducers") {
+    val pushConf = conf.clone.set(SHUFFLE_PUSH_ENABLED, true)
+    sc = new SparkContext("local-cluster[2,1,1024]", "test", pushConf)
+    // The shuffle services that merge a shuffle are chosen among the hosts of the executors
+    // registered when its map stage is submitted.
+    sc.jobProgressListener.waitUntilExecutorsUp(2, 60000)
+    val metrics = rpcHandler.getAllMetrics.getMetrics
+    val mergedBytes = metrics.get("blockMergeRateBytes").asInstanceOf[Meter]
+    val mergedPartitions = metrics.get("mergedPartitionsSize").asInstanceOf[Gauge[Int]]
+    val mergedBytesBefore = mergedBytes.getCount
+
+    val rdd = sc.parallelize(0 until 1000, 10).map(i => (i % 20, 1)).reduceByKey(_ + _, 5)
+    val expected = (0 until 20).map((_, 50)).toSet
+    rdd.collect().toSet should equal (expected)
+    val dep = rdd.dependencies.head.asInstanceOf[ShuffleDependency[_, _, _]]
+    dep.mergerLocations should not be empty
+    mergedBytes.getCount should be > mergedBytesBefore
+    mergedPartitions.getValue should be >= 5
+
+    // Reading the shuffle again reads the same finalized merged partitions
+    rdd.collect().toSet should equal (expected)
+  }
 }
@@ -29,7 +29,7 @@ import org.mockito.Matchers._
 import org.mockito.Mockito.{mock, spy, verify, when}
 import org.scalatest.{BeforeAndAfterEach, PrivateMethodTester}
 
-import org.apache.spark.executor.TaskMetrics
+import org.apache.spark.executor.{ExecutorMetricsDelta, TaskMetrics}
 import org.apache.spark.rpc.{RpcCallContext, RpcEndpoint, RpcEndpointRef, RpcEnv}
 import org.apache.spark.scheduler._
 import org.apache.spark.scheduler.cluster.CoarseGrainedClusterMessages._
@@ -109,6 +109,35 @@ class HeartbeatReceiverSuite
     assert(trackedExecutors.contains(executorId2))
   }
 
+  test("metrics attached to heartbeats are posted") {
+    val samples = new mutable.ArrayBuffer[SparkListenerExecutorMetricsSample]
+    sc.addSparkListener(new SparkListener {
+      override def onExecutorMetricsSample(sample: SparkListenerExecutorMetricsSample): Unit = {
+        samples += sample
+      }
+    })
+    heartbeatReceiverRef.askWithRetry[Boolean](TaskSchedulerIsSet)
+    addExecutorAndVerify(executorId1)
+    val blockManagerId = BlockManagerId(executorId1, "localhost", 12345)
+    def heartbeat(delta: ExecutorMetricsDelta): HeartbeatResponse = {
+      heartbeatReceiverRef.askWithRetry[HeartbeatResponse](
+        Heartbeat(executorId1, Array.empty, blockManagerId, Some(delta)))
+    }
+
+    assert(!heartbeat(ExecutorMetricsDelta(10, true, 0, Array("a", "b"), Array(0, 1),
+      Array(1.0, 2.0))).resendMetrics)
+    assert(!heartbeat(ExecutorMetricsDelta(20, false, 2, Array.empty, Array(1),
+      Array(3.0))).resendMetrics)
+    // A delta that doesn't follow the previous one, as after a lost heartbeat
+    assert(heartbeat(ExecutorMetricsDelta(30, false, 5, Array("c"), Array(5),
+      Array(4.0))).resendMetrics)
+
+    sc.listenerBus.waitUntilEmpty(10000)
+    assert(samples.map(s => (s.execId, s.host, s.timestamp, s.values)) === Seq(
+      (executorId1, "localhost", 10L, Map("a" -> 1.0, "b" -> 2.0)),
+      (executorId1, "localhost", 20L, Map("a" -> 1.0, "b" -> 3.0))))
+  }
+
   test("reregister if scheduler is not ready yet") {
     addExecutorAndVerify(executorId1)
     // Task scheduler is not set yet in HeartbeatReceiver, so executors should reregister
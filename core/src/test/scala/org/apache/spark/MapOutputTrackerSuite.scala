@@ -18,15 +18,17 @@
 package org.apache.spark
 
 import scala.collection.mutable.ArrayBuffer
+import scala.util.Random
 
 import org.mockito.Matchers.{any, isA}
 import org.mockito.Mockito._
 
 import org.apache.spark.broadcast.BroadcastManager
 import org.apache.spark.rpc.{RpcAddress, RpcCallContext, RpcEnv}
-import org.apache.spark.scheduler.{CompressedMapStatus, MapStatus}
+import org.apache.spark.scheduler.{CompressedMapStatus, HighlyCompressedMapStatus, MapStatus,
+  MapStatusesUpdate}
 import org.apache.spark.shuffle.FetchFailedException
-import org.apache.spark.storage.{BlockManagerId, ShuffleBlockId}
+import org.apache.spark.storage.{BlockManagerId, ShuffleBlockBatchId, ShuffleBlockId}
 
 class MapOutputTrackerSuite extends SparkFunSuite {
   private val conf = new SparkConf
@@ -74,6 +76,32 @@ class MapOutputTrackerSuite extends SparkFunSuite {
     rpcEnv.shutdown()
   }
 
+  test("master register shuffle and fetch a range of partitions in batch") {
+    val rpcEnv = createRpcEnv("test")
+    val tracker = newTrackerMaster()
+    tracker.trackerEndpoint = rpcEnv.setupEndpoint(MapOutputTracker.ENDPOINT_NAME,
+      new MapOutputTrackerMasterEndpoint(rpcEnv, tracker, conf))
+    tracker.registerShuffle(10, 2)
+    val size1000 = MapStatus.decompressSize(MapStatus.compressSize(1000L))
+    val size10000 = MapStatus.decompressSize(MapStatus.compressSize(10000L))
+    tracker.registerMapOutput(10, 0, MapStatus(BlockManagerId("a", "hostA", 1000),
+        Array(1000L, 10000L, 0L)))
+    tracker.registerMapOutput(10, 1, MapStatus(BlockManagerId("b", "hostB", 1000),
+        Array(10000L, 1000L, 0L)))
+    val statuses = tracker.getMapSizesByExecutorId(10, 0, 2, fetchInBatch = true)
+    assert(statuses.toSet ===
+      Seq((BlockManagerId("a", "hostA", 1000),
+          ArrayBuffer((ShuffleBlockBatchId(10, 0, 0, 2), size1000 + size10000))),
+        (BlockManagerId("b", "hostB", 1000),
+          ArrayBuffer((ShuffleBlockBatchId(10, 1, 0, 2), size10000 + size1000))))
+        .toSet)
+    // A single partition is still fetched as a block
+    assert(tracker.getMapSizesByExecutorId(10, 2, 3, fetchInBatch = true).flatMap(_._2).toSet ===
+      Set((ShuffleBlockId(10, 0, 2), 0L), (ShuffleBlockId(10, 1, 2), 0L)))
+    tracker.stop()
+    rpcEnv.shutdown()
+  }
+
   test("master register and unregister shuffle") {
     val rpcEnv = createRpcEnv("test")
     val tracker = newTrackerMaster()
@@ -253,13 +281,14 @@ class MapOutputTrackerSuite extends SparkFunSuite {
       rpcEnv.stop(masterTracker.trackerEndpoint)
       rpcEnv.setupEndpoint(MapOutputTracker.ENDPOINT_NAME, masterEndpoint)
 
-      // Frame size should be ~1.1MB, and MapOutputTrackerMasterEndpoint should throw exception.
-      // Note that the size is hand-selected here because map output statuses are compressed before
-      // being sent.
+      // Frame size should be ~1.3MB, and MapOutputTrackerMasterEndpoint should throw exception.
+      // Note that the sizes are random here because map output statuses are bit-packed and
+      // compressed before being sent.
+      val random = new Random(42)
       masterTracker.registerShuffle(20, 100)
       (0 until 100).foreach { i =>
         masterTracker.registerMapOutput(20, i, new CompressedMapStatus(
-          BlockManagerId("999", "mps", 1000), Array.fill[Long](4000000)(0)))
+          BlockManagerId("999", "mps", 1000), Array.fill[Long](20000)(1L << random.nextInt(36))))
       }
       val senderAddress = RpcAddress("localhost", 12345)
       val rpcCallContext = mock(classOf[RpcCallContext])
@@ -277,4 +306,96 @@ class MapOutputTrackerSuite extends SparkFunSuite {
     }
   }
 
+  test("map statuses are encoded in columns") {
+    val locA = BlockManagerId("a", "hostA", 1000)
+    val locB = BlockManagerId("b", "hostB", 1000, Some("/rack1"))
+    val statuses = Array[MapStatus](
+      MapStatus(locA, Array(0L, 10L, 1000L)),
+      null,
+      MapStatus(locB, Array.tabulate[Long](3000)(i => if (i % 3 == 0) 0L else i)),
+      MapStatus(locA, Array.fill[Long](3000)(0L)),
+      MapStatus(locB, Array(5L, 0L, 1L << 40)))
+    val full = MapStatusesUpdate.full(7L, statuses)
+    val delta = new MapStatusesUpdate(7L, 3L, 10, Array(2, 3, 5, 6, 9), statuses)
+    Seq(full, delta).foreach { update =>
+      val (bytes, _) = MapOutputTracker.serializeMapStatusesUpdate(update, null, true, Int.MaxValue)
+      val read = MapOutputTracker.deserializeMapStatusesUpdate(bytes)
+      assert(read.version === 7L)
+      assert(read.sinceVersion === update.sinceVersion)
+      assert(read.numMaps === update.numMaps)
+      assert(read.mapIds.toSeq === update.mapIds.toSeq)
+      assert(read.statuses(1) === null)
+      read.statuses.zip(statuses).filter(_._2 != null).foreach { case (r, s) =>
+        assert(r.getClass === s.getClass)
+        assert(r.location === s.location)
+        (0 until 3000).foreach { reduceId =>
+          if (s.isInstanceOf[HighlyCompressedMapStatus] || reduceId < 3) {
+            assert(r.getSizeForBlock(reduceId) === s.getSizeForBlock(reduceId))
+          }
+        }
+      }
+    }
+  }
+
+  test("remote fetch of the map outputs changed since the version of the executor") {
+    val hostname = "localhost"
+    val rpcEnv = createRpcEnv("spark", hostname, 0, new SecurityManager(conf))
+
+    val masterTracker = newTrackerMaster()
+    masterTracker.trackerEndpoint = rpcEnv.setupEndpoint(MapOutputTracker.ENDPOINT_NAME,
+      new MapOutputTrackerMasterEndpoint(rpcEnv, masterTracker, conf))
+
+    val slaveRpcEnv = createRpcEnv("spark-slave", hostname, 0, new SecurityManager(conf))
+    val slaveTracker = new MapOutputTrackerWorker(conf)
+    slaveTracker.trackerEndpoint =
+      slaveRpcEnv.setupEndpointRef(rpcEnv.address, MapOutputTracker.ENDPOINT_NAME)
+
+    masterTracker.registerShuffle(10, 4)
+    (0 until 4).foreach { mapId =>
+      masterTracker.registerMapOutput(10, mapId, MapStatus(
+        BlockManagerId(mapId.toString, "host" + mapId, 1000), Array(1000L)))
+    }
+    val version = masterTracker.getMapOutputVersion(10)
+    assert(version === 4)
+    masterTracker.incrementEpoch()
+    slaveTracker.updateEpoch(masterTracker.getEpoch)
+    assert(slaveTracker.getMapSizesByExecutorId(10, 0).map(_._1.executorId).toSet ===
+      Set("0", "1", "2", "3"))
+
+    // Lose one output and rerun it elsewhere
+    val size1000 = MapStatus.decompressSize(MapStatus.compressSize(1000L))
+    masterTracker.unregisterMapOutput(10, 2, BlockManagerId("2", "host2", 1000))
+    masterTracker.registerMapOutput(10, 2, MapStatus(
+      BlockManagerId("4", "host4", 1000), Array(1000L)))
+    assert(masterTracker.getMapOutputVersion(10) === version + 2)
+    val delta = MapOutputTracker.deserializeMapStatusesUpdate(
+      masterTracker.getSerializedMapOutputStatuses(10, version))
+    assert(delta.isDelta)
+    assert(delta.mapIds.toSeq === Seq(2))
+    assert(delta.statuses(0).location === BlockManagerId("4", "host4", 1000))
+
+    masterTracker.incrementEpoch()
+    slaveTracker.updateEpoch(masterTracker.getEpoch)
+    val expected = Seq(0, 1, 4, 3).zipWithIndex.map { case (executor, mapId) =>
+      (BlockManagerId(executor.toString, "host" + executor, 1000),
+        ArrayBuffer((ShuffleBlockId(10, mapId, 0), size1000)))
+    }
+    assert(slaveTracker.getMapSizesByExecutorId(10, 0).toMap === expected.toMap)
+
+    // Outputs unchanged since the version of the executor are not sent again
+    val unchanged = MapOutputTracker.deserializeMapStatusesUpdate(
+      masterTracker.getSerializedMapOutputStatuses(10, version + 2))
+    assert(unchanged.isDelta)
+    assert(unchanged.mapIds.isEmpty)
+    // When most outputs changed since the version of the executor, the full set is sent instead
+    val all = MapOutputTracker.deserializeMapStatusesUpdate(
+      masterTracker.getSerializedMapOutputStatuses(10, 0))
+    assert(!all.isDelta)
+    assert(all.statuses.length === 4)
+
+    masterTracker.stop()
+    slaveTracker.stop()
+    rpcEnv.shutdown()
+    slaveRpcEnv.shutdown()
+  }
 }
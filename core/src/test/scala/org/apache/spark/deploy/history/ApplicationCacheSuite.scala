@@ -78,7 +78,7 @@ class ApplicationCacheSuite extends SparkFunSuite with Logging with MockitoSugar
       logDebug(s"getAppUI($appId, $attemptId)")
       getAppUICount += 1
       instances.get(CacheKey(appId, attemptId)).map( e =>
-        LoadedAppUI(e.ui, updateProbe(appId, attemptId, e.probeTime)))
+        LoadedAppUI(e.ui, updateProbe(appId, attemptId, e.probeTime), e.catchUp))
     }
 
     override def attachSparkUI(
@@ -109,9 +109,10 @@ class ApplicationCacheSuite extends SparkFunSuite with Logging with MockitoSugar
         completed: Boolean,
         started: Long,
         ended: Long,
-        timestamp: Long): SparkUI = {
+        timestamp: Long,
+        catchUp: Option[() => Boolean] = None): SparkUI = {
       val ui = newUI(appId, attemptId, completed, started, ended)
-      putInstance(appId, attemptId, ui, completed, timestamp)
+      putInstance(appId, attemptId, ui, completed, timestamp, catchUp)
       ui
     }
 
@@ -120,9 +121,11 @@ class ApplicationCacheSuite extends SparkFunSuite with Logging with MockitoSugar
         attemptId: Option[String],
         ui: SparkUI,
         completed: Boolean,
-        timestamp: Long): Unit = {
+        timestamp: Long,
+        catchUp: Option[() => Boolean] = None): Unit = {
       instances += (CacheKey(appId, attemptId) ->
-          new CacheEntry(ui, completed, updateProbe(appId, attemptId, timestamp), timestamp))
+          new CacheEntry(ui, completed, updateProbe(appId, attemptId, timestamp), timestamp,
+            catchUp))
     }
 
     /**
@@ -317,6 +320,38 @@ class ApplicationCacheSuite extends SparkFunSuite with Logging with MockitoSugar
     assertMetric("updateProbeCount", metrics.updateProbeCount, 2)
   }
 
+  test("Incomplete apps that catch up in place keep their UI") {
+    val operations = new StubCacheOperations()
+    val clock = new ManualClock(50)
+    implicit val cache = new ApplicationCache(operations, retainedApplications = 5, clock = clock)
+    val metrics = cache.metrics
+    val appId = "app1"
+    val attemptId = Some("001")
+    var caughtUp = true
+    val catchUp = Some(() => caughtUp)
+    val ui = operations.putAppUI(appId, attemptId, false, 50, 0, 50, catchUp)
+    assert(ui === cache.lookupCacheEntry(appId, attemptId).ui)
+
+    // A later instance makes the probe report an update, which the entry takes in
+    operations.putAppUI(appId, attemptId, false, 50, 0, 100, catchUp)
+    clock.setTime(200)
+    val entry = cache.lookupCacheEntry(appId, attemptId)
+    assert(ui === entry.ui)
+    assert(200 === entry.probeTime)
+    assertMetric("catchUpCount", metrics.catchUpCount, 1)
+    assertMetric("updateTriggeredCount", metrics.updateTriggeredCount, 0)
+    assert(1 === operations.getAppUICount, "getAppUICount")
+    assert(0 === operations.detachCount, "detachCount")
+
+    // When it can not, the UI is loaded again
+    caughtUp = false
+    val reloaded = operations.putAppUI(appId, attemptId, false, 50, 0, 300, catchUp)
+    clock.setTime(400)
+    assert(reloaded === cache.lookupCacheEntry(appId, attemptId).ui)
+    assertMetric("updateTriggeredCount", metrics.updateTriggeredCount, 1)
+    assert(2 === operations.getAppUICount, "getAppUICount")
+  }
+
   /**
    * Assert that a metric counter has a specific value; failure raises an exception
    * including the cache's toString value
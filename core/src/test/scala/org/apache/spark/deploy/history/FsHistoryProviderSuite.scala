@@ -35,7 +35,7 @@ import org.scalatest.BeforeAndAfter
 import org.scalatest.Matchers
 import org.scalatest.concurrent.Eventually._
 
-import org.apache.spark.{SparkConf, SparkFunSuite}
+import org.apache.spark.{SparkConf, SparkFunSuite, Success, TaskState}
 import org.apache.spark.internal.Logging
 import org.apache.spark.io._
 import org.apache.spark.scheduler._
@@ -168,6 +168,94 @@ class FsHistoryProviderSuite extends SparkFunSuite with BeforeAndAfter with Matc
     }
   }
 
+  test("the UI of a running application takes in what is appended to its log") {
+    val provider = new FsHistoryProvider(createTestConf())
+    val logFile = newLogFile("app1", None, inProgress = true)
+    writeFile(logFile, true, None,
+      SparkListenerApplicationStart("app1", Some("app1"), 1L, "test", None),
+      SparkListenerJobStart(0, 2L, Nil),
+      SparkListenerJobEnd(0, 3L, JobSucceeded))
+    provider.checkForLogs()
+
+    val loaded = provider.getAppUI("app1", None).get
+    val listener = loaded.ui.jobProgressListener
+    assert(listener.numCompletedJobs === 1)
+    assert(loaded.catchUp.isDefined)
+    assert(!loaded.updateProbe())
+
+    def append(text: String): Unit = {
+      val out = new FileOutputStream(logFile, true)
+      try out.write(text.getBytes(StandardCharsets.UTF_8)) finally out.close()
+    }
+    def json(event: SparkListenerEvent): String =
+      compact(render(JsonProtocol.sparkEventToJson(event)))
+
+    // The last line is not finished yet
+    val lastJobEnd = json(SparkListenerJobEnd(2, 7L, JobSucceeded))
+    append(Seq(SparkListenerJobStart(1, 4L, Nil), SparkListenerJobEnd(1, 5L, JobSucceeded),
+      SparkListenerJobStart(2, 6L, Nil)).map(json(_) + "\n").mkString +
+      lastJobEnd.take(10))
+    provider.checkForLogs()
+    assert(loaded.updateProbe())
+    assert(loaded.catchUp.get())
+    assert(!loaded.updateProbe())
+    assert(listener.numCompletedJobs === 2)
+    assert(listener.activeJobs.keySet === Set(2))
+
+    append(lastJobEnd.drop(10) + "\n")
+    provider.checkForLogs()
+    assert(loaded.catchUp.get())
+    assert(listener.numCompletedJobs === 3)
+
+    // A completed log is replayed into a new UI
+    append(json(SparkListenerApplicationEnd(8L)) + "\n")
+    logFile.renameTo(newLogFile("app1", None, inProgress = false))
+    provider.checkForLogs()
+    assert(loaded.updateProbe())
+    assert(!loaded.catchUp.get())
+    assert(provider.getAppUI("app1", None).get.catchUp === None)
+  }
+
+  test("samples of a running application are attributed once the tasks they cover end") {
+    val metricsDir = Utils.createTempDir()
+    try {
+      val provider = new FsHistoryProvider(
+        createTestConf().set("spark.hdfs.metrics.dir", metricsDir.getAbsolutePath))
+      val logFile = newLogFile("app1", None, inProgress = true)
+      val info = new TaskInfo(1L, 0, 0, 1000L, "1", "hostA", TaskLocality.PROCESS_LOCAL, false)
+      writeFile(logFile, true, None,
+        SparkListenerApplicationStart("app1", Some("app1"), 1L, "test", None),
+        SparkListenerTaskStart(0, 0, info))
+      // The samples of the task are written while it runs
+      val metricsFile = new File(new File(metricsDir, "app1"), "hostA_1.json")
+      metricsFile.getParentFile.mkdirs()
+      Files.write(Seq(1L, 11L).map { ts =>
+        s"""{"timestamp":$ts,"host":"hostA_1","values":{"cpu":{"process":{"total":100.0}}}}"""
+      }.mkString("", "\n", "\n"), metricsFile, StandardCharsets.UTF_8)
+      provider.checkForLogs()
+
+      val loaded = provider.getAppUI("app1", None).get
+      val attribution = loaded.ui.taskResourceAttributionListener
+      assert(attribution.stageUsage(0, 0) === None)
+
+      info.markFinished(TaskState.FINISHED, 11000L)
+      val out = new FileOutputStream(logFile, true)
+      try {
+        out.write((compact(render(JsonProtocol.sparkEventToJson(
+          SparkListenerTaskEnd(0, 0, "ResultTask", Success, info, null)))) + "\n")
+          .getBytes(StandardCharsets.UTF_8))
+      } finally {
+        out.close()
+      }
+      provider.checkForLogs()
+      assert(loaded.catchUp.get())
+      // 100 ms of CPU per second over the 10 seconds of the task
+      assert(attribution.stageUsage(0, 0).get.cpuSeconds === 1.0 +- 1e-9)
+    } finally {
+      Utils.deleteRecursively(metricsDir)
+    }
+  }
+
   test("Parse logs that application is not started") {
     val provider = new FsHistoryProvider((createTestConf()))
 
@@ -0,0 +1,86 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.spark.deploy.master
+
+import java.nio.ByteBuffer
+import java.nio.charset.StandardCharsets
+
+import org.apache.spark.SparkFunSuite
+
+class LiveExecutorMetricsSuite extends SparkFunSuite {
+
+  private def bytes(s: String): Array[Byte] = s.getBytes(StandardCharsets.UTF_8)
+
+  test("JSON points are kept up to retainedPoints per series") {
+    val metrics = new LiveExecutorMetrics(3)
+    metrics.addApplication("app-1")
+    assert(metrics.onMessage("metrics-catalog/app-1/host1_1",
+      bytes("""{"payload":"json","metrics":["cpu.host.sys"]}""")))
+    assert(metrics.onMessage("metrics/app-1/host1_1/cpu.host.sys",
+      bytes("[[1,0.5],[2,null]]")))
+    assert(metrics.onMessage("metrics/app-1/host1_1/cpu.host.sys", bytes("[[3,1],[4,2]]")))
+    assert(metrics.onMessage("metrics/app-1/host2_2/cpu.host.sys", bytes("[[4,7]]")))
+    assert(!metrics.onMessage("other/topic", bytes("[]")))
+
+    assert(metrics.metrics("app-1") === Seq("cpu.host.sys"))
+    val points = metrics.points("app-1", "cpu.host.sys")
+    assert(points.map(_._1) === Seq("host1_1", "host2_2"))
+    val host1 = points.head._2
+    assert(host1.map(_._1) === Seq(2, 3, 4))
+    assert(host1(0)._2.isNaN)
+    assert(host1.tail.map(_._2) === Seq(1.0, 2.0))
+    assert(points(1)._2 === Seq((4L, 7.0)))
+  }
+
+  test("binary points and finished applications") {
+    val metrics = new LiveExecutorMetrics(300)
+    metrics.addApplication("app-1")
+    metrics.onMessage("metrics-catalog/app-1/host1_1",
+      bytes("""{"payload":"binary","metrics":["heap.used"]}"""))
+    val buffer = ByteBuffer.allocate(2 * 16)
+    buffer.putLong(10).putDouble(1.5).putLong(11).putDouble(2.5)
+    metrics.onMessage("metrics/app-1/host1_1/heap.used", buffer.array())
+    assert(metrics.points("app-1", "heap.used") ===
+      Seq(("host1_1", Seq((10L, 1.5), (11L, 2.5)))))
+    assert(metrics.points("app-1", "missing") === Nil)
+
+    // The catalogs the broker retains are cleared once the application finishes
+    assert(metrics.removeApplication("app-1") === Seq("metrics-catalog/app-1/host1_1"))
+    assert(metrics.metrics("app-1") === Nil)
+    assert(metrics.points("app-1", "heap.used") === Nil)
+  }
+
+  test("messages of applications not registered with the master are dropped") {
+    val metrics = new LiveExecutorMetrics(300)
+    metrics.addApplication("app-1")
+    metrics.onMessage("metrics/app-2/host1_1/cpu.host.sys", bytes("[[1,0.5]]"))
+    assert(metrics.metrics("app-2") === Nil)
+
+    // A retained catalog delivered after its application finished doesn't bring it back
+    metrics.removeApplication("app-1")
+    metrics.onMessage("metrics-catalog/app-1/host1_1", bytes("""{"payload":"binary"}"""))
+    metrics.onMessage("metrics/app-1/host1_1/cpu.host.sys", bytes("[[2,0.5]]"))
+    assert(metrics.metrics("app-1") === Nil)
+    assert(metrics.removeApplication("app-1") === Nil)
+
+    // Nor does the empty message clearing it
+    metrics.addApplication("app-3")
+    metrics.onMessage("metrics-catalog/app-3/host1_1", new Array[Byte](0))
+    assert(metrics.removeApplication("app-3") === Nil)
+  }
+}
@@ -0,0 +1,98 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.spark.executor
+
+import com.codahale.metrics.{Gauge, MetricRegistry}
+
+import org.apache.spark.SparkFunSuite
+import org.apache.spark.metrics.source.Source
+
+class HeartbeatMetricsSuite extends SparkFunSuite {
+
+  private class TestSource extends Source {
+    override val sourceName = "test"
+    override val metricRegistry = new MetricRegistry()
+    @volatile var values = Map.empty[String, Any]
+
+    def set(entries: (String, Any)*): Unit = {
+      values ++= entries
+      entries.foreach { case (name, _) =>
+        if (!metricRegistry.getGauges.containsKey(name)) {
+          metricRegistry.register(name, new Gauge[Any] {
+            override def getValue: Any = values(name)
+          })
+        }
+      }
+    }
+  }
+
+  test("names are sent once and values only when they change") {
+    val source = new TestSource
+    val encoder = new HeartbeatMetricsEncoder(() => Seq(source))
+    val decoder = new HeartbeatMetricsDecoder
+    source.set("cpu.host.sys" -> 0.5, "heap.used" -> 7L, "name" -> "not a number")
+
+    val first = encoder.encode(10)
+    assert(first.reset)
+    assert(first.newNames.toSet === Set("cpu.host.sys", "heap.used"))
+    assert(decoder.update(first) === Some(Map("cpu.host.sys" -> 0.5, "heap.used" -> 7.0)))
+
+    source.set("heap.used" -> 8L, "gc.count" -> 1)
+    val second = encoder.encode(20)
+    assert(!second.reset)
+    assert(second.firstNewId === 2)
+    assert(second.newNames.toSeq === Seq("gc.count"))
+    assert(second.values.toSet === Set(8.0, 1.0))
+    assert(decoder.update(second) ===
+      Some(Map("cpu.host.sys" -> 0.5, "heap.used" -> 8.0, "gc.count" -> 1.0)))
+
+    val unchanged = encoder.encode(30)
+    assert(unchanged.timestamp === 30)
+    assert(unchanged.newNames.isEmpty && unchanged.ids.isEmpty)
+    assert(decoder.update(unchanged).get.size === 3)
+  }
+
+  test("a lost delta makes the decoder ask for a complete snapshot") {
+    val source = new TestSource
+    val encoder = new HeartbeatMetricsEncoder(() => Seq(source))
+    val decoder = new HeartbeatMetricsDecoder
+    source.set("a" -> 1)
+    decoder.update(encoder.encode(1))
+
+    source.set("b" -> 2)
+    encoder.encode(2)
+    source.set("c" -> 3)
+    assert(decoder.update(encoder.encode(3)) === None)
+    // Later deltas are refused too, until the executor sends everything again
+    source.set("a" -> 4)
+    assert(decoder.update(encoder.encode(4)) === None)
+
+    encoder.reset()
+    val complete = encoder.encode(5)
+    assert(complete.reset)
+    assert(decoder.update(complete) === Some(Map("a" -> 4.0, "b" -> 2.0, "c" -> 3.0)))
+  }
+
+  test("a decoder needs a complete snapshot first") {
+    val source = new TestSource
+    val encoder = new HeartbeatMetricsEncoder(() => Seq(source))
+    source.set("a" -> 1)
+    encoder.encode(1)
+    assert(new HeartbeatMetricsDecoder().update(encoder.encode(2)) === None)
+  }
+}
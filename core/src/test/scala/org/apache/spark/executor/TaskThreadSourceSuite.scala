@@ -0,0 +1,55 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.spark.executor
+
+import scala.collection.JavaConverters._
+import scala.collection.mutable.ArrayBuffer
+
+import org.apache.spark.SparkFunSuite
+import org.apache.spark.metrics.source.SamplingEpoch
+
+class TaskThreadSourceSuite extends SparkFunSuite {
+
+  test("rates of the threads of running tasks") {
+    val threadId = Thread.currentThread.getId
+    assume(TaskThreads.allocatedBytes(threadId) >= 0, "allocations are not measured")
+
+    var running = Seq((7L, threadId))
+    val source = new TaskThreadSource(() => running)
+    source.sample(SamplingEpoch(1, 0L))
+    assert(source.taskRates.isEmpty)
+
+    val retained = new ArrayBuffer[Array[Byte]]
+    (0 until 1024).foreach { _ => retained += new Array[Byte](1024) }
+    source.sample(SamplingEpoch(2, 1000L * 1000 * 1000))
+    val rates = source.taskRates(7L)
+    assert(retained.size === 1024)
+    assert(rates.allocatedBytesPerSecond >= 1024 * 1024)
+    assert(rates.cpuPercent >= 0)
+
+    val gauges = source.metricRegistry.getGauges.asScala
+    assert(gauges("tasks.allocatedMBPerSecond").getValue.asInstanceOf[Double] >= 1.0)
+    assert(gauges("tasks.maxAllocatedMBPerSecond").getValue ===
+      gauges("tasks.allocatedMBPerSecond").getValue)
+
+    running = Nil
+    source.sample(SamplingEpoch(3, 2000L * 1000 * 1000))
+    assert(source.taskRates.isEmpty)
+    assert(gauges("tasks.cpuPercent").getValue === 0.0)
+  }
+}
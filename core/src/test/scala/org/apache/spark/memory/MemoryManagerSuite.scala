@@ -246,6 +246,34 @@ private[memory] trait MemoryManagerSuite extends SparkFunSuite with BeforeAndAft
     assert(ThreadUtils.awaitResult(t2Result2, 200.millis) === 0L)
   }
 
+  test("metrics source reports pool usage, spills and blocked acquisitions") {
+    val memoryManager = createMemoryManager(1000L)
+    val registry = memoryManager.metricsSource.metricRegistry
+    def gauge(name: String): Long =
+      registry.getGauges.get(name).getValue.asInstanceOf[Long]
+    val t1MemManager = new TaskMemoryManager(memoryManager, 1)
+    val t2MemManager = new TaskMemoryManager(memoryManager, 2)
+    val c1 = new TestMemoryConsumer(t1MemManager)
+    val c2 = new TestMemoryConsumer(t2MemManager)
+    val futureTimeout: Duration = 20.seconds
+
+    c1.use(1000L)
+    assert(gauge("execution.onHeap.used") === 1000L)
+    assert(gauge("execution.offHeap.used") === 0L)
+    // t2 blocks until t1 spills, which releases all of the memory of t1
+    val t2Result1 = Future { t2MemManager.acquireExecutionMemory(250L, c2) }
+    Thread.sleep(300)
+    c1.spill()
+    assert(ThreadUtils.awaitResult(t2Result1, futureTimeout) === 250L)
+    assert(gauge("execution.onHeap.used") === 250L)
+    assert(memoryManager.metricsSource.spillCount.getCount === 1L)
+    assert(memoryManager.metricsSource.spillBytes.getCount === 1000L)
+    val blocked = registry.getHistograms.get("execution.onHeap.acquireBlockedMillis")
+    assert(blocked.getCount === 1L)
+    assert(blocked.getSnapshot.getMax >= 200L)
+    assert(registry.getCounters.get("execution.onHeap.totalBlockedMillis").getCount >= 200L)
+  }
+
   test("TaskMemoryManager.cleanUpAllAllocatedMemory") {
     val memoryManager = createMemoryManager(1000L)
     val t1MemManager = new TaskMemoryManager(memoryManager, 1)
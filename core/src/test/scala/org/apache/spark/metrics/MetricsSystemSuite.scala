@@ -25,7 +25,7 @@ import org.scalatest.{BeforeAndAfter, PrivateMethodTester}
 import org.apache.spark.{SecurityManager, SparkConf, SparkFunSuite}
 import org.apache.spark.deploy.master.MasterSource
 import org.apache.spark.internal.config._
-import org.apache.spark.metrics.source.{Source, StaticSources}
+import org.apache.spark.metrics.source.{SampledSource, SamplingEpoch, Source, StaticSources}
 
 class MetricsSystemSuite extends SparkFunSuite with BeforeAndAfter with PrivateMethodTester{
   var filePath: String = _
@@ -268,4 +268,55 @@ class MetricsSystemSuite extends SparkFunSuite with BeforeAndAfter with PrivateM
     assert(metricName === source.sourceName)
   }
 
+  test("MetricsSystem samples sampled sources once per epoch") {
+    val epochs = new ArrayBuffer[SamplingEpoch]
+    val source = new SampledSource {
+      override val sourceName = "sampledSource"
+      override val metricRegistry = new MetricRegistry()
+      override def sample(epoch: SamplingEpoch): Unit = epochs += epoch
+    }
+
+    val metricsSystem = MetricsSystem.createMetricsSystem("test", conf, securityMgr)
+    metricsSystem.registerSource(source)
+    metricsSystem.sampleSources()
+    metricsSystem.sampleSources()
+    assert(epochs.map(_.id) === Seq(1, 2))
+    assert(epochs(1).nanoTime >= epochs(0).nanoTime)
+
+    metricsSystem.removeSource(source)
+    metricsSystem.sampleSources()
+    assert(epochs.size === 2)
+  }
+
+  test("MetricsSystem samples at the shortest sink period once a sampled source registers") {
+    val source = new SampledSource {
+      override val sourceName = "sampledSource"
+      override val metricRegistry = new MetricRegistry()
+      override def sample(epoch: SamplingEpoch): Unit = {}
+    }
+
+    val metricsSystem = MetricsSystem.createMetricsSystem("test", conf, securityMgr)
+    metricsSystem.start()
+    try {
+      // The console sink of the test instance polls every 20 minutes
+      assert(metricsSystem.samplingPeriod === Some(20 * 60 * 1000L))
+      assert(!metricsSystem.isSampling)
+      metricsSystem.registerSource(source)
+      assert(metricsSystem.isSampling)
+    } finally {
+      metricsSystem.stop()
+    }
+    assert(!metricsSystem.isSampling)
+
+    val noSinks = MetricsSystem.createMetricsSystem("default", conf, securityMgr)
+    noSinks.start()
+    assert(noSinks.samplingPeriod === Some(1000L))
+    noSinks.stop()
+
+    conf.set(METRICS_SAMPLING_PERIOD.key, "5s")
+    val configured = MetricsSystem.createMetricsSystem("test", conf, securityMgr)
+    configured.start()
+    assert(configured.samplingPeriod === Some(5000L))
+    configured.stop()
+  }
 }
@@ -0,0 +1,130 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.spark.metrics.hdfs
+
+import java.io.{ByteArrayInputStream, ByteArrayOutputStream}
+
+import scala.collection.mutable.ArrayBuffer
+
+import org.apache.spark.SparkFunSuite
+import org.apache.spark.metrics.sink.{MetricPath, MetricValues}
+
+class ColumnarExecutorMetricsSuite extends SparkFunSuite {
+
+  private def tick(values: (String, Any)*): MetricValues = {
+    val tick = new MetricValues()
+    values.foreach { case (k, v) =>
+      tick.add(MetricPath.of(s"app-test.1.sigar.$k"), v.asInstanceOf[AnyRef])
+    }
+    tick
+  }
+
+  private def readAll(bytes: Array[Byte]): Seq[(Long, Map[String, Double])] = {
+    val reader = new ColumnarExecutorMetricsReader(new ByteArrayInputStream(bytes))
+    val points = new ArrayBuffer[(Long, Map[String, Double])]
+    var block = reader.nextBlock()
+    while (block != null) {
+      (0 until block.size()).foreach { i =>
+        val values = (0 until block.columnCount()).flatMap { c =>
+          val v = block.column(c)(i)
+          if (v.isNaN) None else Some(block.metricName(c) -> v)
+        }.toMap
+        points += ((block.timestamp(i), values))
+      }
+      block = reader.nextBlock()
+    }
+    reader.close()
+    points
+  }
+
+  test("round trip of ticks across several blocks") {
+    val out = new ByteArrayOutputStream()
+    val writer = new ColumnarExecutorMetricsWriter(out, "host1_1", 4)
+    val expected = (0 until 10).map { i =>
+      val ts = 1000L + i * 20 + (if (i == 7) 3 else 0)
+      (ts, Map("cpu.host.sys" -> i * 0.5, "memory.host.used" -> (1L << 30).toDouble + i))
+    }
+    expected.foreach { case (ts, values) =>
+      writer.write(ts, tick(values.toSeq: _*))
+    }
+    writer.close()
+
+    assert(readAll(out.toByteArray) === expected)
+  }
+
+  test("metrics appearing later and missing metrics") {
+    val out = new ByteArrayOutputStream()
+    val writer = new ColumnarExecutorMetricsWriter(out, "host1_2", 2)
+    assert(!writer.write(1L, tick("a" -> 1.0)))
+    assert(writer.write(2L, tick("a" -> 2.0, "b" -> 20)))
+    writer.write(3L, tick("b" -> 30L, "c" -> true, "name" -> "not a number"))
+    writer.close()
+
+    val reader = new ColumnarExecutorMetricsReader(new ByteArrayInputStream(out.toByteArray))
+    reader.nextBlock()
+    assert(reader.host() === "host1_2")
+    assert(readAll(out.toByteArray) === Seq(
+      (1L, Map("a" -> 1.0)),
+      (2L, Map("a" -> 2.0, "b" -> 20.0)),
+      (3L, Map("b" -> 30.0, "c" -> 1.0))))
+  }
+
+  test("blocks outside of a time range are skipped") {
+    val out = new ByteArrayOutputStream()
+    val writer = new ColumnarExecutorMetricsWriter(out, "host1_1", 5)
+    (0 until 20).foreach(i => writer.write(i, tick("x" -> i)))
+    writer.close()
+
+    val reader = new ColumnarExecutorMetricsReader(new ByteArrayInputStream(out.toByteArray))
+    val block = reader.nextBlock(11, 12)
+    assert(block.firstTimestamp() === 10)
+    assert(block.lastTimestamp() === 14)
+    assert(block.column(0).toSeq === (10 until 15).map(_.toDouble))
+    assert(reader.nextBlock(11, 12) === null)
+  }
+
+  test("truncated trailing block is ignored") {
+    val out = new ByteArrayOutputStream()
+    val writer = new ColumnarExecutorMetricsWriter(out, "host1_1", 3)
+    (0 until 6).foreach(i => writer.write(i, tick("x" -> i)))
+    writer.close()
+    val bytes = out.toByteArray
+    val truncated = java.util.Arrays.copyOf(bytes, bytes.length - 10)
+
+    assert(readAll(truncated).map(_._1) === Seq(0L, 1L, 2L))
+  }
+
+  test("columnar file is much smaller than the json one") {
+    val columnar = new ByteArrayOutputStream()
+    val json = new ByteArrayOutputStream()
+    val columnarWriter = new ColumnarExecutorMetricsWriter(columnar, "host1_1", 60)
+    val jsonWriter = new JsonExecutorMetricsWriter(json, "host1_1")
+    (0 until 600).foreach { i =>
+      val values = tick(
+        "cpu.host.count" -> 8.0,
+        "cpu.host.sys" -> (i % 7) * 0.25,
+        "memory.host.total" -> 16L * 1024 * 1024 * 1024,
+        "network.sent_per_second" -> 1024.0 * (i % 3))
+      columnarWriter.write(1000L + i * 20, values)
+      jsonWriter.write(1000L + i * 20, values)
+    }
+    columnarWriter.close()
+    jsonWriter.close()
+    assert(columnar.size() * 10 < json.size())
+  }
+}
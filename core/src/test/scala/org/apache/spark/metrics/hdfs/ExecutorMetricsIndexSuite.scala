@@ -0,0 +1,146 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.spark.metrics.hdfs
+
+import java.io.{File, FileInputStream, FileOutputStream}
+
+import scala.collection.JavaConverters._
+import scala.collection.mutable.ArrayBuffer
+
+import org.apache.hadoop.conf.Configuration
+import org.apache.hadoop.fs.{FileSystem, Path}
+
+import org.apache.spark.SparkFunSuite
+import org.apache.spark.metrics.sink.{MetricPath, MetricValues}
+import org.apache.spark.scheduler.{HDFSExecutorMetrics, HDFSExecutorMetricsReplayListenerBus,
+  SparkListener}
+import org.apache.spark.util.Utils
+
+class ExecutorMetricsIndexSuite extends SparkFunSuite {
+
+  private def tick(value: Int): MetricValues = {
+    val tick = new MetricValues()
+    tick.add(MetricPath.of("app-test.1.sigar.cpu.host.sys"), Int.box(value))
+    tick
+  }
+
+  /** Writes ticks `timestamps` in one session and returns the recorded index segment. */
+  private def writeSession(
+      file: File,
+      format: ExecutorMetricsFormat,
+      timestamps: Seq[Long],
+      bucketWidth: Long = 10): ExecutorMetricsIndex.Segment = {
+    val baseOffset = file.length()
+    val recorder = new ExecutorMetricsIndex.Recorder(baseOffset, bucketWidth)
+    val writer = format.newWriter(new FileOutputStream(file, true), "host1_1", 5, recorder)
+    timestamps.foreach(ts => writer.write(ts, tick(ts.toInt)))
+    writer.close()
+    assert(recorder.isFinished)
+    recorder.toSegment()
+  }
+
+  private def writeIndex(file: File, segments: Seq[ExecutorMetricsIndex.Segment]): Unit = {
+    val out = new FileOutputStream(new File(file.getPath + ExecutorMetricsIndex.SUFFIX))
+    try ExecutorMetricsIndex.write(segments.asJava, out) finally out.close()
+  }
+
+  private def replay(file: File, from: Long, to: Long): Seq[Long] = {
+    val bus = new HDFSExecutorMetricsReplayListenerBus()
+    val timestamps = new ArrayBuffer[Long]
+    bus.addListener(new SparkListener {
+      override def onHDFSExecutorMetrics(metrics: HDFSExecutorMetrics): Unit = {
+        assert(metrics.host === "host1_1")
+        timestamps += metrics.timestamp
+      }
+    })
+    val fs = FileSystem.getLocal(new Configuration())
+    bus.replayFile(fs, new Path(file.toURI), from, to)
+    timestamps
+  }
+
+  test("segment offsets point at the record holding the start of a bucket") {
+    val dir = Utils.createTempDir()
+    val file = new File(dir, "host1_1.json")
+    val segment = writeSession(file, ExecutorMetricsFormat.JSON, 0L until 100L)
+    val lines = scala.io.Source.fromFile(file).getLines().toSeq
+    val lineOffsets = lines.scanLeft(0L)(_ + _.length + 1)
+
+    assert(segment.startOffset() === 0)
+    assert(segment.endOffset() === file.length())
+    assert(segment.firstTimestamp() === 0)
+    assert(segment.lastTimestamp() === 99)
+    assert(segment.offsetFor(-5) === 0)
+    assert(segment.offsetFor(35) === lineOffsets(30))
+    assert(segment.offsetFor(1000) === lineOffsets(90))
+
+    writeIndex(file, Seq(segment))
+    val in = new FileInputStream(new File(file.getPath + ExecutorMetricsIndex.SUFFIX))
+    val read = try ExecutorMetricsIndex.read(in).asScala finally in.close()
+    assert(read.size === 1)
+    assert(read.head.offsetFor(35) === lineOffsets(30))
+    Utils.deleteRecursively(dir)
+  }
+
+  test("time range replay of indexed and unindexed sessions") {
+    ExecutorMetricsFormat.values().foreach { format =>
+      val dir = Utils.createTempDir()
+      val file = new File(dir, "host1_1" + format.fileSuffix())
+      val first = writeSession(file, format, 0L until 100L)
+      val second = writeSession(file, format, 200L until 300L)
+      writeIndex(file, Seq(first, second))
+      // A session still running: not in the index yet
+      writeSession(file, format, 400L until 450L)
+
+      assert(replay(file, 33, 47) === (33L to 47L), format)
+      assert(replay(file, 90, 210) === (90L until 100L) ++ (200L to 210L), format)
+      assert(replay(file, 290, 420) === (290L until 300L) ++ (400L to 420L), format)
+      assert(replay(file, Long.MinValue, Long.MaxValue) ===
+        (0L until 100L) ++ (200L until 300L) ++ (400L until 450L), format)
+      Utils.deleteRecursively(dir)
+    }
+  }
+
+  test("sessions between indexed sessions are scanned") {
+    ExecutorMetricsFormat.values().foreach { format =>
+      val dir = Utils.createTempDir()
+      val file = new File(dir, "host1_1" + format.fileSuffix())
+      val first = writeSession(file, format, 0L until 100L)
+      // A reporter that crashed before writing the index
+      writeSession(file, format, 200L until 300L)
+      val third = writeSession(file, format, 400L until 500L)
+      writeIndex(file, Seq(first, third))
+
+      assert(replay(file, 250, 260) === (250L to 260L), format)
+      assert(replay(file, 95, 405) === (95L until 100L) ++ (200L until 300L) ++ (400L to 405L),
+        format)
+      Utils.deleteRecursively(dir)
+    }
+  }
+
+  test("index of an overwritten file is ignored") {
+    val dir = Utils.createTempDir()
+    val file = new File(dir, "host1_1.tsm")
+    val segment = writeSession(file, ExecutorMetricsFormat.COLUMNAR, 0L until 100L)
+    writeIndex(file, Seq(segment))
+    file.delete()
+    writeSession(file, ExecutorMetricsFormat.COLUMNAR, 0L until 10L)
+
+    assert(replay(file, 5, 50) === (5L until 10L))
+    Utils.deleteRecursively(dir)
+  }
+}
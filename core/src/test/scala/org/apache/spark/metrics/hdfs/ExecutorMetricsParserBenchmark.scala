@@ -0,0 +1,146 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.spark.metrics.hdfs
+
+import java.io.{File, FileOutputStream}
+import java.lang.management.ManagementFactory
+
+import scala.concurrent.duration._
+import scala.io.Source
+import scala.util.parsing.json.JSON
+
+import org.apache.hadoop.conf.Configuration
+import org.apache.hadoop.fs.{FileSystem, Path}
+
+import org.apache.spark.metrics.sink.{MetricPath, MetricValues}
+import org.apache.spark.scheduler.{HDFSExecutorMetrics, HDFSExecutorMetricsReplayListenerBus,
+  ReplayListenerBus, SparkListener}
+import org.apache.spark.util.{Benchmark, Utils}
+
+/**
+ * Benchmark of reading back an executor metrics file in the JSON format: the per line
+ * `scala.util.parsing.json` parse into nested maps that the replay used to do, against the
+ * streaming [[JsonExecutorMetricsParser]] into [[ExecutorMetricsRecord]]s, on one thread and
+ * through the parallel replay of [[HDFSExecutorMetricsReplayListenerBus]].
+ *
+ * The file is written with the metrics that SigarSource, the JVM source and the executor source
+ * register, one tick per second. Rates are in millions of bytes of the file per second. Besides
+ * the timings, the bytes allocated per line by the parsing thread are printed.
+ * To run this:
+ * {{{
+ *   build/sbt "core/test:runMain org.apache.spark.metrics.hdfs.ExecutorMetricsParserBenchmark
+ *     [file size in MB, 1024 by default]"
+ * }}}
+ */
+object ExecutorMetricsParserBenchmark {
+
+  private val names: Seq[String] = {
+    val sigar = for {
+      group <- Seq("cpu.host", "cpu.process", "memory.host", "memory.process", "network", "disk")
+      metric <- Seq("count", "sys", "user", "total", "used", "free", "read_per_second",
+        "write_per_second")
+    } yield s"sigar.$group.$metric"
+    val jvm = for {
+      pool <- Seq("heap", "non-heap", "pools.PS-Eden-Space", "pools.PS-Old-Gen")
+      metric <- Seq("committed", "init", "max", "usage", "used")
+    } yield s"jvm.$pool.$metric"
+    val executor = Seq("threadpool.activeTasks", "threadpool.completeTasks",
+      "threadpool.currentPool_size", "filesystem.hdfs.read_bytes", "filesystem.hdfs.write_bytes")
+      .map(n => s"executor.$n")
+    (sigar ++ jvm ++ executor).map(n => s"app-20170101000000-0001.3.$n")
+  }
+
+  private def writeFile(file: File, bytes: Long): Unit = {
+    val paths = names.map(MetricPath.of)
+    val tick = new MetricValues(paths.size)
+    val writer = new JsonExecutorMetricsWriter(new FileOutputStream(file), "host1_3")
+    try {
+      var timestamp = 1483228800L
+      while (file.length() < bytes) {
+        tick.clear()
+        paths.zipWithIndex.foreach { case (path, i) =>
+          val value = (timestamp * 31 + i) % 100000
+          tick.add(path, if (i % 2 == 0) Long.box(value) else Double.box(value / 7.0))
+        }
+        writer.write(timestamp, tick)
+        timestamp += 1
+      }
+    } finally {
+      writer.close()
+    }
+  }
+
+  /** What the replay did with a line before the streaming parser. */
+  private def parseFull(line: String): HDFSExecutorMetrics = {
+    val map = JSON.parseFull(line).get.asInstanceOf[Map[String, Any]]
+    HDFSExecutorMetrics(map("values").asInstanceOf[Map[String, Any]],
+      map("host").asInstanceOf[String], map("timestamp").asInstanceOf[Double].toLong)
+  }
+
+  private def allocatedBytesPerLine(file: File, lines: Int)(f: String => Any): Double = {
+    val sample = Source.fromFile(file).getLines().take(lines).toArray
+    val bean = ManagementFactory.getThreadMXBean.asInstanceOf[com.sun.management.ThreadMXBean]
+    val thread = Thread.currentThread().getId
+    sample.foreach(f)
+    val before = bean.getThreadAllocatedBytes(thread)
+    sample.foreach(f)
+    (bean.getThreadAllocatedBytes(thread) - before).toDouble / lines
+  }
+
+  def main(args: Array[String]): Unit = {
+    val megabytes = if (args.nonEmpty) args(0).toLong else 1024L
+    val dir = Utils.createTempDir()
+    val file = new File(dir, "host1_3.json")
+    try {
+      writeFile(file, megabytes * 1024 * 1024)
+      val lineCount = Source.fromFile(file).getLines().size
+
+      val benchmark = new Benchmark(
+        s"Read $lineCount ticks of ${names.size} metrics (${file.length() >> 20} MB)",
+        file.length(), minNumIters = 1, warmupTime = 0.seconds, minTime = 0.seconds)
+      benchmark.addCase("scala.util.parsing.json") { _ =>
+        Source.fromFile(file).getLines().foreach(parseFull)
+      }
+      benchmark.addCase("JsonExecutorMetricsParser") { _ =>
+        val parser = new JsonExecutorMetricsParser(new MetricDictionary)
+        Source.fromFile(file).getLines().foreach(parser.parse)
+      }
+      benchmark.addCase(s"replay, ${ReplayListenerBus.DEFAULT_REPLAY_THREADS} parser threads") {
+        _ =>
+          val bus = new HDFSExecutorMetricsReplayListenerBus()
+          var records = 0L
+          bus.addListener(new SparkListener {
+            override def onHDFSExecutorMetrics(metrics: HDFSExecutorMetrics): Unit = records += 1
+          })
+          bus.replayFile(FileSystem.getLocal(new Configuration()), new Path(file.toURI))
+          assert(records == lineCount)
+      }
+      benchmark.run()
+
+      val parser = new JsonExecutorMetricsParser(new MetricDictionary)
+      // scalastyle:off println
+      println("Allocated bytes per line, scala.util.parsing.json: " +
+        allocatedBytesPerLine(file, 10000)(parseFull))
+      println("Allocated bytes per line, JsonExecutorMetricsParser: " +
+        allocatedBytesPerLine(file, 10000)(parser.parse))
+      // scalastyle:on println
+    } finally {
+      Utils.deleteRecursively(dir)
+    }
+  }
+}
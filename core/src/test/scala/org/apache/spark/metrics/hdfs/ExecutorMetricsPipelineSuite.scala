@@ -0,0 +1,134 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.spark.metrics.hdfs
+
+import java.io.ByteArrayOutputStream
+import java.nio.charset.StandardCharsets
+import java.util.concurrent.{CountDownLatch, TimeUnit}
+
+import scala.collection.mutable.ArrayBuffer
+import scala.concurrent.duration._
+
+import com.codahale.metrics.{Gauge, MetricRegistry}
+import org.apache.hadoop.fs.Syncable
+import org.scalatest.concurrent.Eventually._
+
+import org.apache.spark.SparkFunSuite
+import org.apache.spark.metrics.sink.{MetricPath, MetricValues}
+
+class ExecutorMetricsPipelineSuite extends SparkFunSuite {
+
+  private class RecordingWriter(gate: CountDownLatch) extends ExecutorMetricsWriter
+    with Syncable {
+    val written = new ArrayBuffer[(Long, Map[String, AnyRef])]
+    @volatile var flushes = 0
+    @volatile var syncs = 0
+    @volatile var closed = false
+
+    override def write(timestamp: Long, values: MetricValues): Boolean = {
+      gate.await(10, TimeUnit.SECONDS)
+      synchronized {
+        written += ((timestamp, (0 until values.size()).map { i =>
+          values.path(i).path() -> values.value(i)
+        }.toMap))
+      }
+      true
+    }
+
+    override def flush(): Unit = flushes += 1
+
+    override def close(): Unit = closed = true
+
+    override def sync(): Unit = hsync()
+    override def hflush(): Unit = syncs += 1
+    override def hsync(): Unit = syncs += 1
+  }
+
+  private def tick(value: Int): MetricValues = {
+    val tick = new MetricValues()
+    tick.add(MetricPath.of("app-test.1.sigar.cpu.host.sys"), Int.box(value))
+    tick
+  }
+
+  test("ticks are written in batches and synced once per batch") {
+    val registry = new MetricRegistry
+    val writer = new RecordingWriter(new CountDownLatch(0))
+    val pipeline = new ExecutorMetricsPipeline(writer, writer,
+      ExecutorMetricsPipeline.Durability.HSYNC, 16, 4, 60000L, registry, "test")
+    (1 to 4).foreach(i => assert(pipeline.offer(i, tick(i))))
+    eventually(timeout(10.seconds), interval(10.milliseconds)) {
+      assert(writer.synchronized(writer.written.size) === 4)
+    }
+    (5 to 8).foreach(i => assert(pipeline.offer(i, tick(i))))
+    eventually(timeout(10.seconds), interval(10.milliseconds)) {
+      assert(writer.synchronized(writer.written.size) === 8)
+      assert(writer.flushes === 2)
+      assert(writer.syncs === 2)
+    }
+    assert(writer.written.map(_._1) === (1 to 8).map(_.toLong))
+
+    // A partial batch is only written on stop
+    pipeline.offer(9, tick(9))
+    pipeline.stop(10000)
+    assert(writer.written.size === 9)
+    assert(writer.closed)
+    assert(registry.counter("test.writtenSamples").getCount === 9)
+  }
+
+  test("partial batch is written once the oldest tick waited batchMillis") {
+    val writer = new RecordingWriter(new CountDownLatch(0))
+    val pipeline = new ExecutorMetricsPipeline(writer, writer,
+      ExecutorMetricsPipeline.Durability.HFLUSH, 16, 100, 50L, new MetricRegistry, "test")
+    // Whether the flusher is already waiting for ticks or not, and again once it went idle
+    (1 to 2).foreach { i =>
+      pipeline.offer(i, tick(i))
+      eventually(timeout(10.seconds), interval(10.milliseconds)) {
+        assert(writer.synchronized(writer.written.size) === i)
+      }
+    }
+    pipeline.stop(10000)
+  }
+
+  test("json ticks reach the stream once flushed") {
+    val out = new ByteArrayOutputStream()
+    val writer = new JsonExecutorMetricsWriter(out, "host1_1")
+    (1 to 3).foreach(i => assert(writer.write(i, tick(i))))
+    assert(out.size() === 0)
+    writer.flush()
+    assert(new String(out.toByteArray, StandardCharsets.UTF_8).split("\n").length === 3)
+    writer.close()
+  }
+
+  test("ticks are dropped instead of blocking when the writer stalls") {
+    val registry = new MetricRegistry
+    val gate = new CountDownLatch(1)
+    val writer = new RecordingWriter(gate)
+    val pipeline = new ExecutorMetricsPipeline(writer, null,
+      ExecutorMetricsPipeline.Durability.NONE, 4, 1, 0L, registry, "test")
+    // Ticks being written still hold their slot, so the ring takes exactly 4
+    val accepted = (1 to 10).count(i => pipeline.offer(i, tick(i)))
+    assert(accepted === 4)
+    assert(registry.counter("test.droppedSamples").getCount === 6)
+    assert(registry.getGauges.get("test.queueDepth").asInstanceOf[Gauge[Long]].getValue === 4L)
+
+    gate.countDown()
+    pipeline.stop(10000)
+    assert(writer.written.size === 4)
+    assert(writer.syncs === 0)
+  }
+}
@@ -0,0 +1,89 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.spark.metrics.hdfs
+
+import java.io.IOException
+import java.nio.charset.StandardCharsets
+
+import org.apache.spark.SparkFunSuite
+import org.apache.spark.metrics.sink.{MetricPath, MetricValues, MetricsJsonSerializer}
+import org.apache.spark.scheduler.ExecutorMetricsRecordValues
+
+class JsonExecutorMetricsParserSuite extends SparkFunSuite {
+
+  private def line(timestamp: Long, host: String, values: (String, AnyRef)*): String = {
+    val tick = new MetricValues()
+    // The third segment of a registry name is the source name, which the path leaves out
+    values.foreach { case (name, value) =>
+      tick.add(MetricPath.of(s"app-test.1.test.$name"), value)
+    }
+    val serializer = new MetricsJsonSerializer
+    serializer.serialize(timestamp, host, tick)
+    new String(serializer.toByteArray, StandardCharsets.UTF_8)
+  }
+
+  test("lines are read into values indexed by the dictionary") {
+    val dictionary = new MetricDictionary
+    val parser = new JsonExecutorMetricsParser(dictionary)
+    val first = parser.parse(line(10L, "host1_1",
+      "sigar.cpu.host.sys" -> Long.box(3L),
+      "jvm.heap.used" -> Double.box(1.5),
+      "executor.flag" -> Boolean.box(true),
+      "executor.name" -> "ignored"))
+    val second = parser.parse(line(20L, "host1_1",
+      "jvm.heap.used" -> Double.box(2.5),
+      "jvm.heap.max" -> Double.box(Double.NaN)))
+
+    assert(first.timestamp === 10L)
+    assert(first.host === "host1_1")
+    assert(first.hostId === second.hostId)
+    assert(first.value("sigar.cpu.host.sys") === 3.0)
+    assert(first.value("jvm.heap.used") === 1.5)
+    assert(first.value("executor.flag") === 1.0)
+    assert(first.value("executor.name").isNaN)
+    assert(second.value("jvm.heap.used") === 2.5)
+    assert(second.value("sigar.cpu.host.sys").isNaN)
+    // NaN is written as null, which numbers nothing
+    assert(dictionary.find("jvm.heap.max") === -1)
+    assert((0 until dictionary.size).map(dictionary.name).toSet ===
+      Set("sigar.cpu.host.sys", "jvm.heap.used", "executor.flag"))
+    assert(parser.parse(line(30L, "host2_2")).hostId !== first.hostId)
+  }
+
+  test("the values of a replayed record read as nested maps") {
+    val parser = new JsonExecutorMetricsParser(new MetricDictionary)
+    val record = parser.parse(line(10L, "host1_1",
+      "sigar.cpu.host.sys" -> Long.box(3L),
+      "sigar.cpu.host.user" -> Long.box(4L),
+      "jvm.heap.used" -> Double.box(1.5)))
+    val values = new ExecutorMetricsRecordValues(record)
+    assert(values === Map(
+      "sigar" -> Map("cpu" -> Map("host" -> Map("sys" -> 3.0, "user" -> 4.0))),
+      "jvm" -> Map("heap" -> Map("used" -> 1.5))))
+  }
+
+  test("lines that are not records fail") {
+    val parser = new JsonExecutorMetricsParser(new MetricDictionary)
+    Seq("", "[]", "{\"timestamp\":1,\"host\":\"h_1\"}", "{\"timestamp\":1,\"host\":\"h_1\",\"val")
+      .foreach { malformed =>
+        intercept[IOException] {
+          parser.parse(malformed)
+        }
+      }
+  }
+}
@@ -0,0 +1,105 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.spark.metrics.sink
+
+import java.nio.charset.StandardCharsets
+
+import org.json4s._
+import org.json4s.jackson.JsonMethods._
+
+import org.apache.spark.SparkFunSuite
+
+class MetricsJsonSerializerSuite extends SparkFunSuite {
+
+  private def serialize(entries: (String, Any)*): JValue = {
+    val values = new MetricValues(1)
+    entries.foreach { case (name, value) =>
+      val path = MetricPath.of(name)
+      if (path.isExecutorMetric) {
+        values.add(path, value.asInstanceOf[AnyRef])
+      }
+    }
+    val serializer = new MetricsJsonSerializer
+    serializer.serialize(42L, "host1_3", values)
+    parse(new String(serializer.bytes(), 0, serializer.length(), StandardCharsets.UTF_8))
+  }
+
+  test("metric paths are parsed once and shared") {
+    val path = MetricPath.of("app-20170101-0001.3.sigar.cpu.host.sys")
+    assert(path eq MetricPath.of("app-20170101-0001.3.sigar.cpu.host.sys"))
+    assert(path.isExecutorMetric)
+    assert(path.appId === "app-20170101-0001")
+    assert(path.executorId === "3")
+    assert(path.path === "cpu.host.sys")
+    assert(path.depth === 3)
+
+    assert(!MetricPath.of("app-20170101-0001.driver.sigar.cpu.host.sys").isExecutorMetric)
+    assert(!MetricPath.of("master.workers").isExecutorMetric)
+    assert(!MetricPath.of("app-20170101-0001.3.sigar").isExecutorMetric)
+  }
+
+  test("values are nested on the dots of their path") {
+    val json = serialize(
+      "app-1.3.sigar.network.sent_per_second" -> 10.5f,
+      "app-1.3.sigar.cpu.host.sys" -> 0.25,
+      "app-1.3.executor.threadpool.activeTasks" -> 2,
+      "app-1.3.sigar.cpu.host.user" -> 3L,
+      "app-1.3.sigar.cpu.host.count" -> 8,
+      "app-1.3.sigar.name" -> "a \"quoted\"\nvalue",
+      "app-1.driver.sigar.cpu.host.sys" -> 1.0,
+      "master.workers" -> 1)
+
+    assert(json \ "timestamp" === JInt(42))
+    assert(json \ "host" === JString("host1_3"))
+    assert(json \ "values" === parse(
+      """{
+        |  "cpu": {"host": {"count": 8, "sys": 0.25, "user": 3}},
+        |  "name": "a \"quoted\"\nvalue",
+        |  "network": {"sent_per_second": 10.5},
+        |  "threadpool": {"activeTasks": 2}
+        |}""".stripMargin))
+  }
+
+  test("last value of a path wins and a leaf blocks deeper paths") {
+    val json = serialize(
+      "app-1.3.jvm.heap" -> 1,
+      "app-1.3.jvm.heap.used" -> 2,
+      "app-1.3.sigar.cpu" -> 3,
+      "app-1.3.other.cpu" -> 4)
+    assert(json \ "values" === parse("""{"cpu": 4, "heap": 1}"""))
+  }
+
+  test("non-finite numbers are written as null") {
+    val json = serialize(
+      "app-1.3.sigar.a" -> Double.NaN,
+      "app-1.3.sigar.b" -> Float.PositiveInfinity)
+    assert(json \ "values" === parse("""{"a": null, "b": null}"""))
+  }
+
+  test("serializer and values can be reused") {
+    val values = new MetricValues(1)
+    val serializer = new MetricsJsonSerializer
+    (1 to 3).foreach { i =>
+      values.clear()
+      values.add(MetricPath.of("app-1.3.sigar.cpu.host.sys"), Int.box(i))
+      serializer.serialize(i, "h_3", values)
+    }
+    assert(new String(serializer.toByteArray, StandardCharsets.UTF_8) ===
+      """{"timestamp":3,"host":"h_3","values":{"cpu":{"host":{"sys":3}}}}""")
+  }
+}
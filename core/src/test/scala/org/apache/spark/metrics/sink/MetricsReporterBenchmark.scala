@@ -0,0 +1,142 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.spark.metrics.sink
+
+import java.lang.management.ManagementFactory
+import java.nio.charset.StandardCharsets
+
+import org.json.JSONObject
+
+import org.apache.spark.util.Benchmark
+
+/**
+ * Benchmark of turning one reporting tick of executor metrics into the JSON line written by the
+ * HDFS and MQTT reporters: the original per-tick string splitting and nested JSONObject build
+ * against the cached [[MetricPath]]s and the reusable [[MetricsJsonSerializer]].
+ *
+ * Besides the timings, the bytes allocated per tick by the reporting thread are printed.
+ * To run this:
+ * {{{
+ *   build/sbt "core/test:runMain org.apache.spark.metrics.sink.MetricsReporterBenchmark"
+ * }}}
+ */
+object MetricsReporterBenchmark {
+
+  private val appId = "app-20170101000000-0001"
+
+  // Roughly what SigarSource, the JVM source and the executor source register on an executor
+  private val names: Array[String] = {
+    val sigar = for {
+      group <- Seq("cpu.host", "cpu.process", "memory.host", "memory.process", "network", "disk")
+      metric <- Seq("count", "sys", "user", "total", "used", "free", "read_per_second",
+        "write_per_second")
+    } yield s"sigar.$group.$metric"
+    val jvm = for {
+      pool <- Seq("heap", "non-heap", "pools.PS-Eden-Space", "pools.PS-Old-Gen")
+      metric <- Seq("committed", "init", "max", "usage", "used")
+    } yield s"jvm.$pool.$metric"
+    val executor = Seq("threadpool.activeTasks", "threadpool.completeTasks",
+      "threadpool.currentPool_size", "filesystem.hdfs.read_bytes", "filesystem.hdfs.write_bytes")
+      .map(n => s"executor.$n")
+    (sigar ++ jvm ++ executor).map(n => s"$appId.3.$n").sorted.toArray
+  }
+
+  private val values: Array[AnyRef] = names.indices.map { i =>
+    if (i % 2 == 0) java.lang.Long.valueOf(i * 1000L) else java.lang.Double.valueOf(i * 0.25)
+  }.toArray
+
+  /** The per tick work of the reporters before metric paths were cached. */
+  private def legacy(timestamp: Long): Array[Byte] = {
+    val root = new JSONObject()
+    var i = 0
+    while (i < names.length) {
+      val parts = names(i).split("\\.")
+      if (parts.length > 3 && parts(0).startsWith("app")) {
+        var node = root
+        var p = 3
+        while (p < parts.length - 1) {
+          if (!node.has(parts(p))) {
+            node.put(parts(p), new JSONObject())
+          }
+          node = node.getJSONObject(parts(p))
+          p += 1
+        }
+        node.put(parts(parts.length - 1), values(i))
+      }
+      i += 1
+    }
+    val line = new JSONObject()
+    line.put("timestamp", timestamp)
+    line.put("host", "host1_3")
+    line.put("values", root)
+    line.toString.getBytes(StandardCharsets.UTF_8)
+  }
+
+  private val tick = new MetricValues(names.length)
+  private val serializer = new MetricsJsonSerializer
+
+  private def current(timestamp: Long): Int = {
+    tick.clear()
+    var i = 0
+    while (i < names.length) {
+      val path = MetricPath.of(names(i))
+      if (path.isExecutorMetric) {
+        tick.add(path, values(i))
+      }
+      i += 1
+    }
+    serializer.serialize(timestamp, "host1_3", tick)
+    serializer.length()
+  }
+
+  private def allocatedBytesPerTick(ticks: Int)(f: Long => Any): Double = {
+    val bean = ManagementFactory.getThreadMXBean.asInstanceOf[com.sun.management.ThreadMXBean]
+    val thread = Thread.currentThread().getId
+    (0 until ticks).foreach(i => f(i))
+    val before = bean.getThreadAllocatedBytes(thread)
+    (0 until ticks).foreach(i => f(i))
+    (bean.getThreadAllocatedBytes(thread) - before).toDouble / ticks
+  }
+
+  def main(args: Array[String]): Unit = {
+    val ticks = 100000
+    val benchmark = new Benchmark(s"Serialize a tick of ${names.length} metrics", ticks)
+    benchmark.addCase("split + JSONObject") { _ =>
+      var t = 0
+      while (t < ticks) {
+        legacy(t)
+        t += 1
+      }
+    }
+    benchmark.addCase("MetricPath + MetricsJsonSerializer") { _ =>
+      var t = 0
+      while (t < ticks) {
+        current(t)
+        t += 1
+      }
+    }
+    benchmark.run()
+
+    // scalastyle:off println
+    println("Allocated bytes per tick, split + JSONObject: " +
+      allocatedBytesPerTick(ticks)(legacy))
+    println("Allocated bytes per tick, MetricPath + MetricsJsonSerializer: " +
+      allocatedBytesPerTick(ticks)(current))
+    // scalastyle:on println
+  }
+}
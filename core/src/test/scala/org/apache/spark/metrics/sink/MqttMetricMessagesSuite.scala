@@ -0,0 +1,103 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.spark.metrics.sink
+
+import java.nio.ByteBuffer
+import java.nio.charset.StandardCharsets
+
+import scala.collection.mutable.ArrayBuffer
+
+import org.json4s._
+import org.json4s.jackson.JsonMethods._
+
+import org.apache.spark.SparkFunSuite
+
+class MqttMetricMessagesSuite extends SparkFunSuite {
+
+  private class RecordingPublisher extends MqttMetricMessages.Publisher {
+    val messages = new ArrayBuffer[(String, Array[Byte], Boolean)]
+
+    override def publish(topic: String, payload: Array[Byte], retained: Boolean): Unit = {
+      messages += ((topic, payload, retained))
+    }
+
+    def json(topic: String): JValue = {
+      parse(new String(messages.find(_._1 == topic).get._2, StandardCharsets.UTF_8))
+    }
+  }
+
+  private def tick(entries: (String, Any)*): MetricValues = {
+    val values = new MetricValues(1)
+    entries.foreach { case (name, value) =>
+      values.add(MetricPath.of(name), value.asInstanceOf[AnyRef])
+    }
+    values
+  }
+
+  test("one topic per metric and a retained catalog") {
+    val messages = new MqttMetricMessages("app-1", "host1_3", MqttMetricMessages.Payload.JSON, 1)
+    val publisher = new RecordingPublisher
+    messages.add(10, tick("app-1.3.sigar.cpu.host.sys" -> 0.5, "app-1.3.jvm.heap.used" -> 7L,
+      "app-1.3.sigar.name" -> "not a number"))
+    assert(messages.isBatchComplete)
+    messages.flush(publisher)
+
+    assert(publisher.messages.map(m => (m._1, m._3)) === Seq(
+      ("metrics-catalog/app-1/host1_3", true),
+      ("metrics/app-1/host1_3/cpu.host.sys", false),
+      ("metrics/app-1/host1_3/heap.used", false)))
+    assert(publisher.json("metrics-catalog/app-1/host1_3") ===
+      parse("""{"payload": "json", "metrics": ["cpu.host.sys", "heap.used"]}"""))
+    assert(publisher.json("metrics/app-1/host1_3/cpu.host.sys") === parse("[[10, 0.5]]"))
+    assert(publisher.json("metrics/app-1/host1_3/heap.used") === parse("[[10, 7]]"))
+
+    // The catalog is published again only when new metrics appear
+    publisher.messages.clear()
+    messages.add(11, tick("app-1.3.sigar.cpu.host.sys" -> Double.NaN))
+    messages.flush(publisher)
+    assert(publisher.messages.map(_._1) === Seq("metrics/app-1/host1_3/cpu.host.sys"))
+    assert(publisher.json("metrics/app-1/host1_3/cpu.host.sys") === parse("[[11, null]]"))
+  }
+
+  test("batched binary messages") {
+    val messages = new MqttMetricMessages("app-1", "host/1_3", MqttMetricMessages.Payload.BINARY, 3)
+    val publisher = new RecordingPublisher
+    (1 to 3).foreach { i =>
+      assert(!messages.isBatchComplete)
+      messages.add(100 + i, tick("app-1.3.sigar.cpu.host.sys" -> i * 1.5f))
+    }
+    assert(messages.isBatchComplete)
+    messages.flush(publisher)
+    assert(!messages.isBatchComplete)
+
+    assert(publisher.json("metrics-catalog/app-1/host_1_3") \ "payload" === JString("binary"))
+    val buffer = ByteBuffer.wrap(publisher.messages.find(
+      _._1 == "metrics/app-1/host_1_3/cpu.host.sys").get._2)
+    assert(buffer.remaining() === 3 * 16)
+    (1 to 3).foreach { i =>
+      assert(buffer.getLong() === 100 + i)
+      assert(buffer.getDouble() === i * 1.5)
+    }
+  }
+
+  test("batchTicks must be positive") {
+    intercept[IllegalArgumentException] {
+      new MqttMetricMessages("app-1", "host1_3", MqttMetricMessages.Payload.JSON, 0)
+    }
+  }
+}
@@ -0,0 +1,150 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.spark.metrics.source
+
+import java.io.File
+import java.nio.charset.StandardCharsets
+
+import scala.collection.JavaConverters._
+
+import com.google.common.io.Files
+
+import org.apache.spark.SparkFunSuite
+import org.apache.spark.util.Utils
+
+class ProcFsSourceSuite extends SparkFunSuite {
+
+  private def write(root: File, path: String, content: String): Unit = {
+    val file = new File(root, path)
+    file.getParentFile.mkdirs()
+    Files.write(content, file, StandardCharsets.UTF_8)
+  }
+
+  /** Writes a fake /proc and /sys whose counters are `step` times their initial values. */
+  private def writeTree(root: File, step: Int): Unit = {
+    write(root, "proc/stat",
+      s"cpu  ${100 * step} 0 ${50 * step} 1000 ${10 * step} 0 0 0 0 0\n" +
+        "cpu0 1 0 1 1 1 0 0 0 0 0\ncpu1 1 0 1 1 1 0 0 0 0 0\nintr 1 2 3\n")
+    write(root, "proc/self/stat",
+      s"42 (java (exec)) S 1 1 1 0 -1 0 0 0 0 0 ${20 * step} ${10 * step} 0 0 20 0 30 0 5 " +
+        "8192000 100 0\n")
+    write(root, "proc/meminfo",
+      "MemTotal:       2048 kB\nMemFree:         512 kB\nMemAvailable:   1024 kB\n")
+    write(root, "proc/net/dev",
+      "Inter-|   Receive |  Transmit\n face |bytes    packets |bytes    packets\n" +
+        s"    lo:${1000 * step} 1 0 0 0 0 0 0 ${1000 * step} 1 0 0 0 0 0 0\n" +
+        s"  eth0: ${3000 * step} 1 0 0 0 0 0 0 ${6000 * step} 1 0 0 0 0 0 0\n")
+    write(root, "proc/diskstats",
+      s"   8       0 sda 1 0 ${2 * step} 0 1 0 ${4 * step} 0 0 0 0\n" +
+        s"   8       1 sda1 1 0 ${2 * step} 0 1 0 ${4 * step} 0 0 0 0\n" +
+        s"   7       0 loop0 1 0 ${100 * step} 0 1 0 0 0 0 0 0\n")
+    new File(root, "sys/block/sda").mkdirs()
+    new File(root, "sys/block/loop0").mkdirs()
+    write(root, "proc/self/cgroup", "0::/yarn/container_1\n")
+    write(root, "sys/fs/cgroup/yarn/container_1/cpu.stat",
+      s"usage_usec 100\nnr_periods ${10 * step}\nnr_throttled ${4 * step}\n" +
+        s"throttled_usec ${2000 * step}\n")
+  }
+
+  private def values(source: ProcFsSource): Map[String, Double] = {
+    source.metricRegistry.getGauges.asScala.map { case (name, gauge) =>
+      name -> gauge.getValue.asInstanceOf[Number].doubleValue()
+    }.toMap
+  }
+
+  test("levels and per second rates from /proc") {
+    val root = Utils.createTempDir()
+    try {
+      writeTree(root, 1)
+      val source = new ProcFsSource(root)
+      assert(source.sourceName === "sigar")
+      writeTree(root, 2)
+      val before = values(source)
+      source.sample(SamplingEpoch(1, source.snapshot.epoch.nanoTime + 2L * 1000 * 1000 * 1000))
+      val metrics = values(source)
+
+      // Gauges read the latest snapshot, not /proc
+      assert(before("network.received_per_second") === 0)
+      assert(before("memory.host.free") === 512 * 1024)
+
+      assert(metrics("cpu.host.count") === 2)
+      assert(metrics("memory.host.total") === 2048 * 1024)
+      assert(metrics("memory.host.free") === 512 * 1024)
+      assert(metrics("memory.host.used") === 1536 * 1024)
+      assert(metrics("memory.process.total") === 8192000)
+      assert(!metrics.contains("disk.loop0.read_per_second"))
+      assert(!metrics.contains("disk.sda1.read_per_second"))
+
+      // Increases over the 2 seconds between the two samples
+      assert(metrics("network.received_per_second") === 4000 / 2)
+      assert(metrics("network.sent_per_second") === 7000 / 2)
+      assert(metrics("network.lo.received_per_second") === 1000 / 2)
+      assert(metrics("network.eth0.received_per_second") === 3000 / 2)
+      assert(metrics("network.eth0.sent_per_second") === 6000 / 2)
+      assert(metrics("disk.read_per_second") === 2 * 512 / 2)
+      assert(metrics("disk.written_per_second") === 4 * 512 / 2)
+      assert(metrics("disk.sda.written_per_second") === 4 * 512 / 2)
+      assert(metrics("cpu.host.user") === 1000 / 2)
+      assert(metrics("cpu.host.sys") === 500 / 2)
+      assert(metrics("cpu.host.wait") === 100 / 2)
+      assert(metrics("cpu.host.total") === 1600 / 2)
+      assert(metrics("cpu.process.user") === 200 / 2)
+      assert(metrics("cpu.process.sys") === 100 / 2)
+      assert(metrics("cpu.process.total") === 300 / 2)
+      assert(metrics("cpu.cgroup.throttled_periods_per_second") === 4 / 2)
+      assert(metrics("cpu.cgroup.throttled_per_second") === 2 / 2)
+    } finally {
+      Utils.deleteRecursively(root)
+    }
+  }
+
+  test("missing files") {
+    val root = Utils.createTempDir()
+    try {
+      val metrics = values(new ProcFsSource(root))
+      assert(metrics("memory.host.total") === 0)
+      assert(metrics("network.sent_per_second") === 0)
+      assert(!metrics.contains("cpu.cgroup.throttled_per_second"))
+    } finally {
+      Utils.deleteRecursively(root)
+    }
+  }
+
+  test("reader tokens") {
+    val root = Utils.createTempDir()
+    try {
+      write(root, "file", "eth0:12 x\n  lo: 7\n")
+      val reader = new ProcFileReader(4)
+      assert(reader.load(new File(root, "file")))
+      val names = Array("lo", "eth0").map(ProcFileReader.bytes)
+      assert(reader.readToken(names) === 1)
+      assert(reader.readLong() === 12)
+      assert(reader.readLong() === 0)
+      reader.nextLine()
+      assert(reader.nextTokenStartsWith(ProcFileReader.bytes("l")))
+      assert(reader.readToken(names) === 0)
+      assert(reader.readLong() === 7)
+      reader.nextLine()
+      assert(!reader.hasMore)
+      assert(!reader.load(new File(root, "missing")))
+      assert(!reader.hasMore)
+    } finally {
+      Utils.deleteRecursively(root)
+    }
+  }
+}
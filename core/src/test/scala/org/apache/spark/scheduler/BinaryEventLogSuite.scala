@@ -0,0 +1,177 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.spark.scheduler
+
+import java.io.{ByteArrayInputStream, ByteArrayOutputStream, EOFException, File}
+import java.util.Arrays
+
+import scala.collection.mutable.ArrayBuffer
+
+import org.apache.hadoop.fs.Path
+import org.json4s.JsonAST._
+import org.json4s.JsonDSL._
+import org.scalatest.BeforeAndAfter
+
+import org.apache.spark.{SparkConf, SparkFunSuite}
+import org.apache.spark.deploy.SparkHadoopUtil
+import org.apache.spark.io.CompressionCodec
+import org.apache.spark.util.{JsonProtocol, Utils}
+
+class BinaryEventLogSuite extends SparkFunSuite with BeforeAndAfter {
+
+  private val fileSystem = Utils.getHadoopFileSystem("/",
+    SparkHadoopUtil.get.newConfiguration(new SparkConf()))
+  private var testDir: File = _
+
+  before {
+    testDir = Utils.createTempDir()
+  }
+
+  after {
+    Utils.deleteRecursively(testDir)
+  }
+
+  private def event(name: String, i: Int): JValue = {
+    ("Event" -> name) ~
+    ("Index" -> i) ~
+    ("Host" -> s"host-${i % 3}") ~
+    ("Big" -> JInt(BigInt(Long.MaxValue) * 4 + i)) ~
+    ("Negative" -> -i.toLong) ~
+    ("Ratio" -> i / 7.0) ~
+    ("Decimal" -> JDecimal(BigDecimal("1.25"))) ~
+    ("Flags" -> JArray(List(JBool(true), JBool(false), JNull))) ~
+    ("Missing" -> JNothing) ~
+    ("Nested" -> ("Empty" -> JArray(Nil)) ~ ("Name" -> "é ✓"))
+  }
+
+  private def write(codec: Option[CompressionCodec], events: Seq[JValue], blockSize: Int)
+    : Array[Byte] = {
+    val bytes = new ByteArrayOutputStream()
+    val writer = new BinaryEventLogWriter(bytes, codec, blockSize, "2.1.0")
+    events.foreach(writer.write)
+    writer.close()
+    bytes.toByteArray
+  }
+
+  private def readAll(bytes: Array[Byte], accept: String => Boolean = _ => true)
+    : (Int, Seq[JValue]) = {
+    val reader = new BinaryEventLogReader(new ByteArrayInputStream(bytes))
+    assert(reader.sparkVersion === "2.1.0")
+    val blocks = Iterator.continually(reader.nextBlock()).takeWhile(_.isDefined).map(_.get).toSeq
+    (blocks.size, blocks.flatMap(_.records(accept)))
+  }
+
+  // Fields without a value are dropped, as when rendering JSON
+  private def expected(json: JValue): JValue = json.removeField(_._2 == JNothing)
+
+  test("records round trip, with and without compression") {
+    val events = (0 until 500).map(i => event(if (i % 2 == 0) "A" else "B", i))
+    (None +: CompressionCodec.ALL_COMPRESSION_CODECS.map { c =>
+      Some(CompressionCodec.createCodec(new SparkConf, c))
+    }).foreach { codec =>
+      val bytes = write(codec, events, 4096)
+      val (blocks, read) = readAll(bytes)
+      assert(blocks > 1)
+      assert(read === events.map(expected))
+
+      val (_, onlyB) = readAll(bytes, _ == "B")
+      assert(onlyB === events.filter(_ \ "Event" == JString("B")).map(expected))
+    }
+  }
+
+  test("the dictionary makes repeated strings cheap") {
+    val events = (0 until 1000).map(i => event("SparkListenerTaskEnd", i))
+    val json = events.map(e => org.json4s.jackson.JsonMethods.compact(e).length + 1).sum
+    assert(write(None, events, 1 << 20).length < json / 2)
+  }
+
+  test("blocks are read at the offsets of the index") {
+    val path = new Path(new File(testDir, "app-1" + BinaryEventLog.SUFFIX).toURI)
+    val events = (0 until 300).map(i => event("A", i))
+    val out = fileSystem.create(path)
+    out.write(write(None, events, 2048))
+    out.close()
+
+    val index = BinaryEventLog.readIndex(fileSystem, path).get
+    assert(index.size > 1)
+    assert(index.map(_._2).sum === 300)
+    val reader = new BinaryEventLogReader(fileSystem.open(path))
+    val in = fileSystem.open(path)
+    try {
+      // In reverse, as threads may read them in any order
+      val read = index.reverse.flatMap { case (offset, _) => reader.blockAt(in, offset).records() }
+      val blockSizes = index.map(_._2)
+      val expectedInReverse = blockSizes.indices.reverse.flatMap { i =>
+        events.slice(blockSizes.take(i).sum, blockSizes.take(i + 1).sum)
+      }
+      assert(read === expectedInReverse.map(expected))
+    } finally {
+      in.close()
+      reader.close()
+    }
+  }
+
+  test("a log still being written has no index and may end in a block") {
+    val path = new Path(new File(testDir, "app-2" + BinaryEventLog.SUFFIX).toURI)
+    val bytes = new ByteArrayOutputStream()
+    val writer = new BinaryEventLogWriter(bytes, None, 1 << 20, "2.1.0")
+    (0 until 10).foreach(i => writer.write(event("A", i)))
+    writer.flush()
+    writer.write(event("A", 10))
+    writer.flush()
+    val flushed = bytes.toByteArray
+
+    val out = fileSystem.create(path)
+    out.write(flushed)
+    out.close()
+    assert(BinaryEventLog.readIndex(fileSystem, path) === None)
+    assert(readAll(flushed)._2.size === 11)
+
+    val reader = new BinaryEventLogReader(
+      new ByteArrayInputStream(Arrays.copyOf(flushed, flushed.length - 3)))
+    assert(reader.nextBlock().get.records().size === 10)
+    intercept[EOFException] {
+      reader.nextBlock()
+    }
+  }
+
+  test("replay posts the events in order and applies the filter by event name") {
+    val path = new Path(new File(testDir, "app-3" + BinaryEventLog.SUFFIX).toURI)
+    val start = SparkListenerApplicationStart("app", Some("app-3"), 1L, "user", None)
+    val jobs = (0 until 200).map(i => SparkListenerJobEnd(i, 10L + i, JobSucceeded))
+    val end = SparkListenerApplicationEnd(500L)
+    val out = fileSystem.create(path)
+    out.write(write(None, (start +: jobs :+ end).map(JsonProtocol.sparkEventToJson), 512))
+    out.close()
+
+    def replay(filter: ReplayListenerBus.ReplayEventsFilter): Seq[SparkListenerEvent] = {
+      val events = new ArrayBuffer[SparkListenerEvent]
+      val bus = new ReplayListenerBus()
+      bus.addListener(new SparkListener {
+        override def onApplicationStart(e: SparkListenerApplicationStart): Unit = events += e
+        override def onJobEnd(e: SparkListenerJobEnd): Unit = events += e
+        override def onApplicationEnd(e: SparkListenerApplicationEnd): Unit = events += e
+      })
+      bus.replayBinary(fileSystem, path, eventsFilter = filter, threads = 4)
+      events
+    }
+
+    assert(replay(ReplayListenerBus.SELECT_ALL_FILTER) === start +: jobs :+ end)
+    assert(replay(_.startsWith("{\"Event\":\"SparkListenerApplication")) === Seq(start, end))
+  }
+}
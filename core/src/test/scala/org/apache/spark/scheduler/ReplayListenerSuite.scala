@@ -20,6 +20,8 @@ package org.apache.spark.scheduler
 import java.io.{File, PrintWriter}
 import java.net.URI
 
+import scala.collection.mutable.ArrayBuffer
+
 import org.json4s.jackson.JsonMethods._
 import org.scalatest.BeforeAndAfter
 
@@ -72,6 +74,30 @@ class ReplayListenerSuite extends SparkFunSuite with BeforeAndAfter with LocalSp
     assert(eventMonster.loggedEvents(1) === JsonProtocol.sparkEventToJson(applicationEnd))
   }
 
+  test("Replay on several threads keeps the order of the lines") {
+    val jobs = (0 until 5 * ReplayPipeline.BATCH_SIZE).map { i =>
+      SparkListenerJobEnd(i, 10L + i, JobSucceeded)
+    }
+    val lines = jobs.map(e => compact(render(JsonProtocol.sparkEventToJson(e))))
+
+    def replay(lines: Seq[String], maybeTruncated: Boolean): Seq[SparkListenerEvent] = {
+      val events = new ArrayBuffer[SparkListenerEvent]
+      val replayer = new ReplayListenerBus(replayThreads = 4)
+      replayer.addListener(new SparkListener {
+        override def onJobEnd(e: SparkListenerJobEnd): Unit = events += e
+      })
+      replayer.replay(lines.iterator, "test", maybeTruncated, ReplayListenerBus.SELECT_ALL_FILTER)
+      events
+    }
+
+    assert(replay(lines, maybeTruncated = false) === jobs)
+    // The last line of a log being written may be partial
+    assert(replay(lines :+ lines.head.take(10), maybeTruncated = true) === jobs)
+    // A malformed line elsewhere ends the replay
+    val malformed = lines.take(700) ++ Seq(lines(700).take(10)) ++ lines.drop(701)
+    assert(replay(malformed, maybeTruncated = true) === jobs.take(700))
+  }
+
   // This assumes the correctness of EventLoggingListener
   test("End-to-end replay") {
     testApplicationReplay()
@@ -84,6 +110,12 @@ class ReplayListenerSuite extends SparkFunSuite with BeforeAndAfter with LocalSp
     }
   }
 
+  // This assumes the correctness of EventLoggingListener
+  test("End-to-end replay of binary logs") {
+    testApplicationReplay(binary = true)
+    testApplicationReplay(Some(CompressionCodec.ALL_COMPRESSION_CODECS.head), binary = true)
+  }
+
 
   /* ----------------- *
    * Actual test logic *
@@ -96,11 +128,16 @@ class ReplayListenerSuite extends SparkFunSuite with BeforeAndAfter with LocalSp
    * event to the corresponding event replayed from the event logs. This test makes the
    * assumption that the event logging behavior is correct (tested in a separate suite).
    */
-  private def testApplicationReplay(codecName: Option[String] = None) {
+  private def testApplicationReplay(codecName: Option[String] = None, binary: Boolean = false) {
     val logDirPath = Utils.getFilePath(testDir, "test-replay")
     fileSystem.mkdirs(logDirPath)
 
     val conf = EventLoggingListenerSuite.getLoggingConf(logDirPath, codecName)
+    if (binary) {
+      // Small blocks, so that the log has several
+      conf.set("spark.eventLog.format", "binary")
+      conf.set("spark.eventLog.binary.blockSize", "4k")
+    }
     sc = new SparkContext("local-cluster[2,1,1024]", "Test replay", conf)
 
     // Run a few jobs
@@ -117,20 +154,26 @@ class ReplayListenerSuite extends SparkFunSuite with BeforeAndAfter with LocalSp
     assert(!eventLog.isDirectory)
 
     // Replay events
-    val logData = EventLoggingListener.openEventLog(eventLog.getPath(), fileSystem)
     val eventMonster = new EventMonster(conf)
-    try {
-      val replayer = new ReplayListenerBus()
-      replayer.addListener(eventMonster)
-      replayer.replay(logData, eventLog.getPath().toString)
-    } finally {
-      logData.close()
+    val replayer = new ReplayListenerBus()
+    replayer.addListener(eventMonster)
+    if (binary) {
+      assert(BinaryEventLog.isBinary(eventLog.getPath))
+      replayer.replayBinary(fileSystem, eventLog.getPath, threads = 3)
+    } else {
+      val logData = EventLoggingListener.openEventLog(eventLog.getPath(), fileSystem)
+      try {
+        replayer.replay(logData, eventLog.getPath().toString)
+      } finally {
+        logData.close()
+      }
     }
 
     // Verify the same events are replayed in the same order
     assert(sc.eventLogger.isDefined)
     val originalEvents = sc.eventLogger.get.loggedEvents
     val replayedEvents = eventMonster.loggedEvents
+    assert(originalEvents.size === replayedEvents.size)
     originalEvents.zip(replayedEvents).foreach { case (e1, e2) =>
       // Don't compare the JSON here because accumulators in StageInfo may be out of order
       JsonProtocolSuite.assertEquals(
@@ -17,15 +17,17 @@
 
 package org.apache.spark.shuffle
 
-import java.io.{ByteArrayOutputStream, InputStream}
+import java.io.{ByteArrayInputStream, ByteArrayOutputStream, InputStream}
 import java.nio.ByteBuffer
+import java.nio.charset.StandardCharsets
 
+import com.google.common.io.ByteStreams
 import org.mockito.Mockito.{mock, when}
 
 import org.apache.spark._
 import org.apache.spark.network.buffer.{ManagedBuffer, NioManagedBuffer}
 import org.apache.spark.serializer.{JavaSerializer, SerializerManager}
-import org.apache.spark.storage.{BlockManager, BlockManagerId, ShuffleBlockId}
+import org.apache.spark.storage.{BlockManager, BlockManagerId, ShuffleBlockId, ShuffleFetchMetrics}
 
 /**
  * Wrapper for a managed buffer that keeps track of how many times retain and release are called.
@@ -86,6 +88,7 @@ class BlockStoreShuffleReaderSuite extends SparkFunSuite with LocalSparkContext
     // Setup the mocked BlockManager to return RecordingManagedBuffers.
     val localBlockManagerId = BlockManagerId("test-client", "test-client", 1)
     when(blockManager.blockManagerId).thenReturn(localBlockManagerId)
+    when(blockManager.shuffleFetchMetrics).thenReturn(new ShuffleFetchMetrics)
     val buffers = (0 until numMaps).map { mapId =>
       // Create a ManagedBuffer with the shuffle data.
       val nioBuffer = new NioManagedBuffer(ByteBuffer.wrap(byteOutputStream.toByteArray))
@@ -144,4 +147,36 @@ class BlockStoreShuffleReaderSuite extends SparkFunSuite with LocalSparkContext
       assert(buffer.callsToRelease === 1)
     }
   }
+
+  test("merged chunks are read as the blocks of their map outputs") {
+    var chunkClosed = false
+    val chunk = new ByteArrayInputStream("abcdefgh".getBytes(StandardCharsets.UTF_8)) {
+      override def close(): Unit = chunkClosed = true
+    }
+    val blocks = MergedBlockInputStream.split(chunk, Seq(
+      (ShuffleBlockId(0, 1, 0), 3L), (ShuffleBlockId(0, 4, 0), 2L), (ShuffleBlockId(0, 2, 0), 3L)))
+
+    def read(stream: InputStream, length: Int): String = {
+      val bytes = new Array[Byte](length)
+      val n = ByteStreams.read(stream, bytes, 0, length)
+      new String(bytes, 0, n, StandardCharsets.UTF_8)
+    }
+
+    val (first, firstStream) = blocks.next()
+    assert(first === ShuffleBlockId(0, 1, 0))
+    assert(read(firstStream, 10) === "abc")
+    assert(firstStream.read() === -1)
+    firstStream.close()
+    // What is left of a block when it is closed is skipped
+    val (_, secondStream) = blocks.next()
+    assert(read(secondStream, 1) === "d")
+    secondStream.close()
+    val (last, lastStream) = blocks.next()
+    assert(last === ShuffleBlockId(0, 2, 0))
+    assert(read(lastStream, 10) === "fgh")
+    assert(!chunkClosed)
+    lastStream.close()
+    assert(chunkClosed)
+    assert(!blocks.hasNext)
+  }
 }
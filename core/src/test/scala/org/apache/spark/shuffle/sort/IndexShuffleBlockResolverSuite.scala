@@ -28,7 +28,8 @@ import org.mockito.stubbing.Answer
 import org.scalatest.BeforeAndAfterEach
 
 import org.apache.spark.{SparkConf, SparkFunSuite}
-import org.apache.spark.shuffle.IndexShuffleBlockResolver
+import org.apache.spark.network.buffer.ManagedBuffer
+import org.apache.spark.shuffle.{IndexShuffleBlockResolver, ShuffleBlockResolver}
 import org.apache.spark.storage._
 import org.apache.spark.util.Utils
 
@@ -133,4 +134,31 @@ class IndexShuffleBlockResolverSuite extends SparkFunSuite with BeforeAndAfterEa
     }
     assert(firstByte2(0) === 2)
   }
+
+  test("ranges of reduce partitions are read as the concatenation of their blocks") {
+    val resolver = new IndexShuffleBlockResolver(conf, blockManager)
+    val dataTmp = File.createTempFile("shuffle", null, tempDir)
+    val out = new FileOutputStream(dataTmp)
+    Utils.tryWithSafeFinally {
+      out.write(Array.tabulate[Byte](30)(_.toByte))
+    } {
+      out.close()
+    }
+    resolver.writeIndexFileAndCommit(1, 2, Array[Long](5, 10, 15), dataTmp)
+
+    // Only reads single blocks, so serves ranges with the default of the trait
+    val singleBlocks = new ShuffleBlockResolver {
+      override def getBlockData(blockId: ShuffleBlockId): ManagedBuffer =
+        resolver.getBlockData(blockId)
+      override def stop(): Unit = {}
+    }
+
+    def bytes(buffer: ManagedBuffer): Seq[Byte] = {
+      val data = buffer.nioByteBuffer()
+      Seq.fill(data.remaining())(data.get())
+    }
+    val batch = ShuffleBlockBatchId(1, 2, 1, 3)
+    assert(bytes(singleBlocks.getBlockData(batch)) === (5 until 30).map(_.toByte))
+    assert(bytes(resolver.getBlockData(batch)) === (5 until 30).map(_.toByte))
+  }
 }
@@ -0,0 +1,137 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.spark.status.api.v1
+
+import java.io.ByteArrayOutputStream
+import java.nio.charset.StandardCharsets
+import java.util.Arrays
+import javax.ws.rs.WebApplicationException
+import javax.ws.rs.core.StreamingOutput
+
+import scala.collection.mutable.ArrayBuffer
+
+import org.json4s._
+import org.json4s.jackson.JsonMethods._
+
+import org.apache.spark.{SparkConf, SparkFunSuite}
+import org.apache.spark.scheduler.HDFSExecutorMetrics
+import org.apache.spark.ui.{ExecutorMetricsRollups, ExecutorMetricsWindowLoader,
+  HDFSExecutorMetricsListener}
+
+class ExecutorMetricsResourceSuite extends SparkFunSuite {
+
+  private def listener: HDFSExecutorMetricsListener = listener(new SparkConf(false))
+
+  private def listener(conf: SparkConf): HDFSExecutorMetricsListener = {
+    val listener = new HDFSExecutorMetricsListener(conf)
+    (0L until 120L).foreach { ts =>
+      Seq("host1_1", "host1_2", "host2_3").foreach { host =>
+        listener.onHDFSExecutorMetrics(HDFSExecutorMetrics(
+          Map("cpu" -> Map("host" -> Map("sys" -> ts.toDouble, "user" -> 1.0)),
+            "memory" -> Map("used" -> ts)), host, ts))
+      }
+    }
+    listener
+  }
+
+  private def query(
+      metrics: Seq[String] = Nil,
+      hosts: Seq[String] = Nil,
+      minTime: Long = 0,
+      maxTime: Long = Long.MaxValue,
+      resolution: String = "auto",
+      pixels: Int = 1000,
+      source: HDFSExecutorMetricsListener = listener): JValue = {
+    val response = new ExecutorMetricsResource(source).executorMetrics(
+      Arrays.asList(metrics: _*), Arrays.asList(hosts: _*), minTime, maxTime, resolution, pixels)
+    val out = new ByteArrayOutputStream()
+    response.getEntity.asInstanceOf[StreamingOutput].write(out)
+    parse(new String(out.toByteArray, StandardCharsets.UTF_8))
+  }
+
+  private def series(json: JValue): Seq[(String, String)] = {
+    (json \ "series").children.map { s =>
+      ((s \ "metric").asInstanceOf[JString].s, (s \ "host").asInstanceOf[JString].s)
+    }
+  }
+
+  test("metric and host patterns") {
+    assert(series(query(metrics = Seq("cpu.*"), hosts = Seq("host1_*"))) === Seq(
+      ("cpu.host.sys", "host1_1"), ("cpu.host.sys", "host1_2"),
+      ("cpu.host.user", "host1_1"), ("cpu.host.user", "host1_2")))
+    assert(series(query(metrics = Seq("memory.used", "cpu.host.user"), hosts = Seq("host2_3")))
+      === Seq(("cpu.host.user", "host2_3"), ("memory.used", "host2_3")))
+    assert(series(query(metrics = Seq("cpu"))) === Nil)
+    assert(series(query()).size === 9)
+  }
+
+  test("time range and resolution") {
+    val json = query(metrics = Seq("cpu.host.sys"), hosts = Seq("host1_1"), minTime = 30,
+      maxTime = 89, resolution = "1m")
+    assert(json \ "resolution" === JString("1m"))
+    assert(json \ "width" === JInt(60))
+    assert((json \ "series")(0) \ "points" ===
+      parse("[[0, 0.0, 59.0, 29.5, 59.0], [60, 60.0, 119.0, 89.5, 119.0]]"))
+
+    val raw = query(metrics = Seq("memory.used"), hosts = Seq("host1_1"), minTime = 10,
+      maxTime = 12, resolution = "raw")
+    assert((raw \ "series")(0) \ "points" ===
+      parse("[[10, 10.0, 10.0, 10.0, 10.0], [11, 11.0, 11.0, 11.0, 11.0], " +
+        "[12, 12.0, 12.0, 12.0, 12.0]]"))
+
+    assert(query(pixels = 1000) \ "resolution" === JString("raw"))
+    assert(query(pixels = 5) \ "resolution" === JString("1m"))
+  }
+
+  test("time ranges dropped from the rollups are read back by the window loader") {
+    val small = listener(new SparkConf(false).set("spark.ui.executorMetrics.retainedBuckets", "20"))
+    val windows = new ArrayBuffer[(Long, Long)]
+    small.windowLoader = Some(new ExecutorMetricsWindowLoader {
+      override def loadWindow(
+          from: Long,
+          to: Long,
+          retainedBuckets: Int): ExecutorMetricsRollups = {
+        windows += ((from, to))
+        val rollups = new ExecutorMetricsRollups(retainedBuckets)
+        (from to to).foreach { ts =>
+          rollups.add("host1_1", ts, Map("memory" -> Map("used" -> ts)))
+        }
+        rollups
+      }
+    })
+
+    // The last 20 seconds are still held at every resolution
+    val recent = query(metrics = Seq("memory.used"), minTime = 105, maxTime = 107,
+      resolution = "raw", source = small)
+    assert(windows.isEmpty)
+    assert(series(recent).size === 3)
+
+    val old = query(metrics = Seq("memory.used"), minTime = 10, maxTime = 12,
+      resolution = "raw", source = small)
+    assert(windows === Seq((10L, 12L)))
+    assert(series(old) === Seq(("memory.used", "host1_1")))
+    assert((old \ "series")(0) \ "points" ===
+      parse("[[10, 10.0, 10.0, 10.0, 10.0], [11, 11.0, 11.0, 11.0, 11.0], " +
+        "[12, 12.0, 12.0, 12.0, 12.0]]"))
+  }
+
+  test("unknown resolution") {
+    intercept[WebApplicationException] {
+      query(resolution = "5s")
+    }
+  }
+}
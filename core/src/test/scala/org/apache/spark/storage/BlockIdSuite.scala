@@ -67,6 +67,33 @@ class BlockIdSuite extends SparkFunSuite {
     assertSame(id, BlockId(id.toString))
   }
 
+  test("shuffle batch") {
+    val id = ShuffleBlockBatchId(1, 2, 3, 5)
+    assertSame(id, ShuffleBlockBatchId(1, 2, 3, 5))
+    assertDifferent(id, ShuffleBlockBatchId(1, 2, 3, 4))
+    assert(id.name === "shuffle_1_2_3_5")
+    assert(id.asRDDId === None)
+    assert(id.shuffleId === 1)
+    assert(id.mapId === 2)
+    assert(id.startReduceId === 3)
+    assert(id.endReduceId === 5)
+    assert(id.isShuffle)
+    assertSame(id, BlockId(id.toString))
+  }
+
+  test("shuffle merged") {
+    val id = ShuffleMergedBlockId(1, 2, 3)
+    assertSame(id, ShuffleMergedBlockId(1, 2, 3))
+    assertDifferent(id, ShuffleMergedBlockId(1, 2, 4))
+    assert(id.name === "shuffleMerged_1_2_3")
+    assert(id.asRDDId === None)
+    assert(id.shuffleId === 1)
+    assert(id.reduceId === 2)
+    assert(id.chunkId === 3)
+    assert(id.isShuffle)
+    assertSame(id, BlockId(id.toString))
+  }
+
   test("broadcast") {
     val id = BroadcastBlockId(42)
     assertSame(id, BroadcastBlockId(42))
@@ -17,7 +17,7 @@
 
 package org.apache.spark.storage
 
-import java.io.InputStream
+import java.io.{IOException, InputStream}
 import java.util.concurrent.Semaphore
 
 import scala.concurrent.ExecutionContext.Implicits.global
@@ -94,16 +94,23 @@ class ShuffleBlockFetcherIteratorSuite extends SparkFunSuite with PrivateMethodT
       (remoteBmId, remoteBlocks.keys.map(blockId => (blockId, 1.asInstanceOf[Long])).toSeq)
     )
 
+    val fetchMetrics = new ShuffleFetchMetrics
     val iterator = new ShuffleBlockFetcherIterator(
       TaskContext.empty(),
       transfer,
       blockManager,
       blocksByAddress,
       48 * 1024 * 1024,
-      Int.MaxValue)
+      Int.MaxValue,
+      fetchMetrics)
 
     // 3 local blocks fetched in initialization
     verify(blockManager, times(3)).getBlockData(any())
+    assert(fetchMetrics.localLatencyMicros.getCount === 3)
+    // The remote blocks are in flight until the iterator returns them
+    assert(fetchMetrics.requestsInFlight === 1)
+    assert(fetchMetrics.bytesInFlight === 2)
+    assert(fetchMetrics.remoteLatencyMillis.getCount === 1)
 
     for (i <- 0 until 5) {
       assert(iterator.hasNext, s"iterator should have 5 elements but actually has $i elements")
@@ -129,6 +136,8 @@ class ShuffleBlockFetcherIteratorSuite extends SparkFunSuite with PrivateMethodT
     // (but from the same block manager so one call to fetchBlocks)
     verify(blockManager, times(3)).getBlockData(any())
     verify(transfer, times(1)).fetchBlocks(any(), any(), any(), any(), any())
+    assert(fetchMetrics.requestsInFlight === 0)
+    assert(fetchMetrics.bytesInFlight === 0)
   }
 
   test("release current unexhausted buffer in case the task completes early") {
@@ -173,7 +182,8 @@ class ShuffleBlockFetcherIteratorSuite extends SparkFunSuite with PrivateMethodT
       blockManager,
       blocksByAddress,
       48 * 1024 * 1024,
-      Int.MaxValue)
+      Int.MaxValue,
+      new ShuffleFetchMetrics)
 
     verify(blocks(ShuffleBlockId(0, 0, 0)), times(0)).release()
     iterator.next()._2.close() // close() first block's input stream
@@ -236,7 +246,8 @@ class ShuffleBlockFetcherIteratorSuite extends SparkFunSuite with PrivateMethodT
       blockManager,
       blocksByAddress,
       48 * 1024 * 1024,
-      Int.MaxValue)
+      Int.MaxValue,
+      new ShuffleFetchMetrics)
 
     // Continue only after the mock calls onBlockFetchFailure
     sem.acquire()
@@ -247,4 +258,43 @@ class ShuffleBlockFetcherIteratorSuite extends SparkFunSuite with PrivateMethodT
     intercept[FetchFailedException] { iterator.next() }
     intercept[FetchFailedException] { iterator.next() }
   }
+
+  test("merged chunks that cannot be fetched or read are fetched from the map outputs") {
+    val blockManager = mock(classOf[BlockManager])
+    val localBmId = BlockManagerId("test-client", "test-client", 1)
+    doReturn(localBmId).when(blockManager).blockManagerId
+
+    val merger = BlockManagerId("shuffle-merger", "merger-host", 7337)
+    val mapOutputsBmId = BlockManagerId("test-client-1", "test-client-1", 2)
+    val unreadable = mock(classOf[ManagedBuffer])
+    when(unreadable.createInputStream()).thenThrow(new IOException("corrupt"))
+    // The first chunk is not found by the merger, the second cannot be read
+    val transfer = createMockTransfer(Map[BlockId, ManagedBuffer](
+      ShuffleMergedBlockId(0, 0, 1) -> unreadable,
+      ShuffleBlockId(0, 1, 0) -> createMockManagedBuffer(),
+      ShuffleBlockId(0, 2, 0) -> createMockManagedBuffer(),
+      ShuffleBlockId(0, 3, 0) -> createMockManagedBuffer()))
+
+    val blocksByAddress = Seq[(BlockManagerId, Seq[(BlockId, Long)])](
+      (merger, Seq((ShuffleMergedBlockId(0, 0, 0), 2L), (ShuffleMergedBlockId(0, 0, 1), 1L))))
+    val fallbackBlocks = Map[BlockId, Seq[(BlockManagerId, BlockId, Long)]](
+      ShuffleMergedBlockId(0, 0, 0) -> Seq(
+        (mapOutputsBmId, ShuffleBlockId(0, 1, 0), 1L),
+        (mapOutputsBmId, ShuffleBlockId(0, 2, 0), 1L)),
+      ShuffleMergedBlockId(0, 0, 1) -> Seq((mapOutputsBmId, ShuffleBlockId(0, 3, 0), 1L)))
+
+    val iterator = new ShuffleBlockFetcherIterator(
+      TaskContext.empty(),
+      transfer,
+      blockManager,
+      blocksByAddress,
+      48 * 1024 * 1024,
+      Int.MaxValue,
+      new ShuffleFetchMetrics,
+      fallbackBlocks)
+
+    assert(iterator.map(_._1).toSet ===
+      Set(ShuffleBlockId(0, 1, 0), ShuffleBlockId(0, 2, 0), ShuffleBlockId(0, 3, 0)))
+    verify(unreadable).release()
+  }
 }
@@ -0,0 +1,101 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.spark.storage
+
+import java.io.File
+import java.nio.charset.StandardCharsets
+import java.util.Collections
+
+import scala.collection.JavaConverters._
+
+import com.codahale.metrics.{Metric, MetricSet}
+import com.google.common.io.Files
+import org.json4s._
+import org.json4s.jackson.JsonMethods._
+import org.mockito.Mockito.{mock, when}
+
+import org.apache.spark.{SparkConf, SparkFunSuite}
+import org.apache.spark.metrics.sink.{MetricPath, MetricsJsonSerializer, MetricValues}
+import org.apache.spark.metrics.source.{ProcFsSource, SampledCounterSource, SamplingEpoch}
+import org.apache.spark.network.BlockTransferService
+import org.apache.spark.util.Utils
+
+class ShuffleTransferSourceSuite extends SparkFunSuite {
+
+  private def writeNetDev(root: File, received: Long, sent: Long): Unit = {
+    val file = new File(root, "proc/net/dev")
+    file.getParentFile.mkdirs()
+    Files.write("Inter-|   Receive |  Transmit\n face |bytes    packets |bytes    packets\n" +
+      s"  eth0: $received 1 0 0 0 0 0 0 $sent 1 0 0 0 0 0 0\n", file, StandardCharsets.UTF_8)
+  }
+
+  private def sampleAfterTwoSeconds(source: SampledCounterSource): Unit = {
+    source.sample(SamplingEpoch(1, source.snapshot.epoch.nanoTime + 2L * 1000 * 1000 * 1000))
+  }
+
+  private def number(value: JValue): Double = value match {
+    case JDouble(d) => d
+    case JInt(i) => i.toDouble
+    case other => fail(s"Not a number: $other")
+  }
+
+  test("shuffle rates are written next to the network rates of the host") {
+    val root = Utils.createTempDir()
+    try {
+      writeNetDev(root, 3000, 6000)
+      val host = new ProcFsSource(root)
+
+      val fetchMetrics = new ShuffleFetchMetrics
+      val transferService = mock(classOf[BlockTransferService])
+      when(transferService.shuffleMetrics()).thenReturn(new MetricSet {
+        override def getMetrics: java.util.Map[String, Metric] = Collections.emptyMap()
+      })
+      val blockManager = mock(classOf[BlockManager])
+      when(blockManager.shuffleFetchMetrics).thenReturn(fetchMetrics)
+      when(blockManager.blockTransferService).thenReturn(transferService)
+      when(blockManager.shuffleClient).thenReturn(transferService)
+      val shuffle = new ShuffleTransferSource(blockManager, new SparkConf(false))
+
+      writeNetDev(root, 6000, 12000)
+      fetchMetrics.remoteBlockReceived(1000)
+      when(transferService.servedBytes).thenReturn(4000L)
+      sampleAfterTwoSeconds(host)
+      sampleAfterTwoSeconds(shuffle)
+
+      // Registered under their source names, as the metrics system does
+      val values = new MetricValues()
+      Seq(host, shuffle).foreach { source =>
+        source.metricRegistry.getGauges.asScala.foreach { case (name, gauge) =>
+          values.add(MetricPath.of(s"app-1.3.${source.sourceName}.$name"),
+            gauge.getValue.asInstanceOf[AnyRef])
+        }
+      }
+      val serializer = new MetricsJsonSerializer
+      serializer.serialize(42L, "host1_3", values)
+      val json = parse(
+        new String(serializer.bytes(), 0, serializer.length(), StandardCharsets.UTF_8)) \ "values"
+
+      assert(number(json \ "network" \ "received_per_second") === 1500.0)
+      assert(number(json \ "network" \ "sent_per_second") === 3000.0)
+      assert(number(json \ "shuffle" \ "fetchedBytesPerSecond") === 500.0)
+      assert(number(json \ "shuffle" \ "servedBytesPerSecond") === 2000.0)
+    } finally {
+      Utils.deleteRecursively(root)
+    }
+  }
+}
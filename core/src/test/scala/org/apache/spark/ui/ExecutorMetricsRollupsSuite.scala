@@ -0,0 +1,113 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.spark.ui
+
+import org.apache.spark.{SparkConf, SparkFunSuite}
+import org.apache.spark.scheduler.HDFSExecutorMetrics
+
+class ExecutorMetricsRollupsSuite extends SparkFunSuite {
+
+  import ExecutorMetricsRollups._
+
+  private def sample(cpu: Double, used: Long): Map[String, Any] =
+    Map("cpu" -> Map("host" -> Map("sys" -> cpu)), "memory" -> Map("used" -> used),
+      "name" -> "not a number")
+
+  test("samples are flattened into metric paths") {
+    assert(flatten(sample(0.5, 10L)).toMap ===
+      Map("cpu.host.sys" -> 0.5, "memory.used" -> 10.0))
+  }
+
+  test("tiers hold min, max, avg and last per bucket") {
+    val rollups = new ExecutorMetricsRollups(100)
+    (0L until 120L).foreach(ts => rollups.add("host1_1", ts, sample(ts.toDouble, ts)))
+    rollups.add("host2_1", 101, sample(1.0, 1L))
+
+    assert(rollups.metricNames === Seq("cpu.host.sys", "memory.used"))
+    assert(rollups.hosts === Seq("host1_1", "host2_1"))
+    assert(rollups.timeRange === Some((0L, 119L)))
+
+    val Seq((host, minutes), _) = rollups.points("cpu.host.sys", tier("1m").get)
+    assert(host === "host1_1")
+    assert(minutes === Seq(
+      RollupPoint(0, 0, 59, 29.5, 59),
+      RollupPoint(60, 60, 119, 89.5, 119)))
+
+    val tens = rollups.points("cpu.host.sys", tier("10s").get, from = 25, to = 40,
+      hostFilter = _ == "host1_1").head._2
+    assert(tens.map(_.timestamp) === Seq(20L, 30L, 40L))
+    assert(tens.head === RollupPoint(20, 20, 29, 24.5, 29))
+
+    val raw = rollups.points("memory.used", RAW, from = 100, to = 103).map(_._2)
+    assert(raw === Seq(
+      (100 to 103).map(ts => RollupPoint(ts, ts, ts, ts, ts)),
+      Seq(RollupPoint(101, 1, 1, 1, 1))))
+  }
+
+  test("raw samples of the same timestamp are merged and counted") {
+    val rollups = new ExecutorMetricsRollups(100)
+    rollups.add("host1_1", 10, sample(1.0, 1L))
+    rollups.add("host1_1", 10, sample(2.0, 2L))
+    rollups.add("host1_1", 11, sample(3.0, 3L))
+    // A late duplicate
+    rollups.add("host1_1", 10, sample(4.0, 4L))
+
+    assert(rollups.points("memory.used", RAW).head._2 === Seq(
+      RollupPoint(10, 4, 4, 4, 4),
+      RollupPoint(11, 3, 3, 3, 3)))
+    // Both metrics of both duplicates
+    assert(rollups.mergedDuplicates === 4)
+    assert(rollups.points("memory.used", tier("10s").get).head._2 ===
+      Seq(RollupPoint(10, 1, 4, 2.5, 4)))
+  }
+
+  test("each tier keeps a bounded number of buckets") {
+    val rollups = new ExecutorMetricsRollups(10)
+    (0L until 1000L).foreach(ts => rollups.add("host1_1", ts, sample(1.0, ts)))
+
+    def timestamps(tier: RollupTier): Seq[Long] =
+      rollups.points("memory.used", tier).head._2.map(_.timestamp)
+    assert(timestamps(RAW) === (990L until 1000L))
+    assert(timestamps(tier("10s").get) === (900L until 1000L by 10))
+    assert(timestamps(tier("1m").get) === (420L until 1000L by 60))
+    assert(timestamps(tier("10m").get) === Seq(0L, 600L))
+  }
+
+  test("tier is picked from the time range and the number of pixels") {
+    val rollups = new ExecutorMetricsRollups(100)
+    (0L until 3600L).foreach(ts => rollups.add("host1_1", ts, sample(1.0, ts)))
+
+    // Recent and narrow enough for raw samples
+    assert(rollups.chooseTier(3550, 3599, 1000) === RAW)
+    // 10 minutes in 100 pixels need about 6s per pixel
+    assert(rollups.chooseTier(3000, 3599, 100) === tier("10s").get)
+    // 10s buckets no longer cover the start of the application
+    assert(rollups.chooseTier(0, 3599, 1000) === tier("1m").get)
+    assert(rollups.chooseTier(0, 3599, 5) === tier("10m").get)
+  }
+
+  test("listener rolls up replayed samples") {
+    val listener = new HDFSExecutorMetricsListener(
+      new SparkConf(false).set("spark.ui.executorMetrics.retainedBuckets", "5"))
+    (0L until 20L).foreach { ts =>
+      listener.onHDFSExecutorMetrics(HDFSExecutorMetrics(sample(1.0, ts), "host1_1", ts))
+    }
+    assert(listener.rollups.points("memory.used", RAW).head._2.map(_.timestamp) ===
+      (15L until 20L))
+  }
+}
@@ -0,0 +1,204 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.spark.ui
+
+import scala.collection.mutable
+import scala.util.Random
+
+import org.apache.spark.{SparkConf, SparkFunSuite, Success, TaskState}
+import org.apache.spark.scheduler.{HDFSExecutorMetrics, SparkListenerApplicationEnd,
+  SparkListenerExecutorMetricsSample, SparkListenerTaskEnd, SparkListenerTaskStart, TaskInfo,
+  TaskLocality}
+
+class TaskResourceAttributionListenerSuite extends SparkFunSuite {
+
+  private var taskId = 0L
+
+  private def taskEnd(stageId: Int, executorId: String, host: String, launch: Long,
+      finish: Long): SparkListenerTaskEnd = {
+    taskId += 1
+    val info = new TaskInfo(taskId, 0, 0, launch, executorId, host, TaskLocality.PROCESS_LOCAL,
+      false)
+    info.markFinished(TaskState.FINISHED, finish)
+    SparkListenerTaskEnd(stageId, 0, "ResultTask", Success, info, null)
+  }
+
+  private def sample(host: String, timestamp: Long, cpu: Double, disk: Double,
+      network: Double): HDFSExecutorMetrics = {
+    HDFSExecutorMetrics(Map(
+      "cpu" -> Map("process" -> Map("total" -> cpu)),
+      "disk" -> Map("read_per_second" -> disk / 2, "written_per_second" -> disk / 2),
+      "network" -> Map("received_per_second" -> network, "sent_per_second" -> 0.0)),
+      host, timestamp)
+  }
+
+  test("samples are split among the tasks that ran during them") {
+    val listener = new TaskResourceAttributionListener(new SparkConf)
+    // Two executors on hostA, one on hostB
+    listener.onTaskEnd(taskEnd(0, "1", "hostA", 0, 10000))
+    listener.onTaskEnd(taskEnd(1, "1", "hostA", 5000, 10000))
+    listener.onTaskEnd(taskEnd(1, "2", "hostA", 0, 10000))
+    listener.onTaskEnd(taskEnd(2, "3", "hostB", 0, 5000))
+
+    Seq("hostA_1" -> 100.0, "hostA_2" -> 50.0, "hostB_3" -> 100.0).foreach {
+      case (host, cpu) =>
+        listener.onHDFSExecutorMetrics(sample(host, 0, cpu, 2000, 500))
+        listener.onHDFSExecutorMetrics(sample(host, 10, cpu, 2000, 500))
+    }
+
+    // Executor 1 used 1s of CPU over 15s of task time, executor 2 0.5s. hostA moved 20000 disk
+    // bytes over 25s of task time, reported by both of its executors.
+    val stage0 = listener.stageUsage(0, 0).get
+    assert(stage0.cpuSeconds === 1.0 * 10 / 15 +- 1e-9)
+    assert(stage0.diskBytes === 20000.0 * 10 / 25 +- 1e-6)
+    assert(stage0.networkBytes === 5000.0 * 10 / 25 +- 1e-6)
+    assert(stage0.samples === 1)
+
+    val stage1 = listener.stageUsage(1, 0).get
+    assert(stage1.cpuSeconds === 1.0 * 5 / 15 + 0.5 +- 1e-9)
+    assert(stage1.diskBytes === 20000.0 * 15 / 25 +- 1e-6)
+    assert(stage1.samples === 2)
+
+    // The only task of hostB ran for half of the sample
+    val stage2 = listener.stageUsage(2, 0).get
+    assert(stage2.cpuSeconds === 0.5 +- 1e-9)
+    assert(stage2.diskBytes === 10000.0 +- 1e-6)
+
+    assert(listener.stageUsage(3, 0) === None)
+    assert(TaskResourceAttributionListener.executorIdOf("my_host_12") === "12")
+  }
+
+  test("heartbeat samples are attributed once the tasks they cover have ended") {
+    val listener = new TaskResourceAttributionListener(new SparkConf)
+    // As in the event log, the samples of a task come before its end
+    Seq(0L, 10L).foreach { timestamp =>
+      listener.onExecutorMetricsSample(SparkListenerExecutorMetricsSample("1", "hostA",
+        timestamp, Map("cpu.process.total" -> 200.0, "network.received_per_second" -> 100.0)))
+    }
+    listener.onTaskEnd(taskEnd(0, "1", "hostA", 0, 10000))
+
+    val stage0 = listener.stageUsage(0, 0).get
+    assert(stage0.cpuSeconds === 2.0 +- 1e-9)
+    assert(stage0.networkBytes === 1000.0 +- 1e-6)
+    assert(stage0.diskBytes === 0.0)
+    assert(stage0.samples === 1)
+  }
+
+  test("samples read while their tasks run are attributed once those tasks end") {
+    val listener = new TaskResourceAttributionListener(new SparkConf)
+    val first = taskEnd(0, "1", "hostA", 0, 10000)
+    val second = taskEnd(1, "1", "hostA", 5000, 20000)
+    listener.onTaskStart(SparkListenerTaskStart(0, 0, first.taskInfo))
+    listener.onTaskStart(SparkListenerTaskStart(1, 0, second.taskInfo))
+    Seq(0L, 10L, 20L).foreach { ts =>
+      listener.onHDFSExecutorMetrics(sample("hostA_1", ts, 100.0, 0.0, 0.0))
+    }
+    assert(listener.numPendingSamples === 2)
+    assert(listener.stageUsage(0, 0) === None)
+
+    // The first sample is still covered by the second task
+    listener.onTaskEnd(first)
+    assert(listener.numPendingSamples === 2)
+    assert(listener.stageUsage(0, 0) === None)
+
+    listener.onTaskEnd(second)
+    assert(listener.numPendingSamples === 0)
+    // 1s of CPU over 15s of task time in the first sample, 1s in the second
+    assert(listener.stageUsage(0, 0).get.cpuSeconds === 1.0 * 10 / 15 +- 1e-9)
+    assert(listener.stageUsage(1, 0).get.cpuSeconds === 1.0 * 5 / 15 + 1.0 +- 1e-9)
+  }
+
+  test("samples after the last task are attributed at the end of the application") {
+    val listener = new TaskResourceAttributionListener(new SparkConf)
+    listener.onTaskEnd(taskEnd(0, "1", "hostA", 0, 5000))
+    listener.onHDFSExecutorMetrics(sample("hostA_1", 0, 100.0, 0.0, 0.0))
+    listener.onHDFSExecutorMetrics(sample("hostA_1", 10, 100.0, 0.0, 0.0))
+    // A task may still start before the end of the sample
+    assert(listener.numPendingSamples === 1)
+
+    listener.onApplicationEnd(SparkListenerApplicationEnd(20000))
+    assert(listener.numPendingSamples === 0)
+    assert(listener.stageUsage(0, 0).get.cpuSeconds === 0.5 +- 1e-9)
+  }
+
+  test("task windows are dropped once every sample of their executor is past them") {
+    def replay(listener: TaskResourceAttributionListener): Unit = {
+      (0 until 100).foreach { i =>
+        val task = taskEnd(0, "1", "hostA", i * 1000L, (i + 1) * 1000L)
+        listener.onTaskStart(SparkListenerTaskStart(0, 0, task.taskInfo))
+        listener.onExecutorMetricsSample(SparkListenerExecutorMetricsSample("1", "hostA",
+          i + 1, Map("cpu.process.total" -> 100.0)))
+        listener.onTaskEnd(task)
+      }
+    }
+
+    val listener = new TaskResourceAttributionListener(new SparkConf)
+    replay(listener)
+    assert(listener.numTaskWindows("1") < 16)
+    assert(listener.stageUsage(0, 0).get.cpuSeconds === 9.9 +- 1e-9)
+
+    // The HDFS sink's files are read after the event log, every window is kept for them
+    val withFiles = new TaskResourceAttributionListener(
+      new SparkConf().set("spark.hdfs.metrics.dir", "/metrics"))
+    replay(withFiles)
+    assert(withFiles.numTaskWindows("1") === 100)
+    withFiles.onApplicationEnd(SparkListenerApplicationEnd(100000))
+    Seq(0L, 100L).foreach { ts =>
+      withFiles.onHDFSExecutorMetrics(sample("hostA_1", ts, 100.0, 0.0, 0.0))
+    }
+    assert(withFiles.stageUsage(0, 0).get.cpuSeconds === 9.9 + 10.0 +- 1e-9)
+  }
+
+  test("interval tree overlaps") {
+    val random = new Random(42)
+    val tree = new IntervalTree
+    val intervals = (0 until 500).map { i =>
+      val start = random.nextInt(10000).toLong
+      val end = start + 1 + random.nextInt(500)
+      tree.add(start, end, i)
+      (start, end, i)
+    }
+    (0 until 100).foreach { _ =>
+      val from = random.nextInt(11000).toLong
+      val to = from + 1 + random.nextInt(1000)
+      val found = new mutable.HashMap[Int, Long]
+      tree.foreachOverlapping(from, to) { (value, overlap) => found(value) = overlap }
+      val expected = intervals.collect {
+        case (start, end, i) if start < to && end > from =>
+          (i, math.min(end, to) - math.max(start, from))
+      }.toMap
+      assert(found.toMap === expected)
+    }
+  }
+
+  test("interval tree drops the intervals ended by a time") {
+    val tree = new IntervalTree
+    (0 until 40).foreach { i => tree.add(i * 100L, i * 100L + 150, i) }
+    tree.dropEndedBy(2000)
+    // The intervals ending at or before 2000 are gone, the others still found
+    assert(tree.numIntervals === 21)
+    val found = new mutable.HashMap[Int, Long]
+    tree.foreachOverlapping(0, 2100) { (value, overlap) => found(value) = overlap }
+    assert(found.toMap === Map(19 -> 150L, 20 -> 100L))
+    // Nothing is compacted until as many intervals were added as were left
+    tree.add(1950, 1960, 40)
+    tree.dropEndedBy(4000)
+    assert(tree.numIntervals === 22)
+    assert(tree.totalOverlap(1900, 1955) === 5 + 55)
+  }
+}
@@ -408,4 +408,75 @@ class JobProgressListenerSuite extends SparkFunSuite with LocalSparkContext with
     val newTaskInfo = TaskUIData.dropInternalAndSQLAccumulables(taskInfo)
     assert(newTaskInfo.accumulables === Seq(userAccum))
   }
+
+  test("tasks of completed stages move to the task store") {
+    val storeDir = Utils.createTempDir()
+    val store = TaskDataStore.create(storeDir.getAbsolutePath)
+    try {
+      val listener = new JobProgressListener(new SparkConf().set("spark.ui.retainedStages", "1"))
+      listener.taskStore = Some(store)
+      val taskType = Utils.getFormattedClassName(new ShuffleMapTask(0))
+      listener.onStageSubmitted(createStageStartEvent(0))
+      // Ended in reverse, to check that they are stored in the order of their ids
+      (0 until 30).reverse.foreach { i =>
+        val taskInfo = new TaskInfo(i, i, 0, 100L + i, "exe-1", "host1", TaskLocality.ANY, false)
+        taskInfo.finishTime = 200L
+        val metrics = TaskMetrics.empty
+        metrics.setExecutorRunTime(i)
+        val reason =
+          if (i == 7) ExceptionFailure("E", "failed", Array.empty, null, None) else Success
+        listener.onTaskEnd(SparkListenerTaskEnd(0, 0, taskType, reason, taskInfo, metrics))
+      }
+      listener.onStageCompleted(createStageEndEvent(0))
+
+      val stageData = listener.stageIdToData((0, 0))
+      assert(stageData.taskData.isEmpty)
+      assert(stageData.hasTasks)
+      assert(stageData.firstTaskLaunchTime === Some(100L))
+      val tasks = stageData.tasks
+      assert(tasks.map(_.taskInfo.taskId) === (0L until 30L))
+      assert(tasks.map(_.metrics.get.executorRunTime) === (0L until 30L))
+      assert(tasks(7).errorMessage.get.contains("failed"))
+      assert(tasks(7).taskInfo.executorId === "exe-1")
+      assert(stageData.storedTasks.get.slice(25, 40).map(_.taskInfo.taskId) === (25L until 30L))
+
+      // A task ending after its stage replaces the stored one
+      val late = new TaskInfo(3, 3, 0, 100L, "exe-2", "host1", TaskLocality.ANY, false)
+      late.finishTime = 300L
+      listener.onTaskEnd(SparkListenerTaskEnd(0, 0, taskType, Success, late, TaskMetrics.empty))
+      assert(stageData.tasks.size === 30)
+      assert(stageData.tasks.count(_.taskInfo.executorId == "exe-2") === 1)
+
+      // Trimmed stages are deleted from the store
+      listener.onStageSubmitted(createStageStartEvent(1))
+      listener.onStageCompleted(createStageEndEvent(1))
+      assert(!listener.stageIdToData.contains((0, 0)))
+      assert(store.read(0, 0, 0, 30).isEmpty)
+    } finally {
+      store.close()
+    }
+    assert(!storeDir.listFiles().exists(_.getName.startsWith(TaskDataStore.DIR_PREFIX)))
+    Utils.deleteRecursively(storeDir)
+  }
+
+  test("stored tasks read no tasks once their store is closed") {
+    val storeDir = Utils.createTempDir()
+    try {
+      val store = TaskDataStore.create(storeDir.getAbsolutePath)
+      val taskInfo = new TaskInfo(0, 0, 0, 100L, "exe-1", "host1", TaskLocality.ANY, false)
+      val stored = store.write(0, 0, Seq(TaskUIData(taskInfo, None)))
+      assert(stored.all.map(_.taskInfo.taskId) === Seq(0L))
+
+      store.close()
+      assert(!storeDir.listFiles().exists(_.getName.startsWith(TaskDataStore.DIR_PREFIX)))
+      assert(stored.all.isEmpty)
+      stored.delete()
+      store.close()
+      intercept[IllegalStateException] {
+        store.write(1, 0, Nil)
+      }
+    } finally {
+      Utils.deleteRecursively(storeDir)
+    }
+  }
 }
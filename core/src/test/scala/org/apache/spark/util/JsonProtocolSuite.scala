@@ -90,6 +90,8 @@ class JsonProtocolSuite extends SparkFunSuite {
           .zipWithIndex.map { case (a, i) => a.copy(id = i) }
       SparkListenerExecutorMetricsUpdate("exec3", Seq((1L, 2, 3, accumUpdates)))
     }
+    val executorMetricsSample = SparkListenerExecutorMetricsSample("exec3", "Hostee.awesome.com",
+      42L, Map("cpu.host.sys" -> 0.5, "heap.used" -> 1024.0))
 
     testEvent(stageSubmitted, stageSubmittedJsonString)
     testEvent(stageCompleted, stageCompletedJsonString)
@@ -110,6 +112,7 @@ class JsonProtocolSuite extends SparkFunSuite {
     testEvent(executorAdded, executorAddedJsonString)
     testEvent(executorRemoved, executorRemovedJsonString)
     testEvent(executorMetricsUpdate, executorMetricsUpdateJsonString)
+    testEvent(executorMetricsSample, executorMetricsSampleJsonString)
   }
 
   test("Dependent Classes") {
@@ -279,6 +282,15 @@ class JsonProtocolSuite extends SparkFunSuite {
     assert(newMetrics.shuffleReadMetrics.localBytesRead == 0)
   }
 
+  test("TaskMetrics: allocated bytes backwards compatibility") {
+    val metrics = makeTaskMetrics(1L, 2L, 3L, 4L, 5, 6, hasHadoopInput = false, hasOutput = false)
+    metrics.setAllocatedBytes(7L)
+    val newJson = JsonProtocol.taskMetricsToJson(metrics)
+    assert(JsonProtocol.taskMetricsFromJson(newJson).allocatedBytes === 7L)
+    val oldJson = newJson.removeField { case (field, _) => field == "Allocated Bytes" }
+    assert(JsonProtocol.taskMetricsFromJson(oldJson).allocatedBytes === 0L)
+  }
+
   test("SparkListenerApplicationStart backwards compatibility") {
     // SparkListenerApplicationStart in Spark 1.0.0 do not have an "appId" property.
     // SparkListenerApplicationStart pre-Spark 1.4 does not have "appAttemptId".
@@ -422,6 +434,16 @@ class JsonProtocolSuite extends SparkFunSuite {
     testAccumValue(Some("anything"), 123, JString("123"))
   }
 
+  test("HDFSExecutorMetrics values are written as a nested object") {
+    val event = HDFSExecutorMetrics(
+      scala.collection.immutable.Map("cpu" -> Map("host" -> Map("sys" -> 0.5)), "tasks" -> 3L),
+      "host1_1", 100L)
+    val json = JsonProtocol.hdfsExecutorMetricsToJson(event)
+    assert(json \ "host" === JString("host1_1"))
+    assert(json \ "timestamp" === JInt(100))
+    assert(json \ "values" === parse("""{"cpu": {"host": {"sys": 0.5}}, "tasks": 3}"""))
+  }
+
 }
 
 
@@ -614,6 +636,7 @@ private[spark] object JsonProtocolSuite extends Assertions {
     assert(metrics1.resultSerializationTime === metrics2.resultSerializationTime)
     assert(metrics1.memoryBytesSpilled === metrics2.memoryBytesSpilled)
     assert(metrics1.diskBytesSpilled === metrics2.diskBytesSpilled)
+    assert(metrics1.allocatedBytes === metrics2.allocatedBytes)
     assertEquals(metrics1.shuffleReadMetrics, metrics2.shuffleReadMetrics)
     assertEquals(metrics1.shuffleWriteMetrics, metrics2.shuffleWriteMetrics)
     assertEquals(metrics1.inputMetrics, metrics2.inputMetrics)
@@ -1111,6 +1134,7 @@ private[spark] object JsonProtocolSuite extends Assertions {
       |    "Result Serialization Time": 700,
       |    "Memory Bytes Spilled": 800,
       |    "Disk Bytes Spilled": 0,
+      |    "Allocated Bytes": 0,
       |    "Shuffle Read Metrics": {
       |      "Remote Blocks Fetched": 800,
       |      "Local Blocks Fetched": 700,
@@ -1211,6 +1235,7 @@ private[spark] object JsonProtocolSuite extends Assertions {
       |    "Result Serialization Time": 700,
       |    "Memory Bytes Spilled": 800,
       |    "Disk Bytes Spilled": 0,
+      |    "Allocated Bytes": 0,
       |    "Shuffle Read Metrics" : {
       |      "Remote Blocks Fetched" : 0,
       |      "Local Blocks Fetched" : 0,
@@ -1311,6 +1336,7 @@ private[spark] object JsonProtocolSuite extends Assertions {
       |    "Result Serialization Time": 700,
       |    "Memory Bytes Spilled": 800,
       |    "Disk Bytes Spilled": 0,
+      |    "Allocated Bytes": 0,
       |    "Shuffle Read Metrics" : {
       |      "Remote Blocks Fetched" : 0,
       |      "Local Blocks Fetched" : 0,
@@ -1777,6 +1803,20 @@ private[spark] object JsonProtocolSuite extends Assertions {
       |}
     """.stripMargin
 
+  private val executorMetricsSampleJsonString =
+    s"""
+      |{
+      |  "Event": "SparkListenerExecutorMetricsSample",
+      |  "Executor ID": "exec3",
+      |  "Host": "Hostee.awesome.com",
+      |  "Timestamp": 42,
+      |  "Values": {
+      |    "cpu.host.sys": 0.5,
+      |    "heap.used": 1024.0
+      |  }
+      |}
+    """.stripMargin
+
   private val executorMetricsUpdateJsonString =
     s"""
       |{
@@ -1861,6 +1901,13 @@ private[spark] object JsonProtocolSuite extends Assertions {
       |        },
       |        {
       |          "ID": 10,
+      |          "Name": "$ALLOCATED_BYTES",
+      |          "Update": 0,
+      |          "Internal": true,
+      |          "Count Failed Values": true
+      |        },
+      |        {
+      |          "ID": 11,
       |          "Name": "$UPDATED_BLOCK_STATUSES",
       |          "Update": [
       |            {
@@ -1881,98 +1928,98 @@ private[spark] object JsonProtocolSuite extends Assertions {
       |          "Count Failed Values": true
       |        },
       |        {
-      |          "ID": 11,
+      |          "ID": 12,
       |          "Name": "${shuffleRead.REMOTE_BLOCKS_FETCHED}",
       |          "Update": 0,
       |          "Internal": true,
       |          "Count Failed Values": true
       |        },
       |        {
-      |          "ID": 12,
+      |          "ID": 13,
       |          "Name": "${shuffleRead.LOCAL_BLOCKS_FETCHED}",
       |          "Update": 0,
       |          "Internal": true,
       |          "Count Failed Values": true
       |        },
       |        {
-      |          "ID": 13,
+      |          "ID": 14,
       |          "Name": "${shuffleRead.REMOTE_BYTES_READ}",
       |          "Update": 0,
       |          "Internal": true,
       |          "Count Failed Values": true
       |        },
       |        {
-      |          "ID": 14,
+      |          "ID": 15,
       |          "Name": "${shuffleRead.LOCAL_BYTES_READ}",
       |          "Update": 0,
       |          "Internal": true,
       |          "Count Failed Values": true
       |        },
       |        {
-      |          "ID": 15,
+      |          "ID": 16,
       |          "Name": "${shuffleRead.FETCH_WAIT_TIME}",
       |          "Update": 0,
       |          "Internal": true,
       |          "Count Failed Values": true
       |        },
       |        {
-      |          "ID": 16,
+      |          "ID": 17,
       |          "Name": "${shuffleRead.RECORDS_READ}",
       |          "Update": 0,
       |          "Internal": true,
       |          "Count Failed Values": true
       |        },
       |        {
-      |          "ID": 17,
+      |          "ID": 18,
       |          "Name": "${shuffleWrite.BYTES_WRITTEN}",
       |          "Update": 0,
       |          "Internal": true,
       |          "Count Failed Values": true
       |        },
       |        {
-      |          "ID": 18,
+      |          "ID": 19,
       |          "Name": "${shuffleWrite.RECORDS_WRITTEN}",
       |          "Update": 0,
       |          "Internal": true,
       |          "Count Failed Values": true
       |        },
       |        {
-      |          "ID": 19,
+      |          "ID": 20,
       |          "Name": "${shuffleWrite.WRITE_TIME}",
       |          "Update": 0,
       |          "Internal": true,
       |          "Count Failed Values": true
       |        },
       |        {
-      |          "ID": 20,
+      |          "ID": 21,
       |          "Name": "${input.BYTES_READ}",
       |          "Update": 2100,
       |          "Internal": true,
       |          "Count Failed Values": true
       |        },
       |        {
-      |          "ID": 21,
+      |          "ID": 22,
       |          "Name": "${input.RECORDS_READ}",
       |          "Update": 21,
       |          "Internal": true,
       |          "Count Failed Values": true
       |        },
       |        {
-      |          "ID": 22,
+      |          "ID": 23,
       |          "Name": "${output.BYTES_WRITTEN}",
       |          "Update": 1200,
       |          "Internal": true,
       |          "Count Failed Values": true
       |        },
       |        {
-      |          "ID": 23,
+      |          "ID": 24,
       |          "Name": "${output.RECORDS_WRITTEN}",
       |          "Update": 12,
       |          "Internal": true,
       |          "Count Failed Values": true
       |        },
       |        {
-      |          "ID": 24,
+      |          "ID": 25,
       |          "Name": "$TEST_ACCUM",
       |          "Update": 0,
       |          "Internal": true,